@@ -0,0 +1,318 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+
+
+/**
+ *   Batch analysis of positions.  Each position of a FEN file (one
+ *   position per line) is searched for its best few moves with a
+ *   multi-PV search (see {@link Search#searchMultiPv(Board, int, int, long)}),
+ *   and every move is printed with its score, depth, the nodes and time
+ *   spent on it and its principal variation, for example:
+ *   <pre>
+ *      rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1
+ *        1. e7e5   cp   -12  depth 5  nodes 48211  time 640 ms  pv e7e5 g1f3 b8c6 f1b5 g8f6
+ *        2. b8c6   cp   -20  depth 5  nodes 35008  time 455 ms  pv b8c6 d2d4 e7e5 d4e5 c6e5
+ *   </pre>
+ *   Scores are in centipawns from the point of view of the side to move;
+ *   "mate n" is a checkmate in n moves.  Empty lines and lines starting
+ *   with "#" are skipped.
+ *
+ *   <p>With an opening book, the book moves of a position and their
+ *   weights are printed before the search results, for example:
+ *   <pre>
+ *        book  e7e5 (weight 120)  c7c5 (weight 95)
+ *   </pre>
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Analysis {
+
+	/**
+	 *  Default number of moves shown for each position
+	 */
+	public static final int defaultLines = 3;
+
+	private final Search search;
+	private int lines = defaultLines;
+	private int depth = Engine.defaultDepth;
+	private long timeLimit = 0;
+	private PolyglotBook book = null;
+
+
+
+	/**
+	 *   Create an analysis that uses its own search.
+	 */
+	public Analysis() {
+		this(new Search());
+	}
+
+
+
+	/**
+	 *   Create an analysis that uses a given search.
+	 *
+	 * @param search
+	 * 		The search used for every position
+	 */
+	public Analysis(Search search) {
+		this.search = search;
+	}
+
+
+
+	/**
+	 *   Set the number of moves shown for each position.
+	 *
+	 * @param lines
+	 * 		The number of moves
+	 */
+	public void setLines(int lines) {
+		this.lines = Math.max(1, lines);
+	}
+
+
+
+	/**
+	 *   Set how deep each position is searched.
+	 *
+	 * @param depth
+	 * 		The deepest iteration, in plies
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+
+
+	/**
+	 *   Set the time spent on each position.  Set the depth as well, or
+	 *   the search ends at the default depth before the time is up.
+	 *
+	 * @param timeLimit
+	 * 		Time limit in milliseconds, or 0 for no time limit
+	 */
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+
+
+	/**
+	 *   Set the opening book whose moves are shown with each position.
+	 *
+	 * @param book
+	 * 		An opening book, or "null" to show no book moves
+	 */
+	public void setBook(PolyglotBook book) {
+		this.book = book;
+	}
+
+
+
+	/**
+	 *   Analyse one position.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @return
+	 * 		Return the best moves, best first
+	 */
+	public ArrayList<SearchResult> analyze(Board aBoard) {
+		return search.searchMultiPv(aBoard, lines, depth, timeLimit);
+	}
+
+
+
+	/**
+	 *   Analyse one position, ending at a deadline or when a token is
+	 *   cancelled.  The time limit set with {@link #setTimeLimit(long)} is
+	 *   not used.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @param deadline
+	 * 		The value of {@link System#nanoTime()} at which the analysis must
+	 * 		end, or 0 for no deadline
+	 *
+	 * @param token
+	 * 		A token that cancels the analysis, or "null" for none
+	 *
+	 * @return
+	 * 		Return the best moves found so far, best first
+	 */
+	public ArrayList<SearchResult> analyze(Board aBoard, long deadline, CancellationToken token) {
+		return search.searchMultiPvUntil(aBoard, lines, depth, deadline, token);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the search used for every position.  Its statistics
+	 * 		describe the last position analysed.
+	 */
+	public Search getSearch() {
+		return search;
+	}
+
+
+
+	/**
+	 *   Analyse every position of a FEN file and print the results.
+	 *
+	 * @param fileName
+	 * 		The name of a text file with one FEN position per line
+	 *
+	 * @param out
+	 * 		Where the results are printed
+	 *
+	 * @return
+	 * 		Return the number of positions analysed
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be read
+	 */
+	public int analyzeFile(String fileName, PrintStream out) throws IOException {
+		int count = 0;
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			while ( (line = in.readLine()) != null ) {
+				line = line.trim();
+				if ( line.isEmpty() || line.startsWith("#") ) continue;
+
+				Board aBoard;
+				try {
+					aBoard = new Board(line);
+				}
+				catch (IllegalArgumentException e) {
+					out.println(line);
+					out.println("  " + e.getMessage());
+					continue;
+				}
+
+				out.println(line);
+				if ( book != null ) {
+					ArrayList<PolyglotBook.Entry> entries = book.getEntries(aBoard);
+					if ( ! entries.isEmpty() ) out.println(format(entries));
+				}
+				for (SearchResult result : analyze(aBoard)) out.println(format(result));
+				count++;
+			}
+		}
+		finally {
+			in.close();
+		}
+		return count;
+	}
+
+
+
+	/**
+	 *   Write one line of an analysis.
+	 *
+	 * @param result
+	 * 		One line of a multi-PV search
+	 *
+	 * @return
+	 * 		Return the line as text
+	 */
+	public static String format(SearchResult result) {
+		if ( result.getBestMove() == null ) {
+			return "  no legal move, " + ((result.getScore() == 0) ? "stalemate" : "checkmate");
+		}
+
+		String score;
+		if ( result.isMateScore() ) {
+			// Convert plies to checkmate into moves
+			int plies = Search.mateScore - Math.abs(result.getScore());
+			int moves = (plies + 1) / 2;
+			score = "mate " + ((result.getScore() > 0) ? moves : -moves);
+		}
+		else {
+			score = String.format("cp %5d", result.getScore());
+		}
+
+		return String.format("  %d. %-6s %s  depth %d  nodes %d  time %d ms  pv %s",
+							 result.getLine(), result.getBestMove().toUci(), score, result.getDepth(),
+							 result.getNodes(), result.getElapsedMillis(), result.getPrincipalVariationUci());
+	}
+
+
+
+	/**
+	 *   Write the book moves of a position.
+	 *
+	 * @param entries
+	 * 		The book entries of a position
+	 *
+	 * @return
+	 * 		Return the book moves as one line of text
+	 */
+	public static String format(ArrayList<PolyglotBook.Entry> entries) {
+		StringBuilder text = new StringBuilder("  book");
+		for (PolyglotBook.Entry anEntry : entries) {
+			text.append("  ").append(anEntry.getMove().toUci()).append(" (weight ").append(anEntry.getWeight()).append(")");
+		}
+		return text.toString();
+	}
+
+
+
+	/**
+	 *   Analyse the positions of one or more FEN files.
+	 *
+	 * @param args
+	 * 		Options followed by the names of the FEN files
+	 *
+	 * @throws IOException
+	 * 		If a file cannot be read
+	 */
+	public static void main(String[] args) throws IOException {
+		Analysis analysis = new Analysis();
+		ArrayList<String> fileNames = new ArrayList<String>();
+		boolean bDepthSet = false;
+
+		for (int i=0; i < args.length; i++) {
+			String anArg = args[i].trim();
+			boolean bHasValue = (i+1 < args.length);
+
+			if ( anArg.equals("-lines") && bHasValue ) {
+				analysis.setLines(Integer.parseInt(args[++i].trim()));
+			}
+			else if ( anArg.equals("-depth") && bHasValue ) {
+				analysis.setDepth(Integer.parseInt(args[++i].trim()));
+				bDepthSet = true;
+			}
+			else if ( anArg.equals("-movetime") && bHasValue ) {
+				// Search as deep as the time allows, unless a depth is given
+				if ( ! bDepthSet ) analysis.setDepth(Search.maxPly);
+				analysis.setTimeLimit(Long.parseLong(args[++i].trim()));
+			}
+			else if ( anArg.equals("-book") && bHasValue ) {
+				analysis.setBook(new PolyglotBook(args[++i].trim()));
+			}
+			else {
+				fileNames.add(anArg);
+			}
+		}
+
+		if ( fileNames.isEmpty() ) {
+			System.out.println("Usage: java chess.Analysis [-lines n] [-depth n] [-movetime ms] [-book bookFile] fenFile ...");
+			return;
+		}
+
+		for (String fileName : fileNames) analysis.analyzeFile(fileName, System.out);
+	}
+
+}
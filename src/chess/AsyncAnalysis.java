@@ -0,0 +1,414 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+
+/**
+ *   Asynchronous checks and searches, for programs that must not block
+ *   the calling thread.  Every call returns at once with a
+ *   {@link CompletableFuture}, and the work is done on the threads of an
+ *   executor.
+ *
+ *   <p>The position is taken from the game board when the call is made,
+ *   as a {@link BoardSnapshot}, so the caller may go on changing its
+ *   board.  A snapshot has no game history, so a search does not see
+ *   repeated positions of the game before it.
+ *
+ *   <p>The executor has a bounded queue.  When the queue is full, a call
+ *   is not queued and its future fails at once with a
+ *   {@link RejectedExecutionException}; the caller should then slow down
+ *   (backpressure).  The queue depth, the number of rejected calls and
+ *   the time calls wait in the queue can be watched while the program
+ *   runs.
+ *
+ *   <p>A search ends at a deadline counted from the call, so time spent
+ *   waiting in the queue counts against it.  Cancelling the future of a
+ *   search stops the search (see {@link CancellationToken}).  Each thread
+ *   has its own {@link Search} and {@link Evaluation}, with their own
+ *   hash tables.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class AsyncAnalysis {
+
+	/**
+	 *  Default number of calls that may wait in the queue
+	 */
+	public static final int defaultQueueCapacity = 1024;
+
+	private final ThreadPoolExecutor executor;
+
+	private final ThreadLocal<Search> searches = new ThreadLocal<Search>() {
+		@Override
+		protected Search initialValue() {
+			return new Search();
+		}
+	};
+
+	private final ThreadLocal<Evaluation> evaluations = new ThreadLocal<Evaluation>() {
+		@Override
+		protected Evaluation initialValue() {
+			return new Evaluation();
+		}
+	};
+
+	private final AtomicLong submitted = new AtomicLong();
+	private final AtomicLong rejected = new AtomicLong();
+	private final AtomicLong completed = new AtomicLong();
+	private final AtomicLong failed = new AtomicLong();
+	private final OperationMetrics queueWait = new OperationMetrics("queueWait");
+	private final OperationMetrics runTime = new OperationMetrics("runTime");
+
+
+
+	/**
+	 *   Default constructor.  Use one thread per processor and a queue of
+	 *   the default capacity.
+	 */
+	public AsyncAnalysis() {
+		this(Runtime.getRuntime().availableProcessors(), defaultQueueCapacity);
+	}
+
+
+
+	/**
+	 *   Create an executor of its own with a given number of threads.
+	 *   The threads are daemon threads.
+	 *
+	 * @param threads
+	 * 		Number of threads
+	 *
+	 * @param queueCapacity
+	 * 		Number of calls that may wait in the queue
+	 */
+	public AsyncAnalysis(int threads, int queueCapacity) {
+		this(createExecutor(threads, queueCapacity));
+	}
+
+
+
+	/**
+	 *   Run the calls on a given executor.  Its queue must be bounded, and
+	 *   it must throw a {@link RejectedExecutionException} when the queue
+	 *   is full (the default {@link ThreadPoolExecutor.AbortPolicy}).
+	 *
+	 * @param executor
+	 * 		The executor that runs the calls
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If the queue of the executor is not bounded
+	 */
+	public AsyncAnalysis(ThreadPoolExecutor executor) {
+		if ( executor.getQueue().remainingCapacity() == Integer.MAX_VALUE ) {
+			throw new IllegalArgumentException("The queue of the executor must be bounded");
+		}
+		this.executor = executor;
+	}
+
+
+
+	/**
+	 *   Check if a move is legal.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @param aMove
+	 * 		A move for the side that is due to move
+	 *
+	 * @return
+	 * 		Return a future that completes with "true" if the move is legal
+	 */
+	public CompletableFuture<Boolean> isLegalMove(Board aBoard, final Move aMove) {
+		final BoardSnapshot snapshot = new BoardSnapshot(aBoard);
+		return submit(new Supplier<Boolean>() {
+			@Override
+			public Boolean get() {
+				return snapshot.toBoard().isLegalMove(aMove);
+			}
+		});
+	}
+
+
+
+	/**
+	 *   List the legal moves of the side that is due to move.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @return
+	 * 		Return a future that completes with the legal moves
+	 */
+	public CompletableFuture<List<Move>> getLegalMoves(Board aBoard) {
+		final BoardSnapshot snapshot = new BoardSnapshot(aBoard);
+		return submit(new Supplier<List<Move>>() {
+			@Override
+			public List<Move> get() {
+				int[] codes = LegalMoves.of(snapshot.toBoard());
+				List<Move> moves = new ArrayList<Move>(codes.length);
+				for (int code : codes) moves.add(Move.fromCode(code));
+				return moves;
+			}
+		});
+	}
+
+
+
+	/**
+	 *   Evaluate a position (see {@link Evaluation#evaluate(Board)}).
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @return
+	 * 		Return a future that completes with the score in centipawns,
+	 * 		from white's point of view
+	 */
+	public CompletableFuture<Integer> evaluate(Board aBoard) {
+		final BoardSnapshot snapshot = new BoardSnapshot(aBoard);
+		return submit(new Supplier<Integer>() {
+			@Override
+			public Integer get() {
+				return evaluations.get().evaluate(snapshot.toBoard());
+			}
+		});
+	}
+
+
+
+	/**
+	 *   Search for the best move of the side that is due to move.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @param maxDepth
+	 * 		The deepest iteration to search, in plies
+	 *
+	 * @param timeLimit
+	 * 		Time limit in milliseconds from now, or 0 for no time limit
+	 *
+	 * @return
+	 * 		Return a future that completes with the best move and score
+	 * 		found.  Cancelling the future stops the search.
+	 */
+	public CompletableFuture<SearchResult> search(Board aBoard, final int maxDepth, long timeLimit) {
+		final BoardSnapshot snapshot = new BoardSnapshot(aBoard);
+		final CancellationToken token = new CancellationToken();
+		long deadline = 0L;
+		if ( timeLimit > 0 ) {
+			deadline = System.nanoTime() + timeLimit * 1000000L;
+			if ( deadline == 0L ) deadline = 1L;
+		}
+
+		final long searchDeadline = deadline;
+		CompletableFuture<SearchResult> future = submit(new Supplier<SearchResult>() {
+			@Override
+			public SearchResult get() {
+				return searches.get().searchUntil(snapshot.toBoard(), maxDepth, searchDeadline, token);
+			}
+		});
+
+		future.whenComplete(new BiConsumer<SearchResult, Throwable>() {
+			@Override
+			public void accept(SearchResult result, Throwable e) {
+				if ( e != null ) token.cancel();
+			}
+		});
+		return future;
+	}
+
+
+
+	/**
+	 *   Stop taking calls.  The calls already queued are still run.
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of calls waiting in the queue
+	 */
+	public int getQueueDepth() {
+		return executor.getQueue().size();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of calls that may still be queued
+	 */
+	public int getQueueRemainingCapacity() {
+		return executor.getQueue().remainingCapacity();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of threads running a call
+	 */
+	public int getActiveCount() {
+		return executor.getActiveCount();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of calls accepted into the queue
+	 */
+	public long getSubmittedCount() {
+		return submitted.get();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of calls rejected because the queue was full
+	 */
+	public long getRejectedCount() {
+		return rejected.get();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of calls that completed normally, without
+	 * 		the ones cancelled by the caller
+	 */
+	public long getCompletedCount() {
+		return completed.get();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of calls that failed with an exception
+	 */
+	public long getFailedCount() {
+		return failed.get();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the times calls waited in the queue before they ran
+	 */
+	public OperationMetrics getQueueWaitMetrics() {
+		return queueWait;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the times calls took to run, without the queue wait
+	 */
+	public OperationMetrics getRunTimeMetrics() {
+		return runTime;
+	}
+
+
+
+	/*
+	 *  Return a one line summary of the metrics.
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "queued " + getQueueDepth() + " active " + getActiveCount() +
+			   " submitted " + submitted.get() + " rejected " + rejected.get() +
+			   " completed " + completed.get() + " failed " + failed.get();
+	}
+
+
+
+	/*
+	 * Queue one call.  If the queue is full, the future fails at once.
+	 */
+	private <T> CompletableFuture<T> submit(final Supplier<T> work) {
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		final long queuedTime = System.nanoTime();
+
+		Runnable task = new Runnable() {
+			@Override
+			public void run() {
+				long startTime = System.nanoTime();
+				queueWait.recordTime(startTime - queuedTime);
+
+				// A call cancelled while it was queued is not run
+				if ( future.isDone() ) return;
+
+				try {
+					// A search may have been cancelled while it ran
+					if ( future.complete(work.get()) ) completed.incrementAndGet();
+				}
+				catch (Throwable e) {
+					// Errors too, or the caller would wait for the future forever
+					failed.incrementAndGet();
+					future.completeExceptionally(e);
+				}
+				finally {
+					runTime.record(startTime);
+				}
+			}
+		};
+
+		try {
+			executor.execute(task);
+			submitted.incrementAndGet();
+		}
+		catch (RejectedExecutionException e) {
+			rejected.incrementAndGet();
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+
+
+	/*
+	 * Create a thread pool with a bounded queue and daemon threads.
+	 */
+	private static ThreadPoolExecutor createExecutor(int threads, int queueCapacity) {
+		final AtomicInteger threadCount = new AtomicInteger();
+		ThreadFactory factory = new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread aThread = new Thread(r, "analysis-" + threadCount.incrementAndGet());
+				aThread.setDaemon(true);
+				return aThread;
+			}
+		};
+
+		return new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+									  new ArrayBlockingQueue<Runnable>(queueCapacity), factory,
+									  new ThreadPoolExecutor.AbortPolicy());
+	}
+
+}
@@ -0,0 +1,468 @@
+package chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+
+
+/**
+ *   Built-in bitbases for the simplest endgames: king and queen against
+ *   king (KQK), king and rook against king (KRK) and king and pawn against
+ *   king (KPK).  A bitbase stores one bit for every position: "1" if the
+ *   side with the extra piece (the strong side) wins with perfect play,
+ *   "0" if the position is a draw.  The lone king can never win.
+ *
+ *   <p>The bitbases are built by retrograde analysis.  The first pass marks
+ *   every checkmate of the lone king.  Each following pass works backwards
+ *   from the positions already known to be won: a position with the strong
+ *   side to move is won if one move reaches a won position, and a position
+ *   with the lone king to move is won if every move reaches a won position.
+ *   The passes are repeated until nothing changes.  Each pass visits all
+ *   positions in parallel on every available core.  KQK is built first,
+ *   because a KPK position where the pawn promotes continues in KQK or KRK.
+ *
+ *   <p>Each bitbase holds 2 x 64 x 64 x 64 positions (side to move, strong
+ *   king, weak king, extra piece) packed 8 positions per byte, i.e. 64 KB.
+ *   All three bitbases are written to a single file which loads in a few
+ *   milliseconds.  A position with the strong side playing black is looked
+ *   up as its mirror image with the colors swapped.
+ *
+ *   <p>To build the bitbase file:
+ *   <p>
+ *   &nbsp;&nbsp;&nbsp; java chess.Bitbase &nbsp; &lt;bitbaseFileName&gt;
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Bitbase implements Tablebase {
+
+	/**
+	 *  Default name of the bitbase file
+	 */
+	public static final String defaultFileName = "bitbases.bin";
+
+	private static final int fileMagic = 0x43423531;		// "CB51"
+	private static final int fileVersion = 1;
+
+	private static final int positionCount = 2 * 64 * 64 * 64;
+
+	// Side to move, as used in a position index
+	private static final int strongToMove = 0;
+	private static final int weakToMove = 1;
+
+	// The endings, in the order they are built and stored
+	private static final Piece.PieceNames[] extraPieces = {
+		Piece.PieceNames.queen, Piece.PieceNames.rook, Piece.PieceNames.pawn };
+
+	private static final int[][] kingSteps = { {0,1}, {1,1}, {1,0}, {1,-1},
+												{0,-1}, {-1,-1}, {-1,0}, {-1,1} };
+	private static final int[][] diagonalDirections = { {1,1}, {1,-1}, {-1,-1}, {-1,1} };
+	private static final int[][] straightDirections = { {1,0}, {-1,0}, {0,1}, {0,-1} };
+
+	/**
+	 *  The packed bits of each ending, indexed like extraPieces
+	 */
+	private final byte[][] bits = new byte[extraPieces.length][];
+
+
+
+	/**
+	 *   Build all the bitbases.  This takes a few seconds.
+	 *
+	 * @return
+	 * 		Return the newly built bitbases
+	 */
+	public static Bitbase generate() {
+		Bitbase bitbase = new Bitbase();
+		for (int i=0; i < extraPieces.length; i++) {
+			bitbase.bits[i] = pack(bitbase.solve(extraPieces[i]));
+		}
+		return bitbase;
+	}
+
+
+
+	/**
+	 *   Load the bitbases from a file written by {@link #save(String)}.
+	 *
+	 * @param fileName
+	 * 		The name of a bitbase file
+	 *
+	 * @return
+	 * 		Return the loaded bitbases
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be read or is not a bitbase file
+	 */
+	public static Bitbase load(String fileName) throws IOException {
+		Bitbase bitbase = new Bitbase();
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(fileName)));
+		try {
+			if ( (in.readInt() != fileMagic) || (in.readInt() != fileVersion) ) {
+				throw new IOException("Not a bitbase file: " + fileName);
+			}
+			for (int i=0; i < extraPieces.length; i++) {
+				bitbase.bits[i] = new byte[positionCount / 8];
+				in.readFully(bitbase.bits[i]);
+			}
+		}
+		finally {
+			in.close();
+		}
+		return bitbase;
+	}
+
+
+
+	/**
+	 *   Save the bitbases to a file.
+	 *
+	 * @param fileName
+	 * 		The name of the bitbase file
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be written
+	 */
+	public void save(String fileName) throws IOException {
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(fileName)));
+		try {
+			out.writeInt(fileMagic);
+			out.writeInt(fileVersion);
+			for (byte[] packed : bits) out.write(packed);
+		}
+		finally {
+			out.close();
+		}
+	}
+
+
+
+	/*
+	 * @see chess.Tablebase#getMaxPieces()
+	 */
+	@Override
+	public int getMaxPieces() {
+		return 3;
+	}
+
+
+
+	/*
+	 * @see chess.Tablebase#probe(chess.Board)
+	 */
+	@Override
+	public Result probe(Board aBoard) {
+		if ( aBoard.getPieceCount() != 3 ) return Result.unknown;
+
+		// Find the two kings and the extra piece
+		int whiteKing = -1;
+		int blackKing = -1;
+		Piece extraPiece = null;
+		int extraSquare = -1;
+
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece aPiece = aBoard.getPiece(x, y);
+				if ( aPiece.isEmptySpace() ) continue;
+
+				if ( aPiece.getName().equals(Piece.PieceNames.king) ) {
+					if ( aPiece.getColor().equals(Piece.Colors.White) ) whiteKing = x + 8*y;
+					else blackKing = x + 8*y;
+				}
+				else {
+					extraPiece = aPiece;
+					extraSquare = x + 8*y;
+				}
+			}
+		}
+
+		if ( (whiteKing < 0) || (blackKing < 0) || (extraPiece == null) ) return Result.unknown;
+
+		int ending = -1;
+		for (int i=0; i < extraPieces.length; i++) {
+			if ( extraPieces[i].equals(extraPiece.getName()) ) ending = i;
+		}
+		if ( ending < 0 ) return Result.unknown;
+
+		//
+		// The bitbases are built with white as the strong side.  If black
+		// has the extra piece, look up the mirror image instead.
+		//
+		boolean bWhiteIsStrong = extraPiece.getColor().equals(Piece.Colors.White);
+		int strongKing = bWhiteIsStrong ? whiteKing : mirror(blackKing);
+		int weakKing = bWhiteIsStrong ? blackKing : mirror(whiteKing);
+		int square = bWhiteIsStrong ? extraSquare : mirror(extraSquare);
+
+		boolean bStrongToMove = aBoard.getSideToMove().equals(extraPiece.getColor());
+		int index = index(bStrongToMove ? strongToMove : weakToMove, strongKing, weakKing, square);
+
+		if ( ! isWin(ending, index) ) return Result.draw;
+		return bStrongToMove ? Result.win : Result.loss;
+	}
+
+
+
+	private boolean isWin(int ending, int index) {
+		return (bits[ending][index >>> 3] & (1 << (index & 7))) != 0;
+	}
+
+
+
+	/**
+	 *   Solve one ending by retrograde analysis.
+	 *
+	 * @return
+	 * 		Return one byte per position: 1 if the strong side wins
+	 */
+	private byte[] solve(final Piece.PieceNames piece) {
+		byte[] win = new byte[positionCount];
+
+		final AtomicBoolean bChanged = new AtomicBoolean(true);
+		while ( bChanged.get() ) {
+			bChanged.set(false);
+			final byte[] known = win;
+			final byte[] next = known.clone();
+
+			IntStream.range(0, positionCount).parallel().forEach(index -> {
+				if ( (known[index] == 0) && (isWonPosition(piece, known, index)) ) {
+					next[index] = 1;
+					bChanged.set(true);
+				}
+			});
+
+			win = next;
+		}
+		return win;
+	}
+
+
+
+	/**
+	 *   Check if a position is won for the strong side, given the positions
+	 *   already known to be won.
+	 */
+	private boolean isWonPosition(Piece.PieceNames piece, byte[] known, int index) {
+		int side = index >>> 18;
+		int strongKing = (index >>> 12) & 63;
+		int weakKing = (index >>> 6) & 63;
+		int square = index & 63;
+
+		if ( ! isValid(piece, side, strongKing, weakKing, square) ) return false;
+
+		if ( side == strongToMove ) {
+			// Won if any move reaches a won position
+			for (int to : kingMoves(strongKing)) {
+				if ( (to == square) || (distance(to, weakKing) <= 1) ) continue;
+				if ( known[index(weakToMove, to, weakKing, square)] != 0 ) return true;
+			}
+
+			if ( piece.equals(Piece.PieceNames.pawn) ) {
+				return isWonByPawnMove(known, strongKing, weakKing, square);
+			}
+
+			for (int to : slidingMoves(piece, square, strongKing, weakKing)) {
+				if ( known[index(weakToMove, strongKing, weakKing, to)] != 0 ) return true;
+			}
+			return false;
+		}
+
+		//
+		// The lone king is to move.  Won only if every legal move reaches
+		// a won position.  With no legal move, it is a win if the king is
+		// in check (checkmate) and a draw otherwise (stalemate).
+		//
+		int legalMoves = 0;
+		for (int to : kingMoves(weakKing)) {
+			if ( distance(to, strongKing) <= 1 ) continue;
+			if ( attacks(piece, square, to, strongKing, -1) ) continue;
+			legalMoves++;
+
+			// Capturing the extra piece is a draw
+			if ( to == square ) return false;
+			if ( known[index(strongToMove, strongKing, to, square)] == 0 ) return false;
+		}
+
+		if ( legalMoves == 0 ) return attacks(piece, square, weakKing, strongKing, -1);
+		return true;
+	}
+
+
+
+	/**
+	 *   Check if a pawn move wins.  A pawn on the seventh rank promotes to
+	 *   a queen or a rook and the game continues in KQK or KRK.
+	 */
+	private boolean isWonByPawnMove(byte[] known, int strongKing, int weakKing, int square) {
+		int x = square % 8;
+		int y = square / 8;
+		int oneStep = x + 8*(y+1);
+
+		if ( (oneStep == strongKing) || (oneStep == weakKing) ) return false;
+
+		if ( y == 6 ) {
+			// Promotion.  The extra piece stays on the same square index.
+			int promoted = index(weakToMove, strongKing, weakKing, oneStep);
+			return isWin(0, promoted) || isWin(1, promoted);
+		}
+
+		if ( known[index(weakToMove, strongKing, weakKing, oneStep)] != 0 ) return true;
+
+		int twoSteps = x + 8*(y+2);
+		if ( (y == 1) && (twoSteps != strongKing) && (twoSteps != weakKing) &&
+			 (known[index(weakToMove, strongKing, weakKing, twoSteps)] != 0) ) return true;
+
+		return false;
+	}
+
+
+
+	/**
+	 *   Check that a position can occur in a game: all three pieces on
+	 *   different squares, the kings not next to each other, no pawn on
+	 *   the first or last rank, and the lone king not in check when it is
+	 *   the strong side's turn.
+	 */
+	private boolean isValid(Piece.PieceNames piece, int side, int strongKing, int weakKing, int square) {
+		if ( (strongKing == weakKing) || (square == strongKing) || (square == weakKing) ) return false;
+		if ( distance(strongKing, weakKing) <= 1 ) return false;
+		if ( piece.equals(Piece.PieceNames.pawn) && ((square < 8) || (square >= 56)) ) return false;
+		if ( (side == strongToMove) && attacks(piece, square, weakKing, strongKing, -1) ) return false;
+		return true;
+	}
+
+
+
+	/**
+	 *   Check if the extra piece on a square attacks a target square.
+	 *   Either king can block a queen or a rook.  Pass -1 as a blocker
+	 *   to leave it out.
+	 */
+	private static boolean attacks(Piece.PieceNames piece, int square, int target,
+								   int blocker1, int blocker2) {
+		int x = square % 8;
+		int y = square / 8;
+		int tx = target % 8;
+		int ty = target / 8;
+
+		if ( piece.equals(Piece.PieceNames.pawn) ) {
+			return (ty == y+1) && (Math.abs(tx - x) == 1);
+		}
+
+		int dx = Integer.signum(tx - x);
+		int dy = Integer.signum(ty - y);
+		boolean bStraight = (dx == 0) || (dy == 0);
+		boolean bDiagonal = Math.abs(tx - x) == Math.abs(ty - y);
+
+		if ( (square == target) || ((! bStraight) && (! bDiagonal)) ) return false;
+		if ( piece.equals(Piece.PieceNames.rook) && (! bStraight) ) return false;
+
+		for (int cx = x+dx, cy = y+dy; (cx != tx) || (cy != ty); cx += dx, cy += dy) {
+			int between = cx + 8*cy;
+			if ( (between == blocker1) || (between == blocker2) ) return false;
+		}
+		return true;
+	}
+
+
+
+	/**
+	 *   All the squares a queen or a rook can move to.  Both kings block.
+	 */
+	private static int[] slidingMoves(Piece.PieceNames piece, int square, int strongKing, int weakKing) {
+		int[] moves = new int[27];
+		int count = 0;
+
+		int[][][] directionSets;
+		if ( piece.equals(Piece.PieceNames.rook) ) {
+			directionSets = new int[][][] { straightDirections };
+		}
+		else {
+			directionSets = new int[][][] { straightDirections, diagonalDirections };
+		}
+
+		for (int[][] directions : directionSets) {
+			for (int[] d : directions) {
+				int x = square % 8 + d[0];
+				int y = square / 8 + d[1];
+				while ( (x >= 0) && (x < 8) && (y >= 0) && (y < 8) ) {
+					int to = x + 8*y;
+					if ( (to == strongKing) || (to == weakKing) ) break;
+					moves[count++] = to;
+					x += d[0];
+					y += d[1];
+				}
+			}
+		}
+		return java.util.Arrays.copyOf(moves, count);
+	}
+
+
+
+	private static int[] kingMoves(int square) {
+		int[] moves = new int[8];
+		int count = 0;
+		for (int[] step : kingSteps) {
+			int x = square % 8 + step[0];
+			int y = square / 8 + step[1];
+			if ( (x >= 0) && (x < 8) && (y >= 0) && (y < 8) ) moves[count++] = x + 8*y;
+		}
+		return java.util.Arrays.copyOf(moves, count);
+	}
+
+
+
+	private static int distance(int a, int b) {
+		return Math.max(Math.abs(a % 8 - b % 8), Math.abs(a / 8 - b / 8));
+	}
+
+
+
+	private static int mirror(int square) {
+		return (square % 8) + 8 * (7 - square / 8);
+	}
+
+
+
+	private static int index(int side, int strongKing, int weakKing, int square) {
+		return (side << 18) | (strongKing << 12) | (weakKing << 6) | square;
+	}
+
+
+
+	private static byte[] pack(byte[] win) {
+		byte[] packed = new byte[win.length / 8];
+		for (int i=0; i < win.length; i++) {
+			if ( win[i] != 0 ) packed[i >>> 3] |= (byte) (1 << (i & 7));
+		}
+		return packed;
+	}
+
+
+
+	/**
+	 * @param args
+	 *
+	 * The name of the bitbase file to build.  The default is "bitbases.bin".
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be written
+	 */
+	public static void main(String[] args) throws IOException {
+		String fileName = (args.length >= 1) ? args[0].trim() : defaultFileName;
+
+		long start = System.currentTimeMillis();
+		Bitbase bitbase = generate();
+		bitbase.save(fileName);
+
+		System.out.println("Wrote " + fileName + " in " +
+						   (System.currentTimeMillis() - start) + " ms");
+	}
+
+}
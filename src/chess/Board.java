@@ -46,12 +46,134 @@ public class Board {
 	private EnPassant enPassant = new EnPassant();
 
 
+	/**
+	 *  Current state of the chess game played on this board.  White
+	 *  always moves first.
+	 */
+	private gameState state = gameState.whiteMove;
+
+
+	/**
+	 *  Set to "true" if white is in check
+	 */
+	private boolean bWhiteInCheck = false;
+
+
+	/**
+	 *  Set to "true" if black is in check
+	 */
+	private boolean bBlackInCheck = false;
+
+
+	/**
+	 *   A pawn is promoted to another piece when it reaches the last rank.
+	 *   By default, a pawn is promoted to a new queen.
+	 */
+	private Chess.pawnPromotionChoices pawnPromotionChoice = Chess.pawnPromotionChoices.queen;
+
+
+	/**
+	 *  Directions (x,y) a knight can jump to
+	 */
+	private static final int[][] knightSteps = { {2,1}, {2,-1}, {-2,1}, {-2,-1},
+												  {1,2}, {-1,2}, {1,-2}, {-1,-2} };
+
+	/**
+	 *  Directions (x,y) a king can step to
+	 */
+	private static final int[][] kingSteps = { {0,1}, {1,1}, {1,0}, {1,-1},
+												{0,-1}, {-1,-1}, {-1,0}, {-1,1} };
+
+	/**
+	 *  Directions (x,y) a bishop can slide along
+	 */
+	private static final int[][] diagonalDirections = { {1,1}, {1,-1}, {-1,-1}, {-1,1} };
+
+	/**
+	 *  Directions (x,y) a rook can slide along
+	 */
+	private static final int[][] straightDirections = { {1,0}, {-1,0}, {0,1}, {0,-1} };
+
+	/**
+	 *  Stands in for the vacated square while a move is tried out
+	 *  by {@link #isLegalMove(Move)}
+	 */
+	private static final Piece vacantSquare = new Piece(Piece.Colors.White, Piece.PieceNames.emptySpace, "a1");
+
+
+	/**
+	 *  Zobrist hash key of all the pawns on the game board.  This key is
+	 *  updated incrementally every time a pawn moves, is captured or is
+	 *  promoted.  It is used to look up cached pawn structure evaluations.
+	 */
+	private long pawnKey = 0L;
+
+
 	/**
 	 *   Create the game board itself.
 	 */
 	private Piece[][] board = new Piece[columnCount][rowCount];
 
 
+	/**
+	 *  Everything needed to take back one move.  The pieces themselves
+	 *  are kept, not copied; only the squares and the flags that a move
+	 *  changes are remembered.
+	 */
+	private static final class Undo {
+		Move move = null;               // the move, set once it is known to be legal
+		final Piece movedPiece;
+		final boolean bMovedBefore;
+		final byte from;                // square index x + 8*y
+		final byte to;
+		final Piece capturedPiece;      // the piece or empty space on the "to" square
+		Piece castledRook = null;
+		boolean bRookMovedBefore = false;
+		byte rookFrom = 0;
+		Piece enPassantPawn = null;     // a pawn captured by En Passant
+		EnPassant enPassant;
+		boolean bEnPassantCompleted;
+		final FileRank whiteKingLoc;
+		final FileRank blackKingLoc;
+		final long pawnKey;
+		final gameState state;
+
+		Undo(Board aBoard, Piece movedPiece, Piece capturedPiece) {
+			this.movedPiece = movedPiece;
+			this.bMovedBefore = movedPiece.hasMoved();
+			this.from = (byte) (movedPiece.getX() + columnCount * movedPiece.getY());
+			this.to = (byte) (capturedPiece.getX() + columnCount * capturedPiece.getY());
+			this.capturedPiece = capturedPiece;
+			this.enPassant = aBoard.enPassant;
+			this.bEnPassantCompleted = aBoard.enPassant.isEnPassantCompleted();
+			this.whiteKingLoc = aBoard.whiteKingLoc;
+			this.blackKingLoc = aBoard.blackKingLoc;
+			this.pawnKey = aBoard.pawnKey;
+			this.state = aBoard.state;
+		}
+
+		void setCastledRook(Piece aRook) {
+			castledRook = aRook;
+			bRookMovedBefore = aRook.hasMoved();
+			rookFrom = (byte) (aRook.getX() + columnCount * aRook.getY());
+		}
+	}
+
+
+	/**
+	 *  The moves played on this game board that can be taken back, and
+	 *  after an undo also the moves that can be played again.  The list
+	 *  is created with the first move.
+	 */
+	private ArrayList<Undo> history = null;
+
+
+	/**
+	 *  Number of moves of the history that are played on the board now
+	 */
+	private int historyPly = 0;
+
+
 	/**
 	 *  Default constructor.
 	 *
@@ -144,26 +266,376 @@ public class Board {
 
 		whiteKingLoc = new FileRank("e1");
 
+		pawnKey = computePawnKey();
 		evaluateBoard();
 
 	} // End default constructor
 
 
 
+	/**
+	 *   Create a game board from a position written in Forsyth-Edwards
+	 *   Notation (FEN).  For example, the position after "e2 e4" is:
+	 *   <p>
+	 *   &nbsp;&nbsp;&nbsp; rnbqkbnr/pppppppp/8/8/4P3/8/PPPP1PPP/RNBQKBNR b KQkq e3 0 1
+	 *   <p>
+	 *   The pieces, the side to move, the castling rights and the En Passant
+	 *   square are used.  The move counters at the end are ignored.  A rook
+	 *   (or king) that has lost its castling right is treated as a piece that
+	 *   has moved before.
+	 *
+	 * @param fen
+	 * 		A position in FEN format
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If the given text is not a valid FEN position
+	 */
+	public Board(String fen) {
+		String[] fields = fen.trim().split("\\s+");
+		String[] ranks = fields[0].split("/");
+		if ( (fields.length < 2) || (ranks.length != rowCount) ) {
+			throw new IllegalArgumentException("Invalid FEN: " + fen);
+		}
+
+		// The first rank listed is rank "8"
+		for (int i=0; i < rowCount; i++) {
+			int row = rowCount - 1 - i;
+			int col = 0;
+
+			for (char c : ranks[i].toCharArray()) {
+				if ( Character.isDigit(c) ) {
+					for (int n = c - '0'; n > 0; n--) {
+						if ( col >= columnCount ) throw new IllegalArgumentException("Invalid FEN: " + fen);
+						drawEmptySpace(new FileRank(col++, row));
+					}
+					continue;
+				}
+
+				Piece.PieceNames name = getFenPieceName(c);
+				if ( (name == null) || (col >= columnCount) ) {
+					throw new IllegalArgumentException("Invalid FEN: " + fen);
+				}
+
+				Piece.Colors color = Character.isUpperCase(c) ? Piece.Colors.White : Piece.Colors.Black;
+				FileRank loc = new FileRank(col++, row);
+				board[loc.getX()][loc.getY()] = new Piece(color, name, loc.getName());
+
+				if ( name.equals(Piece.PieceNames.king) ) {
+					if ( color.equals(Piece.Colors.White) ) {
+						whiteKingLoc = loc;
+					}
+					else {
+						blackKingLoc = loc;
+					}
+				}
+			}
+
+			if ( col != columnCount ) throw new IllegalArgumentException("Invalid FEN: " + fen);
+		}
+
+		if ( (whiteKingLoc == null) || (blackKingLoc == null) ) {
+			throw new IllegalArgumentException("Both kings are required: " + fen);
+		}
+
+		state = fields[1].equals("b") ? gameState.blackMove : gameState.whiteMove;
+
+		setCastlingRights((fields.length > 2) ? fields[2] : "-");
+		if ( (fields.length > 3) && (FileRank.isValid(fields[3])) ) setEnPassant(new FileRank(fields[3]));
+
+		pawnKey = computePawnKey();
+		evaluateBoard();
+		AddCastlingMoves();
+	}
+
+
+
+	/**
+	 *   Create a game board from a snapshot of a position.
+	 *
+	 * @param snapshot
+	 * 		A snapshot made by {@link #getSnapshot()} or by
+	 * 		{@link BoardSnapshot#BoardSnapshot(Board)}
+	 */
+	public Board(BoardSnapshot snapshot) {
+		this(snapshot.getPacked(), 0, snapshot.getGameState());
+	}
+
+
+
+	/**
+	 *   Create a game board from a packed position (see {@link PackedPosition}).
+	 *
+	 * @param packed
+	 * 		An array holding a packed position
+	 *
+	 * @param offset
+	 * 		Index of the first long of the position
+	 *
+	 * @param aState
+	 * 		The state of the game, or "null" to take the side to move
+	 * 		from the packed position
+	 */
+	Board(long[] packed, int offset, gameState aState) {
+		boolean bBlackToMove = false;
+		String castling = "";
+		FileRank triggerLoc = null;
+
+		for (int col=0; col < columnCount; col++) {
+			for (int row=0; row < rowCount; row++) {
+				FileRank loc = new FileRank(col, row);
+				int code = PackedPosition.getCode(packed, offset, col + columnCount * row);
+				if ( code == PackedPosition.emptySquare ) {
+					drawEmptySpace(loc);
+					continue;
+				}
+
+				Piece.PieceNames name = PackedPosition.getPieceName(code);
+				Piece.Colors color = PackedPosition.getPieceColor(code, row);
+				board[col][row] = new Piece(color, name, loc.getName());
+
+				if ( name.equals(Piece.PieceNames.king) ) {
+					if ( color.equals(Piece.Colors.White) ) {
+						whiteKingLoc = loc;
+					}
+					else {
+						blackKingLoc = loc;
+					}
+				}
+
+				switch (code) {
+					case PackedPosition.blackKingToMove:
+						bBlackToMove = true;
+						break;
+
+					case PackedPosition.castlingRook:
+						if ( row == 0 ) {
+							castling += (col == 0) ? "Q" : "K";
+						}
+						else {
+							castling += (col == 0) ? "q" : "k";
+						}
+						break;
+
+					case PackedPosition.enPassantPawn:
+						triggerLoc = new FileRank(col, (row == 3) ? 2 : 5);
+						break;
+
+					default:
+						// An ordinary piece
+				}
+			}
+		}
+
+		if ( aState != null ) {
+			state = aState;
+		}
+		else {
+			state = bBlackToMove ? gameState.blackMove : gameState.whiteMove;
+		}
+
+		setCastlingRights(castling);
+		if ( triggerLoc != null ) setEnPassant(triggerLoc);
+
+		pawnKey = computePawnKey();
+		evaluateBoard();
+		AddCastlingMoves();
+	}
+
+
+
+	/**
+	 *   Take an immutable snapshot of the position on this game board.
+	 *
+	 * @return
+	 * 		Return a snapshot that can be shared freely, also between threads
+	 */
+	public BoardSnapshot getSnapshot() {
+		return new BoardSnapshot(this);
+	}
+
+
+
+	/**
+	 *   Mark the kings and rooks that have lost their castling rights
+	 *   as moved.
+	 *
+	 * @param castling
+	 * 		The castling rights as written in FEN, for example "KQk" or "-"
+	 */
+	private void setCastlingRights(String castling)
+	{
+		removeCastlingRight(castling, 'K', "h1");
+		removeCastlingRight(castling, 'Q', "a1");
+		removeCastlingRight(castling, 'k', "h8");
+		removeCastlingRight(castling, 'q', "a8");
+		if ( (castling.indexOf('K') < 0) && (castling.indexOf('Q') < 0) ) {
+			board[whiteKingLoc.getX()][whiteKingLoc.getY()].setHasMoved(true);
+		}
+		if ( (castling.indexOf('k') < 0) && (castling.indexOf('q') < 0) ) {
+			board[blackKingLoc.getX()][blackKingLoc.getY()].setHasMoved(true);
+		}
+	}
+
+
+
+	/**
+	 *   Set up the En Passant rule for the side to move.  The pawn that
+	 *   just made a double push stands right in front of the given square.
+	 *
+	 * @param triggerLoc
+	 * 		The square a pawn capturing En Passant moves to
+	 */
+	private void setEnPassant(FileRank triggerLoc)
+	{
+		int y = (state == gameState.whiteMove) ? triggerLoc.getY() - 1 : triggerLoc.getY() + 1;
+		if ( (y >= 0) && (y < rowCount) &&
+			 (board[triggerLoc.getX()][y].getName().equals(Piece.PieceNames.pawn)) ) {
+			enPassant = new EnPassant(board[triggerLoc.getX()][y]);
+		}
+	}
+
+
+
+	/**
+	 *   Write the position on this game board in Forsyth-Edwards
+	 *   Notation (FEN).  The board does not count moves, so the move
+	 *   counters at the end are always "0 1".
+	 *
+	 * @return
+	 * 		Return the position in FEN format
+	 */
+	public String toFen() {
+		StringBuilder fen = new StringBuilder();
+
+		for (int row = rowCount - 1; row >= 0; row--) {
+			int emptySquares = 0;
+			for (int col=0; col < columnCount; col++) {
+				Piece aPiece = board[col][row];
+				if ( aPiece.isEmptySpace() ) {
+					emptySquares++;
+					continue;
+				}
+
+				if ( emptySquares > 0 ) fen.append(emptySquares);
+				emptySquares = 0;
+
+				char letter = getFenLetter(aPiece.getName());
+				if ( aPiece.getColor().equals(Piece.Colors.Black) ) letter = Character.toLowerCase(letter);
+				fen.append(letter);
+			}
+			if ( emptySquares > 0 ) fen.append(emptySquares);
+			if ( row > 0 ) fen.append('/');
+		}
+
+		fen.append(getSideToMove().equals(Piece.Colors.White) ? " w " : " b ");
+
+		String castling = "";
+		if ( hasCastlingRight(Piece.Colors.White, true) )  castling += "K";
+		if ( hasCastlingRight(Piece.Colors.White, false) ) castling += "Q";
+		if ( hasCastlingRight(Piece.Colors.Black, true) )  castling += "k";
+		if ( hasCastlingRight(Piece.Colors.Black, false) ) castling += "q";
+		fen.append(castling.isEmpty() ? "-" : castling);
+
+		FileRank triggerLoc = getEnPassantTriggerLoc();
+		fen.append(' ').append((triggerLoc == null) ? "-" : triggerLoc.getName());
+
+		fen.append(" 0 1");
+		return fen.toString();
+	}
+
+
+
+	/**
+	 *   Mark the rook in a corner as moved if the castling rights written
+	 *   in FEN do not include the given letter.
+	 */
+	private void removeCastlingRight(String castling, char letter, String rookLoc)
+	{
+		if ( castling.indexOf(letter) >= 0 ) return;
+		Piece aPiece = getPiece(rookLoc);
+		if ( aPiece.getName().equals(Piece.PieceNames.rook) ) aPiece.setHasMoved(true);
+	}
+
+
+
+	private static Piece.PieceNames getFenPieceName(char letter)
+	{
+		switch (Character.toUpperCase(letter)) {
+			case 'P':
+				return Piece.PieceNames.pawn;
+
+			case 'R':
+				return Piece.PieceNames.rook;
+
+			case 'N':
+				return Piece.PieceNames.knight;
+
+			case 'B':
+				return Piece.PieceNames.bishop;
+
+			case 'Q':
+				return Piece.PieceNames.queen;
+
+			case 'K':
+				return Piece.PieceNames.king;
+
+			default:
+				return null;
+		}
+	}
+
+
+
+	static char getFenLetter(Piece.PieceNames name)
+	{
+		switch (name) {
+			case pawn:
+				return 'P';
+
+			case rook:
+				return 'R';
+
+			case knight:
+				return 'N';
+
+			case bishop:
+				return 'B';
+
+			case queen:
+				return 'Q';
+
+			case king:
+			default:
+				return 'K';
+		}
+	}
+
+
+
 	/**
 	 *   This version of a constructor is used to create a clone of a game board.
-	 *   All pieces and their current locations are copied to a new board.
+	 *   All pieces and their current locations are copied to a new board.  The
+	 *   state of the game, including whose turn it is and any pending En Passant
+	 *   capture, is copied as well.  The game history is not copied; the moves
+	 *   played before the copy was made cannot be taken back on the copy.
 	 *
 	 * @param copyFromBoard
 	 *      A game board to copy from.
 	 *
 	 */
 	public Board(Board copyFromBoard) {
+		long startTime = Metrics.bEnabled ? System.nanoTime() : 0;
+		BoardCopyEvent event = null;
+		if ( Events.isRecording() ) {
+			event = new BoardCopyEvent();
+			event.begin();
+		}
+
 		for (int col=0; col < columnCount; col++) {
 			for (int row=0; row < rowCount; row++) {
 				FileRank loc = new FileRank(col, row);
 				Piece aPiece = copyFromBoard.board[col][row];
-				this.board[col][row] = new Piece(aPiece.getColor(), aPiece.getName(), loc.getName());
+				this.board[col][row] = new Piece(aPiece, loc.getName());
 
 				if ( aPiece.getName().equals(Piece.PieceNames.king)) {
 					if ( aPiece.getColor().equals(Piece.Colors.White)) {
@@ -178,7 +650,21 @@ public class Board {
 			}  // next row
 		} // next column
 
+		if ( copyFromBoard.enPassant.isActive() ) {
+			// Point the copied En Passant rule at the copied pawn
+			FileRank pawnLoc = copyFromBoard.enPassant.getDoublePushedPawnLoc();
+			this.enPassant = new EnPassant(this.board[pawnLoc.getX()][pawnLoc.getY()]);
+			this.enPassant.setEnPassantCompleted(copyFromBoard.enPassant.isEnPassantCompleted());
+		}
+
+		this.state = copyFromBoard.state;
+		this.pawnPromotionChoice = copyFromBoard.pawnPromotionChoice;
+		this.pawnKey = copyFromBoard.pawnKey;
 		evaluateBoard();
+		AddCastlingMoves();
+
+		if ( Metrics.bEnabled ) Metrics.boardCopy.record(startTime);
+		if ( event != null ) event.finish(this);
 	}
 
 
@@ -230,10 +716,37 @@ public class Board {
 	 *
 	 */
 	 public boolean move(String fromLoc, String toLoc) {
+		if ( (! Metrics.bEnabled) && (! Events.isRecording()) ) return moveAndShow(fromLoc, toLoc);
+
+		long startTime = Metrics.bEnabled ? System.nanoTime() : 0;
+		MoveEvent event = null;
+		String fen = null;
+		if ( Events.isRecording() ) {
+			event = new MoveEvent();
+			if ( event.isEnabled() ) fen = toFen();
+			event.begin();
+		}
+
+		boolean bLegal = false;
+		try {
+			bLegal = moveAndShow(fromLoc, toLoc);
+			return bLegal;
+		}
+		finally {
+			if ( Metrics.bEnabled ) Metrics.move.record(startTime);
+			if ( event != null ) event.finish(fen, fromLoc, toLoc, bLegal, this);
+		}
+	}
+
+
+
+	 private boolean moveAndShow(String fromLoc, String toLoc) {
 
-		if ( ! moveAndEvaluate(fromLoc, toLoc) ) {
+		Undo undo = moveAndEvaluate(fromLoc, toLoc);
+		if ( undo == null ) {
 			return false;
 		}
+		addToHistory(undo);
 
 		//
 		// The last move was a legal move.  Let's see what is the
@@ -241,11 +754,11 @@ public class Board {
 		// in "check", "checkmate", "stalemate", or the opponent's
 		// turn to move.
 		//
-		if ( (Chess.bBlackInCheck) || (Chess.bWhiteInCheck) ) {
+		if ( (bBlackInCheck) || (bWhiteInCheck) ) {
 			// A legal move that put the opponent's king in "check"
 			if ( isCheckMate() ) {
 				// Checkmate
-				Chess.gGameState = gameState.checkMate;
+				state = gameState.checkMate;
 				show("Checkmate");
 			}
 			else show("Check");
@@ -257,7 +770,7 @@ public class Board {
 		else if (isStalemate()) {
 			// This is a stalemate.  The opponent does not have
 			// any legal move.
-			Chess.gGameState = gameState.staleMate;
+			state = gameState.staleMate;
 			show("Stalemate");
 		}
 		else {
@@ -288,9 +801,31 @@ public class Board {
 
 
 
-	 private boolean moveAndEvaluate(String fromLoc, String toLoc) {
+	 private Undo moveAndEvaluate(String fromLoc, String toLoc) {
+		if ( ! Metrics.bEnabled ) return tryMove(fromLoc, toLoc);
+
+		long startTime = System.nanoTime();
+		try {
+			return tryMove(fromLoc, toLoc);
+		}
+		finally {
+			Metrics.moveAndEvaluate.record(startTime);
+		}
+	 }
+
+
+
+	 /**
+	  *   Make a move if it is legal and evaluate the game board after it.
+	  *
+	  * @return
+	  * 		Return the record needed to take the move back, or "null" if
+	  * 		the move is illegal.  An illegal move leaves the game board
+	  * 		as it was.
+	  */
+	 private Undo tryMove(String fromLoc, String toLoc) {
 			// Verify that you have selected a valid piece to move from
-			if ( ! canMoveFrom(fromLoc) ) return false;
+			if ( ! canMoveFrom(fromLoc) ) return null;
 
 			// Take the piece at the "fromLoc"
 			FileRank fromHere = new FileRank(fromLoc);
@@ -300,18 +835,16 @@ public class Board {
 
 			// Verify that this piece is allowed to move to the
 			// specified destination.
-			if ( ! aPiece.canMoveTo(toLoc) ) return false;
+			if ( ! aPiece.canMoveTo(toLoc) ) return null;
 
 			// Remember the original pieces at the "from" and
-			// "to" location.  Also remember the original locations
-			// of the black and white king.  These information are
-			// needed if we have to restore the original game board
-			// conditions to undo an illegal move.
+			// "to" location, the locations of the black and white
+			// king and everything else this move may change.  These
+			// information are needed to undo an illegal move, or
+			// to take the move back later.
 			//
-			Piece origPieceAtFromLoc = board[fromHere.getX()][fromHere.getY()];
 			Piece origPieceAtToLoc = board[toHere.getX()][toHere.getY()];
-			FileRank origWhiteKingLoc = whiteKingLoc;
-			FileRank origBlackKingLoc = blackKingLoc;
+			Undo undo = new Undo(this, aPiece, origPieceAtToLoc);
 
 			//
 			// Execute castling if it is one of the special castling
@@ -320,13 +853,21 @@ public class Board {
 			// movement of the king is done by the following "moveTo"
 			// statement.
 			//
-			moveRookForCastling(aPiece, toLoc);
+			moveRookForCastling(aPiece, toLoc, undo);
 
 			boolean bCreateEnPassant = aPiece.isPawnDoublePush(toLoc);
 
+			//
+			// Update the pawn hash key.  Take the moving piece off its
+			// starting square and remove any captured pawn.
+			//
+			pawnKey ^= Zobrist.pawnKey(aPiece);
+			pawnKey ^= Zobrist.pawnKey(origPieceAtToLoc);
+
 			// move the piece at the "fromLoc" to the new "toLoc"
 			if ( aPiece.moveTo(toLoc) ) {
 				board[toHere.getX()][toHere.getY()] = aPiece;
+				pawnKey ^= Zobrist.pawnKey(aPiece);
 /*
 				System.out.println("Board.move(): after move, board[" + toHere.getX() + "][" +
 									toHere.getY() + "]= " +
@@ -371,7 +912,9 @@ public class Board {
 			//
 			Piece aPromotedPawn = isPawnPromotion(aPiece, toLoc);
 			if ( aPromotedPawn != null ) {
-				// This is a newly promoted pawn
+				// This is a newly promoted pawn.  It no longer counts
+				// as a pawn in the pawn hash key.
+				pawnKey ^= Zobrist.pawnKey(aPiece);
 				board[toHere.getX()][toHere.getY()] = aPromotedPawn;
 			}
 
@@ -388,6 +931,8 @@ public class Board {
 						// Just executed an En Passant capture move.
 						// Remove the double pushed pawn from the game board.
 						//
+						pawnKey ^= Zobrist.pawnKey(enPassant.getDoublePushedPawn());
+						undo.enPassantPawn = enPassant.getDoublePushedPawn();
 						drawEmptySpace(enPassant.getDoublePushedPawnLoc());
 					}
 					else {
@@ -411,8 +956,8 @@ public class Board {
 			// If I am in check, undo the last move and return false to report
 			// this as an invalid move.
 			//
-			if ( ((Chess.gGameState == Chess.gameState.whiteMove) && (Chess.bWhiteInCheck)) ||
-				 ((Chess.gGameState == Chess.gameState.blackMove) && (Chess.bBlackInCheck)) )	{
+			if ( ((state == Chess.gameState.whiteMove) && (bWhiteInCheck)) ||
+				 ((state == Chess.gameState.blackMove) && (bBlackInCheck)) )	{
 
 				//
 				//   **********  Debug use only  **********
@@ -428,25 +973,12 @@ public class Board {
 				// Either white or black made an illegal move and exposed his own king.
 				// Must undo this illegal move and restore the original game board conditions.
 				//
-				board[fromHere.getX()][fromHere.getY()] = origPieceAtFromLoc;
-				board[toHere.getX()][toHere.getY()] = origPieceAtToLoc;
-				whiteKingLoc = origWhiteKingLoc;
-				blackKingLoc = origBlackKingLoc;
-
-				// Undo En Passant move
-				if ( enPassant.isActive()) {
-					// Restore any pawn captured by En Passant capture
-					Piece aRestoredPawn = enPassant.getDoublePushedPawn();
-					int x = aRestoredPawn.getX();
-					int y = aRestoredPawn.getY();
-					board[x][y] = aRestoredPawn;
-				}
-
-				evaluateBoard();
-				return false;
+				undoMove(undo);
+				return null;
 			}
 
-			return true;
+			undo.move = new Move(fromHere, toHere, (aPromotedPawn != null) ? pawnPromotionChoice : null);
+			return undo;
 	 }
 
 
@@ -465,8 +997,10 @@ public class Board {
 	 */
 	private void evaluateBoard()
 	{
-		Chess.bBlackInCheck = false;
-		Chess.bWhiteInCheck = false;
+		long startTime = Metrics.bEnabled ? System.nanoTime() : 0;
+
+		bBlackInCheck = false;
+		bWhiteInCheck = false;
 
 		for (int row=0; row < rowCount; row++) {
 			for (int col=0; col < columnCount; col++) {
@@ -504,6 +1038,8 @@ public class Board {
 				}
 			}
 		}
+
+		if ( Metrics.bEnabled ) Metrics.evaluateBoard.record(startTime);
 	}
 
 
@@ -1106,7 +1642,7 @@ public class Board {
 		if ( isEmpty(fromLoc) ) return false;
 
 		// Verify the color of the selected game piece
-		if ( Chess.gGameState == Chess.gameState.whiteMove ) {
+		if ( state == Chess.gameState.whiteMove ) {
 			// This is white's move but you selected a black piece
 			if ( isOccupiedByBlack(fromLoc) )  return false;
 		}
@@ -1157,7 +1693,7 @@ public class Board {
 			// row 7 to get promoted.
 			if ( myLoc.getY() == rowCount -1) {
 				// Promote this white pawn now.
-				switch (Chess.pawnPromotionChoice) {
+				switch (pawnPromotionChoice) {
 					case rook:
 						return new Piece(Piece.Colors.White, Piece.PieceNames.rook, toLoc);
 
@@ -1178,7 +1714,7 @@ public class Board {
 			// row 0 to get promoted.
 			if ( myLoc.getY() == 0) {
 				// Promote this black pawn now.
-				switch (Chess.pawnPromotionChoice) {
+				switch (pawnPromotionChoice) {
 				case rook:
 					return new Piece(Piece.Colors.Black, Piece.PieceNames.rook, toLoc);
 
@@ -1254,13 +1790,13 @@ public class Board {
 		if ((aPiece.getColor().equals(Piece.Colors.White)) &&
 			(blackKingLoc.getName().equals(targetLoc.getName())) ) {
 				// black king is now in check
-				Chess.bBlackInCheck = true;
+				bBlackInCheck = true;
 			}
 
 		if ((aPiece.getColor().equals(Piece.Colors.Black)) &&
 			(whiteKingLoc.getName().equals(targetLoc.getName())) ) {
 			// white king is now in check
-			Chess.bWhiteInCheck = true;
+			bWhiteInCheck = true;
 		}
 	}
 
@@ -1270,6 +1806,30 @@ public class Board {
 	 * @return  Return a boolean value indicating a "checkmate" condition
 	 */
 	private boolean isCheckMate()
+	{
+		if ( (! Metrics.bEnabled) && (! Events.isRecording()) ) return findCheckMate();
+
+		long startTime = Metrics.bEnabled ? System.nanoTime() : 0;
+		GameEndEvent event = null;
+		if ( Events.isRecording() ) {
+			event = new GameEndEvent();
+			event.begin();
+		}
+
+		boolean bEnded = false;
+		try {
+			bEnded = findCheckMate();
+			return bEnded;
+		}
+		finally {
+			if ( Metrics.bEnabled ) Metrics.isCheckMate.record(startTime);
+			if ( event != null ) event.finish(this, "checkmate", bEnded);
+		}
+	}
+
+
+
+	private boolean findCheckMate()
 	{
 		// Find a move by any piece that can remove the "check" condition.
 		// This piece must come from the side that is put in "check".
@@ -1277,15 +1837,15 @@ public class Board {
 		// but not a "checkmate".
 		//
 
-		Chess.gameState currentState = Chess.gGameState;
+		Chess.gameState currentState = state;
 
-		if ( Chess.gGameState == gameState.whiteMove ) {
-			Chess.gGameState = gameState.blackMove;
+		if ( state == gameState.whiteMove ) {
+			state = gameState.blackMove;
 		}
-		else if ( Chess.gGameState == gameState.blackMove ) {
-			Chess.gGameState = gameState.whiteMove;
+		else if ( state == gameState.blackMove ) {
+			state = gameState.whiteMove;
 		}
-		//System.out.println("isCheckMate: changed gameState to " + Chess.gGameState);
+		//System.out.println("isCheckMate: changed gameState to " + state);
 
 
 		for (int col=0; col < columnCount; col++) {
@@ -1294,21 +1854,21 @@ public class Board {
 				if (aPiece.getName().equals(Piece.PieceNames.emptySpace)) continue;
 
 				if ((aPiece.getColor().equals(Piece.Colors.Black)) &&
-					(Chess.bBlackInCheck) ) {
+					(bBlackInCheck) ) {
 					// Try to find a move by this black piece that
 					// can remove the black "in check" condition.
 					if (canRemoveCheck(aPiece)) {
-						Chess.gGameState = currentState;
+						state = currentState;
 						return false;  // Not in checkmate
 					}
 				}
 
 				if ((aPiece.getColor().equals(Piece.Colors.White)) &&
-					(Chess.bWhiteInCheck) ) {
+					(bWhiteInCheck) ) {
 					// Try to find a move by this white piece that
 					// can remove the white "in check" condition.
 					if (canRemoveCheck(aPiece))  {
-						Chess.gGameState = currentState;
+						state = currentState;
 						return false;  // Not in checkmate
 					}
 				}
@@ -1317,7 +1877,7 @@ public class Board {
 
 		// This is a "checkmate".   There is no legal move that the
 		// "in check" side can make that will remove the condition.
-		Chess.gGameState = currentState;
+		state = currentState;
 		return true;
 	}
 
@@ -1338,7 +1898,7 @@ public class Board {
 			//		" to " + toLoc.getName() );
 
 			//aTestBoard.evaluateBoard();
-			if ((! Chess.bBlackInCheck) && (! Chess.bWhiteInCheck) )
+			if ((! aTestBoard.bBlackInCheck) && (! aTestBoard.bWhiteInCheck) )
 				return true;
 		}
 
@@ -1371,7 +1931,7 @@ public class Board {
 		// Check white king castling moves
 		Piece whiteKing = board[whiteKingLoc.getX()][whiteKingLoc.getY()];
 
-		if ((! Chess.bWhiteInCheck) && (! whiteKing.hasMoved()) ) {
+		if ((! bWhiteInCheck) && (! whiteKing.hasMoved()) ) {
 
 			// White king has two castling locations.  One on the right
 			// side at "g1" and is called short castling.   Another one
@@ -1399,7 +1959,7 @@ public class Board {
 		// Check black king castling moves
 		Piece blackKing = board[blackKingLoc.getX()][blackKingLoc.getY()];
 
-		if ((! Chess.bBlackInCheck) && (! blackKing.hasMoved()) ) {
+		if ((! bBlackInCheck) && (! blackKing.hasMoved()) ) {
 
 			// Black king has two castling locations.  One on the right
 			// side at "g8" and is called short castling.   Another one
@@ -1484,14 +2044,927 @@ public class Board {
 	}
 
 
-	private void moveRookForCastling(Piece aPiece, String toLoc)
+	/**
+	 *   Get the game piece at a given (x,y) location.  An empty square
+	 *   is returned as a piece named "emptySpace".
+	 *
+	 * @param x  "X" value (i.e. File) of the game board location
+	 * @param y  "Y" value (i.e. Rank) of the game board location
+	 *
+	 * @return
+	 * 		Return the game piece at this location
+	 */
+	Piece getPiece(int x, int y)
 	{
-		if (! aPiece.getName().equals(Piece.PieceNames.king)) return;
-		if ( aPiece.hasMoved()) return;
-		//
-		// This is the first move from this king.   Now check he
-		// wants to do castling on which side.
-		//
+		return board[x][y];
+	}
+
+
+
+	/**
+	 *   Get the Zobrist hash key of all the pawns on this game board.
+	 *   Two boards with the same pawn structure have the same pawn key.
+	 *
+	 * @return
+	 * 		Return the pawn hash key
+	 */
+	public long getPawnKey()
+	{
+		return pawnKey;
+	}
+
+
+
+	/**
+	 *   Get the current state of the chess game played on this board.
+	 *
+	 * @return
+	 * 		Return the state of the game (e.g. white's move, checkmate, etc.)
+	 */
+	public gameState getGameState()
+	{
+		return state;
+	}
+
+
+
+	/**
+	 *   Set the current state of the chess game played on this board.
+	 *   This is used to pass the turn to the other side after a move,
+	 *   or to end the game when a player resigns or accepts a draw.
+	 *
+	 * @param newState
+	 * 		The new state of the game
+	 */
+	public void setGameState(gameState newState)
+	{
+		state = newState;
+	}
+
+
+
+	/**
+	 *   Get the color of the side that is due to make a move.
+	 *
+	 * @return
+	 * 		Return black if it is black's move.  Otherwise, return white.
+	 */
+	public Piece.Colors getSideToMove()
+	{
+		if ( state == gameState.blackMove ) return Piece.Colors.Black;
+		return Piece.Colors.White;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the white king is in check
+	 */
+	public boolean isWhiteInCheck()
+	{
+		return bWhiteInCheck;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the black king is in check
+	 */
+	public boolean isBlackInCheck()
+	{
+		return bBlackInCheck;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the king of the side due to move is in check
+	 */
+	public boolean isInCheck()
+	{
+		if ( getSideToMove().equals(Piece.Colors.White) ) return bWhiteInCheck;
+		return bBlackInCheck;
+	}
+
+
+
+	/**
+	 *   Choose the piece a pawn is promoted to by the next move.
+	 *
+	 * @param choice
+	 * 		A pawn promotion choice (rook, knight, bishop or queen)
+	 */
+	public void setPawnPromotionChoice(Chess.pawnPromotionChoices choice)
+	{
+		pawnPromotionChoice = choice;
+	}
+
+
+
+	/**
+	 *   Make a move for the side that is due to move, without displaying
+	 *   the game board.  If the move is legal, it becomes the opponent's
+	 *   turn.  Checkmate and stalemate are not detected by this function;
+	 *   the caller can find them by asking for the legal moves that follow.
+	 *
+	 *   <p>If the move is illegal, the game board is left as it was.  A
+	 *   legal move is added to the game history and can be taken back
+	 *   with {@link #undo()}.
+	 *
+	 * @param aMove
+	 * 		A move for the side that is due to move
+	 *
+	 * @return
+	 * 		Return "true" if this is a legal move.  Otherwise, return "false".
+	 */
+	public boolean makeMove(Move aMove)
+	{
+		if ( (state != gameState.whiteMove) && (state != gameState.blackMove) ) return false;
+
+		EnPassant origEnPassant = enPassant;
+		boolean bOrigEnPassantCompleted = enPassant.isEnPassantCompleted();
+
+		//
+		// An En Passant capture must be made right away.  If the side
+		// who could have made it has already moved, the rule is over.
+		//
+		if ( (enPassant.isActive()) &&
+			 (! enPassant.getEnPassantColor().equals(getSideToMove())) ) {
+			enPassant = new EnPassant();
+		}
+
+		if ( aMove.getPromotion() != null ) {
+			pawnPromotionChoice = aMove.getPromotion();
+		}
+		else {
+			pawnPromotionChoice = Chess.pawnPromotionChoices.queen;
+		}
+
+		Undo undo = moveAndEvaluate(aMove.getFromLoc().getName(), aMove.getToLoc().getName());
+		if ( undo == null ) {
+			enPassant = origEnPassant;
+			return false;
+		}
+
+		// Taking the move back brings back any En Passant rule dropped above
+		undo.enPassant = origEnPassant;
+		undo.bEnPassantCompleted = bOrigEnPassantCompleted;
+		addToHistory(undo);
+
+		if ((enPassant.isActive()) &&
+			(enPassant.isEnPassantCompleted()) ) {
+			// En Passant capture rule is done.
+			enPassant = new EnPassant();
+		}
+
+		if ( state == gameState.whiteMove ) {
+			state = gameState.blackMove;
+		}
+		else {
+			state = gameState.whiteMove;
+		}
+		return true;
+	}
+
+
+
+	/**
+	 *   Pass the turn to the other side without moving anything (a "null
+	 *   move").  This is not a legal chess move; the search uses it to see
+	 *   if a position is so good that even passing keeps it good.  Any En
+	 *   Passant rule is dropped, and nothing is added to the game history.
+	 *   The side to move must not be in check.
+	 */
+	void makeNullMove()
+	{
+		enPassant = new EnPassant();
+		if ( state == gameState.whiteMove ) {
+			state = gameState.blackMove;
+		}
+		else {
+			state = gameState.whiteMove;
+		}
+	}
+
+
+
+	/**
+	 *   Make a move for the side that is due to move, the same way as
+	 *   {@link #move(String, String)} but without displaying the game
+	 *   board.  After a legal move the game state is "checkMate" or
+	 *   "staleMate" if the game has ended, or the opponent's turn.
+	 *
+	 *   <p>If the move is illegal, the game board is left as it was.
+	 *
+	 * @param aMove
+	 * 		A move for the side that is due to move
+	 *
+	 * @return
+	 * 		Return "true" if this is a legal move.  Otherwise, return "false".
+	 */
+	public boolean playMove(Move aMove)
+	{
+		gameState moverState = state;
+		if ( ! makeMove(aMove) ) return false;
+
+		// The checkmate and stalemate tests expect the mover's turn
+		gameState nextState = state;
+		state = moverState;
+
+		if ( (bBlackInCheck) || (bWhiteInCheck) ) {
+			if ( isCheckMate() ) nextState = gameState.checkMate;
+		}
+		else if ( isStalemate() ) {
+			nextState = gameState.staleMate;
+		}
+
+		state = nextState;
+		return true;
+	}
+
+
+
+	/**
+	 *   Take back the last move played on this game board.  The move is
+	 *   kept in the game history and can be played again with
+	 *   {@link #redo()}.  Taking back a move does not replay the game.
+	 *
+	 * @return
+	 * 		Return "true" if a move was taken back, or "false" if there
+	 * 		is no move to take back.
+	 */
+	public boolean undo()
+	{
+		if ( historyPly == 0 ) return false;
+
+		undoMove(history.get(--historyPly));
+		return true;
+	}
+
+
+
+	/**
+	 *   Play again the last move taken back with {@link #undo()}.
+	 *
+	 * @return
+	 * 		Return "true" if a move was played, or "false" if there is
+	 * 		no move to play again.
+	 */
+	public boolean redo()
+	{
+		if ( historyPly >= getHistorySize() ) return false;
+
+		return playMove(history.get(historyPly).move);
+	}
+
+
+
+	/**
+	 *   Take back moves or play them again until a given number of moves
+	 *   of the game history are on the game board.
+	 *
+	 * @param ply
+	 * 		Number of moves from the start of the game history (0 is the
+	 * 		position before the first move)
+	 *
+	 * @return
+	 * 		Return "true" if the game board is now at that move, or
+	 * 		"false" if the game history has no such move.
+	 */
+	public boolean goToPly(int ply)
+	{
+		if ( (ply < 0) || (ply > getHistorySize()) ) return false;
+
+		while ( historyPly > ply ) undo();
+		while ( historyPly < ply ) {
+			if ( ! redo() ) return false;
+		}
+		return true;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of moves of the game history that are
+	 * 		played on the game board now
+	 */
+	public int getPly()
+	{
+		return historyPly;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of moves in the game history, including
+	 * 		moves taken back that can be played again
+	 */
+	public int getHistorySize()
+	{
+		return (history == null) ? 0 : history.size();
+	}
+
+
+
+	/**
+	 * @param ply
+	 * 		Index of a move in the game history, starting at 0
+	 *
+	 * @return
+	 * 		Return the move
+	 */
+	public Move getHistoryMove(int ply)
+	{
+		return history.get(ply).move;
+	}
+
+
+
+	/**
+	 *   Add a legal move to the game history.  Any moves that were taken
+	 *   back are dropped, unless the same move is played again.
+	 */
+	private void addToHistory(Undo undo)
+	{
+		if ( history == null ) history = new ArrayList<Undo>();
+
+		if ( historyPly < history.size() ) {
+			if ( history.get(historyPly).move.equals(undo.move) ) {
+				history.set(historyPly++, undo);
+				return;
+			}
+			history.subList(historyPly, history.size()).clear();
+		}
+		history.add(undo);
+		historyPly++;
+	}
+
+
+
+	/**
+	 *   Put back everything a move has changed and evaluate the game
+	 *   board again.
+	 */
+	private void undoMove(Undo undo)
+	{
+		if ( undo.castledRook != null ) {
+			// Put the castled rook back in its corner
+			Piece aRook = undo.castledRook;
+			drawEmptySpace(new FileRank(aRook.getX(), aRook.getY()));
+			aRook.getFileRank().moveTo(new FileRank(undo.rookFrom % columnCount, undo.rookFrom / columnCount).getName());
+			aRook.setHasMoved(undo.bRookMovedBefore);
+			board[aRook.getX()][aRook.getY()] = aRook;
+		}
+
+		// The captured piece (or the empty space) and the moved piece.
+		// A promoted pawn is put back as a pawn.
+		board[undo.to % columnCount][undo.to / columnCount] = undo.capturedPiece;
+
+		Piece aPiece = undo.movedPiece;
+		int fromX = undo.from % columnCount;
+		int fromY = undo.from / columnCount;
+		aPiece.getFileRank().moveTo(new FileRank(fromX, fromY).getName());
+		aPiece.setHasMoved(undo.bMovedBefore);
+		board[fromX][fromY] = aPiece;
+
+		if ( undo.enPassantPawn != null ) {
+			// Restore the pawn captured by En Passant
+			board[undo.enPassantPawn.getX()][undo.enPassantPawn.getY()] = undo.enPassantPawn;
+		}
+
+		whiteKingLoc = undo.whiteKingLoc;
+		blackKingLoc = undo.blackKingLoc;
+		pawnKey = undo.pawnKey;
+		enPassant = undo.enPassant;
+		enPassant.setEnPassantCompleted(undo.bEnPassantCompleted);
+		state = undo.state;
+
+		evaluateBoard();
+		AddCastlingMoves();
+	}
+
+
+
+	/**
+	 *   Check if a move can be made by the side that is due to move,
+	 *   without changing or copying this game board.  The pieces are
+	 *   moved around on the board only long enough to see if the king
+	 *   of the side to move would be attacked, and are then put back.
+	 *
+	 * @param aMove
+	 * 		A move for the side that is due to move
+	 *
+	 * @return
+	 * 		Return "true" if this is a legal move.  Otherwise, return "false".
+	 */
+	public boolean isLegalMove(Move aMove)
+	{
+		if ( (state != gameState.whiteMove) && (state != gameState.blackMove) ) return false;
+
+		Piece.Colors side = getSideToMove();
+		int fromX = aMove.getFromLoc().getX();
+		int fromY = aMove.getFromLoc().getY();
+		int toX = aMove.getToLoc().getX();
+		int toY = aMove.getToLoc().getY();
+
+		Piece aPiece = board[fromX][fromY];
+		if ( (aPiece.isEmptySpace()) || (! aPiece.getColor().equals(side)) ) return false;
+		if ( ! aPiece.canMoveTo(aMove.getToLoc().getName()) ) return false;
+
+		Piece origPieceAtToLoc = board[toX][toY];
+		Piece capturedPawn = null;
+
+		// A diagonal pawn move to an empty square is an En Passant capture
+		if ( (aPiece.getName().equals(Piece.PieceNames.pawn)) && (fromX != toX) &&
+			 (origPieceAtToLoc.isEmptySpace()) ) {
+			capturedPawn = board[toX][fromY];
+			board[toX][fromY] = vacantSquare;
+		}
+
+		board[toX][toY] = aPiece;
+		board[fromX][fromY] = vacantSquare;
+
+		FileRank kingLoc = side.equals(Piece.Colors.White) ? whiteKingLoc : blackKingLoc;
+		int kingX = kingLoc.getX();
+		int kingY = kingLoc.getY();
+		if ( aPiece.getName().equals(Piece.PieceNames.king) ) {
+			kingX = toX;
+			kingY = toY;
+		}
+
+		Piece.Colors opponent = side.equals(Piece.Colors.White) ? Piece.Colors.Black : Piece.Colors.White;
+		boolean bLegal = ! isSquareAttacked(kingX, kingY, opponent);
+
+		// Put everything back
+		board[fromX][fromY] = aPiece;
+		board[toX][toY] = origPieceAtToLoc;
+		if ( capturedPawn != null ) board[toX][fromY] = capturedPawn;
+
+		return bLegal;
+	}
+
+
+
+	/**
+	 *   Check if any piece of one side attacks a square.
+	 *
+	 * @param x   "X" value (i.e. File) of the square
+	 * @param y   "Y" value (i.e. Rank) of the square
+	 * @param attackByThisColor   The color of the attacking side
+	 *
+	 * @return
+	 * 		Return "true" if the square is attacked
+	 */
+	boolean isSquareAttacked(int x, int y, Piece.Colors attackByThisColor)
+	{
+		// A pawn attacks the two squares diagonally in front of it
+		int pawnY = attackByThisColor.equals(Piece.Colors.White) ? y-1 : y+1;
+		for (int pawnX = x-1; pawnX <= x+1; pawnX += 2) {
+			if ( isAttacker(pawnX, pawnY, attackByThisColor, Piece.PieceNames.pawn, null) ) return true;
+		}
+
+		for (int[] step : knightSteps) {
+			if ( isAttacker(x + step[0], y + step[1], attackByThisColor, Piece.PieceNames.knight, null) ) return true;
+		}
+
+		for (int[] step : kingSteps) {
+			if ( isAttacker(x + step[0], y + step[1], attackByThisColor, Piece.PieceNames.king, null) ) return true;
+		}
+
+		return isAttackedAlong(x, y, diagonalDirections, attackByThisColor, Piece.PieceNames.bishop) ||
+			   isAttackedAlong(x, y, straightDirections, attackByThisColor, Piece.PieceNames.rook);
+	}
+
+
+
+	/**
+	 *   Check if a bishop or rook (or a queen) of one side attacks a
+	 *   square along any of the given directions.
+	 */
+	private boolean isAttackedAlong(int x, int y, int[][] directions,
+									Piece.Colors attackByThisColor, Piece.PieceNames slider)
+	{
+		for (int[] direction : directions) {
+			int col = x + direction[0];
+			int row = y + direction[1];
+
+			while ( (col >= 0) && (col < columnCount) && (row >= 0) && (row < rowCount) ) {
+				if ( ! board[col][row].isEmptySpace() ) {
+					if ( isAttacker(col, row, attackByThisColor, slider, Piece.PieceNames.queen) ) return true;
+					break;
+				}
+				col += direction[0];
+				row += direction[1];
+			}
+		}
+		return false;
+	}
+
+
+
+	/**
+	 *   Check if a square holds a piece of the given color and one of
+	 *   the given names.  A square off the board holds nothing.
+	 */
+	private boolean isAttacker(int x, int y, Piece.Colors c,
+							   Piece.PieceNames name, Piece.PieceNames otherName)
+	{
+		if ( (x < 0) || (x >= columnCount) || (y < 0) || (y >= rowCount) ) return false;
+
+		Piece aPiece = board[x][y];
+		if ( aPiece.isEmptySpace() || (! aPiece.getColor().equals(c)) ) return false;
+		return aPiece.getName().equals(name) || aPiece.getName().equals(otherName);
+	}
+
+
+
+	/**
+	 *   Get all the moves that the side due to move can try.  The moves
+	 *   come from the target locations of every piece, so a move can still
+	 *   turn out to be illegal if it leaves the king in check.  A pawn
+	 *   move to the last rank is listed once for every promotion choice.
+	 *
+	 * @return
+	 * 		Return an ArrayList of moves
+	 */
+	public ArrayList<Move> getMoves()
+	{
+		ArrayList<Move> moves = new ArrayList<Move>();
+		if ( (state != gameState.whiteMove) && (state != gameState.blackMove) ) return moves;
+
+		Piece.Colors side = getSideToMove();
+		for (int col=0; col < columnCount; col++) {
+			for (int row=0; row < rowCount; row++) {
+				Piece aPiece = board[col][row];
+				if ( (aPiece.isEmptySpace()) || (! aPiece.getColor().equals(side)) ) continue;
+
+				for (FileRank toLoc : aPiece.getTargets()) {
+					addMove(aPiece, toLoc, moves);
+				}
+			}
+		}
+		return moves;
+	}
+
+
+
+	/**
+	 *   Get only the captures and pawn promotions that the side due to
+	 *   move can try.  Unlike {@link #getMoves()}, this does not use the
+	 *   target locations of the pieces.  Every piece looks directly for
+	 *   opponent pieces it can capture, so no quiet moves are produced.
+	 *   Like getMoves(), a move can still turn out to be illegal.
+	 *
+	 * @return
+	 * 		Return an ArrayList of capture and promotion moves
+	 */
+	public ArrayList<Move> getCaptures()
+	{
+		ArrayList<Move> captures = new ArrayList<Move>();
+		if ( (state != gameState.whiteMove) && (state != gameState.blackMove) ) return captures;
+
+		Piece.Colors side = getSideToMove();
+		for (int col=0; col < columnCount; col++) {
+			for (int row=0; row < rowCount; row++) {
+				Piece aPiece = board[col][row];
+				if ( (aPiece.isEmptySpace()) || (! aPiece.getColor().equals(side)) ) continue;
+
+				switch (aPiece.getName()) {
+					case pawn:
+						addPawnCaptures(aPiece, captures);
+						break;
+
+					case knight:
+						addStepCaptures(aPiece, knightSteps, captures);
+						break;
+
+					case king:
+						addStepCaptures(aPiece, kingSteps, captures);
+						break;
+
+					case bishop:
+						addSlidingCaptures(aPiece, diagonalDirections, captures);
+						break;
+
+					case rook:
+						addSlidingCaptures(aPiece, straightDirections, captures);
+						break;
+
+					case queen:
+						addSlidingCaptures(aPiece, diagonalDirections, captures);
+						addSlidingCaptures(aPiece, straightDirections, captures);
+						break;
+
+					case emptySpace:
+					default:
+				}
+			}
+		}
+		return captures;
+	}
+
+
+
+	/**
+	 *   Add a move to a list of moves.  A pawn move to the last rank
+	 *   is added once for every promotion choice, queen first.
+	 */
+	private void addMove(Piece aPiece, FileRank toLoc, ArrayList<Move> moves)
+	{
+		FileRank fromLoc = new FileRank(aPiece.getX(), aPiece.getY());
+
+		if ( (aPiece.getName().equals(Piece.PieceNames.pawn)) &&
+			 ((toLoc.getY() == 0) || (toLoc.getY() == rowCount - 1)) ) {
+			moves.add(new Move(fromLoc, toLoc, Chess.pawnPromotionChoices.queen));
+			moves.add(new Move(fromLoc, toLoc, Chess.pawnPromotionChoices.knight));
+			moves.add(new Move(fromLoc, toLoc, Chess.pawnPromotionChoices.rook));
+			moves.add(new Move(fromLoc, toLoc, Chess.pawnPromotionChoices.bishop));
+		}
+		else {
+			moves.add(new Move(fromLoc, toLoc));
+		}
+	}
+
+
+
+	/**
+	 *   Add the diagonal captures, the En Passant capture and the
+	 *   promotions of a pawn.
+	 */
+	private void addPawnCaptures(Piece aPawn, ArrayList<Move> captures)
+	{
+		int x = aPawn.getX();
+		int y = aPawn.getY();
+		int forward = aPawn.getColor().equals(Piece.Colors.White) ? y+1 : y-1;
+		if ( (forward < 0) || (forward >= rowCount) ) return;
+
+		if ( (x-1 >= 0) && (isOccupiedByOpponent(x-1, forward, aPawn)) ) {
+			addMove(aPawn, new FileRank(x-1, forward), captures);
+		}
+
+		if ( (x+1 < columnCount) && (isOccupiedByOpponent(x+1, forward, aPawn)) ) {
+			addMove(aPawn, new FileRank(x+1, forward), captures);
+		}
+
+		// A push to the last rank is a promotion
+		if ( ((forward == 0) || (forward == rowCount - 1)) && (isEmpty(x, forward)) ) {
+			addMove(aPawn, new FileRank(x, forward), captures);
+		}
+
+		if ( enPassant.isParticipant(aPawn) ) {
+			addMove(aPawn, enPassant.getTriggerLoc(), captures);
+		}
+	}
+
+
+
+	/**
+	 *   Add the captures of a knight or a king, which can only step
+	 *   one time in each direction.
+	 */
+	private void addStepCaptures(Piece aPiece, int[][] steps, ArrayList<Move> captures)
+	{
+		for (int[] step : steps) {
+			int x = aPiece.getX() + step[0];
+			int y = aPiece.getY() + step[1];
+			if ( (x < 0) || (x >= columnCount) || (y < 0) || (y >= rowCount) ) continue;
+
+			if ( isOccupiedByOpponent(x, y, aPiece) ) {
+				addMove(aPiece, new FileRank(x, y), captures);
+			}
+		}
+	}
+
+
+
+	/**
+	 *   Add the captures of a bishop, a rook or a queen.  The piece slides
+	 *   along each direction until it reaches the first occupied square.
+	 */
+	private void addSlidingCaptures(Piece aPiece, int[][] directions, ArrayList<Move> captures)
+	{
+		for (int[] direction : directions) {
+			int x = aPiece.getX() + direction[0];
+			int y = aPiece.getY() + direction[1];
+
+			while ( (x >= 0) && (x < columnCount) && (y >= 0) && (y < rowCount) ) {
+				if ( ! isEmpty(x, y) ) {
+					if ( isOccupiedByOpponent(x, y, aPiece) ) {
+						addMove(aPiece, new FileRank(x, y), captures);
+					}
+					break;
+				}
+				x += direction[0];
+				y += direction[1];
+			}
+		}
+	}
+
+
+
+	/**
+	 *   Check if a side still has the right to castle on one side of the
+	 *   board.  The king and the rook must both be on their starting
+	 *   squares and must not have moved before.  This does not check if
+	 *   castling is possible right now (e.g. the squares in between may
+	 *   be occupied).
+	 *
+	 * @param c
+	 * 		The color of the side to check
+	 *
+	 * @param bShortCastle
+	 * 		"true" to check the short (king side) castling.  "false"
+	 * 		to check the long (queen side) castling.
+	 *
+	 * @return
+	 * 		Return "true" if the castling right is still available
+	 */
+	public boolean hasCastlingRight(Piece.Colors c, boolean bShortCastle)
+	{
+		int y = c.equals(Piece.Colors.White) ? 0 : rowCount - 1;
+		Piece aKing = board[4][y];
+		Piece aRook = board[bShortCastle ? columnCount - 1 : 0][y];
+
+		return (aKing.getName().equals(Piece.PieceNames.king)) &&
+			   (aKing.getColor().equals(c)) && (! aKing.hasMoved()) &&
+			   (aRook.getName().equals(Piece.PieceNames.rook)) &&
+			   (aRook.getColor().equals(c)) && (! aRook.hasMoved());
+	}
+
+
+
+	/**
+	 *   Count the pieces (kings included) of both sides on the game board.
+	 *
+	 * @return
+	 * 		Return the number of pieces on the game board
+	 */
+	public int getPieceCount()
+	{
+		int count = 0;
+		for (int col=0; col < columnCount; col++) {
+			for (int row=0; row < rowCount; row++) {
+				if ( ! board[col][row].isEmptySpace() ) count++;
+			}
+		}
+		return count;
+	}
+
+
+
+	/**
+	 *   Get the material signature of one side.  This is one letter for
+	 *   every piece of that side, in the order K, Q, R, B, N, P.  For
+	 *   example, a king, a rook and two pawns are written as "KRPP".
+	 *
+	 * @param c
+	 * 		The color of the side
+	 *
+	 * @return
+	 * 		Return the material signature of this side
+	 */
+	public String getMaterialSignature(Piece.Colors c)
+	{
+		int[] counts = new int[Piece.PieceNames.values().length];
+		for (int col=0; col < columnCount; col++) {
+			for (int row=0; row < rowCount; row++) {
+				Piece aPiece = board[col][row];
+				if ( (! aPiece.isEmptySpace()) && (aPiece.getColor().equals(c)) ) {
+					counts[aPiece.getName().ordinal()]++;
+				}
+			}
+		}
+
+		StringBuilder signature = new StringBuilder();
+		appendLetters(signature, 'K', counts[Piece.PieceNames.king.ordinal()]);
+		appendLetters(signature, 'Q', counts[Piece.PieceNames.queen.ordinal()]);
+		appendLetters(signature, 'R', counts[Piece.PieceNames.rook.ordinal()]);
+		appendLetters(signature, 'B', counts[Piece.PieceNames.bishop.ordinal()]);
+		appendLetters(signature, 'N', counts[Piece.PieceNames.knight.ordinal()]);
+		appendLetters(signature, 'P', counts[Piece.PieceNames.pawn.ordinal()]);
+		return signature.toString();
+	}
+
+
+
+	/**
+	 *   Get the material signature of both sides, white first.  For
+	 *   example, "KRPvKR" is a king, a rook and a pawn against a king
+	 *   and a rook.
+	 *
+	 * @return
+	 * 		Return the material signature of the game board
+	 */
+	public String getMaterialSignature()
+	{
+		return getMaterialSignature(Piece.Colors.White) + "v" +
+			   getMaterialSignature(Piece.Colors.Black);
+	}
+
+
+
+	private static void appendLetters(StringBuilder s, char letter, int count)
+	{
+		for (int i=0; i < count; i++) s.append(letter);
+	}
+
+
+
+	/**
+	 *   Get the En Passant trigger location for the side due to move.
+	 *   This is the empty square behind a pawn that just made a double
+	 *   push move.
+	 *
+	 * @return
+	 * 		Return the En Passant trigger location, or "null" if the
+	 * 		side to move cannot make an En Passant capture this turn.
+	 */
+	public FileRank getEnPassantTriggerLoc()
+	{
+		if ( (! enPassant.isActive()) || (enPassant.isEnPassantCompleted()) ) return null;
+		if ( ! enPassant.getEnPassantColor().equals(getSideToMove()) ) return null;
+		return enPassant.getTriggerLoc();
+	}
+
+
+
+	/**
+	 *   Get the Zobrist hash key of the whole position: every piece, the
+	 *   side to move, the castling rights, and the file of an En Passant
+	 *   capture if one can be made.  Two boards with the same position
+	 *   have the same key.  The key is calculated each time this is called.
+	 *
+	 * @return
+	 * 		Return the hash key of this position
+	 */
+	public long getHashKey()
+	{
+		long key = 0L;
+		for (int col=0; col < columnCount; col++) {
+			for (int row=0; row < rowCount; row++) {
+				key ^= Zobrist.pieceKey(board[col][row]);
+			}
+		}
+
+		if ( hasCastlingRight(Piece.Colors.White, true) )  key ^= Zobrist.castlingKey(Piece.Colors.White, true);
+		if ( hasCastlingRight(Piece.Colors.White, false) ) key ^= Zobrist.castlingKey(Piece.Colors.White, false);
+		if ( hasCastlingRight(Piece.Colors.Black, true) )  key ^= Zobrist.castlingKey(Piece.Colors.Black, true);
+		if ( hasCastlingRight(Piece.Colors.Black, false) ) key ^= Zobrist.castlingKey(Piece.Colors.Black, false);
+
+		// The En Passant file only counts if a pawn can really capture
+		FileRank triggerLoc = getEnPassantTriggerLoc();
+		if ( triggerLoc != null ) {
+			FileRank pawnLoc = enPassant.getDoublePushedPawnLoc();
+			for (int x = pawnLoc.getX()-1; x <= pawnLoc.getX()+1; x += 2) {
+				if ( (x < 0) || (x >= columnCount) ) continue;
+				Piece aPawn = board[x][pawnLoc.getY()];
+				if ( aPawn.getName().equals(Piece.PieceNames.pawn) && aPawn.getColor().equals(getSideToMove()) ) {
+					key ^= Zobrist.enPassantKey(triggerLoc.getX());
+					break;
+				}
+			}
+		}
+
+		if ( getSideToMove().equals(Piece.Colors.Black) ) key ^= Zobrist.blackToMoveKey();
+		return key;
+	}
+
+
+
+	/**
+	 *   Calculate the pawn hash key from scratch by visiting every
+	 *   square of the game board.   This is only needed when a new
+	 *   board is set up.  After that, the key is updated incrementally
+	 *   as pawns are moved.
+	 *
+	 * @return
+	 * 		Return the pawn hash key of this game board
+	 */
+	private long computePawnKey()
+	{
+		long key = 0L;
+		for (int col=0; col < columnCount; col++) {
+			for (int row=0; row < rowCount; row++) {
+				key ^= Zobrist.pawnKey(board[col][row]);
+			}
+		}
+		return key;
+	}
+
+
+	private void moveRookForCastling(Piece aPiece, String toLoc, Undo undo)
+	{
+		if (! aPiece.getName().equals(Piece.PieceNames.king)) return;
+		if ( aPiece.hasMoved()) return;
+		//
+		// This is the first move from this king.   Now check he
+		// wants to do castling on which side.
+		//
 		if ((aPiece.getKingShortCastleLoc() != null) &&
 			(aPiece.getKingShortCastleLoc().equals(toLoc)) ) {
 			// This king is doing a short castling
@@ -1507,6 +2980,7 @@ public class Board {
 			// move the rook to the new castling location
 			Piece aRook = getPiece(oldRookLoc);
 			FileRank newRookLoc = aPiece.getRookShortCastleLoc();
+			undo.setCastledRook(aRook);
 			if ( aRook.moveTo(newRookLoc.getName()) ) {
 				board[newRookLoc.getX()][newRookLoc.getY()] = aRook;
 				drawEmptySpace(oldRookLoc);
@@ -1529,6 +3003,7 @@ public class Board {
 			// move the rook to the new castling location
 			Piece aRook = getPiece(oldRookLoc);
 			FileRank newRookLoc = aPiece.getRookLongCastleLoc();
+			undo.setCastledRook(aRook);
 			if ( aRook.moveTo(newRookLoc.getName()) ) {
 				board[newRookLoc.getX()][newRookLoc.getY()] = aRook;
 				drawEmptySpace(oldRookLoc);
@@ -1540,13 +3015,37 @@ public class Board {
 
 	private boolean isStalemate()
 	{
-		Chess.gameState currentState = Chess.gGameState;
+		if ( (! Metrics.bEnabled) && (! Events.isRecording()) ) return findStalemate();
+
+		long startTime = Metrics.bEnabled ? System.nanoTime() : 0;
+		GameEndEvent event = null;
+		if ( Events.isRecording() ) {
+			event = new GameEndEvent();
+			event.begin();
+		}
+
+		boolean bEnded = false;
+		try {
+			bEnded = findStalemate();
+			return bEnded;
+		}
+		finally {
+			if ( Metrics.bEnabled ) Metrics.isStalemate.record(startTime);
+			if ( event != null ) event.finish(this, "stalemate", bEnded);
+		}
+	}
+
+
+
+	private boolean findStalemate()
+	{
+		Chess.gameState currentState = state;
 
-		if ( Chess.gGameState == gameState.whiteMove ) {
-			Chess.gGameState = gameState.blackMove;
+		if ( state == gameState.whiteMove ) {
+			state = gameState.blackMove;
 		}
-		else if ( Chess.gGameState == gameState.blackMove ) {
-			Chess.gGameState = gameState.whiteMove;
+		else if ( state == gameState.blackMove ) {
+			state = gameState.whiteMove;
 		}
 
 		for (int col=0; col < columnCount; col++) {
@@ -1554,11 +3053,11 @@ public class Board {
 				Piece aPiece = board[col][row];
 				if (aPiece.getName().equals(Piece.PieceNames.emptySpace)) continue;
 
-				if ( Chess.gGameState == gameState.whiteMove ) {
+				if ( state == gameState.whiteMove ) {
 					if (aPiece.getColor().equals(Piece.Colors.White)) {
 						if (hasLegalMove(aPiece)) {
 							// White still has at least one legal move.
-							Chess.gGameState = currentState;
+							state = currentState;
 							return false;  // not in stalemate
 						}
 					}
@@ -1567,7 +3066,7 @@ public class Board {
 					if (aPiece.getColor().equals(Piece.Colors.Black)) {
 						if (hasLegalMove(aPiece)) {
 							// Black still has at least one legal move.
-							Chess.gGameState = currentState;
+							state = currentState;
 							return false;  // not in stalemate
 						}
 					}
@@ -1575,7 +3074,7 @@ public class Board {
 			}  //end of row
 		}  //end of column
 
-		Chess.gGameState = currentState;
+		state = currentState;
 		return true;
 	}
 
@@ -1591,7 +3090,7 @@ public class Board {
 
 			//System.out.println("hasLegalMove(): moving " + aPiece.toString() + " @" + aPiece.getLoc() +
 			//					" to " + toLoc.getName() );
-			if( aTestBoard.moveAndEvaluate(fromLoc.getName(), toLoc.getName()) ) {
+			if( aTestBoard.moveAndEvaluate(fromLoc.getName(), toLoc.getName()) != null ) {
 				// This is a legal move
 				return true;
 			}
@@ -1608,7 +3107,7 @@ public class Board {
 		String lookForThisKingLoc = whiteKingLoc.getName();
 		Piece.Colors c = Piece.Colors.White;
 
-		if ((Chess.gGameState == Chess.gameState.whiteMove) && (Chess.bWhiteInCheck)) {
+		if ((state == Chess.gameState.whiteMove) && (bWhiteInCheck)) {
 			System.out.println("White king @" + whiteKingLoc.getName() +
 					" is exposed after an illegal white move from " +
 					fromLoc + " to " + toLoc);
@@ -1617,7 +3116,7 @@ public class Board {
 			c = Piece.Colors.Black;
 		}
 
-		if ((Chess.gGameState == Chess.gameState.blackMove) && (Chess.bBlackInCheck)) {
+		if ((state == Chess.gameState.blackMove) && (bBlackInCheck)) {
 			System.out.println("Black king @" + blackKingLoc.getName() +
 					" is exposed after an illegal black move from " +
 					fromLoc + " to " + toLoc);
@@ -0,0 +1,48 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+
+/**
+ *   A flight recorder event for a slow copy of a game board.  A search
+ *   copies the board for every move it tries, so only copies that take
+ *   1 ms or more are recorded unless the recording settings say otherwise.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+@Name("chess.BoardCopy")
+@Label("Board Copy")
+@Category("Chess")
+@Description("A game board was copied and its moves were calculated")
+@StackTrace(false)
+@Threshold("1 ms")
+class BoardCopyEvent extends Event {
+
+	@Label("Position")
+	@Description("The position copied, in FEN")
+	String fen;
+
+
+
+	/**
+	 *   Finish the event and record it, if it is recorded at all.
+	 *
+	 * @param aBoard  The new copy of the game board
+	 */
+	void finish(Board aBoard) {
+		end();
+		if ( shouldCommit() ) {
+			this.fen = aBoard.toFen();
+			commit();
+		}
+	}
+
+}
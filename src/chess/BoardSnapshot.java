@@ -0,0 +1,257 @@
+package chess;
+
+import java.util.Arrays;
+
+
+/**
+ *   An immutable snapshot of the position on a game board.
+ *
+ *   <p>A game board is a graph of 64 {@link Piece} objects, each with
+ *   its own list of target squares, and copying one means calculating
+ *   all the moves again.  A snapshot keeps only what makes up the
+ *   position: the 32 bytes of a {@link PackedPosition}, which include
+ *   the side to move, the castling rights and the En Passant rule, and
+ *   the state of the game.  It never changes, so forking a position is
+ *   just sharing its snapshot, also between threads and without any
+ *   locking.  A game board is made from a snapshot only when moves have
+ *   to be made.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public final class BoardSnapshot {
+
+	/**
+	 *  The packed position.  It is never changed or handed out.
+	 */
+	private final long[] packed;
+
+	private final Chess.gameState state;
+
+
+
+	/**
+	 *   Take a snapshot of a game board.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 */
+	public BoardSnapshot(Board aBoard) {
+		this.packed = PackedPosition.pack(aBoard);
+		this.state = aBoard.getGameState();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return a copy of the packed position
+	 */
+	public long[] toPacked() {
+		return packed.clone();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the packed position itself, which must not be changed
+	 */
+	long[] getPacked() {
+		return packed;
+	}
+
+
+
+	/**
+	 *   Make a new game board with this position.
+	 *
+	 * @return
+	 * 		Return a new game board
+	 */
+	public Board toBoard() {
+		return new Board(this);
+	}
+
+
+
+	/**
+	 * @param x  File of a square, 0 to 7
+	 * @param y  Rank of a square, 0 to 7
+	 *
+	 * @return
+	 * 		Return the name of the piece on the square, or "emptySpace"
+	 */
+	public Piece.PieceNames getPieceName(int x, int y) {
+		return PackedPosition.getPieceName(getSquareCode(x, y));
+	}
+
+
+
+	/**
+	 * @param x  File of a square, 0 to 7
+	 * @param y  Rank of a square, 0 to 7
+	 *
+	 * @return
+	 * 		Return the color of the piece on the square, or "null" if the
+	 * 		square is empty
+	 */
+	public Piece.Colors getPieceColor(int x, int y) {
+		return PackedPosition.getPieceColor(getSquareCode(x, y), y);
+	}
+
+
+
+	/**
+	 * @param x  File of a square, 0 to 7
+	 * @param y  Rank of a square, 0 to 7
+	 *
+	 * @return
+	 * 		Return the 4-bit code of the square (see {@link PackedPosition})
+	 */
+	public int getSquareCode(int x, int y) {
+		return PackedPosition.getCode(packed, 0, x + 8 * y);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the state of the game
+	 */
+	public Chess.gameState getGameState() {
+		return state;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "Black" if it is black's turn to move, otherwise "White"
+	 */
+	public Piece.Colors getSideToMove() {
+		return (getGameState() == Chess.gameState.blackMove) ? Piece.Colors.Black : Piece.Colors.White;
+	}
+
+
+
+	/**
+	 * @param c             A side
+	 * @param bShortCastle  "true" for castling king side, "false" for queen side
+	 *
+	 * @return
+	 * 		Return "true" if this side may still castle that way
+	 */
+	public boolean hasCastlingRight(Piece.Colors c, boolean bShortCastle) {
+		return getSquareCode(bShortCastle ? 7 : 0, c.equals(Piece.Colors.White) ? 0 : 7) == PackedPosition.castlingRook;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the file (0 to 7) on which the side to move may capture
+	 * 		En Passant, or -1
+	 */
+	public int getEnPassantFile() {
+		for (int x=0; x < 8; x++) {
+			if ( (getSquareCode(x, 3) == PackedPosition.enPassantPawn) ||
+				 (getSquareCode(x, 4) == PackedPosition.enPassantPawn) ) return x;
+		}
+		return -1;
+	}
+
+
+
+	/**
+	 *   Write this position in Forsyth-Edwards Notation (FEN), without
+	 *   making a game board.  The move counters are always "0 1".
+	 *
+	 * @return
+	 * 		Return the position in FEN format
+	 */
+	public String toFen() {
+		StringBuilder fen = new StringBuilder(90);
+
+		for (int y=7; y >= 0; y--) {
+			int emptySquares = 0;
+			for (int x=0; x < 8; x++) {
+				Piece.PieceNames name = getPieceName(x, y);
+				if ( name.equals(Piece.PieceNames.emptySpace) ) {
+					emptySquares++;
+					continue;
+				}
+
+				if ( emptySquares > 0 ) fen.append(emptySquares);
+				emptySquares = 0;
+
+				char letter = Board.getFenLetter(name);
+				if ( getPieceColor(x, y).equals(Piece.Colors.Black) ) letter = Character.toLowerCase(letter);
+				fen.append(letter);
+			}
+			if ( emptySquares > 0 ) fen.append(emptySquares);
+			if ( y > 0 ) fen.append('/');
+		}
+
+		fen.append(getSideToMove().equals(Piece.Colors.White) ? " w " : " b ");
+
+		int length = fen.length();
+		if ( hasCastlingRight(Piece.Colors.White, true) )  fen.append('K');
+		if ( hasCastlingRight(Piece.Colors.White, false) ) fen.append('Q');
+		if ( hasCastlingRight(Piece.Colors.Black, true) )  fen.append('k');
+		if ( hasCastlingRight(Piece.Colors.Black, false) ) fen.append('q');
+		if ( fen.length() == length ) fen.append('-');
+
+		int file = getEnPassantFile();
+		if ( file < 0 ) {
+			fen.append(" -");
+		}
+		else {
+			fen.append(' ').append((char) ('a' + file))
+			   .append(getSideToMove().equals(Piece.Colors.White) ? '6' : '3');
+		}
+
+		fen.append(" 0 1");
+		return fen.toString();
+	}
+
+
+
+	/*
+	 *  Two snapshots are equal if they hold the same position and game state.
+	 *
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object anObject) {
+		if ( this == anObject ) return true;
+		if ( ! (anObject instanceof BoardSnapshot) ) return false;
+
+		BoardSnapshot aSnapshot = (BoardSnapshot) anObject;
+		return (state == aSnapshot.state) && Arrays.equals(packed, aSnapshot.packed);
+	}
+
+
+
+	/*
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return (int) PackedPosition.hash(packed, 0) + 31 * state.ordinal();
+	}
+
+
+
+	/*
+	 *  Return the position in FEN.
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return toFen();
+	}
+
+}
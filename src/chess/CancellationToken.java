@@ -0,0 +1,55 @@
+package chess;
+
+
+/**
+ *   A request to stop a long computation, such as a search.  One thread
+ *   (for example the handler of a request that timed out) calls
+ *   {@link #cancel()}, and the computation, which checks the token from
+ *   time to time, stops as soon as it sees it and returns the best result
+ *   found so far.
+ *
+ *   <p>A token can be shared by several computations, and cancels all of
+ *   them.  Once cancelled, a token stays cancelled.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class CancellationToken {
+
+	private volatile boolean bCancelled = false;
+	private volatile long cancelTime = 0L;
+
+
+
+	/**
+	 *   Ask every computation that uses this token to stop.
+	 */
+	public void cancel() {
+		if ( bCancelled ) return;
+		cancelTime = System.nanoTime();
+		bCancelled = true;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if {@link #cancel()} has been called
+	 */
+	public boolean isCancelled() {
+		return bCancelled;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the value of {@link System#nanoTime()} when the token was
+	 * 		cancelled, or 0 if it has not been cancelled
+	 */
+	public long getCancelTime() {
+		return bCancelled ? cancelTime : 0L;
+	}
+
+}
@@ -1,6 +1,7 @@
 package chess;
 
 import java.io.BufferedReader;
+import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
@@ -15,7 +16,30 @@ import java.util.StringTokenizer;
  * <p>
  * To run this chess program:
  * <p>
- * &nbsp;&nbsp;&nbsp; java chess.Chess &nbsp;  &lt;optional playbackFileName&gt;
+ * &nbsp;&nbsp;&nbsp; java chess.Chess &nbsp; &lt;options&gt; &nbsp; &lt;optional playbackFileName&gt;
+ * <p>
+ * Options:
+ * <ul>
+ * <li>-computer white|black &nbsp; let the computer play one side</li>
+ * <li>-depth n &nbsp; search depth of the computer player (in plies)</li>
+ * <li>-noponder &nbsp; do not let the computer player think while the
+ *     other player is choosing a move</li>
+ * <li>-book bookFileName &nbsp; a Polyglot opening book for the computer player</li>
+ * <li>-syzygy path &nbsp; directories of Syzygy tablebase files used to end decided games</li>
+ * <li>-bitbases bitbaseFileName &nbsp; the built-in KQK, KRK and KPK bitbases
+ *     (default "bitbases.bin", built with "java chess.Bitbase")</li>
+ * <li>-record recordFileName &nbsp; add the finished game to a binary game record file</li>
+ * <li>-index directoryName &nbsp; add the finished game to a position index
+ *     (see PositionIndex)</li>
+ * <li>-explorer directoryName &nbsp; add the opening moves of the finished game
+ *     to an opening explorer (see OpeningExplorer)</li>
+ * <li>-uci &nbsp; talk to a chess GUI with the UCI protocol instead of
+ *     playing on the console</li>
+ * </ul>
+ * <p>
+ * Besides a move such as "e2 e4", a player may type "resign", "draw"
+ * (to accept a draw offered with "e2 e4 draw?"), "undo" to take back
+ * the last move, or "redo" to play a move that was taken back again.
  * <p>
  *
  *
@@ -72,13 +96,22 @@ public class Chess {
 		 *   the current side is not under a check either.  Therefore, this
 		 *   created a "stalemate" in the chess game.
 		 */
-		staleMate};
+		staleMate,
 
+		/**
+		 *   An endgame tablebase shows that white wins with perfect play
+		 */
+		adjudicatedWhiteWin,
 
-	/**
-	 *  Current state of this chess game.  White always move first.
-	 */
-	public static gameState gGameState = gameState.whiteMove;
+		/**
+		 *   An endgame tablebase shows that black wins with perfect play
+		 */
+		adjudicatedBlackWin,
+
+		/**
+		 *   An endgame tablebase shows that the game is a draw with perfect play
+		 */
+		adjudicatedDraw};
 
 
 	/**
@@ -108,57 +141,167 @@ public class Chess {
 
 
 	/**
-	 *   A pawn is promoted to another piece when it reaches the last rank.
-	 *   There are four promotion choices: rook, knight, bishop, or queen.
-	 *   By default, a pawn is promoted to a new queen.
-	 *
+	 *  Set to "true" if one side offered a "draw" to his opponent
 	 */
-	public static pawnPromotionChoices  pawnPromotionChoice = pawnPromotionChoices.queen;
+	public static boolean bDrawOffered = false;
+
+	private static ArrayList<String> movements = new ArrayList<String>();
+
+
 
 	/**
-	 *  Set to "true" if white is in check
+	 *  The computer player, or "null" if both sides are played by people
 	 */
-	public static boolean bWhiteInCheck = false;
+	private static Engine engine = null;
 
 	/**
-	 *  Set to "true" if black is in check
+	 *  The side played by the computer player
 	 */
-	public static boolean bBlackInCheck = false;
+	private static Piece.Colors computerColor = Piece.Colors.Black;
 
 	/**
-	 *  Set to "true" if one side offered a "draw" to his opponent
+	 *  Thinking on the other player's time, or "null" if it is turned off
 	 */
-	public static boolean bDrawOffered = false;
+	private static Ponder ponder = null;
 
-	private static ArrayList<String> movements = new ArrayList<String>();
+	/**
+	 *  Endgame tablebases used to end games that are already decided
+	 */
+	private static TablebaseList tablebases = new TablebaseList();
 
 
 
 	/**
 	 * @param args
 	 *
-	 * An optional input file name used to auto playback
-	 * a previous chess moves.
+	 * Optional settings for a computer player, followed by an optional
+	 * input file name used to auto playback a previous chess moves.
 	 *
 	 */
 	public static void main(String[] args) {
 
-		if ( args.length >= 1 ) {
-			// We are given an input file
-			readInputFile(args[0].trim());
+		String bookFileName = "";
+		String bitbaseFileName = Bitbase.defaultFileName;
+		SyzygyTablebase syzygy = null;
+		int depth = Engine.defaultDepth;
+		boolean bUci = false;
+		boolean bPonder = true;
+		String recordFileName = "";
+		String indexDirectoryName = "";
+		String explorerDirectoryName = "";
+
+		for (int i=0; i < args.length; i++) {
+			String anArg = args[i].trim();
+			boolean bHasValue = (i+1 < args.length);
+
+			if ( anArg.equals("-computer") && bHasValue ) {
+				engine = new Engine();
+				if ( args[++i].trim().equalsIgnoreCase("white") ) {
+					computerColor = Piece.Colors.White;
+				}
+				else {
+					computerColor = Piece.Colors.Black;
+				}
+			}
+			else if ( anArg.equals("-depth") && bHasValue ) {
+				depth = Integer.parseInt(args[++i].trim());
+			}
+			else if ( anArg.equals("-book") && bHasValue ) {
+				bookFileName = args[++i].trim();
+			}
+			else if ( anArg.equals("-syzygy") && bHasValue ) {
+				syzygy = new SyzygyTablebase(args[++i].trim());
+			}
+			else if ( anArg.equals("-bitbases") && bHasValue ) {
+				bitbaseFileName = args[++i].trim();
+			}
+			else if ( anArg.equals("-record") && bHasValue ) {
+				recordFileName = args[++i].trim();
+			}
+			else if ( anArg.equals("-index") && bHasValue ) {
+				indexDirectoryName = args[++i].trim();
+			}
+			else if ( anArg.equals("-explorer") && bHasValue ) {
+				explorerDirectoryName = args[++i].trim();
+			}
+			else if ( anArg.equals("-noponder") ) {
+				bPonder = false;
+			}
+			else if ( anArg.equals("-uci") ) {
+				bUci = true;
+			}
+			else {
+				// We are given an input file
+				readInputFile(anArg);
+			}
+		}
+
+		//
+		// Load the built-in bitbases first, so the simplest endgames
+		// are answered without going to the Syzygy files.
+		//
+		if ( new File(bitbaseFileName).exists() ) {
+			try {
+				tablebases.add(Bitbase.load(bitbaseFileName));
+			}
+			catch (IOException e) {
+				System.out.println("Cannot load bitbases: " + e.getMessage());
+			}
+		}
+		if ( syzygy != null ) tablebases.add(syzygy);
+
+		if ( bUci && (engine == null) ) engine = new Engine();
+
+		if ( engine != null ) {
+			engine.setDepth(depth);
+			if ( ! tablebases.isEmpty() ) engine.getSearch().setTablebase(tablebases);
+			if ( ! bookFileName.isEmpty() ) {
+				try {
+					engine.setBook(new PolyglotBook(bookFileName));
+				}
+				catch (IOException e) {
+					// Play without an opening book
+					System.out.println("Cannot open opening book: " + e.getMessage());
+				}
+			}
+		}
+
+		if ( bUci ) {
+			try {
+				new Uci(engine).run(System.in, System.out);
+			}
+			catch (IOException e) {
+				System.out.println("info string " + e.getMessage());
+			}
+			return;
 		}
 
+		if ( (engine != null) && bPonder ) ponder = new Ponder(engine);
+
 		// Initialize the chess game board
 		Board  board = new Board();
 		board.show();
-		gGameState = gameState.whiteMove;  // White moves first
+		board.setGameState(gameState.whiteMove);  // White moves first
 
 		Scanner keyboardInput = new Scanner(System.in);
 
-		while ( ! isGameOver() ) {
-			// Read a move or a command from the user
+		GameRecord gameRecord = new GameRecord();
+		gameRecord.setTag("White", ((engine != null) && computerColor.equals(Piece.Colors.White)) ? "chess51" : "Player");
+		gameRecord.setTag("Black", ((engine != null) && computerColor.equals(Piece.Colors.Black)) ? "chess51" : "Player");
+
+		while ( ! isGameOver(board) ) {
+			// Read a move or a command from the user, or let the
+			// computer player choose a move
 			String token1 = "", token2 = "", token3 = "";
-			String userInput = getNextMove(keyboardInput);
+			String userInput;
+			if ( (engine != null) && (board.getSideToMove().equals(computerColor)) ) {
+				userInput = getComputerMove(board);
+			}
+			else {
+				// Think about the reply while the player chooses a move
+				if ( ponder != null ) ponder.start(board);
+				userInput = getNextMove(keyboardInput);
+			}
 
 			if ( ! userInput.isEmpty() ) {
 				StringTokenizer st = new StringTokenizer(userInput, " ");
@@ -170,17 +313,47 @@ public class Chess {
 			// Execute the given "move" or command
 			switch (token1) {
 				case "resign":
-					if ( gGameState == gameState.whiteMove) {
-						gGameState = gameState.whiteResign;
+					if ( board.getGameState() == gameState.whiteMove) {
+						board.setGameState(gameState.whiteResign);
 					}
 					else {
-						gGameState = gameState.blackResign;
+						board.setGameState(gameState.blackResign);
+					}
+					break;
+
+				case "undo":
+					// Take back a move.  Against the computer, take back
+					// its reply as well so that it is the player's turn again.
+					if ( board.undo() ) {
+						// A draw offered with the move taken back is withdrawn
+						bDrawOffered = false;
+						gameRecord.removeLastMove();
+						if ( (engine != null) && board.getSideToMove().equals(computerColor) && board.undo() ) {
+							gameRecord.removeLastMove();
+						}
+						board.show();
+					}
+					else {
+						System.out.println("No move to take back");
+					}
+					break;
+
+				case "redo":
+					// Play again a move that was taken back
+					if ( board.redo() ) {
+						// The move is played again without its draw offer
+						bDrawOffered = false;
+						gameRecord.addMove(board.getHistoryMove(board.getPly() - 1));
+						board.show();
+					}
+					else {
+						System.out.println("No move to play again");
 					}
 					break;
 
 				case "draw":
 					if ( bDrawOffered ) {
-						gGameState = gameState.drawAccepted;
+						board.setGameState(gameState.drawAccepted);
 					}
 					else {
 						// illegal command.  You cannot accept a draw
@@ -194,23 +367,26 @@ public class Chess {
 					bDrawOffered = false;
 
 					// Decode the third optional command token
+					pawnPromotionChoices promotion;
 					switch (token3) {
 						case "r":
-							pawnPromotionChoice = pawnPromotionChoices.rook;
+							promotion = pawnPromotionChoices.rook;
 							break;
 
 						case "n":
-							pawnPromotionChoice = pawnPromotionChoices.knight;
+							promotion = pawnPromotionChoices.knight;
 							break;
 
 						case "b":
-							pawnPromotionChoice = pawnPromotionChoices.bishop;
+							promotion = pawnPromotionChoices.bishop;
 							break;
 
 						case "q":
 						default:
-							pawnPromotionChoice = pawnPromotionChoices.queen;
+							promotion = pawnPromotionChoices.queen;
 					}
+					board.setPawnPromotionChoice(promotion);
+					Move playedMove = toMove(board, token1, token2, promotion);
 
 					// Offer a draw request to my opponent
 					if ( token3.equals("draw?") ) bDrawOffered = true;
@@ -218,17 +394,21 @@ public class Chess {
 					// move a game piece
 					if ( board.move(token1, token2) ) {
 						// valid move
-						if (gGameState != gameState.checkMate) {
+						if ( playedMove != null ) gameRecord.addMove(playedMove);
+
+						if (board.getGameState() != gameState.checkMate) {
 							//
 							// This game will continue to alternate turns
 							// if it is not ended in "checkmate".
 							//
-							if ( gGameState == gameState.whiteMove ) {
-								gGameState = gameState.blackMove;
+							if ( board.getGameState() == gameState.whiteMove ) {
+								board.setGameState(gameState.blackMove);
 							}
-							else if ( gGameState == gameState.blackMove ) {
-								gGameState = gameState.whiteMove;
+							else if ( board.getGameState() == gameState.blackMove ) {
+								board.setGameState(gameState.whiteMove);
 							}
+
+							adjudicate(board);
 						}
 
 					}
@@ -240,16 +420,106 @@ public class Chess {
 
 		}  // end of while loop
 
+		if ( ponder != null ) ponder.stop();
 		keyboardInput.close();
+
+		gameRecord.setResult(GameRecord.getResult(board));
+		if ( ! recordFileName.isEmpty() ) saveGameRecord(recordFileName, gameRecord);
+		if ( ! indexDirectoryName.isEmpty() ) indexGame(indexDirectoryName, gameRecord);
+		if ( ! explorerDirectoryName.isEmpty() ) exploreGame(explorerDirectoryName, gameRecord);
+	}
+
+
+
+	/*
+	 * Add the opening moves of a finished game to an opening explorer.
+	 */
+	private static void exploreGame(String directoryName, GameRecord gameRecord)
+	{
+		try {
+			OpeningExplorer explorer = new OpeningExplorer(directoryName);
+			try {
+				explorer.addGame(gameRecord);
+			}
+			finally {
+				explorer.close();
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Cannot add the game to the opening explorer: " + e.getMessage());
+		}
+	}
+
+
+
+	/*
+	 * Add a finished game to a position index.
+	 */
+	private static void indexGame(String directoryName, GameRecord gameRecord)
+	{
+		try {
+			PositionIndex index = new PositionIndex(directoryName);
+			try {
+				index.addGame(gameRecord);
+			}
+			finally {
+				index.close();
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Cannot index the game: " + e.getMessage());
+		}
+	}
+
+
+
+	/*
+	 * Add a finished game to the end of a game record file.
+	 */
+	private static void saveGameRecord(String fileName, GameRecord gameRecord)
+	{
+		try {
+			GameRecordWriter writer = new GameRecordWriter(fileName);
+			try {
+				writer.write(gameRecord);
+			}
+			finally {
+				writer.close();
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Cannot save the game record: " + e.getMessage());
+		}
+	}
+
+
+
+	/*
+	 * Make a move from the locations typed by the player.  The promotion
+	 * choice is only kept for a pawn that reaches the last rank.
+	 */
+	private static Move toMove(Board board, String fromLoc, String toLoc,
+							   pawnPromotionChoices promotion)
+	{
+		if ( (! FileRank.isValid(fromLoc)) || (! FileRank.isValid(toLoc)) ) return null;
+
+		FileRank from = new FileRank(fromLoc);
+		FileRank to = new FileRank(toLoc);
+		Piece aPiece = board.getPiece(from.getX(), from.getY());
+
+		if ( aPiece.getName().equals(Piece.PieceNames.pawn) && ((to.getY() == 0) || (to.getY() == 7)) ) {
+			return new Move(from, to, promotion);
+		}
+		return new Move(from, to);
 	}
 
 
 
-	private static boolean isGameOver()
+	private static boolean isGameOver(Board board)
 	{
 		boolean bGameOver = false;
 
-		switch ( gGameState ) {
+		switch ( board.getGameState() ) {
 			case whiteMove:
 				System.out.print("White's move: ");
 				break;
@@ -273,7 +543,7 @@ public class Chess {
 				break;
 
 			case checkMate:
-				if (bWhiteInCheck) {
+				if (board.isWhiteInCheck()) {
 					System.out.print("Black wins");
 				}
 				else {
@@ -286,6 +556,20 @@ public class Chess {
 				bGameOver = true;
 				break;
 
+			case adjudicatedWhiteWin:
+				System.out.print("White wins");
+				bGameOver = true;
+				break;
+
+			case adjudicatedBlackWin:
+				System.out.print("Black wins");
+				bGameOver = true;
+				break;
+
+			case adjudicatedDraw:
+				bGameOver = true;
+				break;
+
 			default:
 		}
 
@@ -312,6 +596,56 @@ public class Chess {
 
 
 
+	/*
+	 * End the game if the endgame tablebase knows the outcome of
+	 * the position on the game board.
+	 */
+	private static void adjudicate(Board board)
+	{
+		if ( board.getPieceCount() > tablebases.getMaxPieces() ) return;
+
+		boolean bWhiteToMove = board.getSideToMove().equals(Piece.Colors.White);
+
+		switch (tablebases.probe(board)) {
+			case win:
+				board.setGameState(bWhiteToMove ? gameState.adjudicatedWhiteWin :
+												  gameState.adjudicatedBlackWin);
+				break;
+
+			case loss:
+				board.setGameState(bWhiteToMove ? gameState.adjudicatedBlackWin :
+												  gameState.adjudicatedWhiteWin);
+				break;
+
+			case draw:
+				board.setGameState(gameState.adjudicatedDraw);
+				break;
+
+			case unknown:
+			default:
+		}
+	}
+
+
+
+	/*
+	 * Let the computer player choose a move.  The move is displayed
+	 * the same way as a move read from an input file.  If the player
+	 * made the move that was pondered, its result is used.
+	 */
+	private static String getComputerMove(Board board)
+	{
+		Move aMove = (ponder == null) ? null : ponder.getMove(board);
+		if ( aMove == null ) aMove = engine.chooseMove(board);
+		String nextMove = (aMove == null) ? "resign" : aMove.toString();
+
+		System.out.println(nextMove);
+		System.out.println();
+		return nextMove;
+	}
+
+
+
 	/*
 	 * Read each line from the input file and store the line
 	 * in an ArrayList of type String.
@@ -0,0 +1,151 @@
+package chess;
+
+import java.util.Random;
+
+
+/**
+ *   A computer player.  The engine first looks for the position in its
+ *   opening book (if it has one).  Only when the position is not in the
+ *   book does it search for the best move.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Engine {
+
+	/**
+	 *  Default search depth in plies
+	 */
+	public static final int defaultDepth = 3;
+
+	private final Search search;
+	private final Random random = new Random();
+	private PolyglotBook book = null;
+	private int depth = defaultDepth;
+	private boolean bLastMoveFromBook = false;
+
+
+
+	/**
+	 *   Default constructor.  Create an engine with its own search
+	 *   and no opening book.
+	 */
+	public Engine() {
+		this(new Search());
+	}
+
+
+
+	/**
+	 *   Create an engine that uses a given search.
+	 *
+	 * @param search
+	 * 		The search used when a position is not in the book
+	 */
+	public Engine(Search search) {
+		this.search = search;
+	}
+
+
+
+	/**
+	 *   Set the opening book consulted before searching.
+	 *
+	 * @param book
+	 * 		An opening book, or "null" to play without a book
+	 */
+	public void setBook(PolyglotBook book) {
+		this.book = book;
+	}
+
+
+
+	/**
+	 *   Set how deep the engine searches.
+	 *
+	 * @param depth
+	 * 		Search depth in plies
+	 */
+	public void setDepth(int depth) {
+		this.depth = depth;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the search used by this engine
+	 */
+	public Search getSearch() {
+		return search;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the last move chosen came from the opening book
+	 */
+	public boolean isLastMoveFromBook() {
+		return bLastMoveFromBook;
+	}
+
+
+
+	/**
+	 *   Choose a move for the side that is due to move.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @return
+	 * 		Return the chosen move, or "null" if there is no legal move
+	 */
+	public Move chooseMove(Board aBoard) {
+		if ( book != null ) {
+			Move aMove = book.getMove(aBoard, random);
+			if ( aMove != null ) {
+				bLastMoveFromBook = true;
+				return aMove;
+			}
+		}
+
+		bLastMoveFromBook = false;
+		SearchResult result = search.search(aBoard, depth);
+		return (result == null) ? null : result.getBestMove();
+	}
+
+
+
+	/**
+	 *   Choose a move for the side that is due to move, searching one
+	 *   ply deeper at a time until a depth or time limit is reached.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @param maxDepth
+	 * 		The deepest iteration to search, in plies
+	 *
+	 * @param timeLimit
+	 * 		Time limit in milliseconds, or 0 for no time limit
+	 *
+	 * @return
+	 * 		Return the chosen move, or "null" if there is no legal move
+	 */
+	public Move chooseMove(Board aBoard, int maxDepth, long timeLimit) {
+		if ( book != null ) {
+			Move aMove = book.getMove(aBoard, random);
+			if ( aMove != null ) {
+				bLastMoveFromBook = true;
+				return aMove;
+			}
+		}
+
+		bLastMoveFromBook = false;
+		SearchResult result = search.search(aBoard, maxDepth, timeLimit);
+		return (result == null) ? null : result.getBestMove();
+	}
+
+}
@@ -0,0 +1,292 @@
+package chess;
+
+
+/**
+ *   A static evaluation of a game board.  The score is measured in
+ *   centipawns (1/100 of a pawn) and is always given from white's point
+ *   of view.  A positive score means white is better, a negative score
+ *   means black is better.
+ *
+ *   <p>The score is made up of three parts:
+ *   <ul>
+ *   <li>material, the sum of the values of all the pieces;</li>
+ *   <li>mobility, the number of squares each piece can move to;</li>
+ *   <li>pawn structure, penalties for doubled, isolated and backward
+ *       pawns and a bonus for passed pawns.</li>
+ *   </ul>
+ *
+ *   <p>The pawn structure terms only depend on where the pawns are.  They
+ *   are cached in a {@link PawnHashTable} keyed by the pawn hash key of
+ *   the board.  Each Evaluation object owns its own table and is not meant
+ *   to be shared between threads.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Evaluation {
+
+	/**
+	 *  Value of each piece, in centipawns, indexed by Piece.PieceNames.
+	 *  The king is not counted as material.
+	 */
+	private static final int[] pieceValues = { 100, 500, 320, 330, 900, 0, 0 };
+
+	private static final int mobilityBonus = 2;
+	private static final int doubledPawnPenalty = 15;
+	private static final int isolatedPawnPenalty = 12;
+	private static final int backwardPawnPenalty = 8;
+
+	/**
+	 *  Bonus for a passed pawn, indexed by how far the pawn has advanced
+	 *  from its own side (0 = first rank, 7 = last rank).
+	 */
+	private static final int[] passedPawnBonus = { 0, 5, 10, 20, 35, 60, 100, 0 };
+
+	private static final int black = Piece.Colors.Black.ordinal();
+	private static final int white = Piece.Colors.White.ordinal();
+
+
+	private final PawnHashTable pawnHashTable;
+
+
+
+	/**
+	 *   Default constructor.  Create an evaluation with a pawn hash table
+	 *   of the default size.
+	 */
+	public Evaluation() {
+		this(new PawnHashTable());
+	}
+
+
+
+	/**
+	 *   Create an evaluation that caches pawn structure scores in a
+	 *   given pawn hash table.
+	 *
+	 * @param pawnHashTable
+	 * 		A pawn hash table
+	 */
+	public Evaluation(PawnHashTable pawnHashTable) {
+		this.pawnHashTable = pawnHashTable;
+	}
+
+
+
+	/**
+	 *   Get the value of a piece in centipawns.
+	 *
+	 * @param name
+	 * 		The name of a piece (e.g. rook, queen, etc.)
+	 *
+	 * @return
+	 * 		Return the value of this piece.  Kings and empty
+	 * 		squares are worth zero.
+	 */
+	public static int getPieceValue(Piece.PieceNames name) {
+		return pieceValues[name.ordinal()];
+	}
+
+
+
+	/**
+	 *   Get the pawn hash table used by this evaluation.  It can be used
+	 *   to read the hit and miss counters.
+	 *
+	 * @return
+	 * 		Return the pawn hash table
+	 */
+	public PawnHashTable getPawnHashTable() {
+		return pawnHashTable;
+	}
+
+
+
+	/**
+	 *   Evaluate a game board.   The board must have been evaluated
+	 *   (i.e. all the target locations of every piece are up to date).
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the score in centipawns from white's point of view
+	 */
+	public int evaluate(Board aBoard) {
+		int score = 0;
+
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece aPiece = aBoard.getPiece(x, y);
+				if ( aPiece.isEmptySpace() ) continue;
+
+				int value = getPieceValue(aPiece.getName()) +
+							mobilityBonus * aPiece.getTargets().size();
+
+				if ( aPiece.getColor().equals(Piece.Colors.White) ) {
+					score += value;
+				}
+				else {
+					score -= value;
+				}
+			}
+		}
+
+		return score + evaluatePawns(aBoard);
+	}
+
+
+
+	/**
+	 *   Get the pawn structure score of a game board.  The pawn hash
+	 *   table is checked first.  The score is only calculated if this
+	 *   pawn structure has not been seen before.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the pawn structure score from white's point of view
+	 */
+	public int evaluatePawns(Board aBoard) {
+		long pawnKey = aBoard.getPawnKey();
+		if ( pawnHashTable.probe(pawnKey) ) {
+			return pawnHashTable.getScore(pawnKey);
+		}
+
+		int score = calculatePawnStructure(aBoard);
+		pawnHashTable.store(pawnKey, score);
+		return score;
+	}
+
+
+
+	/**
+	 *   Calculate the pawn structure score without using the pawn
+	 *   hash table.
+	 */
+	private int calculatePawnStructure(Board aBoard) {
+		//
+		// For each color and each file, remember the number of pawns
+		// and the lowest and highest rank occupied by a pawn.
+		//
+		int[][] pawnCount = new int[2][8];
+		int[][] lowestRank = new int[2][8];
+		int[][] highestRank = new int[2][8];
+
+		for (int c=0; c < 2; c++) {
+			for (int x=0; x < 8; x++) {
+				lowestRank[c][x] = 8;
+				highestRank[c][x] = -1;
+			}
+		}
+
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece aPiece = aBoard.getPiece(x, y);
+				if ( ! aPiece.getName().equals(Piece.PieceNames.pawn) ) continue;
+
+				int c = aPiece.getColor().ordinal();
+				pawnCount[c][x]++;
+				if ( y < lowestRank[c][x] ) lowestRank[c][x] = y;
+				if ( y > highestRank[c][x] ) highestRank[c][x] = y;
+			}
+		}
+
+		int score = 0;
+
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece aPiece = aBoard.getPiece(x, y);
+				if ( ! aPiece.getName().equals(Piece.PieceNames.pawn) ) continue;
+
+				int c = aPiece.getColor().ordinal();
+				int opponent = (c == white) ? black : white;
+				int pawnScore = 0;
+
+				// Doubled pawn.  Penalize every pawn on a file that
+				// has more than one pawn of the same color.
+				if ( pawnCount[c][x] > 1 ) pawnScore -= doubledPawnPenalty;
+
+				// Isolated pawn.  No pawn of the same color on
+				// either adjacent file.
+				boolean bIsolated = ((x == 0) || (pawnCount[c][x-1] == 0)) &&
+									((x == 7) || (pawnCount[c][x+1] == 0));
+				if ( bIsolated ) pawnScore -= isolatedPawnPenalty;
+
+				// Passed pawn.  No opponent pawn ahead of this pawn on
+				// the same file or on either adjacent file.
+				boolean bPassed = true;
+				for (int f = Math.max(0, x-1); f <= Math.min(7, x+1); f++) {
+					if ( c == white ) {
+						if ( highestRank[opponent][f] > y ) bPassed = false;
+					}
+					else {
+						if ( lowestRank[opponent][f] < y ) bPassed = false;
+					}
+				}
+				if ( bPassed ) {
+					int advanced = (c == white) ? y : 7 - y;
+					pawnScore += passedPawnBonus[advanced];
+				}
+
+				// Backward pawn.  All the pawns of the same color on the
+				// adjacent files are further advanced, and the square in
+				// front of this pawn is attacked by an opponent pawn.
+				if ( (! bIsolated) && (! bPassed) &&
+					 (! isSupportable(lowestRank[c], highestRank[c], x, y, c == white)) &&
+					 (isStopSquareAttacked(aBoard, x, y, c == white)) ) {
+					pawnScore -= backwardPawnPenalty;
+				}
+
+				if ( c == white ) {
+					score += pawnScore;
+				}
+				else {
+					score -= pawnScore;
+				}
+			}
+		}
+
+		return score;
+	}
+
+
+
+	/**
+	 *   Check if a pawn has a pawn of the same color on an adjacent file
+	 *   that is level with or behind it.  Such a pawn can advance to
+	 *   protect it.
+	 */
+	private boolean isSupportable(int[] lowestRank, int[] highestRank,
+								  int x, int y, boolean bWhite) {
+		for (int f = x-1; f <= x+1; f += 2) {
+			if ( (f < 0) || (f > 7) ) continue;
+			if ( bWhite && (lowestRank[f] <= y) ) return true;
+			if ( (! bWhite) && (highestRank[f] >= y) ) return true;
+		}
+		return false;
+	}
+
+
+
+	/**
+	 *   Check if the square right in front of a pawn is attacked by
+	 *   an opponent pawn.
+	 */
+	private boolean isStopSquareAttacked(Board aBoard, int x, int y, boolean bWhite) {
+		int attackerY = bWhite ? y + 2 : y - 2;
+		if ( (attackerY < 0) || (attackerY > 7) ) return false;
+
+		Piece.Colors opponent = bWhite ? Piece.Colors.Black : Piece.Colors.White;
+		for (int f = x-1; f <= x+1; f += 2) {
+			if ( (f < 0) || (f > 7) ) continue;
+			Piece aPiece = aBoard.getPiece(f, attackerY);
+			if ( aPiece.getName().equals(Piece.PieceNames.pawn) &&
+				 aPiece.getColor().equals(opponent) ) return true;
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,116 @@
+package chess;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+
+
+/**
+ *   Java Flight Recorder events of the game board and the search.
+ *
+ *   <p>The events are part of every build.  They cost almost nothing
+ *   until a recording is started: a listener on the flight recorder keeps
+ *   track of whether any recording is running, and while none is, no
+ *   event is created and no time is taken (see {@link #isRecording()}).
+ *   A recording can be started for example with
+ *   <pre>
+ *      java -XX:StartFlightRecording=filename=chess.jfr ...
+ *   </pre>
+ *   and they then show up in the "Chess" category of JDK Mission
+ *   Control: {@link MoveEvent}, {@link GameEndEvent},
+ *   {@link SearchIterationEvent} and {@link BoardCopyEvent}.
+ *
+ *   <p>The events need the jdk.jfr API, which Java 8 has from update 262
+ *   on.  On an older Java runtime, or when the program is started with
+ *   "-Dchess.jfr=false", no event is created.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public final class Events {
+
+	/**
+	 *  "true" when the flight recorder events are available; they are only
+	 *  created while a recording runs
+	 */
+	public static final boolean bEnabled = isAvailable();
+
+	private static volatile boolean bRecording = false;
+
+	static {
+		if ( bEnabled ) RecordingWatcher.start();
+	}
+
+
+
+	private Events() {
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if a flight recording is running, so events
+	 * 		should be created
+	 */
+	public static boolean isRecording() {
+		return bRecording;
+	}
+
+
+
+	private static boolean isAvailable() {
+		if ( ! Boolean.parseBoolean(System.getProperty("chess.jfr", "true")) ) return false;
+
+		try {
+			Class.forName("jdk.jfr.Event");
+			return true;
+		}
+		catch (ClassNotFoundException e) {
+			return false;
+		}
+		catch (LinkageError e) {
+			return false;
+		}
+	}
+
+
+
+	/**
+	 *  Follows the recordings of the flight recorder.  This class is only
+	 *  loaded when the jdk.jfr API is there.
+	 */
+	private static final class RecordingWatcher implements FlightRecorderListener {
+
+		static void start() {
+			try {
+				FlightRecorder.addListener(new RecordingWatcher());
+				if ( FlightRecorder.isInitialized() ) update();
+			}
+			catch (SecurityException e) {
+				// Without access to the recorder, no event is created
+			}
+		}
+
+		@Override
+		public void recorderInitialized(FlightRecorder recorder) {
+			update();
+		}
+
+		@Override
+		public void recordingStateChanged(Recording recording) {
+			update();
+		}
+
+		private static void update() {
+			boolean bRunning = false;
+			for (Recording aRecording : FlightRecorder.getFlightRecorder().getRecordings()) {
+				if ( aRecording.getState() == RecordingState.RUNNING ) bRunning = true;
+			}
+			bRecording = bRunning;
+		}
+	}
+
+}
@@ -0,0 +1,57 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ *   A flight recorder event for one search for checkmate or stalemate
+ *   after a move.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+@Name("chess.GameEnd")
+@Label("Checkmate or Stalemate Test")
+@Category("Chess")
+@Description("The game board was searched for checkmate or stalemate")
+@StackTrace(false)
+class GameEndEvent extends Event {
+
+	@Label("Test")
+	@Description("\"checkmate\" or \"stalemate\"")
+	String test;
+
+	@Label("Result")
+	@Description("True if the game has ended")
+	boolean result;
+
+	@Label("Position")
+	@Description("The position tested, in FEN")
+	String fen;
+
+
+
+	/**
+	 *   Finish the event and record it, if it is recorded at all.
+	 *
+	 * @param aBoard   The game board that was tested
+	 * @param test     "checkmate" or "stalemate"
+	 * @param bResult  "true" if the game has ended
+	 */
+	void finish(Board aBoard, String test, boolean bResult) {
+		end();
+		if ( shouldCommit() ) {
+			this.fen = aBoard.toFen();
+			this.test = test;
+			this.result = bResult;
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,272 @@
+package chess;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+
+
+/**
+ *   The record of one chess game: its moves, its result and a few
+ *   named tags such as "White", "Black" or "Date".
+ *
+ *   <p>The moves are kept as 16-bit move codes (see {@link Move#toCode()}),
+ *   which is also how they are stored by {@link GameRecordWriter}.  A game
+ *   normally starts from the standard starting position, but it can also
+ *   start from any position given in FEN.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class GameRecord {
+
+	/**
+	 *  The result of a game
+	 */
+	public static enum Result {
+		/**
+		 *  The game is not finished, or its result is not known
+		 */
+		unknown,
+
+		/**
+		 *  White won the game
+		 */
+		whiteWin,
+
+		/**
+		 *  Black won the game
+		 */
+		blackWin,
+
+		/**
+		 *  The game was drawn
+		 */
+		draw };
+
+
+	private Result result = Result.unknown;
+	private String startFen = null;
+	private final LinkedHashMap<String, String> tags = new LinkedHashMap<String, String>();
+	private short[] moves = new short[80];
+	private int moveCount = 0;
+
+
+
+	/**
+	 *   Set the result of this game.
+	 *
+	 * @param result
+	 * 		The result of the game
+	 */
+	public void setResult(Result result) {
+		this.result = result;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the result of this game
+	 */
+	public Result getResult() {
+		return result;
+	}
+
+
+
+	/**
+	 *   Set the position this game starts from.
+	 *
+	 * @param fen
+	 * 		A position in FEN format, or "null" for the standard
+	 * 		starting position
+	 */
+	public void setStartFen(String fen) {
+		this.startFen = fen;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the position this game starts from in FEN format, or
+	 * 		"null" if the game starts from the standard starting position
+	 */
+	public String getStartFen() {
+		return startFen;
+	}
+
+
+
+	/**
+	 *   Set a named tag of this game, for example "White" or "Date".
+	 *
+	 * @param name   The name of the tag
+	 * @param value  The value of the tag
+	 */
+	public void setTag(String name, String value) {
+		tags.put(name, value);
+	}
+
+
+
+	/**
+	 * @param name
+	 * 		The name of a tag
+	 *
+	 * @return
+	 * 		Return the value of the tag, or "null" if it is not set
+	 */
+	public String getTag(String name) {
+		return tags.get(name);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return all the tags of this game, in the order they were set
+	 */
+	public LinkedHashMap<String, String> getTags() {
+		return tags;
+	}
+
+
+
+	/**
+	 *   Add the next move of this game.
+	 *
+	 * @param aMove
+	 * 		A move
+	 */
+	public void addMove(Move aMove) {
+		addMoveCode(aMove.toCode());
+	}
+
+
+
+	/**
+	 *   Add the next move of this game as a 16-bit move code.
+	 *
+	 * @param code
+	 * 		A move code created by {@link Move#toCode()}
+	 */
+	public void addMoveCode(int code) {
+		if ( moveCount == moves.length ) moves = Arrays.copyOf(moves, moves.length * 2);
+		moves[moveCount++] = (short) code;
+	}
+
+
+
+	/**
+	 *   Remove the last move of this game, for example when a player
+	 *   takes it back.
+	 */
+	public void removeLastMove() {
+		if ( moveCount > 0 ) moveCount--;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of moves (plies) in this game
+	 */
+	public int getMoveCount() {
+		return moveCount;
+	}
+
+
+
+	/**
+	 * @param ply
+	 * 		Index of a move, starting at 0
+	 *
+	 * @return
+	 * 		Return the 16-bit code of the move
+	 */
+	public int getMoveCode(int ply) {
+		return moves[ply] & 0xFFFF;
+	}
+
+
+
+	/**
+	 * @param ply
+	 * 		Index of a move, starting at 0
+	 *
+	 * @return
+	 * 		Return the move
+	 */
+	public Move getMove(int ply) {
+		return Move.fromCode(getMoveCode(ply));
+	}
+
+
+
+	/**
+	 *   Create the game board this game starts from.
+	 *
+	 * @return
+	 * 		Return a new game board
+	 */
+	public Board createStartBoard() {
+		return (startFen == null) ? new Board() : new Board(startFen);
+	}
+
+
+
+	/**
+	 *   Play all the moves of this game on a new game board.
+	 *
+	 * @return
+	 * 		Return the game board after the last move
+	 *
+	 * @throws IllegalStateException
+	 * 		If a move of this game is not legal
+	 */
+	public Board replay() {
+		Board aBoard = createStartBoard();
+		for (int ply=0; ply < moveCount; ply++) {
+			if ( ! aBoard.makeMove(getMove(ply)) ) {
+				throw new IllegalStateException("Illegal move " + getMove(ply) + " at ply " + (ply + 1));
+			}
+		}
+		return aBoard;
+	}
+
+
+
+	/**
+	 *   Get the result of a game from the state of its game board.
+	 *
+	 * @param aBoard
+	 * 		The game board at the end of a game
+	 *
+	 * @return
+	 * 		Return the result of the game
+	 */
+	public static Result getResult(Board aBoard) {
+		switch (aBoard.getGameState()) {
+			case whiteResign:
+			case adjudicatedBlackWin:
+				return Result.blackWin;
+
+			case blackResign:
+			case adjudicatedWhiteWin:
+				return Result.whiteWin;
+
+			case checkMate:
+				return aBoard.isWhiteInCheck() ? Result.blackWin : Result.whiteWin;
+
+			case drawAccepted:
+			case staleMate:
+			case adjudicatedDraw:
+				return Result.draw;
+
+			default:
+				return Result.unknown;
+		}
+	}
+
+}
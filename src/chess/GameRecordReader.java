@@ -0,0 +1,285 @@
+package chess;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+
+
+/**
+ *   Reads a game record file written by {@link GameRecordWriter}.
+ *
+ *   <p>The file is memory-mapped and read one game at a time.  A game
+ *   can be read into a {@link GameRecord}, skipped, or replayed straight
+ *   from the mapped file onto a game board.  Replaying does not create
+ *   a GameRecord; each move code is read from the file and played on the
+ *   board right away, and a listener may look at every position reached.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class GameRecordReader {
+
+	/**
+	 *  Receives every position reached while a game is replayed.
+	 */
+	public interface Listener {
+		/**
+		 *   Called after each move of a replayed game.
+		 *
+		 * @param aBoard  The game board after the move.  It must not be changed.
+		 * @param aMove   The move that was just played
+		 * @param ply     Number of moves played so far, starting at 1
+		 */
+		void moveMade(Board aBoard, Move aMove, int ply);
+	}
+
+
+	private static final int fileHeaderSize = 6;
+
+	private final ByteBuffer buffer;
+	private GameRecord.Result lastResult = GameRecord.Result.unknown;
+
+
+
+	/**
+	 *   Open a game record file.
+	 *
+	 * @param fileName
+	 * 		The name of a game record file
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be read or is not a game record file
+	 */
+	public GameRecordReader(String fileName) throws IOException {
+		RandomAccessFile file = new RandomAccessFile(fileName, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+			if ( size > Integer.MAX_VALUE ) {
+				throw new IOException("Game record file is too large: " + fileName);
+			}
+
+			// The mapping stays valid after the file is closed
+			this.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		finally {
+			file.close();
+		}
+
+		readFileHeader(fileName);
+	}
+
+
+
+	/**
+	 *   Read game records that are already in memory.
+	 *
+	 * @param buffer
+	 * 		The contents of a game record file, from its position to its limit
+	 *
+	 * @throws IOException
+	 * 		If the buffer does not hold a game record file
+	 */
+	public GameRecordReader(ByteBuffer buffer) throws IOException {
+		this.buffer = buffer.slice();
+		readFileHeader("buffer");
+	}
+
+
+
+	private void readFileHeader(String name) throws IOException {
+		if ( (buffer.remaining() < fileHeaderSize) ||
+			 (buffer.getInt() != GameRecordWriter.magic) ||
+			 (buffer.getShort() != GameRecordWriter.version) ) {
+			throw new IOException("Not a game record file: " + name);
+		}
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if there is another game to read
+	 */
+	public boolean hasNext() {
+		return buffer.remaining() >= 4;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the byte offset of the next game in the file
+	 */
+	public int getPosition() {
+		return buffer.position();
+	}
+
+
+
+	/**
+	 *   Continue reading at a given byte offset, for example one that was
+	 *   returned by {@link #getPosition()} earlier.
+	 *
+	 * @param offset
+	 * 		Byte offset of a game in the file
+	 */
+	public void setPosition(int offset) {
+		buffer.position(offset);
+	}
+
+
+
+	/**
+	 *   Skip the next game without reading it.
+	 *
+	 * @throws IOException
+	 * 		If the game record is cut short
+	 */
+	public void skip() throws IOException {
+		int length = readRecordLength();
+		buffer.position(buffer.position() + length);
+	}
+
+
+
+	/**
+	 *   Read the next game.
+	 *
+	 * @return
+	 * 		Return the record of the game
+	 *
+	 * @throws IOException
+	 * 		If the game record is cut short or corrupted
+	 */
+	public GameRecord next() throws IOException {
+		GameRecord aGame = new GameRecord();
+		int end = readRecordHeader(aGame);
+
+		checkRemaining(end, 2);
+		int moveCount = buffer.getShort() & 0xFFFF;
+		checkRemaining(end, 2 * moveCount);
+		for (int ply=0; ply < moveCount; ply++) {
+			aGame.addMoveCode(buffer.getShort() & 0xFFFF);
+		}
+
+		if ( buffer.position() != end ) throw new IOException("Corrupted game record");
+		return aGame;
+	}
+
+
+
+	/**
+	 *   Replay the next game on a new game board, reading the moves
+	 *   straight from the file.
+	 *
+	 * @param listener
+	 * 		A listener told about every move, or "null"
+	 *
+	 * @return
+	 * 		Return the game board after the last move
+	 *
+	 * @throws IOException
+	 * 		If the game record is cut short or holds an illegal move
+	 */
+	public Board replayNext(Listener listener) throws IOException {
+		GameRecord header = new GameRecord();
+		int end = readRecordHeader(header);
+		Board aBoard = header.createStartBoard();
+
+		checkRemaining(end, 2);
+		int moveCount = buffer.getShort() & 0xFFFF;
+		checkRemaining(end, 2 * moveCount);
+		for (int ply=1; ply <= moveCount; ply++) {
+			Move aMove = Move.fromCode(buffer.getShort() & 0xFFFF);
+			if ( ! aBoard.makeMove(aMove) ) {
+				throw new IOException("Illegal move " + aMove + " at ply " + ply);
+			}
+			if ( listener != null ) listener.moveMade(aBoard, aMove, ply);
+		}
+
+		if ( buffer.position() != end ) throw new IOException("Corrupted game record");
+		return aBoard;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the result of the game read or replayed last
+	 */
+	public GameRecord.Result getLastResult() {
+		return lastResult;
+	}
+
+
+
+	/**
+	 *   Read everything in a game record up to its moves.
+	 *
+	 * @return
+	 * 		Return the byte offset where this game record ends
+	 */
+	private int readRecordHeader(GameRecord aGame) throws IOException {
+		int length = readRecordLength();
+		int end = buffer.position() + length;
+
+		checkRemaining(end, 3);
+		int result = buffer.get();
+		if ( (result < 0) || (result >= GameRecord.Result.values().length) ) {
+			throw new IOException("Corrupted game record");
+		}
+		aGame.setResult(GameRecord.Result.values()[result]);
+		lastResult = aGame.getResult();
+
+		int flags = buffer.get();
+		int tagCount = buffer.get() & 0xFF;
+		for (int i=0; i < tagCount; i++) {
+			String name = readText(end);
+			aGame.setTag(name, readText(end));
+		}
+		if ( (flags & GameRecordWriter.flagStartFen) != 0 ) aGame.setStartFen(readText(end));
+
+		return end;
+	}
+
+
+
+	/**
+	 *   Read the length that starts every game record.
+	 *
+	 * @return
+	 * 		Return the number of bytes of the game record that follow
+	 */
+	private int readRecordLength() throws IOException {
+		if ( buffer.remaining() < 4 ) throw new IOException("Game record is cut short");
+		int length = buffer.getInt();
+		if ( length < 0 ) throw new IOException("Corrupted game record");
+		if ( length > buffer.remaining() ) throw new IOException("Game record is cut short");
+		return length;
+	}
+
+
+
+	/*
+	 * Check that a game record ending at a byte offset has a number of
+	 * bytes left to read, so a corrupted length never reads past the record.
+	 */
+	private void checkRemaining(int end, int count) throws IOException {
+		if ( count > end - buffer.position() ) throw new IOException("Corrupted game record");
+	}
+
+
+
+	private String readText(int end) throws IOException {
+		checkRemaining(end, 2);
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		checkRemaining(end, bytes.length);
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
@@ -0,0 +1,178 @@
+package chess;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+
+/**
+ *   Writes game records in a compact binary format.
+ *
+ *   <p>A game record file starts with a 6-byte header, followed by one
+ *   record per game.  All numbers are big-endian:
+ *   <pre>
+ *      file header:
+ *         4 bytes   magic number "C51G"
+ *         2 bytes   format version (1)
+ *
+ *      each game:
+ *         4 bytes   length of the rest of this record
+ *         1 byte    result (0 unknown, 1 white wins, 2 black wins, 3 draw)
+ *         1 byte    flags (1 = the game starts from a FEN position)
+ *         1 byte    number of tags
+ *                   each tag: name and value as UTF-8 text, each
+ *                   written as a 2-byte length and the bytes
+ *                   the start position as UTF-8 text, if flagged
+ *         2 bytes   number of moves (plies)
+ *         2 bytes   per move: the move code of {@link Move#toCode()}
+ *   </pre>
+ *
+ *   <p>A move takes 2 bytes instead of about 6 in a text file with one
+ *   move per line, and no text has to be parsed to replay it.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class GameRecordWriter {
+
+	/**
+	 *  Magic number at the start of a game record file ("C51G")
+	 */
+	public static final int magic = 0x43353147;
+
+	/**
+	 *  Version of the game record format
+	 */
+	public static final int version = 1;
+
+	/**
+	 *  Flag set when a game starts from a FEN position
+	 */
+	static final int flagStartFen = 1;
+
+	private final DataOutputStream out;
+	private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(512);
+	private final DataOutputStream record = new DataOutputStream(recordBytes);
+
+
+
+	/**
+	 *   Open a game record file.  New games are added to the end of an
+	 *   existing file.
+	 *
+	 * @param fileName
+	 * 		The name of a game record file
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be opened
+	 */
+	public GameRecordWriter(String fileName) throws IOException {
+		File aFile = new File(fileName);
+		boolean bNewFile = (! aFile.exists()) || (aFile.length() == 0);
+
+		this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(aFile, true)));
+		if ( bNewFile ) writeFileHeader();
+	}
+
+
+
+	/**
+	 *   Write game records to a stream.  The file header is written first.
+	 *
+	 * @param stream
+	 * 		An output stream
+	 *
+	 * @throws IOException
+	 * 		If the file header cannot be written
+	 */
+	public GameRecordWriter(OutputStream stream) throws IOException {
+		this.out = new DataOutputStream(new BufferedOutputStream(stream));
+		writeFileHeader();
+	}
+
+
+
+	private void writeFileHeader() throws IOException {
+		out.writeInt(magic);
+		out.writeShort(version);
+	}
+
+
+
+	/**
+	 *   Write one game.
+	 *
+	 * @param aGame
+	 * 		The record of a game
+	 *
+	 * @throws IOException
+	 * 		If the game cannot be written, or it has more than 255 tags
+	 * 		or 65535 moves
+	 */
+	public void write(GameRecord aGame) throws IOException {
+		if ( (aGame.getTags().size() > 255) || (aGame.getMoveCount() > 0xFFFF) ) {
+			throw new IOException("Game record is too large");
+		}
+
+		recordBytes.reset();
+		record.writeByte(aGame.getResult().ordinal());
+		record.writeByte((aGame.getStartFen() == null) ? 0 : flagStartFen);
+
+		record.writeByte(aGame.getTags().size());
+		for (Map.Entry<String, String> aTag : aGame.getTags().entrySet()) {
+			writeText(aTag.getKey());
+			writeText(aTag.getValue());
+		}
+		if ( aGame.getStartFen() != null ) writeText(aGame.getStartFen());
+
+		record.writeShort(aGame.getMoveCount());
+		for (int ply=0; ply < aGame.getMoveCount(); ply++) {
+			record.writeShort(aGame.getMoveCode(ply));
+		}
+
+		out.writeInt(recordBytes.size());
+		recordBytes.writeTo(out);
+	}
+
+
+
+	private void writeText(String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		if ( bytes.length > 0xFFFF ) throw new IOException("Text is too long for a game record");
+
+		record.writeShort(bytes.length);
+		record.write(bytes);
+	}
+
+
+
+	/**
+	 *   Write any buffered games to the file.
+	 *
+	 * @throws IOException
+	 * 		If the games cannot be written
+	 */
+	public void flush() throws IOException {
+		out.flush();
+	}
+
+
+
+	/**
+	 *   Write any buffered games and close the file.
+	 *
+	 * @throws IOException
+	 * 		If the games cannot be written
+	 */
+	public void close() throws IOException {
+		out.close();
+	}
+
+}
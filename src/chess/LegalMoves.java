@@ -0,0 +1,263 @@
+package chess;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
+
+
+/**
+ *   Find all the legal moves of positions without playing them.
+ *
+ *   <p>Moves are returned as arrays of 16-bit move codes (see
+ *   {@link Move#toCode()}) instead of lists of Move objects.  Every move
+ *   is checked with {@link Board#isLegalMove(Move)}, which tries the move
+ *   on the board itself and puts it back, so no board is copied.  Each
+ *   thread collects the moves in its own scratch array before the
+ *   result is cut to size.
+ *
+ *   <p>Many positions can be handled at once.  A list of positions is
+ *   split among the threads of a fork/join pool and the moves of all
+ *   the positions are packed into one {@link Batch}.  A stream of
+ *   positions can also be mapped to its moves; a parallel stream runs on
+ *   the common fork/join pool as well.
+ *
+ *   <p>Example:
+ *   <pre>
+ *      int[] moves = LegalMoves.of("rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1");
+ *      Move first = Move.fromCode(moves[0]);
+ *   </pre>
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public final class LegalMoves {
+
+	/**
+	 *  More moves than any chess position can have
+	 */
+	public static final int maxMoves = 256;
+
+	/**
+	 *  A batch of positions is not split any further below this size
+	 */
+	private static final int batchThreshold = 32;
+
+	private static final ThreadLocal<int[]> scratch = new ThreadLocal<int[]>() {
+		@Override
+		protected int[] initialValue() {
+			return new int[maxMoves];
+		}
+	};
+
+
+	/**
+	 *  The legal moves of many positions packed into two arrays.  The
+	 *  moves of position "i" are the move codes from offset(i) up to
+	 *  (but not including) offset(i+1).
+	 */
+	public static final class Batch {
+		private final int[] offsets;
+		private final short[] codes;
+
+		Batch(int[] offsets, short[] codes) {
+			this.offsets = offsets;
+			this.codes = codes;
+		}
+
+		/**
+		 * @return
+		 * 		Return the number of positions in this batch
+		 */
+		public int size() {
+			return offsets.length - 1;
+		}
+
+		/**
+		 * @param position  Index of a position in this batch
+		 *
+		 * @return
+		 * 		Return the number of legal moves of that position
+		 */
+		public int getMoveCount(int position) {
+			return offsets[position + 1] - offsets[position];
+		}
+
+		/**
+		 * @param position  Index of a position in this batch
+		 * @param i         Index of a move of that position
+		 *
+		 * @return
+		 * 		Return the 16-bit code of that move
+		 */
+		public int getMoveCode(int position, int i) {
+			return codes[offsets[position] + i] & 0xFFFF;
+		}
+
+		/**
+		 * @return
+		 * 		Return the start of the moves of every position, followed
+		 * 		by the total number of moves
+		 */
+		public int[] getOffsets() {
+			return offsets;
+		}
+
+		/**
+		 * @return
+		 * 		Return the move codes of all the positions, one after another
+		 */
+		public short[] getCodes() {
+			return codes;
+		}
+	}
+
+
+
+	private LegalMoves() {
+		// Only static functions
+	}
+
+
+
+	/**
+	 *   Get the legal moves of a position.
+	 *
+	 * @param fen
+	 * 		A position in FEN format
+	 *
+	 * @return
+	 * 		Return the 16-bit codes of all the legal moves
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If the text is not a valid FEN position
+	 */
+	public static int[] of(String fen) {
+		return of(new Board(fen));
+	}
+
+
+
+	/**
+	 *   Get the legal moves of a game board.  The board is not changed.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the 16-bit codes of all the legal moves
+	 */
+	public static int[] of(Board aBoard) {
+		int[] found = scratch.get();
+		int count = 0;
+
+		for (Move aMove : aBoard.getMoves()) {
+			if ( aBoard.isLegalMove(aMove) ) found[count++] = aMove.toCode();
+		}
+		return Arrays.copyOf(found, count);
+	}
+
+
+
+	/**
+	 *   Get the legal moves of a stream of positions.  The stream is
+	 *   mapped lazily; make it parallel to spread the work over the
+	 *   common fork/join pool.
+	 *
+	 * @param fens
+	 * 		A stream of positions in FEN format
+	 *
+	 * @return
+	 * 		Return a stream with the move codes of each position, in order
+	 */
+	public static Stream<int[]> of(Stream<String> fens) {
+		return fens.map(fen -> of(fen));
+	}
+
+
+
+	/**
+	 *   Get the legal moves of a list of positions, using all the
+	 *   processors of the common fork/join pool.
+	 *
+	 * @param fens
+	 * 		A list of positions in FEN format
+	 *
+	 * @return
+	 * 		Return the legal moves of every position, packed into one batch
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If any text is not a valid FEN position
+	 */
+	public static Batch of(List<String> fens) {
+		return of(fens, ForkJoinPool.commonPool());
+	}
+
+
+
+	/**
+	 *   Get the legal moves of a list of positions on a given fork/join pool.
+	 *
+	 * @param fens
+	 * 		A list of positions in FEN format
+	 *
+	 * @param pool
+	 * 		The fork/join pool that does the work
+	 *
+	 * @return
+	 * 		Return the legal moves of every position, packed into one batch
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If any text is not a valid FEN position
+	 */
+	public static Batch of(List<String> fens, ForkJoinPool pool) {
+		int[][] moves = new int[fens.size()][];
+		pool.invoke(new BatchTask(fens, moves, 0, fens.size()));
+
+		int[] offsets = new int[moves.length + 1];
+		for (int i=0; i < moves.length; i++) offsets[i+1] = offsets[i] + moves[i].length;
+
+		short[] codes = new short[offsets[moves.length]];
+		for (int i=0; i < moves.length; i++) {
+			for (int j=0; j < moves[i].length; j++) codes[offsets[i] + j] = (short) moves[i][j];
+		}
+		return new Batch(offsets, codes);
+	}
+
+
+
+	/**
+	 *  Find the moves of a range of positions, splitting the range in
+	 *  half until it is small enough
+	 */
+	private static class BatchTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+
+		private final List<String> fens;
+		private final int[][] moves;
+		private final int from;
+		private final int to;
+
+		BatchTask(List<String> fens, int[][] moves, int from, int to) {
+			this.fens = fens;
+			this.moves = moves;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute() {
+			if ( to - from <= batchThreshold ) {
+				for (int i = from; i < to; i++) moves[i] = of(fens.get(i));
+				return;
+			}
+
+			int middle = (from + to) >>> 1;
+			invokeAll(new BatchTask(fens, moves, from, middle),
+					  new BatchTask(fens, moves, middle, to));
+		}
+	}
+
+}
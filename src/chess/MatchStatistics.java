@@ -0,0 +1,327 @@
+package chess;
+
+
+/**
+ *   The score of a match between two players, always counted from the
+ *   point of view of the first player, and what it says about the
+ *   difference in strength between them.
+ *
+ *   <p>The Elo difference is found from the score with the logistic
+ *   formula.  Its error margin, and the likelihood of superiority (the
+ *   chance that the first player really is the stronger one), come from
+ *   the spread of the game results.
+ *
+ *   <p>A sequential probability ratio test (SPRT) tells when enough games
+ *   have been played.  It weighs the hypothesis that the first player is
+ *   elo1 stronger against the hypothesis that it is only elo0 stronger.
+ *   The log-likelihood ratio (LLR) of the two is approximated with the
+ *   normal distribution of the game scores, the same way the common
+ *   testing frameworks do it.  The test ends when the LLR leaves the
+ *   interval [ln(beta / (1 - alpha)), ln((1 - beta) / alpha)].
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class MatchStatistics {
+
+	/**
+	 *  Outcome of a sequential probability ratio test
+	 */
+	public static enum SprtResult {
+		/**
+		 *  More games are needed
+		 */
+		undecided,
+
+		/**
+		 *  The first player is no more than elo0 stronger (H0 accepted)
+		 */
+		rejected,
+
+		/**
+		 *  The first player is elo1 stronger (H1 accepted)
+		 */
+		accepted };
+
+
+	private int wins = 0;
+	private int draws = 0;
+	private int losses = 0;
+
+	private boolean bSprt = false;
+	private double elo0 = 0.0;
+	private double elo1 = 5.0;
+	private double alpha = 0.05;
+	private double beta = 0.05;
+
+
+
+	/**
+	 *   Count a game that the first player won.
+	 */
+	public void addWin() {
+		wins++;
+	}
+
+
+
+	/**
+	 *   Count a drawn game.
+	 */
+	public void addDraw() {
+		draws++;
+	}
+
+
+
+	/**
+	 *   Count a game that the first player lost.
+	 */
+	public void addLoss() {
+		losses++;
+	}
+
+
+
+	/**
+	 *   Run a sequential probability ratio test on the results.
+	 *
+	 * @param elo0   Elo difference of the null hypothesis
+	 * @param elo1   Elo difference of the alternative hypothesis
+	 * @param alpha  Chance of accepting H1 when H0 is true
+	 * @param beta   Chance of accepting H0 when H1 is true
+	 */
+	public void setSprt(double elo0, double elo1, double alpha, double beta) {
+		if ( (elo0 >= elo1) || (alpha <= 0) || (alpha >= 1) || (beta <= 0) || (beta >= 1) ) {
+			throw new IllegalArgumentException("Invalid SPRT bounds");
+		}
+
+		this.bSprt = true;
+		this.elo0 = elo0;
+		this.elo1 = elo1;
+		this.alpha = alpha;
+		this.beta = beta;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if a sequential probability ratio test is run
+	 */
+	public boolean hasSprt() {
+		return bSprt;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of games won by the first player
+	 */
+	public int getWins() {
+		return wins;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of drawn games
+	 */
+	public int getDraws() {
+		return draws;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of games lost by the first player
+	 */
+	public int getLosses() {
+		return losses;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of games played
+	 */
+	public int getGames() {
+		return wins + draws + losses;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the score of the first player, from 0 to 1
+	 */
+	public double getScore() {
+		int games = getGames();
+		return (games == 0) ? 0.5 : (wins + 0.5 * draws) / games;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the Elo difference between the first and the second
+	 * 		player.  It is infinite if one player won every game.
+	 */
+	public double getEloDifference() {
+		return toElo(getScore());
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the half width of the 95% confidence interval of the
+	 * 		Elo difference
+	 */
+	public double getEloErrorMargin() {
+		int games = getGames();
+		double score = getScore();
+		if ( (games < 2) || (score <= 0) || (score >= 1) ) return Double.POSITIVE_INFINITY;
+
+		double error = 1.959964 * Math.sqrt(getScoreVariance() / games);
+		return (toElo(Math.min(1.0, score + error)) - toElo(Math.max(0.0, score - error))) / 2;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the likelihood that the first player is the stronger
+	 * 		one, from 0 to 1.  Draws do not count.
+	 */
+	public double getLikelihoodOfSuperiority() {
+		if ( wins + losses == 0 ) return 0.5;
+		return 0.5 * (1 + erf((wins - losses) / Math.sqrt(2.0 * (wins + losses))));
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the log-likelihood ratio of the sequential probability
+	 * 		ratio test
+	 */
+	public double getLogLikelihoodRatio() {
+		double variance = getScoreVariance();
+		if ( variance <= 0 ) return 0.0;
+
+		double score0 = toScore(elo0);
+		double score1 = toScore(elo1);
+		return getGames() * (score1 - score0) * (2 * getScore() - score0 - score1) / (2 * variance);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the LLR at which H0 is accepted
+	 */
+	public double getLowerBound() {
+		return Math.log(beta / (1 - alpha));
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the LLR at which H1 is accepted
+	 */
+	public double getUpperBound() {
+		return Math.log((1 - beta) / alpha);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the outcome of the sequential probability ratio test so
+	 * 		far, or "undecided" if no test is run
+	 */
+	public SprtResult getSprtResult() {
+		if ( ! bSprt ) return SprtResult.undecided;
+
+		double llr = getLogLikelihoodRatio();
+		if ( llr >= getUpperBound() ) return SprtResult.accepted;
+		if ( llr <= getLowerBound() ) return SprtResult.rejected;
+		return SprtResult.undecided;
+	}
+
+
+
+	/*
+	 *  Return a summary such as
+	 *  "120 games: +40 =50 -30, score 54.2%, Elo +29.0 +/- 45.3, LOS 87.5%".
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		StringBuilder s = new StringBuilder();
+		s.append(getGames()).append(" games: +").append(wins).append(" =").append(draws).append(" -").append(losses);
+		s.append(String.format(", score %.1f%%, Elo %+.1f +/- %.1f, LOS %.1f%%",
+							   100 * getScore(), getEloDifference(), getEloErrorMargin(),
+							   100 * getLikelihoodOfSuperiority()));
+		if ( bSprt ) {
+			s.append(String.format(", LLR %.2f [%.2f, %.2f] %s", getLogLikelihoodRatio(),
+								   getLowerBound(), getUpperBound(), getSprtResult()));
+		}
+		return s.toString();
+	}
+
+
+
+	/**
+	 *   Get the variance of the score of one game.
+	 */
+	private double getScoreVariance() {
+		int games = getGames();
+		if ( games == 0 ) return 0.0;
+
+		double score = getScore();
+		return (wins * (1 - score) * (1 - score) + draws * (0.5 - score) * (0.5 - score) +
+				losses * score * score) / games;
+	}
+
+
+
+	/**
+	 *   Convert a score from 0 to 1 into an Elo difference.
+	 */
+	private static double toElo(double score) {
+		if ( score <= 0 ) return Double.NEGATIVE_INFINITY;
+		if ( score >= 1 ) return Double.POSITIVE_INFINITY;
+		return -400 * Math.log10(1 / score - 1);
+	}
+
+
+
+	/**
+	 *   Convert an Elo difference into the expected score.
+	 */
+	private static double toScore(double elo) {
+		return 1 / (1 + Math.pow(10, -elo / 400));
+	}
+
+
+
+	/**
+	 *   The error function, to within 1.5e-7 (Abramowitz and Stegun 7.1.26).
+	 */
+	private static double erf(double x) {
+		double t = 1 / (1 + 0.3275911 * Math.abs(x));
+		double y = 1 - t * (0.254829592 + t * (-0.284496736 + t * (1.421413741 +
+				   t * (-1.453152027 + t * 1.061405429)))) * Math.exp(-x * x);
+		return (x >= 0) ? y : -y;
+	}
+
+}
@@ -0,0 +1,115 @@
+package chess;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+
+/**
+ *   Counters and latency histograms of the busiest game board
+ *   operations: {@link Board#move(String, String)}, trying a move and
+ *   evaluating the board, looking for checkmate and stalemate, and
+ *   copying a board.
+ *
+ *   <p>Metrics are off unless the program is started with
+ *   <pre>
+ *      java -Dchess.metrics=true ...
+ *   </pre>
+ *   The switch is a constant, so when metrics are off the JIT compiler
+ *   removes the timing code altogether.  When they are on, each
+ *   operation is registered with the platform MBean server as
+ *   "chess:type=Metrics,name=&lt;operation&gt;" and can be watched with
+ *   JConsole or any other JMX client.
+ *
+ *   <p>The times of nested operations overlap: the time of a move
+ *   includes the board evaluations made during the move.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public final class Metrics {
+
+	/**
+	 *  "true" when metrics are recorded
+	 */
+	public static final boolean bEnabled = Boolean.getBoolean("chess.metrics");
+
+	/**
+	 *  {@link Board#move(String, String)}: a move entered by a player
+	 */
+	public static final OperationMetrics move = new OperationMetrics("move");
+
+	/**
+	 *  Making a move if it is legal and evaluating the game board after it
+	 */
+	public static final OperationMetrics moveAndEvaluate = new OperationMetrics("moveAndEvaluate");
+
+	/**
+	 *  Calculating the movements of every piece on a game board
+	 */
+	public static final OperationMetrics evaluateBoard = new OperationMetrics("evaluateBoard");
+
+	/**
+	 *  Looking for checkmate
+	 */
+	public static final OperationMetrics isCheckMate = new OperationMetrics("isCheckMate");
+
+	/**
+	 *  Looking for stalemate
+	 */
+	public static final OperationMetrics isStalemate = new OperationMetrics("isStalemate");
+
+	/**
+	 *  Copying a game board
+	 */
+	public static final OperationMetrics boardCopy = new OperationMetrics("boardCopy");
+
+	private static final OperationMetrics[] all = { move, moveAndEvaluate, evaluateBoard,
+													isCheckMate, isStalemate, boardCopy };
+
+	static {
+		if ( bEnabled ) register();
+	}
+
+
+
+	private Metrics() {
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the metrics of every operation
+	 */
+	public static OperationMetrics[] getAll() {
+		return all.clone();
+	}
+
+
+
+	/**
+	 *   Forget everything recorded so far.
+	 */
+	public static void reset() {
+		for (OperationMetrics anOperation : all) anOperation.reset();
+	}
+
+
+
+	private static void register() {
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		for (OperationMetrics anOperation : all) {
+			try {
+				server.registerMBean(anOperation, new ObjectName("chess:type=Metrics,name=" + anOperation.getName()));
+			}
+			catch (JMException e) {
+				System.out.println("Cannot register metrics of " + anOperation.getName() + ": " + e.getMessage());
+			}
+		}
+	}
+
+}
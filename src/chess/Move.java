@@ -0,0 +1,235 @@
+package chess;
+
+
+/**
+ *   A single move of a game piece from one location to another
+ *   location on the game board.  A pawn that reaches the last rank
+ *   also carries the piece it is promoted to.
+ *
+ *   <p>A move can be packed into a 16-bit move code:
+ *   <pre>
+ *      bits  0 -  5   "from" square (x + 8*y)
+ *      bits  6 - 11   "to" square (x + 8*y)
+ *      bits 12 - 14   promotion (0 = none, 1 = rook, 2 = knight,
+ *                                3 = bishop, 4 = queen)
+ *   </pre>
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Move {
+
+	private final FileRank fromLoc;
+	private final FileRank toLoc;
+	private final Chess.pawnPromotionChoices promotion;
+
+
+
+	/**
+	 *   Create a move that is not a pawn promotion.
+	 *
+	 * @param fromLoc  The starting location of a game piece
+	 * @param toLoc    The destination of a game piece
+	 */
+	public Move(FileRank fromLoc, FileRank toLoc) {
+		this(fromLoc, toLoc, null);
+	}
+
+
+
+	/**
+	 *   Create a move.
+	 *
+	 * @param fromLoc    The starting location of a game piece
+	 * @param toLoc      The destination of a game piece
+	 * @param promotion  The piece a pawn is promoted to, or "null"
+	 * 					 if this move is not a pawn promotion
+	 */
+	public Move(FileRank fromLoc, FileRank toLoc, Chess.pawnPromotionChoices promotion) {
+		this.fromLoc = fromLoc;
+		this.toLoc = toLoc;
+		this.promotion = promotion;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the starting location of this move
+	 */
+	public FileRank getFromLoc() {
+		return fromLoc;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the destination of this move
+	 */
+	public FileRank getToLoc() {
+		return toLoc;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the piece a pawn is promoted to, or "null" if
+	 * 		this move is not a pawn promotion
+	 */
+	public Chess.pawnPromotionChoices getPromotion() {
+		return promotion;
+	}
+
+
+
+	/**
+	 *   Get the 16-bit move code of this move.
+	 *
+	 * @return
+	 * 		Return the packed move code
+	 */
+	public int toCode() {
+		int code = (fromLoc.getX() + 8 * fromLoc.getY()) |
+				   ((toLoc.getX() + 8 * toLoc.getY()) << 6);
+		if ( promotion != null ) {
+			code |= (promotion.ordinal() + 1) << 12;
+		}
+		return code;
+	}
+
+
+
+	/**
+	 *   Create a move from a 16-bit move code.
+	 *
+	 * @param code
+	 * 		A packed move code created by {@link #toCode()}
+	 *
+	 * @return
+	 * 		Return the unpacked move
+	 */
+	public static Move fromCode(int code) {
+		int from = code & 63;
+		int to = (code >>> 6) & 63;
+		int promo = (code >>> 12) & 7;
+
+		Chess.pawnPromotionChoices promotion = null;
+		if ( promo > 0 ) promotion = Chess.pawnPromotionChoices.values()[promo - 1];
+
+		return new Move(new FileRank(from % 8, from / 8), new FileRank(to % 8, to / 8), promotion);
+	}
+
+
+
+	/**
+	 *   Get this move in the long algebraic notation of the UCI protocol,
+	 *   for example "e2e4" or "e7e8q".
+	 *
+	 * @return
+	 * 		Return the move in UCI notation
+	 */
+	public String toUci() {
+		return toString().replace(" ", "");
+	}
+
+
+
+	/**
+	 *   Create a move from the long algebraic notation of the UCI
+	 *   protocol, for example "e2e4" or "e7e8q".
+	 *
+	 * @param uciMove
+	 * 		A move in UCI notation
+	 *
+	 * @return
+	 * 		Return the move, or "null" if the text is not a valid move
+	 */
+	public static Move fromUci(String uciMove) {
+		String s = uciMove.trim().toLowerCase();
+		if ( (s.length() != 4) && (s.length() != 5) ) return null;
+
+		String from = s.substring(0, 2);
+		String to = s.substring(2, 4);
+		if ( ! (Character.isDigit(s.charAt(1)) && Character.isDigit(s.charAt(3))) ) return null;
+		if ( ! (FileRank.isValid(from) && FileRank.isValid(to)) ) return null;
+
+		Chess.pawnPromotionChoices promotion = null;
+		if ( s.length() == 5 ) {
+			switch (s.charAt(4)) {
+				case 'r':
+					promotion = Chess.pawnPromotionChoices.rook;
+					break;
+
+				case 'n':
+					promotion = Chess.pawnPromotionChoices.knight;
+					break;
+
+				case 'b':
+					promotion = Chess.pawnPromotionChoices.bishop;
+					break;
+
+				case 'q':
+					promotion = Chess.pawnPromotionChoices.queen;
+					break;
+
+				default:
+					return null;
+			}
+		}
+		return new Move(new FileRank(from), new FileRank(to), promotion);
+	}
+
+
+
+	/**
+	 *   Check if a given move is the same as this move.
+	 *
+	 * @param aMove
+	 * 		A move
+	 *
+	 * @return
+	 * 		Return "true" if both moves have the same locations and
+	 * 		the same promotion.
+	 */
+	public boolean equals(Move aMove) {
+		if ( aMove == null ) return false;
+		return aMove.toCode() == this.toCode();
+	}
+
+
+
+	/*
+	 *  Return this move in the same format as the command typed by
+	 *  a player, for example "e2 e4" or "e7 e8 n".
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		String s = fromLoc.getName() + " " + toLoc.getName();
+		if ( promotion != null ) {
+			switch (promotion) {
+				case rook:
+					s += " r";
+					break;
+
+				case knight:
+					s += " n";
+					break;
+
+				case bishop:
+					s += " b";
+					break;
+
+				case queen:
+				default:
+					s += " q";
+			}
+		}
+		return s;
+	}
+
+}
@@ -0,0 +1,391 @@
+package chess;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ *   A bounded cache of checked moves.  For a position (given by its hash
+ *   key, see {@link Board#getHashKey()}) and a move it remembers whether
+ *   the move is legal and, if it is, the status and the position after
+ *   the move.  The same popular positions and moves are checked over and
+ *   over, and each check otherwise has to play the move and look for
+ *   check, checkmate and stalemate again.
+ *
+ *   <p>The cache is split into segments, each a small LRU map with its
+ *   own lock, so that several threads can use it at once.  When a segment
+ *   is full its least recently used move is dropped.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class MoveCache {
+
+	/**
+	 *  The status of the game after a legal move
+	 */
+	public static enum Status {
+		/**
+		 *  The game goes on and the side to move is not in check
+		 */
+		ok,
+
+		/**
+		 *  The side to move is in check
+		 */
+		check,
+
+		/**
+		 *  The side to move is checkmated
+		 */
+		checkmate,
+
+		/**
+		 *  The side to move is stalemated
+		 */
+		stalemate };
+
+
+	/**
+	 *  What is known about one move in one position
+	 */
+	public static class Result {
+		private final boolean bLegal;
+		private final Status status;
+		private final long hashKey;
+		private final String fen;
+
+		private Result(boolean bLegal, Status status, long hashKey, String fen) {
+			this.bLegal = bLegal;
+			this.status = status;
+			this.hashKey = hashKey;
+			this.fen = fen;
+		}
+
+		/**
+		 * @return
+		 * 		Return "true" if the move is legal
+		 */
+		public boolean isLegal() {
+			return bLegal;
+		}
+
+		/**
+		 * @return
+		 * 		Return the status of the game after the move, or "null"
+		 * 		if the move is not legal
+		 */
+		public Status getStatus() {
+			return status;
+		}
+
+		/**
+		 * @return
+		 * 		Return the hash key of the position after the move, or 0
+		 * 		if the move is not legal
+		 */
+		public long getHashKey() {
+			return hashKey;
+		}
+
+		/**
+		 * @return
+		 * 		Return the position after the move in FEN format, or
+		 * 		"null" if the move is not legal
+		 */
+		public String getFen() {
+			return fen;
+		}
+	}
+
+
+	/**
+	 *  The result of every illegal move
+	 */
+	public static final Result illegal = new Result(false, null, 0, null);
+
+	/**
+	 *  Default number of moves kept in a cache
+	 */
+	public static final int defaultSize = 1 << 16;
+
+	private static final int segmentCount = 16;
+
+
+	/**
+	 *  A position and a move
+	 */
+	private static final class Key {
+		final long hashKey;
+		final int moveCode;
+
+		Key(long hashKey, int moveCode) {
+			this.hashKey = hashKey;
+			this.moveCode = moveCode;
+		}
+
+		@Override
+		public int hashCode() {
+			long mixed = (hashKey ^ (moveCode * 0x9E3779B97F4A7C15L));
+			return (int) (mixed ^ (mixed >>> 32));
+		}
+
+		@Override
+		public boolean equals(Object anObject) {
+			if ( ! (anObject instanceof Key) ) return false;
+			Key aKey = (Key) anObject;
+			return (hashKey == aKey.hashKey) && (moveCode == aKey.moveCode);
+		}
+	}
+
+
+	/**
+	 *  One part of the cache with its own lock
+	 */
+	private static final class Segment extends LinkedHashMap<Key, Result> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+		long hits = 0;
+		long misses = 0;
+
+		Segment(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Key, Result> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+
+	private final Segment[] segments = new Segment[segmentCount];
+
+
+
+	/**
+	 *   Create a cache of {@link #defaultSize} moves.
+	 */
+	public MoveCache() {
+		this(defaultSize);
+	}
+
+
+
+	/**
+	 *   Create a cache.
+	 *
+	 * @param maxSize
+	 * 		The most moves the cache keeps
+	 */
+	public MoveCache(int maxSize) {
+		int segmentSize = Math.max(1, maxSize / segmentCount);
+		for (int i=0; i < segmentCount; i++) segments[i] = new Segment(segmentSize);
+	}
+
+
+
+	/**
+	 *   Look up a move.
+	 *
+	 * @param hashKey
+	 * 		The hash key of the position before the move
+	 *
+	 * @param aMove
+	 * 		A move
+	 *
+	 * @return
+	 * 		Return what is known about the move, or "null" if it is not
+	 * 		in the cache
+	 */
+	public Result get(long hashKey, Move aMove) {
+		Key aKey = new Key(hashKey, aMove.toCode());
+		Segment aSegment = getSegment(aKey);
+		synchronized (aSegment) {
+			Result aResult = aSegment.get(aKey);
+			if ( aResult != null ) {
+				aSegment.hits++;
+			}
+			else {
+				aSegment.misses++;
+			}
+			return aResult;
+		}
+	}
+
+
+
+	/**
+	 *   Add a checked move to the cache.
+	 *
+	 * @param hashKey
+	 * 		The hash key of the position before the move
+	 *
+	 * @param aMove
+	 * 		A move
+	 *
+	 * @param aResult
+	 * 		What is known about the move
+	 */
+	public void put(long hashKey, Move aMove, Result aResult) {
+		Key aKey = new Key(hashKey, aMove.toCode());
+		Segment aSegment = getSegment(aKey);
+		synchronized (aSegment) {
+			aSegment.put(aKey, aResult);
+		}
+	}
+
+
+
+	/**
+	 *   Check a move, using the cache when it can.  The game board is
+	 *   not changed.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @param aMove
+	 * 		A move of the side to move
+	 *
+	 * @return
+	 * 		Return what is known about the move
+	 */
+	public Result validate(Board aBoard, Move aMove) {
+		long hashKey = aBoard.getHashKey();
+		Result aResult = get(hashKey, aMove);
+		if ( aResult == null ) {
+			aResult = play(new Board(aBoard), aMove);
+			put(hashKey, aMove, aResult);
+		}
+		return aResult;
+	}
+
+
+
+	/**
+	 *   Play a move on a game board and describe the result.  The board
+	 *   is left with the move played and the other side to move, even
+	 *   when the game is over.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @param aMove
+	 * 		A move of the side to move
+	 *
+	 * @return
+	 * 		Return what is known about the move
+	 */
+	public static Result play(Board aBoard, Move aMove) {
+		Piece.Colors mover = aBoard.getSideToMove();
+		if ( ! aBoard.playMove(aMove) ) return illegal;
+
+		Status status;
+		switch (aBoard.getGameState()) {
+			case checkMate:
+				status = Status.checkmate;
+				break;
+
+			case staleMate:
+				status = Status.stalemate;
+				break;
+
+			default:
+				status = aBoard.isInCheck() ? Status.check : Status.ok;
+		}
+
+		// A finished game has no side to move, but the FEN and the hash key need one
+		if ( mover.equals(Piece.Colors.White) ) {
+			aBoard.setGameState(Chess.gameState.blackMove);
+		}
+		else {
+			aBoard.setGameState(Chess.gameState.whiteMove);
+		}
+		return new Result(true, status, aBoard.getHashKey(), aBoard.toFen());
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of lookups that found the move
+	 */
+	public long getHits() {
+		long hits = 0;
+		for (Segment aSegment : segments) {
+			synchronized (aSegment) {
+				hits += aSegment.hits;
+			}
+		}
+		return hits;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of lookups that did not find the move
+	 */
+	public long getMisses() {
+		long misses = 0;
+		for (Segment aSegment : segments) {
+			synchronized (aSegment) {
+				misses += aSegment.misses;
+			}
+		}
+		return misses;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the fraction of lookups that found the move
+	 */
+	public double getHitRate() {
+		long hits = getHits();
+		long total = hits + getMisses();
+		return (total == 0) ? 0.0 : (double) hits / total;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of moves in the cache
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment aSegment : segments) {
+			synchronized (aSegment) {
+				size += aSegment.size();
+			}
+		}
+		return size;
+	}
+
+
+
+	/**
+	 *   Remove all the moves and reset the hit counts.
+	 */
+	public void clear() {
+		for (Segment aSegment : segments) {
+			synchronized (aSegment) {
+				aSegment.clear();
+				aSegment.hits = 0;
+				aSegment.misses = 0;
+			}
+		}
+	}
+
+
+
+	private Segment getSegment(Key aKey) {
+		int hash = aKey.hashCode();
+		return segments[(hash ^ (hash >>> 16)) & (segmentCount - 1)];
+	}
+
+}
@@ -0,0 +1,74 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+
+/**
+ *   A flight recorder event for one {@link Board#move(String, String)}:
+ *   checking a move entered by a player, playing it and looking for
+ *   check, checkmate and stalemate.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+@Name("chess.Move")
+@Label("Move")
+@Category("Chess")
+@Description("A move entered by a player was checked and played")
+class MoveEvent extends Event {
+
+	@Label("From")
+	@Description("The square the piece moved from")
+	String from;
+
+	@Label("To")
+	@Description("The square the piece moved to")
+	String to;
+
+	@Label("Result")
+	@Description("\"illegal\", \"ok\", \"check\", \"checkmate\" or \"stalemate\"")
+	String result;
+
+	@Label("Position")
+	@Description("The position before the move in FEN")
+	String fen;
+
+
+
+	/**
+	 *   Finish the event and record it, if it is recorded at all.
+	 *
+	 * @param fen      The position before the move
+	 * @param fromLoc  The square the piece moved from
+	 * @param toLoc    The square the piece moved to
+	 * @param bLegal   "true" if the move was legal
+	 * @param aBoard   The game board after the move
+	 */
+	void finish(String fen, String fromLoc, String toLoc, boolean bLegal, Board aBoard) {
+		end();
+		if ( shouldCommit() ) {
+			this.fen = fen;
+			this.from = fromLoc;
+			this.to = toLoc;
+			if ( ! bLegal ) {
+				this.result = "illegal";
+			}
+			else if ( aBoard.getGameState() == Chess.gameState.checkMate ) {
+				this.result = "checkmate";
+			}
+			else if ( aBoard.getGameState() == Chess.gameState.staleMate ) {
+				this.result = "stalemate";
+			}
+			else {
+				this.result = (aBoard.isWhiteInCheck() || aBoard.isBlackInCheck()) ? "check" : "ok";
+			}
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,228 @@
+package chess;
+
+import java.util.ArrayList;
+
+
+/**
+ *   The order in which the search tries the moves of a position.  The
+ *   sooner the best move is tried, the more of the other moves are cut
+ *   off by alpha-beta, so the search keeps what it learns about good
+ *   moves in a few tables.  The moves are tried in this order:
+ *   <ol>
+ *   <li>the hash move, the best move stored in the transposition table;</li>
+ *   <li>captures and promotions, the most valuable victim first, by the
+ *       least valuable attacker (MVV-LVA);</li>
+ *   <li>the two killer moves of the ply: the last quiet moves that caused
+ *       a beta cutoff at the same distance from the root;</li>
+ *   <li>the countermove: the quiet move that last refuted the move just
+ *       played by the opponent;</li>
+ *   <li>all other quiet moves, by their history score.  The butterfly
+ *       history table adds depth * depth for every beta cutoff a move
+ *       (side, from square, to square) causes anywhere in the tree.</li>
+ *   </ol>
+ *
+ *   <p>All tables are primitive arrays allocated once and reused by every
+ *   search.  Between two searches the tables are aged with {@link #age()}:
+ *   the killer moves, which belong to a position two plies back, are
+ *   dropped and the history scores are halved, so recent cutoffs count
+ *   more than old ones.  The countermoves are kept.
+ *
+ *   <p>A move ordering belongs to one search and is not meant to be
+ *   shared between threads.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class MoveOrdering {
+
+	private static final int hashMoveScore = 1 << 30;
+	private static final int captureScore = 1 << 28;
+	private static final int killerScore = 1 << 27;
+	private static final int counterMoveScore = 1 << 26;
+
+	/**
+	 *  History scores are halved when one of them reaches this value,
+	 *  so they always stay below the countermove score
+	 */
+	private static final int maxHistory = 1 << 20;
+
+	/**
+	 *  Number of move codes of one side: 64 from squares * 64 to squares
+	 */
+	private static final int butterflySize = 64 * 64;
+
+	private final int[] killers = new int[Search.maxPly * 2];
+	private final int[] history = new int[2 * butterflySize];
+	private final int[] counterMoves = new int[2 * butterflySize];
+
+	/**
+	 *  Scratch space for the sort keys of the moves at each ply
+	 */
+	private final int[][] keys = new int[Search.maxPly + 1][LegalMoves.maxMoves];
+
+
+
+	/**
+	 *   Sort the moves of a position, best first.  Moves with the same
+	 *   score keep their order.
+	 *
+	 * @param aBoard
+	 * 		The game board the moves are made on.  This board is not changed.
+	 *
+	 * @param moves
+	 * 		The moves of the side to move.  This list is sorted in place.
+	 *
+	 * @param ply
+	 * 		Distance of the position from the root of the search
+	 *
+	 * @param hashMove
+	 * 		The best move from the transposition table, or "null"
+	 *
+	 * @param previousMove
+	 * 		Code of the opponent's last move (see {@link Move#toCode()}),
+	 * 		or 0 if it is not known
+	 *
+	 * @return
+	 * 		Return the sorted list
+	 */
+	public ArrayList<Move> order(Board aBoard, ArrayList<Move> moves, int ply, Move hashMove, int previousMove) {
+		int side = sideIndex(aBoard.getSideToMove());
+		int hashCode = (hashMove == null) ? -1 : hashMove.toCode();
+		int counterMove = (previousMove == 0) ? 0 : counterMoves[side * butterflySize + (previousMove & 0xFFF)];
+		int killer1 = killers[ply * 2];
+		int killer2 = killers[ply * 2 + 1];
+
+		int[] moveKeys = keys[ply];
+		int count = Math.min(moves.size(), moveKeys.length);
+		for (int i=0; i < count; i++) {
+			Move aMove = moves.get(i);
+			int code = aMove.toCode();
+			int gain = Search.materialGain(aBoard, aMove);
+
+			int key;
+			if ( code == hashCode ) {
+				key = hashMoveScore;
+			}
+			else if ( gain > 0 ) {
+				FileRank from = aMove.getFromLoc();
+				Piece mover = aBoard.getPiece(from.getX(), from.getY());
+				key = captureScore + gain * 10 - Evaluation.getPieceValue(mover.getName()) / 100;
+			}
+			else if ( code == killer1 ) {
+				key = killerScore + 1;
+			}
+			else if ( code == killer2 ) {
+				key = killerScore;
+			}
+			else if ( code == counterMove ) {
+				key = counterMoveScore;
+			}
+			else {
+				key = history[side * butterflySize + (code & 0xFFF)];
+			}
+
+			// Insertion sort: the lists are short and mostly in order already
+			int j = i;
+			while ( (j > 0) && (moveKeys[j - 1] < key) ) {
+				moveKeys[j] = moveKeys[j - 1];
+				moves.set(j, moves.get(j - 1));
+				j--;
+			}
+			moveKeys[j] = key;
+			moves.set(j, aMove);
+		}
+		return moves;
+	}
+
+
+
+	/**
+	 *   Learn from a quiet move that caused a beta cutoff.
+	 *
+	 * @param side          The side that made the move
+	 * @param aMove         The move
+	 * @param ply           Distance of the position from the root of the search
+	 * @param depth         Remaining depth of the position, in plies
+	 * @param previousMove  Code of the opponent's last move, or 0 if it is not known
+	 */
+	public void addCutoff(Piece.Colors side, Move aMove, int ply, int depth, int previousMove) {
+		int code = aMove.toCode();
+		int index = sideIndex(side) * butterflySize;
+
+		if ( killers[ply * 2] != code ) {
+			killers[ply * 2 + 1] = killers[ply * 2];
+			killers[ply * 2] = code;
+		}
+
+		history[index + (code & 0xFFF)] += depth * depth;
+		if ( history[index + (code & 0xFFF)] >= maxHistory ) halveHistory();
+
+		if ( previousMove != 0 ) counterMoves[index + (previousMove & 0xFFF)] = code;
+	}
+
+
+
+	/**
+	 * @param ply
+	 * 		Distance of a position from the root of the search
+	 *
+	 * @param aMove
+	 * 		A move
+	 *
+	 * @return
+	 * 		Return "true" if the move is one of the killer moves of the ply
+	 */
+	public boolean isKiller(int ply, Move aMove) {
+		int code = aMove.toCode();
+		return (killers[ply * 2] == code) || (killers[ply * 2 + 1] == code);
+	}
+
+
+
+	/**
+	 * @param side   The side that makes the move
+	 * @param aMove  A move
+	 *
+	 * @return
+	 * 		Return the history score of the move
+	 */
+	public int getHistory(Piece.Colors side, Move aMove) {
+		return history[sideIndex(side) * butterflySize + (aMove.toCode() & 0xFFF)];
+	}
+
+
+
+	/**
+	 *   Age the tables before a new search: drop the killer moves and
+	 *   halve the history scores.
+	 */
+	public void age() {
+		for (int i=0; i < killers.length; i++) killers[i] = 0;
+		halveHistory();
+	}
+
+
+
+	/**
+	 *   Forget everything, for example before a new game.
+	 */
+	public void clear() {
+		for (int i=0; i < killers.length; i++) killers[i] = 0;
+		for (int i=0; i < history.length; i++) history[i] = 0;
+		for (int i=0; i < counterMoves.length; i++) counterMoves[i] = 0;
+	}
+
+
+
+	private void halveHistory() {
+		for (int i=0; i < history.length; i++) history[i] >>= 1;
+	}
+
+
+
+	private static int sideIndex(Piece.Colors side) {
+		return side.equals(Piece.Colors.White) ? 0 : 1;
+	}
+
+}
@@ -0,0 +1,646 @@
+package chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+
+/**
+ *   An opening explorer.  For any position it lists the moves played
+ *   next in the games it has seen, with how often each move was played,
+ *   how those games ended and the average rating of the players.
+ *
+ *   <p>The statistics are added up once, when a game is added, and kept
+ *   in a file of fixed-size records sorted by position hash key and move:
+ *   <pre>
+ *      8 bytes   hash key of the position ({@link Board#getHashKey()})
+ *      2 bytes   move code ({@link Move#toCode()})
+ *      4 bytes   number of games white won
+ *      4 bytes   number of games drawn
+ *      4 bytes   number of games black won
+ *      8 bytes   sum of the average ratings of the rated games
+ *      4 bytes   number of rated games
+ *   </pre>
+ *   The file is memory-mapped, so a query is a binary search that reads
+ *   a few pages.  Statistics of games added later are kept in memory and
+ *   in a small log file until {@link #compact()} merges them into the
+ *   sorted file.  The answers of recent queries are kept in an LRU cache.
+ *
+ *   <p>Only the first moves of each game are counted (40 plies by
+ *   default).  Ratings are read from the "WhiteElo" and "BlackElo" tags
+ *   of a game record.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class OpeningExplorer {
+
+	/**
+	 *  Default number of plies of each game that are counted
+	 */
+	public static final int defaultMaxPly = 40;
+
+	/**
+	 *  Default number of positions kept in the query cache
+	 */
+	public static final int defaultCacheSize = 4096;
+
+	private static final int entrySize = 34;
+	private static final int logEntrySize = 15;
+
+
+	/**
+	 *  The statistics of one move played in one position
+	 */
+	public static class MoveStats {
+		private final Move move;
+		private int whiteWins = 0;
+		private int draws = 0;
+		private int blackWins = 0;
+		private long ratingSum = 0;
+		private int ratedGames = 0;
+
+		MoveStats(Move move) {
+			this.move = move;
+		}
+
+		void add(int whiteWins, int draws, int blackWins, long ratingSum, int ratedGames) {
+			this.whiteWins += whiteWins;
+			this.draws += draws;
+			this.blackWins += blackWins;
+			this.ratingSum += ratingSum;
+			this.ratedGames += ratedGames;
+		}
+
+		/**
+		 * @return
+		 * 		Return the move
+		 */
+		public Move getMove() {
+			return move;
+		}
+
+		/**
+		 * @return
+		 * 		Return the number of games this move was played in
+		 */
+		public int getGames() {
+			return whiteWins + draws + blackWins;
+		}
+
+		/**
+		 * @return
+		 * 		Return the number of these games that white won
+		 */
+		public int getWhiteWins() {
+			return whiteWins;
+		}
+
+		/**
+		 * @return
+		 * 		Return the number of these games that were drawn
+		 */
+		public int getDraws() {
+			return draws;
+		}
+
+		/**
+		 * @return
+		 * 		Return the number of these games that black won
+		 */
+		public int getBlackWins() {
+			return blackWins;
+		}
+
+		/**
+		 * @return
+		 * 		Return the percentage of these games that white won
+		 */
+		public double getWhiteWinPercent() {
+			return percent(whiteWins);
+		}
+
+		/**
+		 * @return
+		 * 		Return the percentage of these games that were drawn
+		 */
+		public double getDrawPercent() {
+			return percent(draws);
+		}
+
+		/**
+		 * @return
+		 * 		Return the percentage of these games that black won
+		 */
+		public double getBlackWinPercent() {
+			return percent(blackWins);
+		}
+
+		/**
+		 * @return
+		 * 		Return the average rating of the players of these games,
+		 * 		or 0 if none of the games was rated
+		 */
+		public int getAverageRating() {
+			return (ratedGames == 0) ? 0 : (int) (ratingSum / ratedGames);
+		}
+
+		private double percent(int count) {
+			int games = getGames();
+			return (games == 0) ? 0.0 : 100.0 * count / games;
+		}
+
+		/*
+		 *  Return one line such as "e2 e4  120 games  40.0% / 30.0% / 30.0%  avg 1850".
+		 *
+		 * @see java.lang.Object#toString()
+		 */
+		@Override
+		public String toString() {
+			return String.format("%s  %d games  %.1f%% / %.1f%% / %.1f%%  avg %d",
+								 move, getGames(), getWhiteWinPercent(), getDrawPercent(),
+								 getBlackWinPercent(), getAverageRating());
+		}
+	}
+
+
+	private final File sortedFile;
+	private final File logFile;
+	private final int maxPly;
+	private MappedByteBuffer sorted = null;
+	private int sortedCount = 0;
+
+	// Statistics added since the last compact(), by position and move code
+	private final HashMap<Long, HashMap<Integer, MoveStats>> added = new HashMap<Long, HashMap<Integer, MoveStats>>();
+	private DataOutputStream logOut;
+
+	private final LinkedHashMap<Long, ArrayList<MoveStats>> cache;
+	private long cacheHits = 0;
+	private long cacheMisses = 0;
+
+
+
+	/**
+	 *   Open an opening explorer, or create an empty one.
+	 *
+	 * @param directoryName
+	 * 		The directory that holds the explorer files.  It is created
+	 * 		if it does not exist.
+	 *
+	 * @throws IOException
+	 * 		If the explorer files cannot be opened
+	 */
+	public OpeningExplorer(String directoryName) throws IOException {
+		this(directoryName, defaultMaxPly, defaultCacheSize);
+	}
+
+
+
+	/**
+	 *   Open an opening explorer, or create an empty one.
+	 *
+	 * @param directoryName
+	 * 		The directory that holds the explorer files.  It is created
+	 * 		if it does not exist.
+	 *
+	 * @param maxPly
+	 * 		Number of plies of each new game that are counted
+	 *
+	 * @param cacheSize
+	 * 		Number of positions kept in the query cache
+	 *
+	 * @throws IOException
+	 * 		If the explorer files cannot be opened
+	 */
+	public OpeningExplorer(String directoryName, int maxPly, final int cacheSize) throws IOException {
+		File directory = new File(directoryName);
+		if ( (! directory.isDirectory()) && (! directory.mkdirs()) ) {
+			throw new IOException("Cannot create explorer directory " + directoryName);
+		}
+
+		this.sortedFile = new File(directory, "explorer.idx");
+		this.logFile = new File(directory, "explorer.log");
+		this.maxPly = maxPly;
+		this.cache = new LinkedHashMap<Long, ArrayList<MoveStats>>(cacheSize, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Long, ArrayList<MoveStats>> eldest) {
+				return size() > cacheSize;
+			}
+		};
+
+		mapSortedFile();
+		readLogFile();
+		logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, true)));
+	}
+
+
+
+	/**
+	 *   Count the opening moves of a finished game.  A game whose result
+	 *   is not known, or with an illegal move, is not counted at all.
+	 *
+	 * @param aGame
+	 * 		The record of a game
+	 *
+	 * @throws IOException
+	 * 		If the statistics cannot be saved, or a move is illegal
+	 */
+	public synchronized void addGame(GameRecord aGame) throws IOException {
+		if ( aGame.getResult() == GameRecord.Result.unknown ) return;
+
+		int rating = getAverageRating(aGame);
+		int result = aGame.getResult().ordinal();
+
+		// Replay the whole game first, so an invalid game is not counted
+		int plies = Math.min(maxPly, aGame.getMoveCount());
+		long[] keys = new long[plies];
+
+		Board aBoard = aGame.createStartBoard();
+		for (int ply=0; ply < aGame.getMoveCount(); ply++) {
+			if ( ply < plies ) keys[ply] = aBoard.getHashKey();
+			if ( ! aBoard.makeMove(aGame.getMove(ply)) ) {
+				throw new IOException("Illegal move " + aGame.getMove(ply) + " at ply " + (ply + 1));
+			}
+		}
+
+		for (int ply=0; ply < plies; ply++) {
+			logOut.writeLong(keys[ply]);
+			logOut.writeShort(aGame.getMove(ply).toCode());
+			logOut.writeByte(result);
+			logOut.writeInt(rating);
+		}
+		logOut.flush();
+
+		for (int ply=0; ply < plies; ply++) {
+			addInMemory(keys[ply], aGame.getMove(ply).toCode(), result, rating);
+		}
+	}
+
+
+
+	/**
+	 *   Count the opening moves of all the games in a game record file.
+	 *
+	 * @param fileName
+	 * 		The name of a game record file
+	 *
+	 * @return
+	 * 		Return the number of games added
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be read or the statistics cannot be saved
+	 */
+	public int addGames(String fileName) throws IOException {
+		GameRecordReader reader = new GameRecordReader(fileName);
+		int count = 0;
+		while ( reader.hasNext() ) {
+			addGame(reader.next());
+			count++;
+		}
+		return count;
+	}
+
+
+
+	/**
+	 *   Get the moves played next in a position, most popular first.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the statistics of every move played in this position.
+	 * 		The list is empty if the position was never reached.  It must
+	 * 		not be changed.
+	 */
+	public ArrayList<MoveStats> getMoves(Board aBoard) {
+		return getMoves(aBoard.getHashKey());
+	}
+
+
+
+	/**
+	 *   Get the moves played next in a position, most popular first.
+	 *
+	 * @param hashKey
+	 * 		The hash key of a position (see {@link Board#getHashKey()})
+	 *
+	 * @return
+	 * 		Return the statistics of every move played in this position.
+	 * 		The list is empty if the position was never reached.  It must
+	 * 		not be changed.
+	 */
+	public synchronized ArrayList<MoveStats> getMoves(long hashKey) {
+		ArrayList<MoveStats> moves = cache.get(hashKey);
+		if ( moves != null ) {
+			cacheHits++;
+			return moves;
+		}
+		cacheMisses++;
+
+		HashMap<Integer, MoveStats> byMove = new HashMap<Integer, MoveStats>();
+		for (int i = findFirst(hashKey); (i < sortedCount) && (sorted.getLong(i * entrySize) == hashKey); i++) {
+			int offset = i * entrySize;
+			int code = sorted.getShort(offset + 8) & 0xFFFF;
+			getStats(byMove, code).add(sorted.getInt(offset + 10), sorted.getInt(offset + 14),
+									   sorted.getInt(offset + 18), sorted.getLong(offset + 22),
+									   sorted.getInt(offset + 30));
+		}
+
+		HashMap<Integer, MoveStats> newStats = added.get(hashKey);
+		if ( newStats != null ) {
+			for (MoveStats stats : newStats.values()) {
+				getStats(byMove, stats.move.toCode()).add(stats.whiteWins, stats.draws, stats.blackWins,
+														  stats.ratingSum, stats.ratedGames);
+			}
+		}
+
+		moves = new ArrayList<MoveStats>(byMove.values());
+		Collections.sort(moves, new Comparator<MoveStats>() {
+			@Override
+			public int compare(MoveStats a, MoveStats b) {
+				return b.getGames() - a.getGames();
+			}
+		});
+
+		cache.put(hashKey, moves);
+		return moves;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the fraction of queries answered from the cache
+	 */
+	public synchronized double getCacheHitRate() {
+		long total = cacheHits + cacheMisses;
+		return (total == 0) ? 0.0 : (double) cacheHits / total;
+	}
+
+
+
+	/**
+	 *   Merge the statistics added since the last merge into the sorted
+	 *   file.  Each position and move keeps one record.
+	 *
+	 * @throws IOException
+	 * 		If the explorer files cannot be written
+	 */
+	public synchronized void compact() throws IOException {
+		logOut.close();
+
+		// The new statistics in the same order as the sorted file
+		ArrayList<long[]> keys = new ArrayList<long[]>();
+		for (Map.Entry<Long, HashMap<Integer, MoveStats>> aPosition : added.entrySet()) {
+			for (Integer code : aPosition.getValue().keySet()) {
+				keys.add(new long[] { aPosition.getKey(), code });
+			}
+		}
+		Collections.sort(keys, new Comparator<long[]>() {
+			@Override
+			public int compare(long[] a, long[] b) {
+				return (a[0] != b[0]) ? Long.compare(a[0], b[0]) : Long.compare(a[1], b[1]);
+			}
+		});
+
+		File tempFile = new File(sortedFile.getPath() + ".tmp");
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+		try {
+			int i = 0;
+			int j = 0;
+			while ( (i < sortedCount) || (j < keys.size()) ) {
+				int order;
+				if ( i >= sortedCount ) {
+					order = 1;
+				}
+				else if ( j >= keys.size() ) {
+					order = -1;
+				}
+				else {
+					long key = sorted.getLong(i * entrySize);
+					int code = sorted.getShort(i * entrySize + 8) & 0xFFFF;
+					order = (key != keys.get(j)[0]) ? Long.compare(key, keys.get(j)[0]) :
+													  Long.compare(code, keys.get(j)[1]);
+				}
+
+				MoveStats stats = null;
+				long key = 0;
+				if ( order <= 0 ) {
+					int offset = i * entrySize;
+					key = sorted.getLong(offset);
+					stats = new MoveStats(Move.fromCode(sorted.getShort(offset + 8) & 0xFFFF));
+					stats.add(sorted.getInt(offset + 10), sorted.getInt(offset + 14), sorted.getInt(offset + 18),
+							  sorted.getLong(offset + 22), sorted.getInt(offset + 30));
+					i++;
+				}
+				if ( order >= 0 ) {
+					key = keys.get(j)[0];
+					MoveStats newStats = added.get(key).get((int) keys.get(j)[1]);
+					if ( stats == null ) stats = new MoveStats(newStats.move);
+					stats.add(newStats.whiteWins, newStats.draws, newStats.blackWins,
+							  newStats.ratingSum, newStats.ratedGames);
+					j++;
+				}
+
+				out.writeLong(key);
+				out.writeShort(stats.move.toCode());
+				out.writeInt(stats.whiteWins);
+				out.writeInt(stats.draws);
+				out.writeInt(stats.blackWins);
+				out.writeLong(stats.ratingSum);
+				out.writeInt(stats.ratedGames);
+			}
+		}
+		finally {
+			out.close();
+		}
+
+		sorted = null;
+		if ( sortedFile.exists() && (! sortedFile.delete()) ) throw new IOException("Cannot replace " + sortedFile);
+		if ( ! tempFile.renameTo(sortedFile) ) throw new IOException("Cannot replace " + sortedFile);
+		mapSortedFile();
+
+		added.clear();
+		logOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(logFile, false)));
+	}
+
+
+
+	/**
+	 *   Close the explorer.  It must not be used afterwards.
+	 *
+	 * @throws IOException
+	 * 		If the log file cannot be written
+	 */
+	public synchronized void close() throws IOException {
+		logOut.close();
+	}
+
+
+
+	private void addInMemory(long key, int code, int result, int rating) {
+		HashMap<Integer, MoveStats> byMove = added.get(key);
+		if ( byMove == null ) {
+			byMove = new HashMap<Integer, MoveStats>();
+			added.put(key, byMove);
+		}
+
+		MoveStats stats = getStats(byMove, code);
+		stats.add((result == GameRecord.Result.whiteWin.ordinal()) ? 1 : 0,
+				  (result == GameRecord.Result.draw.ordinal()) ? 1 : 0,
+				  (result == GameRecord.Result.blackWin.ordinal()) ? 1 : 0,
+				  rating, (rating > 0) ? 1 : 0);
+
+		// The cached answer for this position is out of date
+		cache.remove(key);
+	}
+
+
+
+	private static MoveStats getStats(HashMap<Integer, MoveStats> byMove, int code) {
+		MoveStats stats = byMove.get(code);
+		if ( stats == null ) {
+			stats = new MoveStats(Move.fromCode(code));
+			byMove.put(code, stats);
+		}
+		return stats;
+	}
+
+
+
+	/**
+	 *   Binary search for the first record of a position in the sorted file.
+	 */
+	private int findFirst(long hashKey) {
+		int low = 0;
+		int high = sortedCount;
+		while ( low < high ) {
+			int middle = (low + high) >>> 1;
+			if ( sorted.getLong(middle * entrySize) < hashKey ) {
+				low = middle + 1;
+			}
+			else {
+				high = middle;
+			}
+		}
+		return low;
+	}
+
+
+
+	private void mapSortedFile() throws IOException {
+		sorted = null;
+		sortedCount = 0;
+		if ( ! sortedFile.exists() ) return;
+
+		RandomAccessFile file = new RandomAccessFile(sortedFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			if ( channel.size() > Integer.MAX_VALUE ) throw new IOException("Explorer file is too large: " + sortedFile);
+
+			// The mapping stays valid after the file is closed
+			sorted = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+			sortedCount = (int) (channel.size() / entrySize);
+		}
+		finally {
+			file.close();
+		}
+	}
+
+
+
+	private void readLogFile() throws IOException {
+		if ( ! logFile.exists() ) return;
+
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(logFile)));
+		try {
+			byte[] entry = new byte[logEntrySize];
+			while ( true ) {
+				in.readFully(entry);
+				java.nio.ByteBuffer anEntry = java.nio.ByteBuffer.wrap(entry);
+				addInMemory(anEntry.getLong(), anEntry.getShort() & 0xFFFF, anEntry.get(), anEntry.getInt());
+			}
+		}
+		catch (EOFException e) {
+			// End of the log.  An entry cut short by a crash is ignored.
+		}
+		finally {
+			in.close();
+		}
+	}
+
+
+
+	/**
+	 *   Get the average rating of the two players of a game, or 0 if
+	 *   neither player is rated.
+	 */
+	private static int getAverageRating(GameRecord aGame) {
+		int total = 0;
+		int count = 0;
+		for (String tag : new String[] { "WhiteElo", "BlackElo" }) {
+			try {
+				String value = aGame.getTag(tag);
+				if ( value == null ) continue;
+				total += Integer.parseInt(value.trim());
+				count++;
+			}
+			catch (NumberFormatException e) {
+				// Not a rating
+			}
+		}
+		return (count == 0) ? 0 : total / count;
+	}
+
+
+
+	/**
+	 *   Build an opening explorer from game record files, or show the
+	 *   moves of the starting position.
+	 *
+	 * @param args
+	 * 		The explorer directory followed by any game record files to add
+	 *
+	 * @throws IOException
+	 * 		If a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if ( args.length < 1 ) {
+			System.out.println("Usage: java chess.OpeningExplorer explorerDirectory [gameRecordFile ...]");
+			return;
+		}
+
+		OpeningExplorer explorer = new OpeningExplorer(args[0]);
+		try {
+			for (int i=1; i < args.length; i++) {
+				System.out.println(args[i] + ": " + explorer.addGames(args[i]) + " games added");
+			}
+			if ( args.length > 1 ) explorer.compact();
+
+			for (MoveStats stats : explorer.getMoves(new Board())) {
+				System.out.println(stats);
+			}
+		}
+		finally {
+			explorer.close();
+		}
+	}
+
+}
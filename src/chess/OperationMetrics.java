@@ -0,0 +1,209 @@
+package chess;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+
+/**
+ *   A count and a latency histogram of one operation, such as a move or
+ *   a board evaluation.
+ *
+ *   <p>The histogram works like HdrHistogram: every power of two is split
+ *   into 16 buckets of equal width, so any recorded time is known to
+ *   within about 6% while the whole range from 1 ns to hours fits in a
+ *   fixed array of counters.  Recording is lock-free and never allocates.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class OperationMetrics implements OperationMetricsMBean {
+
+	private static final int subBucketBits = 4;
+	private static final int subBucketCount = 1 << subBucketBits;
+	private static final int bucketCount = (64 - subBucketBits) * subBucketCount;
+
+	private final String name;
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong totalTime = new AtomicLong();
+	private final AtomicLong maxTime = new AtomicLong();
+	private final AtomicLongArray buckets = new AtomicLongArray(bucketCount);
+
+
+
+	/**
+	 *   Create the metrics of an operation.
+	 *
+	 * @param name
+	 * 		The name of the operation
+	 */
+	public OperationMetrics(String name) {
+		this.name = name;
+	}
+
+
+
+	/**
+	 *   Record one run of the operation that started at a given time.
+	 *
+	 * @param startTime
+	 * 		The value of {@link System#nanoTime()} when the operation started
+	 */
+	public void record(long startTime) {
+		recordTime(System.nanoTime() - startTime);
+	}
+
+
+
+	/**
+	 *   Record one run of the operation.
+	 *
+	 * @param time
+	 * 		How long the operation took, in nanoseconds
+	 */
+	public void recordTime(long time) {
+		if ( time < 0 ) time = 0;
+
+		count.incrementAndGet();
+		totalTime.addAndGet(time);
+		buckets.incrementAndGet(getBucket(time));
+
+		long max = maxTime.get();
+		while ( (time > max) && (! maxTime.compareAndSet(max, time)) ) {
+			max = maxTime.get();
+		}
+	}
+
+
+
+	@Override
+	public String getName() {
+		return name;
+	}
+
+
+
+	@Override
+	public long getCount() {
+		return count.get();
+	}
+
+
+
+	@Override
+	public long getTotalTime() {
+		return totalTime.get();
+	}
+
+
+
+	@Override
+	public long getMeanTime() {
+		long n = count.get();
+		return (n == 0) ? 0 : totalTime.get() / n;
+	}
+
+
+
+	@Override
+	public long getMaxTime() {
+		return maxTime.get();
+	}
+
+
+
+	@Override
+	public long getMedianTime() {
+		return getPercentileTime(50.0);
+	}
+
+
+
+	@Override
+	public long get99thPercentileTime() {
+		return getPercentileTime(99.0);
+	}
+
+
+
+	@Override
+	public long get999thPercentileTime() {
+		return getPercentileTime(99.9);
+	}
+
+
+
+	@Override
+	public long getPercentileTime(double percentile) {
+		long[] counts = new long[bucketCount];
+		long total = 0;
+		for (int i=0; i < bucketCount; i++) {
+			counts[i] = buckets.get(i);
+			total += counts[i];
+		}
+		if ( total == 0 ) return 0;
+
+		long rank = (long) Math.ceil(total * Math.min(100.0, Math.max(0.0, percentile)) / 100.0);
+		long seen = 0;
+		for (int i=0; i < bucketCount; i++) {
+			seen += counts[i];
+			if ( (seen >= rank) && (counts[i] > 0) ) {
+				// The highest time that falls in this bucket, but no more than the longest time seen
+				return Math.min(getBucketStart(i + 1) - 1, maxTime.get());
+			}
+		}
+		return maxTime.get();
+	}
+
+
+
+	@Override
+	public void reset() {
+		count.set(0);
+		totalTime.set(0);
+		maxTime.set(0);
+		for (int i=0; i < bucketCount; i++) buckets.set(i, 0);
+	}
+
+
+
+	/*
+	 *  Return one line such as "move: 1200 x, mean 85000 ns, p50 79000 ns, p99 150000 ns, max 420000 ns".
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return name + ": " + getCount() + " x, mean " + getMeanTime() + " ns, p50 " + getMedianTime() +
+			   " ns, p99 " + get99thPercentileTime() + " ns, max " + getMaxTime() + " ns";
+	}
+
+
+
+	/**
+	 *   Find the bucket of a time.  Times below 16 ns have a bucket each;
+	 *   above that each power of two has 16 buckets.
+	 */
+	private static int getBucket(long time) {
+		if ( time < subBucketCount ) return (int) time;
+
+		int magnitude = 63 - Long.numberOfLeadingZeros(time);
+		int subBucket = (int) (time >>> (magnitude - subBucketBits)) & (subBucketCount - 1);
+		return (magnitude - subBucketBits + 1) * subBucketCount + subBucket;
+	}
+
+
+
+	/**
+	 *   Return the lowest time that falls in a bucket.
+	 */
+	private static long getBucketStart(int bucket) {
+		if ( bucket < subBucketCount ) return bucket;
+
+		int magnitude = bucket / subBucketCount + subBucketBits - 1;
+		long subBucket = bucket % subBucketCount;
+		if ( magnitude >= 63 ) return Long.MAX_VALUE;
+		return (subBucketCount + subBucket) << (magnitude - subBucketBits);
+	}
+
+}
@@ -0,0 +1,77 @@
+package chess;
+
+
+/**
+ *   The management interface of {@link OperationMetrics}, as seen
+ *   through JMX.  All times are in nanoseconds.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public interface OperationMetricsMBean {
+
+	/**
+	 * @return
+	 * 		Return the name of the operation
+	 */
+	String getName();
+
+	/**
+	 * @return
+	 * 		Return how many times the operation ran
+	 */
+	long getCount();
+
+	/**
+	 * @return
+	 * 		Return the total time spent in the operation
+	 */
+	long getTotalTime();
+
+	/**
+	 * @return
+	 * 		Return the average time of one operation
+	 */
+	long getMeanTime();
+
+	/**
+	 * @return
+	 * 		Return the longest time of one operation
+	 */
+	long getMaxTime();
+
+	/**
+	 * @return
+	 * 		Return the median time of one operation
+	 */
+	long getMedianTime();
+
+	/**
+	 * @return
+	 * 		Return the time that 99% of the operations did not exceed
+	 */
+	long get99thPercentileTime();
+
+	/**
+	 * @return
+	 * 		Return the time that 99.9% of the operations did not exceed
+	 */
+	long get999thPercentileTime();
+
+	/**
+	 * @param percentile
+	 * 		A percentile between 0 and 100
+	 *
+	 * @return
+	 * 		Return the time that this percentage of the operations did
+	 * 		not exceed
+	 */
+	long getPercentileTime(double percentile);
+
+	/**
+	 *   Forget everything recorded so far.
+	 */
+	void reset();
+
+}
@@ -0,0 +1,419 @@
+package chess;
+
+import java.nio.ByteBuffer;
+
+
+/**
+ *   Packs a chess position into 32 bytes: four longs of 16 squares each,
+ *   4 bits per square.  Square x + 8*y is kept in long (x + 8*y) / 16, at
+ *   bit 4 * ((x + 8*y) % 16).
+ *
+ *   <p>Each square holds one of these codes:
+ *   <pre>
+ *       0       empty square
+ *       1 - 6   white pawn, rook, knight, bishop, queen, king
+ *       9 - 14  black pawn, rook, knight, bishop, queen, king
+ *       7       a rook in its corner that may still castle (white on
+ *               rank 1, black on rank 8)
+ *       8       the black king, when it is black's turn to move
+ *       15      a pawn that has just made a double push and may be
+ *               captured En Passant (white on rank 4, black on rank 5)
+ *   </pre>
+ *   The three codes a square does not otherwise need hold the side to
+ *   move, the castling rights and the En Passant rule, so nothing else
+ *   is needed to rebuild the game board.  Other game states (checkmate,
+ *   a resignation, ...) are not part of a packed position.
+ *
+ *   <p>Packed positions can be kept in a long[], a byte[] or a
+ *   ByteBuffer (also a direct or memory-mapped one), and compared and
+ *   hashed where they are without making a game board.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public final class PackedPosition {
+
+	/**
+	 *  Number of longs in a packed position
+	 */
+	public static final int longCount = 4;
+
+	/**
+	 *  Number of bytes in a packed position
+	 */
+	public static final int byteCount = 32;
+
+	/**
+	 *  Code of an empty square
+	 */
+	public static final int emptySquare = 0;
+
+	/**
+	 *  Code of a rook that may still castle
+	 */
+	public static final int castlingRook = 7;
+
+	/**
+	 *  Code of the black king when it is black's turn to move
+	 */
+	public static final int blackKingToMove = 8;
+
+	/**
+	 *  Code of a pawn that may be captured En Passant
+	 */
+	public static final int enPassantPawn = 15;
+
+	private static final int blackFlag = 8;
+
+	private static final Piece.PieceNames[] pieceNames = Piece.PieceNames.values();
+
+
+
+	private PackedPosition() {
+	}
+
+
+
+	/**
+	 *   Pack the position on a game board.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return a new array of {@link #longCount} longs
+	 */
+	public static long[] pack(Board aBoard) {
+		long[] packed = new long[longCount];
+		pack(aBoard, packed, 0);
+		return packed;
+	}
+
+
+
+	/**
+	 *   Pack the position on a game board into an array of longs.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @param packed
+	 * 		The array to write to
+	 *
+	 * @param offset
+	 * 		Index of the first of the {@link #longCount} longs to write
+	 */
+	public static void pack(Board aBoard, long[] packed, int offset) {
+		long[] squares = new long[longCount];
+		for (int y=0; y < 8; y++) {
+			for (int x=0; x < 8; x++) {
+				Piece aPiece = aBoard.getPiece(x, y);
+				if ( aPiece.isEmptySpace() ) continue;
+
+				int code = aPiece.getName().ordinal() + 1;
+				if ( aPiece.getColor().equals(Piece.Colors.Black) ) code |= blackFlag;
+				squares[(x + 8 * y) >>> 4] |= (long) code << (((x + 8 * y) & 15) * 4);
+			}
+		}
+
+		if ( aBoard.hasCastlingRight(Piece.Colors.White, true) )  setCode(squares, 7, 0, castlingRook);
+		if ( aBoard.hasCastlingRight(Piece.Colors.White, false) ) setCode(squares, 0, 0, castlingRook);
+		if ( aBoard.hasCastlingRight(Piece.Colors.Black, true) )  setCode(squares, 7, 7, castlingRook);
+		if ( aBoard.hasCastlingRight(Piece.Colors.Black, false) ) setCode(squares, 0, 7, castlingRook);
+
+		boolean bBlackToMove = (aBoard.getGameState() == Chess.gameState.blackMove);
+		FileRank triggerLoc = aBoard.getEnPassantTriggerLoc();
+		if ( triggerLoc != null ) setCode(squares, triggerLoc.getX(), bBlackToMove ? 3 : 4, enPassantPawn);
+
+		if ( bBlackToMove ) {
+			for (int square=0; square < 64; square++) {
+				if ( getCode(squares, 0, square) == (blackFlag | (Piece.PieceNames.king.ordinal() + 1)) ) {
+					setCode(squares, square & 7, square >>> 3, blackKingToMove);
+				}
+			}
+		}
+
+		System.arraycopy(squares, 0, packed, offset, longCount);
+	}
+
+
+
+	/**
+	 *   Pack the position on a game board into a byte array, big-endian.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @param bytes
+	 * 		The array to write to
+	 *
+	 * @param offset
+	 * 		Index of the first of the {@link #byteCount} bytes to write
+	 */
+	public static void pack(Board aBoard, byte[] bytes, int offset) {
+		pack(aBoard, ByteBuffer.wrap(bytes), offset);
+	}
+
+
+
+	/**
+	 *   Pack the position on a game board into a buffer.  The position
+	 *   of the buffer is not changed.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @param buffer
+	 * 		The buffer to write to
+	 *
+	 * @param index
+	 * 		Index of the first of the {@link #byteCount} bytes to write
+	 */
+	public static void pack(Board aBoard, ByteBuffer buffer, int index) {
+		long[] packed = pack(aBoard);
+		for (int i=0; i < longCount; i++) buffer.putLong(index + 8 * i, packed[i]);
+	}
+
+
+
+	/**
+	 *   Make a game board from a packed position.
+	 *
+	 * @param packed
+	 * 		An array holding a packed position
+	 *
+	 * @param offset
+	 * 		Index of the first long of the position
+	 *
+	 * @return
+	 * 		Return a new game board
+	 */
+	public static Board toBoard(long[] packed, int offset) {
+		return new Board(packed, offset, null);
+	}
+
+
+
+	/**
+	 *   Make a game board from a packed position in a byte array.
+	 *
+	 * @param bytes
+	 * 		An array holding a packed position
+	 *
+	 * @param offset
+	 * 		Index of the first byte of the position
+	 *
+	 * @return
+	 * 		Return a new game board
+	 */
+	public static Board toBoard(byte[] bytes, int offset) {
+		return toBoard(ByteBuffer.wrap(bytes), offset);
+	}
+
+
+
+	/**
+	 *   Make a game board from a packed position in a buffer.
+	 *
+	 * @param buffer
+	 * 		A buffer holding a packed position
+	 *
+	 * @param index
+	 * 		Index of the first byte of the position
+	 *
+	 * @return
+	 * 		Return a new game board
+	 */
+	public static Board toBoard(ByteBuffer buffer, int index) {
+		long[] packed = new long[longCount];
+		for (int i=0; i < longCount; i++) packed[i] = buffer.getLong(index + 8 * i);
+		return toBoard(packed, 0);
+	}
+
+
+
+	/**
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 * @param square  A square, x + 8*y
+	 *
+	 * @return
+	 * 		Return the 4-bit code of the square
+	 */
+	public static int getCode(long[] packed, int offset, int square) {
+		return (int) (packed[offset + (square >>> 4)] >>> ((square & 15) * 4)) & 15;
+	}
+
+
+
+	/**
+	 * @param code
+	 * 		The code of a square
+	 *
+	 * @return
+	 * 		Return the name of the piece, or "emptySpace"
+	 */
+	public static Piece.PieceNames getPieceName(int code) {
+		switch (code) {
+			case emptySquare:
+				return Piece.PieceNames.emptySpace;
+
+			case castlingRook:
+				return Piece.PieceNames.rook;
+
+			case blackKingToMove:
+				return Piece.PieceNames.king;
+
+			case enPassantPawn:
+				return Piece.PieceNames.pawn;
+
+			default:
+				return pieceNames[(code & (blackFlag - 1)) - 1];
+		}
+	}
+
+
+
+	/**
+	 * @param code
+	 * 		The code of a square
+	 *
+	 * @param y
+	 * 		The rank of the square, 0 to 7
+	 *
+	 * @return
+	 * 		Return the color of the piece, or "null" for an empty square
+	 */
+	public static Piece.Colors getPieceColor(int code, int y) {
+		switch (code) {
+			case emptySquare:
+				return null;
+
+			case castlingRook:
+				return (y == 0) ? Piece.Colors.White : Piece.Colors.Black;
+
+			case enPassantPawn:
+				return (y == 3) ? Piece.Colors.White : Piece.Colors.Black;
+
+			default:
+				return ((code & blackFlag) != 0) ? Piece.Colors.Black : Piece.Colors.White;
+		}
+	}
+
+
+
+	/**
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 *
+	 * @return
+	 * 		Return "true" if it is black's turn to move
+	 */
+	public static boolean isBlackToMove(long[] packed, int offset) {
+		for (int square=0; square < 64; square++) {
+			if ( getCode(packed, offset, square) == blackKingToMove ) return true;
+		}
+		return false;
+	}
+
+
+
+	/**
+	 *   Compare two packed positions.  The order has no meaning for the
+	 *   game, but it is the same for equal positions wherever they are kept.
+	 *
+	 * @return
+	 * 		Return a negative number, zero or a positive number if the
+	 * 		first position is less than, equal to or greater than the second
+	 */
+	public static int compare(long[] a, int aOffset, long[] b, int bOffset) {
+		for (int i=0; i < longCount; i++) {
+			if ( a[aOffset + i] != b[bOffset + i] ) return Long.compareUnsigned(a[aOffset + i], b[bOffset + i]);
+		}
+		return 0;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the two packed positions are the same
+	 */
+	public static boolean equals(long[] a, int aOffset, long[] b, int bOffset) {
+		for (int i=0; i < longCount; i++) {
+			if ( a[aOffset + i] != b[bOffset + i] ) return false;
+		}
+		return true;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the packed position in the buffer is the same
+	 * 		as the one in the array
+	 */
+	public static boolean equals(ByteBuffer buffer, int index, long[] packed, int offset) {
+		for (int i=0; i < longCount; i++) {
+			if ( buffer.getLong(index + 8 * i) != packed[offset + i] ) return false;
+		}
+		return true;
+	}
+
+
+
+	/**
+	 *   Hash a packed position.  All 64 bits are well mixed, so any bits
+	 *   may be used to pick a slot in a hash table.
+	 *
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 *
+	 * @return
+	 * 		Return the hash code
+	 */
+	public static long hash(long[] packed, int offset) {
+		long h = 0;
+		for (int i=0; i < longCount; i++) h = mix(h ^ packed[offset + i]);
+		return h;
+	}
+
+
+
+	/**
+	 *   Hash a packed position kept in a buffer.  The result is the same
+	 *   as {@link #hash(long[], int)} for the same position.
+	 *
+	 * @param buffer  A buffer holding a packed position
+	 * @param index   Index of the first byte of the position
+	 *
+	 * @return
+	 * 		Return the hash code
+	 */
+	public static long hash(ByteBuffer buffer, int index) {
+		long h = 0;
+		for (int i=0; i < longCount; i++) h = mix(h ^ buffer.getLong(index + 8 * i));
+		return h;
+	}
+
+
+
+	/**
+	 *   The finalizer of the 64-bit MurmurHash3.
+	 */
+	private static long mix(long h) {
+		h = (h ^ (h >>> 33)) * 0xFF51AFD7ED558CCDL;
+		h = (h ^ (h >>> 33)) * 0xC4CEB9FE1A85EC53L;
+		return h ^ (h >>> 33);
+	}
+
+
+
+	private static void setCode(long[] squares, int x, int y, int code) {
+		int square = x + 8 * y;
+		int shift = (square & 15) * 4;
+		squares[square >>> 4] = (squares[square >>> 4] & ~(15L << shift)) | ((long) code << shift);
+	}
+
+}
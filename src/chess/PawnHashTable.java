@@ -0,0 +1,172 @@
+package chess;
+
+
+/**
+ *   A fixed-size cache of pawn structure evaluations.  Pawn structure
+ *   terms (doubled, isolated, passed and backward pawns) are expensive
+ *   to calculate, but the pawns move far less often than the other
+ *   pieces.  Each entry is indexed by the pawn hash key of a game board
+ *   (see {@link Board#getPawnKey()}).  When two entries map to the same
+ *   slot, the newer entry simply replaces the older one.
+ *
+ *   <p>The number of hits and misses is counted so the table can be sized
+ *   for a particular workload.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class PawnHashTable {
+
+	/**
+	 *  Default number of entries in the table.  Must be a power of two.
+	 */
+	public static final int defaultSize = 1 << 14;
+
+	private final long[] keys;
+	private final int[] scores;
+	private final boolean[] used;
+	private final int mask;
+
+	private long hits = 0;
+	private long misses = 0;
+
+
+
+	/**
+	 *   Default constructor.  Create a table with the default number
+	 *   of entries.
+	 */
+	public PawnHashTable() {
+		this(defaultSize);
+	}
+
+
+
+	/**
+	 *   Create a pawn hash table with a given number of entries.
+	 *
+	 * @param size
+	 * 		Number of entries.  This is rounded up to the next power of two.
+	 */
+	public PawnHashTable(int size) {
+		int entries = 1;
+		while ( entries < size ) entries <<= 1;
+
+		this.keys = new long[entries];
+		this.scores = new int[entries];
+		this.used = new boolean[entries];
+		this.mask = entries - 1;
+	}
+
+
+
+	/**
+	 *   Look up the pawn structure score of a pawn hash key.
+	 *
+	 * @param pawnKey
+	 * 		A pawn hash key
+	 *
+	 * @return
+	 * 		Return "true" if the score of this key is in the table.  The
+	 * 		score can then be read with {@link #getScore(long)}.
+	 */
+	public boolean probe(long pawnKey) {
+		int index = (int) pawnKey & mask;
+		if ( used[index] && (keys[index] == pawnKey) ) {
+			hits++;
+			return true;
+		}
+		misses++;
+		return false;
+	}
+
+
+
+	/**
+	 *   Get the score stored for a pawn hash key.  Only call this after
+	 *   {@link #probe(long)} has returned "true" for the same key.
+	 *
+	 * @param pawnKey
+	 * 		A pawn hash key
+	 *
+	 * @return
+	 * 		Return the stored pawn structure score
+	 */
+	public int getScore(long pawnKey) {
+		return scores[(int) pawnKey & mask];
+	}
+
+
+
+	/**
+	 *   Store the pawn structure score of a pawn hash key.
+	 *
+	 * @param pawnKey
+	 * 		A pawn hash key
+	 *
+	 * @param score
+	 * 		The pawn structure score of this key
+	 */
+	public void store(long pawnKey, int score) {
+		int index = (int) pawnKey & mask;
+		keys[index] = pawnKey;
+		scores[index] = score;
+		used[index] = true;
+	}
+
+
+
+	/**
+	 *   Remove all entries and reset the hit and miss counters.
+	 */
+	public void clear() {
+		for (int i=0; i < used.length; i++) used[i] = false;
+		hits = 0;
+		misses = 0;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of entries in this table
+	 */
+	public int getSize() {
+		return keys.length;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of lookups that found a stored score
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of lookups that did not find a stored score
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the fraction of lookups (from 0.0 to 1.0) that
+	 * 		found a stored score
+	 */
+	public double getHitRate() {
+		long probes = hits + misses;
+		if ( probes == 0 ) return 0.0;
+		return (double) hits / probes;
+	}
+
+}
@@ -108,6 +108,22 @@ public class Piece {
 
 
 
+	/**
+	 *  A constructor to create a copy of a game piece and place it at
+	 *  a location on the game board.  The copy remembers whether the
+	 *  original piece has moved before.
+	 *
+	 * @param aPiece   A game piece to copy from
+	 * @param squareName   Location (i.e. fileRank) to put the copy
+	 *
+	 */
+	public Piece(Piece aPiece, String squareName) {
+		this(aPiece.getColor(), aPiece.getName(), squareName);
+		this.bHasMoved = aPiece.bHasMoved;
+	}
+
+
+
 	/*
 	 * 	Return the encoded symbolic name of this piece as
 	 * 	displayed on the game board.  For example, a white
@@ -336,6 +352,19 @@ public class Piece {
 
 
 
+	/**
+	 *   Set the flag that remembers if this piece has moved before.  This
+	 *   is used when a game board is set up in the middle of a game.
+	 *
+	 * @param bFlag
+	 * 		"true" if this piece has moved before
+	 */
+	void setHasMoved(boolean bFlag) {
+		bHasMoved = bFlag;
+	}
+
+
+
 	/**
 	 * 	Check if this is a pawn and is making an initial double
 	 *  push move.  This check is part of the requirements to
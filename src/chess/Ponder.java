@@ -0,0 +1,209 @@
+package chess;
+
+
+/**
+ *   Thinking on the opponent's time.  While a person is choosing a move,
+ *   a background thread guesses the move they will play and searches the
+ *   position that follows it, exactly as the engine would search it once
+ *   the move is played.
+ *
+ *   <p>The guess is the best move stored in the transposition table for
+ *   the position, which is the reply the engine expected when it chose
+ *   its own move.  If the table has no move, a short search finds one.
+ *
+ *   <p>When the engine is due to move, {@link #getMove(Board)} compares
+ *   the position on the board with the pondered one.  On a hit the
+ *   pondering search simply goes on to its end and its move is played.
+ *   On a miss the search is stopped (it checks the stop flag at every
+ *   node) and the engine searches the real position, with the
+ *   transposition table still filled by the pondering search.
+ *
+ *   <p>The background thread uses the engine's own search.  The engine
+ *   must therefore not be used by another thread while pondering, except
+ *   through {@link #getMove(Board)} and {@link #stop()}.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Ponder {
+
+	/**
+	 *  Depth of the search that guesses the opponent's move when the
+	 *  transposition table has none
+	 */
+	public static final int guessDepth = 2;
+
+	private final Engine engine;
+
+	private Thread ponderThread = null;
+	private long startKey = 0L;
+	private volatile long ponderKey = 0L;
+	private volatile Move ponderMove = null;
+	private volatile Move result = null;
+
+	private int hits = 0;
+	private int misses = 0;
+
+
+
+	/**
+	 *   Create pondering for a computer player.
+	 *
+	 * @param engine
+	 * 		The computer player
+	 */
+	public Ponder(Engine engine) {
+		this.engine = engine;
+	}
+
+
+
+	/**
+	 *   Start pondering while the opponent is due to move.  Nothing is
+	 *   done if this position is already being pondered.
+	 *
+	 * @param aBoard
+	 * 		A game board with the opponent to move.  This board is not changed.
+	 */
+	public synchronized void start(Board aBoard) {
+		long key = aBoard.getHashKey();
+		if ( (ponderThread != null) && (key == startKey) ) return;
+
+		stop();
+		startKey = key;
+		ponderKey = 0L;
+		ponderMove = null;
+		result = null;
+
+		final Board aPosition = new Board(aBoard);
+		ponderThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				ponder(aPosition);
+			}
+		}, "ponder");
+		ponderThread.setDaemon(true);
+		ponderThread.start();
+	}
+
+
+
+	/**
+	 *   Get the move of the computer player when it is due to move.
+	 *
+	 * @param aBoard
+	 * 		A game board with the computer player to move.  This board is not changed.
+	 *
+	 * @return
+	 * 		Return the move found by pondering if this position was pondered,
+	 * 		waiting for the search to end if needed.  Otherwise, stop pondering
+	 * 		and return "null"; the engine must then search the position itself.
+	 */
+	public synchronized Move getMove(Board aBoard) {
+		if ( ponderThread == null ) return null;
+
+		if ( (ponderKey != 0L) && (aBoard.getHashKey() == ponderKey) ) {
+			try {
+				ponderThread.join();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			ponderThread = null;
+			if ( result != null ) {
+				hits++;
+				return result;
+			}
+		}
+
+		stop();
+		misses++;
+		return null;
+	}
+
+
+
+	/**
+	 *   Stop pondering, and wait for the background thread to end.
+	 */
+	public synchronized void stop() {
+		if ( ponderThread == null ) return;
+
+		//
+		// Keep asking until the thread ends, in case the search had not
+		// started yet (and cleared the stop flag) when it was first asked.
+		//
+		try {
+			while ( ponderThread.isAlive() ) {
+				engine.getSearch().stop();
+				ponderThread.join(1);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		ponderThread = null;
+		result = null;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the opponent's move expected by the last pondering search,
+	 * 		or "null" if it is not known yet
+	 */
+	public Move getPonderMove() {
+		return ponderMove;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return how often the opponent played the expected move
+	 */
+	public int getHits() {
+		return hits;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return how often the opponent played another move
+	 */
+	public int getMisses() {
+		return misses;
+	}
+
+
+
+	/*
+	 * Guess the opponent's move, and search the position after it.
+	 * Runs on the background thread.
+	 */
+	private void ponder(Board aPosition) {
+		Search search = engine.getSearch();
+		Move aMove = null;
+
+		TranspositionTable table = search.getTranspositionTable();
+		long key = aPosition.getHashKey();
+		if ( (table != null) && table.probe(key) && (table.getMoveCode(key) != 0) ) {
+			aMove = Move.fromCode(table.getMoveCode(key));
+		}
+		else {
+			aMove = search.search(aPosition, guessDepth).getBestMove();
+			if ( search.isStopped() ) return;
+		}
+
+		if ( (aMove == null) || (! aPosition.makeMove(aMove)) ) return;
+		ponderMove = aMove;
+		ponderKey = aPosition.getHashKey();
+
+		Move reply = engine.chooseMove(aPosition);
+		if ( ! search.isStopped() ) result = reply;
+	}
+
+}
@@ -0,0 +1,580 @@
+package chess;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashSet;
+
+
+/**
+ *   An on-disk database of games that can be searched by position and
+ *   by material balance.
+ *
+ *   <p>All the games are kept in one game record file (see
+ *   {@link GameRecordWriter}) and are known by their byte offset in that
+ *   file.  Two indexes point into it:
+ *   <ul>
+ *   <li>the position index holds the Zobrist hash key
+ *       ({@link Board#getHashKey()}) of every position a game reached</li>
+ *   <li>the material index holds every material balance a game reached,
+ *       for example "KRPvKR"</li>
+ *   </ul>
+ *   Each index entry (a "posting") is an 8-byte key and the 4-byte offset
+ *   of a game.  Most postings are kept in a file sorted by key, which is
+ *   memory-mapped and searched with a binary search, so a query never
+ *   reads the games themselves.
+ *
+ *   <p>A new game is added to the end of the game file, and its postings
+ *   are added to the end of a small unsorted file (and kept in memory)
+ *   that is searched one entry at a time.  When this file grows too large
+ *   it is merged into the sorted file.  {@link #compact()} does the same
+ *   on request.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class PositionIndex {
+
+	/**
+	 *  Name of the game record file in the index directory
+	 */
+	public static final String gamesFileName = "games.c51";
+
+	/**
+	 *  Number of unsorted postings that triggers a merge into the sorted file
+	 */
+	private static final int compactThreshold = 1 << 20;
+
+	private static final int entrySize = 12;
+
+
+	/**
+	 *  One index: a sorted, memory-mapped postings file plus the
+	 *  postings added since it was last sorted
+	 */
+	private static class Postings {
+		private final File sortedFile;
+		private final File newFile;
+		private MappedByteBuffer sorted = null;
+		private int sortedCount = 0;
+
+		private long[] newKeys = new long[1024];
+		private int[] newOffsets = new int[1024];
+		private int newCount = 0;
+		private DataOutputStream newOut;
+
+		Postings(File directory, String name) throws IOException {
+			this.sortedFile = new File(directory, name + ".idx");
+			this.newFile = new File(directory, name + ".new");
+			mapSortedFile();
+			readNewFile();
+			newOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newFile, true)));
+		}
+
+		private void mapSortedFile() throws IOException {
+			sorted = null;
+			sortedCount = 0;
+			if ( ! sortedFile.exists() ) return;
+
+			RandomAccessFile file = new RandomAccessFile(sortedFile, "r");
+			try {
+				FileChannel channel = file.getChannel();
+				if ( channel.size() > Integer.MAX_VALUE ) throw new IOException("Index is too large: " + sortedFile);
+
+				// The mapping stays valid after the file is closed
+				sorted = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				sortedCount = (int) (channel.size() / entrySize);
+			}
+			finally {
+				file.close();
+			}
+		}
+
+		private void readNewFile() throws IOException {
+			if ( ! newFile.exists() ) return;
+
+			DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(newFile)));
+			try {
+				while ( true ) {
+					long key = in.readLong();
+					addInMemory(key, in.readInt());
+				}
+			}
+			catch (EOFException e) {
+				// End of the file.  A posting cut short by a crash is ignored.
+			}
+			finally {
+				in.close();
+			}
+		}
+
+		private void addInMemory(long key, int offset) {
+			if ( newCount == newKeys.length ) {
+				newKeys = Arrays.copyOf(newKeys, newCount * 2);
+				newOffsets = Arrays.copyOf(newOffsets, newCount * 2);
+			}
+			newKeys[newCount] = key;
+			newOffsets[newCount] = offset;
+			newCount++;
+		}
+
+		void add(long key, int offset) throws IOException {
+			addInMemory(key, offset);
+			newOut.writeLong(key);
+			newOut.writeInt(offset);
+		}
+
+		int getCount() {
+			return sortedCount + newCount;
+		}
+
+		int getNewCount() {
+			return newCount;
+		}
+
+		/**
+		 *  Get the offsets of all the games posted under a key, sorted
+		 *  and without repeats
+		 */
+		int[] find(long key) {
+			int low = 0;
+			int high = sortedCount;
+			while ( low < high ) {
+				int middle = (low + high) >>> 1;
+				if ( sorted.getLong(middle * entrySize) < key ) {
+					low = middle + 1;
+				}
+				else {
+					high = middle;
+				}
+			}
+
+			int[] found = new int[16];
+			int count = 0;
+			for (int i = low; (i < sortedCount) && (sorted.getLong(i * entrySize) == key); i++) {
+				if ( count == found.length ) found = Arrays.copyOf(found, count * 2);
+				found[count++] = sorted.getInt(i * entrySize + 8);
+			}
+			for (int i=0; i < newCount; i++) {
+				if ( newKeys[i] != key ) continue;
+				if ( count == found.length ) found = Arrays.copyOf(found, count * 2);
+				found[count++] = newOffsets[i];
+			}
+
+			// A game may reach the same position more than once
+			Arrays.sort(found, 0, count);
+			int unique = 0;
+			for (int i=0; i < count; i++) {
+				if ( (unique == 0) || (found[unique - 1] != found[i]) ) found[unique++] = found[i];
+			}
+			return Arrays.copyOf(found, unique);
+		}
+
+		void flush() throws IOException {
+			newOut.flush();
+		}
+
+		/**
+		 *  Merge the new postings into the sorted file
+		 */
+		void compact() throws IOException {
+			newOut.close();
+			sortByKey(newKeys, newOffsets, 0, newCount - 1);
+
+			File tempFile = new File(sortedFile.getPath() + ".tmp");
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+			try {
+				int i = 0;
+				int j = 0;
+				while ( (i < sortedCount) || (j < newCount) ) {
+					if ( (j >= newCount) ||
+						 ((i < sortedCount) && (sorted.getLong(i * entrySize) <= newKeys[j])) ) {
+						out.writeLong(sorted.getLong(i * entrySize));
+						out.writeInt(sorted.getInt(i * entrySize + 8));
+						i++;
+					}
+					else {
+						out.writeLong(newKeys[j]);
+						out.writeInt(newOffsets[j]);
+						j++;
+					}
+				}
+			}
+			finally {
+				out.close();
+			}
+
+			sorted = null;
+			if ( sortedFile.exists() && (! sortedFile.delete()) ) {
+				throw new IOException("Cannot replace " + sortedFile);
+			}
+			if ( ! tempFile.renameTo(sortedFile) ) throw new IOException("Cannot replace " + sortedFile);
+			mapSortedFile();
+
+			newCount = 0;
+			newOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(newFile, false)));
+		}
+
+		void close() throws IOException {
+			newOut.close();
+		}
+	}
+
+
+	private final File directory;
+	private final File gamesFile;
+	private final Postings positions;
+	private final Postings materials;
+	private GameRecordWriter gamesWriter;
+	private GameRecordReader gamesReader = null;
+	private long gamesReaderSize = 0;
+	private int gameCount = 0;
+
+
+
+	/**
+	 *   Open a position index, or create an empty one.
+	 *
+	 * @param directoryName
+	 * 		The directory that holds the index files.  It is created if
+	 * 		it does not exist.
+	 *
+	 * @throws IOException
+	 * 		If the index files cannot be opened
+	 */
+	public PositionIndex(String directoryName) throws IOException {
+		this.directory = new File(directoryName);
+		if ( (! directory.isDirectory()) && (! directory.mkdirs()) ) {
+			throw new IOException("Cannot create index directory " + directoryName);
+		}
+
+		this.gamesFile = new File(directory, gamesFileName);
+		this.positions = new Postings(directory, "positions");
+		this.materials = new Postings(directory, "material");
+		this.gamesWriter = new GameRecordWriter(gamesFile.getPath());
+
+		if ( gamesFile.length() > 0 ) {
+			GameRecordReader reader = new GameRecordReader(gamesFile.getPath());
+			while ( reader.hasNext() ) {
+				reader.skip();
+				gameCount++;
+			}
+		}
+	}
+
+
+
+	/**
+	 *   Add a finished game to the database and index all the positions
+	 *   and material balances it reached.
+	 *
+	 * @param aGame
+	 * 		The record of a game
+	 *
+	 * @return
+	 * 		Return the offset of the game in the game file
+	 *
+	 * @throws IOException
+	 * 		If the game cannot be saved, or one of its moves is illegal
+	 */
+	public synchronized int addGame(GameRecord aGame) throws IOException {
+		// Replay the game first, so an invalid game is not saved
+		HashSet<Long> positionKeys = new HashSet<Long>();
+		HashSet<Long> materialKeys = new HashSet<Long>();
+
+		Board aBoard = aGame.createStartBoard();
+		positionKeys.add(aBoard.getHashKey());
+		materialKeys.add(getMaterialKey(aBoard.getMaterialSignature()));
+
+		for (int ply=0; ply < aGame.getMoveCount(); ply++) {
+			if ( ! aBoard.makeMove(aGame.getMove(ply)) ) {
+				throw new IOException("Illegal move " + aGame.getMove(ply) + " at ply " + (ply + 1));
+			}
+			positionKeys.add(aBoard.getHashKey());
+			materialKeys.add(getMaterialKey(aBoard.getMaterialSignature()));
+		}
+
+		gamesWriter.flush();
+		long offset = gamesFile.length();
+		if ( offset > Integer.MAX_VALUE ) throw new IOException("Game file is full");
+
+		gamesWriter.write(aGame);
+		gamesWriter.flush();
+		gameCount++;
+
+		for (long key : positionKeys) positions.add(key, (int) offset);
+		for (long key : materialKeys) materials.add(key, (int) offset);
+		positions.flush();
+		materials.flush();
+
+		if ( positions.getNewCount() > compactThreshold ) positions.compact();
+		if ( materials.getNewCount() > compactThreshold ) materials.compact();
+
+		return (int) offset;
+	}
+
+
+
+	/**
+	 *   Add all the games of a game record file to the database.
+	 *
+	 * @param fileName
+	 * 		The name of a game record file
+	 *
+	 * @return
+	 * 		Return the number of games added
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be read or a game cannot be saved
+	 */
+	public int addGames(String fileName) throws IOException {
+		GameRecordReader reader = new GameRecordReader(fileName);
+		int count = 0;
+		while ( reader.hasNext() ) {
+			addGame(reader.next());
+			count++;
+		}
+		return count;
+	}
+
+
+
+	/**
+	 *   Find the games that reached the position on a game board.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the offsets of the games, in the order they were added
+	 */
+	public int[] findGames(Board aBoard) {
+		return findGames(aBoard.getHashKey());
+	}
+
+
+
+	/**
+	 *   Find the games that reached a position.
+	 *
+	 * @param hashKey
+	 * 		The hash key of a position (see {@link Board#getHashKey()})
+	 *
+	 * @return
+	 * 		Return the offsets of the games, in the order they were added
+	 */
+	public synchronized int[] findGames(long hashKey) {
+		return positions.find(hashKey);
+	}
+
+
+
+	/**
+	 *   Find the games that reached a material balance.
+	 *
+	 * @param signature
+	 * 		A material balance with white first, written like
+	 * 		{@link Board#getMaterialSignature()}, for example "KRPvKR"
+	 *
+	 * @return
+	 * 		Return the offsets of the games, in the order they were added
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If the material balance is not written correctly
+	 */
+	public synchronized int[] findGamesByMaterial(String signature) {
+		return materials.find(getMaterialKey(signature));
+	}
+
+
+
+	/**
+	 *   Read a game from the database.
+	 *
+	 * @param offset
+	 * 		The offset of a game, as returned by a search
+	 *
+	 * @return
+	 * 		Return the record of the game
+	 *
+	 * @throws IOException
+	 * 		If the game cannot be read
+	 */
+	public synchronized GameRecord getGame(int offset) throws IOException {
+		if ( (gamesReader == null) || (offset >= gamesReaderSize) ) {
+			// Map the game file again to see the games added since
+			gamesWriter.flush();
+			gamesReader = new GameRecordReader(gamesFile.getPath());
+			gamesReaderSize = gamesFile.length();
+		}
+
+		gamesReader.setPosition(offset);
+		return gamesReader.next();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of games in the database
+	 */
+	public synchronized int getGameCount() {
+		return gameCount;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of position postings
+	 */
+	public synchronized int getPositionCount() {
+		return positions.getCount();
+	}
+
+
+
+	/**
+	 *   Merge all the newly added postings into the sorted index files.
+	 *
+	 * @throws IOException
+	 * 		If the index files cannot be written
+	 */
+	public synchronized void compact() throws IOException {
+		positions.compact();
+		materials.compact();
+	}
+
+
+
+	/**
+	 *   Close the database.  It must not be used afterwards.
+	 *
+	 * @throws IOException
+	 * 		If the files cannot be written
+	 */
+	public synchronized void close() throws IOException {
+		gamesWriter.close();
+		positions.close();
+		materials.close();
+	}
+
+
+
+	/**
+	 *   Get the index key of a material balance.  The number of each
+	 *   kind of piece (except the kings) is packed into 4 bits.
+	 *
+	 * @param signature
+	 * 		A material balance with white first, for example "KRPvKR"
+	 *
+	 * @return
+	 * 		Return the index key
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If the material balance is not written correctly
+	 */
+	public static long getMaterialKey(String signature) {
+		String[] sides = signature.trim().toUpperCase().split("V");
+		if ( sides.length != 2 ) throw new IllegalArgumentException("Invalid material balance: " + signature);
+
+		String letters = "QRBNP";
+		long key = 0L;
+		for (int side=0; side < 2; side++) {
+			int[] counts = new int[letters.length()];
+			for (char c : sides[side].toCharArray()) {
+				if ( c == 'K' ) continue;
+
+				int i = letters.indexOf(c);
+				if ( (i < 0) || (counts[i] == 15) ) {
+					throw new IllegalArgumentException("Invalid material balance: " + signature);
+				}
+				counts[i]++;
+			}
+			for (int i=0; i < counts.length; i++) {
+				key = (key << 4) | counts[i];
+			}
+		}
+		return key;
+	}
+
+
+
+	/**
+	 *   Sort postings by key (quicksort on two parallel arrays).
+	 */
+	private static void sortByKey(long[] keys, int[] offsets, int low, int high) {
+		while ( low < high ) {
+			long pivot = keys[(low + high) >>> 1];
+			int i = low;
+			int j = high;
+			while ( i <= j ) {
+				while ( keys[i] < pivot ) i++;
+				while ( keys[j] > pivot ) j--;
+				if ( i <= j ) {
+					long key = keys[i];
+					keys[i] = keys[j];
+					keys[j] = key;
+
+					int offset = offsets[i];
+					offsets[i] = offsets[j];
+					offsets[j] = offset;
+					i++;
+					j--;
+				}
+			}
+
+			// Recurse into the smaller half to keep the stack short
+			if ( j - low < high - i ) {
+				sortByKey(keys, offsets, low, j);
+				low = i;
+			}
+			else {
+				sortByKey(keys, offsets, i, high);
+				high = j;
+			}
+		}
+	}
+
+
+
+	/**
+	 *   Add game record files to a position index.
+	 *
+	 * @param args
+	 * 		The index directory followed by one or more game record files
+	 *
+	 * @throws IOException
+	 * 		If a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if ( args.length < 2 ) {
+			System.out.println("Usage: java chess.PositionIndex indexDirectory gameRecordFile ...");
+			return;
+		}
+
+		PositionIndex index = new PositionIndex(args[0]);
+		try {
+			for (int i=1; i < args.length; i++) {
+				System.out.println(args[i] + ": " + index.addGames(args[i]) + " games added");
+			}
+			index.compact();
+			System.out.println(index.getGameCount() + " games, " + index.getPositionCount() + " positions indexed");
+		}
+		finally {
+			index.close();
+		}
+	}
+
+}
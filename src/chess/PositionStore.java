@@ -0,0 +1,650 @@
+package chess;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+
+/**
+ *   A hash map from positions to int values that is kept outside the
+ *   Java heap, for sets of tens of millions of positions.  It can be used
+ *   as a set ({@link #add(Board)}, {@link #contains(Board)}) or to count
+ *   how often each position was seen ({@link #increment(Board)}).
+ *
+ *   <p>Positions are kept as {@link PackedPosition}s in open-addressing
+ *   slots with linear probing:
+ *   <pre>
+ *      32 bytes   the packed position (all zero for an empty slot)
+ *       4 bytes   the value
+ *       4 bytes   unused, so that every slot starts on 8 bytes
+ *   </pre>
+ *   The slots live in direct ByteBuffers of up to 2^24 slots each, so
+ *   the garbage collector never scans them and the map is not limited to
+ *   2 GB.  When three quarters of the slots are used the table doubles.
+ *
+ *   <p>A store may be kept in a memory-mapped file instead.  The file is
+ *   a 64-byte header followed by the slots, and it is always up to date:
+ *   opening the file again gives the same map without reading it in.
+ *   When the table grows, it is rebuilt in a new file that then replaces
+ *   the old one.
+ *
+ *   <p>Only the position is stored, not the state of the game: a
+ *   checkmate and the same position with white to move are the same key.
+ *   A store is not thread-safe.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class PositionStore implements Iterable<long[]> {
+
+	/**
+	 *  Receives every position and value of a store.
+	 */
+	public interface Visitor {
+		/**
+		 *   Called once for each position in the store.
+		 *
+		 * @param packed  The packed position.  The array is reused for the next position.
+		 * @param value   The value of the position
+		 */
+		void visit(long[] packed, int value);
+	}
+
+
+	/**
+	 *  Value returned for a position that is not in the store
+	 */
+	public static final int noValue = Integer.MIN_VALUE;
+
+	private static final long magic = 0x4348353150535431L;	// "CH51PST1"
+
+	private static final int headerSize = 64;
+	private static final int capacityOffset = 8;
+	private static final int sizeOffset = 16;
+
+	private static final int slotSize = 40;
+	private static final int valueOffset = 32;
+	private static final int maxChunkBits = 24;
+	private static final int minCapacity = 16;
+
+	private final File file;
+	private ByteBuffer header;
+	private ByteBuffer[] chunks;
+	private int chunkBits;
+	private long capacity;
+	private long size = 0;
+
+	/**
+	 *  Packed position of the last game board looked up
+	 */
+	private final long[] scratch = new long[PackedPosition.longCount];
+
+
+
+	/**
+	 *   Create an empty store in memory.
+	 *
+	 * @param expectedSize
+	 * 		The number of positions the store should hold without growing
+	 */
+	public PositionStore(long expectedSize) {
+		this.file = null;
+		try {
+			allocate(null, getCapacity(expectedSize));
+		}
+		catch (IOException e) {
+			// Not thrown without a file
+			throw new UncheckedIOException(e);
+		}
+	}
+
+
+
+	/**
+	 *   Open a store kept in a memory-mapped file, or create it.
+	 *
+	 * @param fileName
+	 * 		The name of the store file
+	 *
+	 * @param expectedSize
+	 * 		The number of positions a new store should hold without
+	 * 		growing.  It is not used if the file already exists.
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be opened or is not a store file
+	 */
+	public PositionStore(String fileName, long expectedSize) throws IOException {
+		this.file = new File(fileName);
+		if ( file.length() == 0 ) {
+			allocate(file, getCapacity(expectedSize));
+			return;
+		}
+
+		RandomAccessFile aFile = new RandomAccessFile(file, "rw");
+		try {
+			FileChannel channel = aFile.getChannel();
+			if ( channel.size() < headerSize ) throw new IOException("Not a position store: " + fileName);
+			header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+
+			capacity = header.getLong(capacityOffset);
+			size = header.getLong(sizeOffset);
+			if ( (header.getLong(0) != magic) || (capacity < minCapacity) || (Long.bitCount(capacity) != 1) ||
+				 (channel.size() != headerSize + capacity * slotSize) || (size < 0) || (size > capacity) ) {
+				throw new IOException("Not a position store: " + fileName);
+			}
+			mapChunks(channel);
+		}
+		finally {
+			aFile.close();
+		}
+	}
+
+
+
+	/**
+	 *   Add a position with the value 0, unless it is already in the store.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return "true" if the position was not in the store before
+	 */
+	public boolean add(Board aBoard) {
+		PackedPosition.pack(aBoard, scratch, 0);
+		return add(scratch, 0);
+	}
+
+
+
+	/**
+	 *   Add a packed position with the value 0, unless it is already in
+	 *   the store.
+	 *
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 *
+	 * @return
+	 * 		Return "true" if the position was not in the store before
+	 */
+	public boolean add(long[] packed, int offset) {
+		long slot = findSlot(packed, offset);
+		if ( ! isEmpty(slot) ) return false;
+
+		insert(slot, packed, offset, 0);
+		return true;
+	}
+
+
+
+	/**
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return "true" if the position is in the store
+	 */
+	public boolean contains(Board aBoard) {
+		PackedPosition.pack(aBoard, scratch, 0);
+		return contains(scratch, 0);
+	}
+
+
+
+	/**
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 *
+	 * @return
+	 * 		Return "true" if the position is in the store
+	 */
+	public boolean contains(long[] packed, int offset) {
+		return ! isEmpty(findSlot(packed, offset));
+	}
+
+
+
+	/**
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the value of the position, or {@link #noValue} if it is
+	 * 		not in the store
+	 */
+	public int get(Board aBoard) {
+		PackedPosition.pack(aBoard, scratch, 0);
+		return get(scratch, 0);
+	}
+
+
+
+	/**
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 *
+	 * @return
+	 * 		Return the value of the position, or {@link #noValue} if it is
+	 * 		not in the store
+	 */
+	public int get(long[] packed, int offset) {
+		long slot = findSlot(packed, offset);
+		return isEmpty(slot) ? noValue : getChunk(slot).getInt(getIndex(slot) + valueOffset);
+	}
+
+
+
+	/**
+	 *   Set the value of a position, adding the position if needed.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @param value
+	 * 		The new value
+	 *
+	 * @return
+	 * 		Return the old value, or {@link #noValue} if the position was
+	 * 		not in the store
+	 */
+	public int put(Board aBoard, int value) {
+		PackedPosition.pack(aBoard, scratch, 0);
+		return put(scratch, 0, value);
+	}
+
+
+
+	/**
+	 *   Set the value of a packed position, adding the position if needed.
+	 *
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 * @param value   The new value
+	 *
+	 * @return
+	 * 		Return the old value, or {@link #noValue} if the position was
+	 * 		not in the store
+	 */
+	public int put(long[] packed, int offset, int value) {
+		long slot = findSlot(packed, offset);
+		if ( isEmpty(slot) ) {
+			insert(slot, packed, offset, value);
+			return noValue;
+		}
+
+		ByteBuffer chunk = getChunk(slot);
+		int index = getIndex(slot) + valueOffset;
+		int oldValue = chunk.getInt(index);
+		chunk.putInt(index, value);
+		return oldValue;
+	}
+
+
+
+	/**
+	 *   Count one more sighting of a position.  A new position starts at 1.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the new value of the position
+	 */
+	public int increment(Board aBoard) {
+		PackedPosition.pack(aBoard, scratch, 0);
+		return increment(scratch, 0);
+	}
+
+
+
+	/**
+	 *   Count one more sighting of a packed position.  A new position
+	 *   starts at 1.
+	 *
+	 * @param packed  An array holding a packed position
+	 * @param offset  Index of the first long of the position
+	 *
+	 * @return
+	 * 		Return the new value of the position
+	 */
+	public int increment(long[] packed, int offset) {
+		long slot = findSlot(packed, offset);
+		if ( isEmpty(slot) ) {
+			insert(slot, packed, offset, 1);
+			return 1;
+		}
+
+		ByteBuffer chunk = getChunk(slot);
+		int index = getIndex(slot) + valueOffset;
+		int value = chunk.getInt(index) + 1;
+		chunk.putInt(index, value);
+		return value;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of positions in the store
+	 */
+	public long size() {
+		return size;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of slots in the store
+	 */
+	public long getCapacity() {
+		return capacity;
+	}
+
+
+
+	/**
+	 *   Pass every position in the store and its value to a visitor, in
+	 *   no particular order.  The store must not be changed meanwhile.
+	 *
+	 * @param visitor
+	 * 		Receives the positions
+	 */
+	public void forEachPosition(Visitor visitor) {
+		long[] packed = new long[PackedPosition.longCount];
+		for (long slot=0; slot < capacity; slot++) {
+			if ( isEmpty(slot) ) continue;
+			read(slot, packed);
+			visitor.visit(packed, getChunk(slot).getInt(getIndex(slot) + valueOffset));
+		}
+	}
+
+
+
+	/**
+	 *   Iterate over the positions in the store, in no particular order.
+	 *   Each position is returned in a new array of
+	 *   {@link PackedPosition#longCount} longs.  The store must not be
+	 *   changed meanwhile.
+	 *
+	 * @see java.lang.Iterable#iterator()
+	 */
+	@Override
+	public Iterator<long[]> iterator() {
+		return new Iterator<long[]>() {
+			private long slot = findNext(0);
+
+			@Override
+			public boolean hasNext() {
+				return slot < capacity;
+			}
+
+			@Override
+			public long[] next() {
+				if ( slot >= capacity ) throw new NoSuchElementException();
+
+				long[] packed = new long[PackedPosition.longCount];
+				read(slot, packed);
+				slot = findNext(slot + 1);
+				return packed;
+			}
+		};
+	}
+
+
+
+	/**
+	 *   Write the changes to a store file to the disk.  Nothing is done
+	 *   for a store in memory.
+	 */
+	public void force() {
+		if ( file == null ) return;
+
+		for (ByteBuffer chunk : chunks) ((MappedByteBuffer) chunk).force();
+		((MappedByteBuffer) header).force();
+	}
+
+
+
+	/**
+	 *   Write the changes to a store file to the disk.  The store must not
+	 *   be used afterwards.  The memory is given back when the store is
+	 *   garbage collected.
+	 */
+	public void close() {
+		force();
+	}
+
+
+
+	/**
+	 *   Get the number of slots for a number of positions: a power of two
+	 *   that is filled no more than three quarters.
+	 */
+	private static long getCapacity(long expectedSize) {
+		long aCapacity = minCapacity;
+		while ( aCapacity - (aCapacity >>> 2) < expectedSize ) aCapacity <<= 1;
+		return aCapacity;
+	}
+
+
+
+	/**
+	 *   Create empty slots in memory, or in a new file if one is given.
+	 */
+	private void allocate(File aFile, long newCapacity) throws IOException {
+		capacity = newCapacity;
+		size = 0;
+
+		if ( aFile == null ) {
+			header = ByteBuffer.allocate(headerSize);
+			chunkBits = Math.min(maxChunkBits, Long.numberOfTrailingZeros(capacity));
+			chunks = new ByteBuffer[(int) (capacity >>> chunkBits)];
+			for (int i=0; i < chunks.length; i++) chunks[i] = ByteBuffer.allocateDirect(slotSize << chunkBits);
+		}
+		else {
+			RandomAccessFile newFile = new RandomAccessFile(aFile, "rw");
+			try {
+				// The new slots are all zero, that is empty
+				newFile.setLength(0);
+				newFile.setLength(headerSize + capacity * slotSize);
+				FileChannel channel = newFile.getChannel();
+				header = channel.map(FileChannel.MapMode.READ_WRITE, 0, headerSize);
+				mapChunks(channel);
+			}
+			finally {
+				newFile.close();
+			}
+		}
+
+		header.putLong(0, magic);
+		header.putLong(capacityOffset, capacity);
+		header.putLong(sizeOffset, size);
+	}
+
+
+
+	/**
+	 *   Map the slots of a store file.  The mappings stay valid after the
+	 *   file is closed.
+	 */
+	private void mapChunks(FileChannel channel) throws IOException {
+		chunkBits = Math.min(maxChunkBits, Long.numberOfTrailingZeros(capacity));
+		chunks = new ByteBuffer[(int) (capacity >>> chunkBits)];
+		long chunkSize = (long) slotSize << chunkBits;
+		for (int i=0; i < chunks.length; i++) {
+			chunks[i] = channel.map(FileChannel.MapMode.READ_WRITE, headerSize + i * chunkSize, chunkSize);
+		}
+	}
+
+
+
+	/**
+	 *   Find the slot of a position, or the empty slot where it belongs.
+	 */
+	private long findSlot(long[] packed, int offset) {
+		long mask = capacity - 1;
+		long slot = PackedPosition.hash(packed, offset) & mask;
+		while ( true ) {
+			ByteBuffer chunk = getChunk(slot);
+			int index = getIndex(slot);
+			if ( PackedPosition.equals(chunk, index, packed, offset) ) return slot;
+			if ( isEmpty(chunk, index) ) return slot;
+			slot = (slot + 1) & mask;
+		}
+	}
+
+
+
+	private void insert(long slot, long[] packed, int offset, int value) {
+		boolean bEmpty = true;
+		for (int i=0; i < PackedPosition.longCount; i++) bEmpty &= (packed[offset + i] == 0);
+		if ( bEmpty ) throw new IllegalArgumentException("Not a packed position");
+
+		if ( size + 1 > capacity - (capacity >>> 2) ) {
+			grow();
+			slot = findSlot(packed, offset);
+		}
+
+		ByteBuffer chunk = getChunk(slot);
+		int index = getIndex(slot);
+		for (int i=0; i < PackedPosition.longCount; i++) chunk.putLong(index + 8 * i, packed[offset + i]);
+		chunk.putInt(index + valueOffset, value);
+
+		size++;
+		header.putLong(sizeOffset, size);
+	}
+
+
+
+	/**
+	 *   Double the number of slots.  A store file is rebuilt in a new file
+	 *   that then takes the place of the old one.
+	 */
+	private void grow() {
+		ByteBuffer[] oldChunks = chunks;
+		int oldChunkBits = chunkBits;
+		long oldCapacity = capacity;
+		long oldSize = size;
+
+		File newFile = (file == null) ? null : new File(file.getPath() + ".new");
+		try {
+			allocate(newFile, oldCapacity << 1);
+
+			long[] packed = new long[PackedPosition.longCount];
+			for (long slot=0; slot < oldCapacity; slot++) {
+				ByteBuffer chunk = oldChunks[(int) (slot >>> oldChunkBits)];
+				int index = (int) (slot & ((1L << oldChunkBits) - 1)) * slotSize;
+				if ( isEmpty(chunk, index) ) continue;
+
+				for (int i=0; i < PackedPosition.longCount; i++) packed[i] = chunk.getLong(index + 8 * i);
+				long newSlot = findSlot(packed, 0);
+				ByteBuffer newChunk = getChunk(newSlot);
+				int newIndex = getIndex(newSlot);
+				for (int i=0; i < PackedPosition.longCount; i++) newChunk.putLong(newIndex + 8 * i, packed[i]);
+				newChunk.putInt(newIndex + valueOffset, chunk.getInt(index + valueOffset));
+			}
+			size = oldSize;
+			header.putLong(sizeOffset, size);
+
+			if ( file != null ) {
+				force();
+				if ( (! file.delete()) || (! newFile.renameTo(file)) ) {
+					throw new IOException("Cannot replace " + file);
+				}
+			}
+		}
+		catch (IOException e) {
+			throw new UncheckedIOException("Cannot grow position store " + file, e);
+		}
+	}
+
+
+
+	private long findNext(long slot) {
+		while ( (slot < capacity) && isEmpty(slot) ) slot++;
+		return slot;
+	}
+
+
+
+	private void read(long slot, long[] packed) {
+		ByteBuffer chunk = getChunk(slot);
+		int index = getIndex(slot);
+		for (int i=0; i < PackedPosition.longCount; i++) packed[i] = chunk.getLong(index + 8 * i);
+	}
+
+
+
+	private boolean isEmpty(long slot) {
+		return isEmpty(getChunk(slot), getIndex(slot));
+	}
+
+
+
+	private static boolean isEmpty(ByteBuffer chunk, int index) {
+		for (int i=0; i < PackedPosition.longCount; i++) {
+			if ( chunk.getLong(index + 8 * i) != 0 ) return false;
+		}
+		return true;
+	}
+
+
+
+	private ByteBuffer getChunk(long slot) {
+		return chunks[(int) (slot >>> chunkBits)];
+	}
+
+
+
+	private int getIndex(long slot) {
+		return (int) (slot & ((1L << chunkBits) - 1)) * slotSize;
+	}
+
+
+
+	/**
+	 *   Count the distinct positions reached in game record files.
+	 *
+	 * @param args
+	 * 		The store file followed by one or more game record files
+	 *
+	 * @throws IOException
+	 * 		If a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		if ( args.length < 2 ) {
+			System.out.println("Usage: java chess.PositionStore storeFile gameRecordFile ...");
+			return;
+		}
+
+		final PositionStore store = new PositionStore(args[0], 1 << 20);
+		final long[] positionCount = new long[1];
+		GameRecordReader.Listener listener = new GameRecordReader.Listener() {
+			@Override
+			public void moveMade(Board aBoard, Move aMove, int ply) {
+				store.increment(aBoard);
+				positionCount[0]++;
+			}
+		};
+
+		try {
+			for (int i=1; i < args.length; i++) {
+				GameRecordReader reader = new GameRecordReader(args[i]);
+				while ( reader.hasNext() ) reader.replayNext(listener);
+			}
+			System.out.println(positionCount[0] + " positions, " + store.size() + " distinct");
+		}
+		finally {
+			store.close();
+		}
+	}
+
+}
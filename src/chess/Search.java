@@ -0,0 +1,1146 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+
+
+/**
+ *   A fixed-depth alpha-beta search for the best move on a game board.
+ *
+ *   <p>A fixed-depth search gives the wrong answer whenever the last move
+ *   of a line is a capture, because the recapture that follows is never
+ *   seen.  To avoid this, every line that reaches the requested depth is
+ *   extended with a quiescence search.  The quiescence search only tries
+ *   captures and pawn promotions (see {@link Board#getCaptures()}) until
+ *   the position is quiet.  A side that is not in check may always
+ *   "stand pat" and keep the static evaluation instead of capturing.
+ *
+ *   <p>Delta pruning skips captures that cannot raise the score up to
+ *   alpha, even if the captured piece is won for free.
+ *
+ *   <p>Every position searched is a copy of the game board, so the board
+ *   passed to {@link #search(Board, int)} is never changed.
+ *
+ *   <p>{@link #search(Board, int, long)} searches one ply deeper at a time
+ *   (iterative deepening) until a depth or a time limit is reached.  A
+ *   search can be stopped from another thread with {@link #stop()}.  The
+ *   stop flag is checked at every node, so a search ends within the time
+ *   it takes to search one position.  The iteration that was interrupted
+ *   is thrown away and the result of the last complete iteration is
+ *   returned.
+ *
+ *   <p>{@link #searchUntil(Board, int, long, CancellationToken)} takes an
+ *   absolute deadline and a {@link CancellationToken} instead of a time
+ *   limit.  Reading the clock and the token costs more than reading the
+ *   stop flag, so they are only checked every few nodes (see
+ *   {@link #setCheckInterval(int)}).  A search therefore goes on past its
+ *   deadline for at most that many nodes, plus the time to return from
+ *   them.  The overshoot of every search is measured and kept in its
+ *   statistics (see {@link SearchStatistics#getOvershootMicros()}).
+ *
+ *   <p>The moves of each position are tried in the order chosen by a
+ *   {@link MoveOrdering}: the hash move, then captures by MVV-LVA, then
+ *   killer moves, the countermove and the other quiet moves by their
+ *   history score.  The tables behind this order are kept from one
+ *   search to the next and aged in between.
+ *
+ *   <p>Four selective techniques make the search reach deeper, and
+ *   each can be turned off to measure what it saves:
+ *   <ul>
+ *   <li>Null-move pruning: the side to move passes (see
+ *       {@link Board#makeNullMove()}), and if a shallower search still
+ *       fails high, the position is cut off.  It is not tried in check or
+ *       without pieces other than pawns, where passing may be the best
+ *       move (zugzwang).  With only one such piece left, a cutoff is
+ *       first verified by a shallower search without the null move.</li>
+ *   <li>Late move reductions: quiet moves searched late in the move
+ *       order are searched one ply less deep with a null window, and
+ *       again at full depth only if they raise alpha.</li>
+ *   <li>Futility pruning: one and two plies from the quiescence search,
+ *       quiet moves that do not give check are skipped when the static
+ *       evaluation plus a margin cannot reach alpha.</li>
+ *   <li>Aspiration windows: each iteration of an iterative deepening
+ *       search first searches the root with a narrow window around the
+ *       score of the iteration before, and widens it when the score
+ *       falls outside.</li>
+ *   </ul>
+ *
+ *   <p>The result of every position searched is kept in a
+ *   {@link TranspositionTable}.  Its best move is searched first the next
+ *   time the position is reached, and a result searched deep enough is
+ *   used without searching again.  The principal variation of a result
+ *   is read back from the table.
+ *
+ *   <p>{@link #searchMultiPv(Board, int, int, long)} finds the best few
+ *   moves instead of only the best one.  At each depth the first line is
+ *   searched as usual, then each further line is searched again without
+ *   the moves of the lines before it.  All lines share the same
+ *   transposition table, so most of the positions of a later line are
+ *   already known.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Search {
+
+	/**
+	 *  Receives the result of every completed iteration of an
+	 *  iterative deepening search.
+	 */
+	public interface Listener {
+		/**
+		 *   Called after each completed iteration.
+		 *
+		 * @param result      The best move and score of this iteration
+		 * @param statistics  The counters of the search so far
+		 */
+		void iterationFinished(SearchResult result, SearchStatistics statistics);
+	}
+
+
+	/**
+	 *  Score of a checkmate.  A checkmate found closer to the root gets
+	 *  a slightly higher score, so the shortest mate is preferred.
+	 */
+	public static final int mateScore = 100000;
+
+	/**
+	 *  A score higher than any real score
+	 */
+	public static final int infinity = 1000000;
+
+	/**
+	 *  The deepest ply the search (including quiescence) will reach
+	 */
+	public static final int maxPly = 64;
+
+	/**
+	 *  Score of a position that an endgame tablebase shows as won.  It is
+	 *  lower than any checkmate score, so a real checkmate is preferred.
+	 */
+	public static final int tablebaseWinScore = mateScore / 2;
+
+	/**
+	 *  Default number of nodes between two checks of the clock and the
+	 *  cancellation token.  A node takes in the order of 100 microseconds,
+	 *  so a search ends within a few milliseconds of its deadline.
+	 */
+	public static final int defaultCheckInterval = 16;
+
+	/**
+	 *  Safety margin of delta pruning, in centipawns
+	 */
+	private static final int deltaMargin = 200;
+
+	/**
+	 *  How many plies less deep the null move is searched
+	 */
+	private static final int nullMoveReduction = 2;
+
+	/**
+	 *  Safety margins of futility pruning, in centipawns, by remaining depth
+	 */
+	private static final int[] futilityMargins = { 0, 200, 500 };
+
+	/**
+	 *  Number of moves searched at full depth before late moves are reduced
+	 */
+	private static final int fullDepthMoves = 3;
+
+	/**
+	 *  Half width of the first aspiration window, in centipawns
+	 */
+	private static final int aspirationWindow = 50;
+
+
+	private final Evaluation evaluation;
+	private final SearchStatistics statistics = new SearchStatistics();
+
+	private Tablebase tablebase = null;
+	private TranspositionTable table = new TranspositionTable();
+	private MoveOrdering ordering = new MoveOrdering();
+	private boolean bQuiescence = true;
+	private boolean bDeltaPruning = true;
+	private boolean bNullMovePruning = true;
+	private boolean bLateMoveReductions = true;
+	private boolean bFutilityPruning = true;
+	private boolean bAspirationWindows = true;
+	private Listener listener = null;
+
+	private volatile boolean bStopped = false;
+	private volatile long stopTime = 0L;
+	private long deadline = 0L;
+	private CancellationToken token = null;
+	private int checkInterval = defaultCheckInterval;
+	private int nodesToCheck = 0;
+
+	/**
+	 *  Code of the move made at each ply of the line being searched,
+	 *  or 0 for a null move
+	 */
+	private final int[] playedMoves = new int[maxPly + 1];
+
+
+
+	/**
+	 *   Default constructor.  Create a search with its own evaluation.
+	 */
+	public Search() {
+		this(new Evaluation());
+	}
+
+
+
+	/**
+	 *   Create a search that scores positions with a given evaluation.
+	 *
+	 * @param evaluation
+	 * 		The evaluation used to score positions
+	 */
+	public Search(Evaluation evaluation) {
+		this.evaluation = evaluation;
+	}
+
+
+
+	/**
+	 *   Turn the quiescence search on or off.  With quiescence search
+	 *   off, positions at the requested depth are scored as they are.
+	 *
+	 * @param bFlag
+	 * 		"true" to use the quiescence search
+	 */
+	public void setQuiescence(boolean bFlag) {
+		this.bQuiescence = bFlag;
+	}
+
+
+
+	/**
+	 *   Turn delta pruning in the quiescence search on or off.
+	 *
+	 * @param bFlag
+	 * 		"true" to use delta pruning
+	 */
+	public void setDeltaPruning(boolean bFlag) {
+		this.bDeltaPruning = bFlag;
+	}
+
+
+
+	/**
+	 *   Turn null-move pruning on or off.
+	 *
+	 * @param bFlag
+	 * 		"true" to use null-move pruning
+	 */
+	public void setNullMovePruning(boolean bFlag) {
+		this.bNullMovePruning = bFlag;
+	}
+
+
+
+	/**
+	 *   Turn late move reductions on or off.
+	 *
+	 * @param bFlag
+	 * 		"true" to reduce late quiet moves
+	 */
+	public void setLateMoveReductions(boolean bFlag) {
+		this.bLateMoveReductions = bFlag;
+	}
+
+
+
+	/**
+	 *   Turn futility pruning on or off.
+	 *
+	 * @param bFlag
+	 * 		"true" to use futility pruning
+	 */
+	public void setFutilityPruning(boolean bFlag) {
+		this.bFutilityPruning = bFlag;
+	}
+
+
+
+	/**
+	 *   Turn aspiration windows of the iterative deepening search on or off.
+	 *
+	 * @param bFlag
+	 * 		"true" to use aspiration windows
+	 */
+	public void setAspirationWindows(boolean bFlag) {
+		this.bAspirationWindows = bFlag;
+	}
+
+
+
+	/**
+	 *   Set an endgame tablebase.  The search stops at any position the
+	 *   tablebase knows the outcome of.
+	 *
+	 * @param tablebase
+	 * 		An endgame tablebase, or "null" to search without one
+	 */
+	public void setTablebase(Tablebase tablebase) {
+		this.tablebase = tablebase;
+	}
+
+
+
+	/**
+	 *   Set the transposition table.  A table may be given to several
+	 *   searches that do not run at the same time.
+	 *
+	 * @param table
+	 * 		A transposition table, or "null" to search without one
+	 */
+	public void setTranspositionTable(TranspositionTable table) {
+		this.table = table;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the transposition table, or "null" if there is none
+	 */
+	public TranspositionTable getTranspositionTable() {
+		return table;
+	}
+
+
+
+	/**
+	 *   Set the tables that choose the order of the moves.
+	 *
+	 * @param ordering
+	 * 		A move ordering, or "null" to try only the hash move and the
+	 * 		captures first, and the quiet moves in the order they were
+	 * 		generated
+	 */
+	public void setMoveOrdering(MoveOrdering ordering) {
+		this.ordering = ordering;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the move ordering, or "null" if there is none
+	 */
+	public MoveOrdering getMoveOrdering() {
+		return ordering;
+	}
+
+
+
+	/**
+	 *   Set a listener that is told about every completed iteration
+	 *   of an iterative deepening search.  In a multi-PV search it is
+	 *   told about every line.
+	 *
+	 * @param listener
+	 * 		A listener, or "null" for none
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+
+
+	/**
+	 *   Set how often the clock and the cancellation token are checked.
+	 *   A shorter interval ends a search closer to its deadline, but
+	 *   costs more time at every node.
+	 *
+	 * @param nodes
+	 * 		Number of nodes searched between two checks
+	 */
+	public void setCheckInterval(int nodes) {
+		this.checkInterval = Math.max(1, nodes);
+	}
+
+
+
+	/**
+	 *   Stop the search that is running.  This may be called from any
+	 *   thread.  The running search returns its best result so far.
+	 */
+	public void stop() {
+		stopTime = System.nanoTime();
+		bStopped = true;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the last search was stopped before it
+	 * 		reached its depth
+	 */
+	public boolean isStopped() {
+		return bStopped;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the counters of the last search
+	 */
+	public SearchStatistics getStatistics() {
+		return statistics;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the evaluation used by this search
+	 */
+	public Evaluation getEvaluation() {
+		return evaluation;
+	}
+
+
+
+	/**
+	 *   Search for the best move of the side that is due to move.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed by the search.
+	 *
+	 * @param depth
+	 * 		Number of plies to search before the quiescence search
+	 *
+	 * @return
+	 * 		Return the best move and its score
+	 */
+	public SearchResult search(Board aBoard, int depth) {
+		start(0L, null);
+
+		SearchResult result = searchRoot(aBoard, depth, null, new ArrayList<Move>(), -infinity, infinity);
+		result = new SearchResult(result.getBestMove(), result.getScore(), depth,
+								  getPrincipalVariation(aBoard, result.getBestMove(), depth),
+								  1, statistics.getTotalNodes(), 0);
+
+		finish();
+		return result;
+	}
+
+
+
+	/**
+	 *   Search for the best move of the side that is due to move, one
+	 *   ply deeper at a time, until the depth or the time limit is
+	 *   reached or {@link #stop()} is called.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed by the search.
+	 *
+	 * @param maxDepth
+	 * 		The deepest iteration to search, in plies
+	 *
+	 * @param timeLimit
+	 * 		Time limit in milliseconds, or 0 for no time limit
+	 *
+	 * @return
+	 * 		Return the best move and score of the deepest completed
+	 * 		iteration.  If even the first iteration was stopped, its
+	 * 		best move so far is returned.
+	 */
+	public SearchResult search(Board aBoard, int maxDepth, long timeLimit) {
+		return searchUntil(aBoard, maxDepth, toDeadline(timeLimit), null);
+	}
+
+
+
+	/**
+	 *   Search for the best move of the side that is due to move, one
+	 *   ply deeper at a time, until the depth or the deadline is reached,
+	 *   the token is cancelled or {@link #stop()} is called.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed by the search.
+	 *
+	 * @param maxDepth
+	 * 		The deepest iteration to search, in plies
+	 *
+	 * @param deadline
+	 * 		The value of {@link System#nanoTime()} at which the search must
+	 * 		end, or 0 for no deadline
+	 *
+	 * @param token
+	 * 		A token that cancels the search, or "null" for none
+	 *
+	 * @return
+	 * 		Return the best move and score of the deepest completed
+	 * 		iteration.  If even the first iteration was stopped, its
+	 * 		best move so far is returned.
+	 */
+	public SearchResult searchUntil(Board aBoard, int maxDepth, long deadline, CancellationToken token) {
+		ArrayList<SearchResult> lines = iterate(aBoard, 1, maxDepth, deadline, token);
+		return lines.isEmpty() ? null : lines.get(0);
+	}
+
+
+
+	/**
+	 *   Search for the best few moves of the side that is due to move,
+	 *   one ply deeper at a time, until the depth or the time limit is
+	 *   reached or {@link #stop()} is called.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed by the search.
+	 *
+	 * @param lines
+	 * 		The number of moves wanted
+	 *
+	 * @param maxDepth
+	 * 		The deepest iteration to search, in plies
+	 *
+	 * @param timeLimit
+	 * 		Time limit in milliseconds, or 0 for no time limit
+	 *
+	 * @return
+	 * 		Return one result per move, best first, from the deepest
+	 * 		completed iteration.  There are fewer results if there are
+	 * 		fewer legal moves, and a single result without a move if there
+	 * 		is none.
+	 */
+	public ArrayList<SearchResult> searchMultiPv(Board aBoard, int lines, int maxDepth, long timeLimit) {
+		return searchMultiPvUntil(aBoard, lines, maxDepth, toDeadline(timeLimit), null);
+	}
+
+
+
+	/**
+	 *   Search for the best few moves of the side that is due to move,
+	 *   one ply deeper at a time, until the depth or the deadline is
+	 *   reached, the token is cancelled or {@link #stop()} is called.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed by the search.
+	 *
+	 * @param lines
+	 * 		The number of moves wanted
+	 *
+	 * @param maxDepth
+	 * 		The deepest iteration to search, in plies
+	 *
+	 * @param deadline
+	 * 		The value of {@link System#nanoTime()} at which the search must
+	 * 		end, or 0 for no deadline
+	 *
+	 * @param token
+	 * 		A token that cancels the search, or "null" for none
+	 *
+	 * @return
+	 * 		Return one result per move, best first, from the deepest
+	 * 		completed iteration (see {@link #searchMultiPv(Board, int, int, long)})
+	 */
+	public ArrayList<SearchResult> searchMultiPvUntil(Board aBoard, int lines, int maxDepth,
+													  long deadline, CancellationToken token) {
+		return iterate(aBoard, Math.max(1, lines), maxDepth, deadline, token);
+	}
+
+
+
+	/**
+	 *   Turn a time limit in milliseconds into a deadline.
+	 */
+	private static long toDeadline(long timeLimit) {
+		if ( timeLimit <= 0 ) return 0L;
+
+		// A deadline of 0 means that there is none
+		long deadline = System.nanoTime() + timeLimit * 1000000L;
+		return (deadline == 0L) ? 1L : deadline;
+	}
+
+
+
+	/**
+	 *   Reset the stop flag and the counters for a new search.
+	 */
+	private void start(long deadline, CancellationToken token) {
+		bStopped = false;
+		stopTime = 0L;
+		this.deadline = deadline;
+		this.token = token;
+		nodesToCheck = checkInterval;
+		statistics.reset();
+		if ( ordering != null ) ordering.age();
+
+		// The search may already be too late
+		if ( token != null ) {
+			if ( token.isCancelled() ) bStopped = true;
+		}
+		if ( (deadline != 0L) && (System.nanoTime() - deadline >= 0) ) bStopped = true;
+	}
+
+
+
+	/**
+	 *   Measure how late the search ended after it was stopped, and
+	 *   forget its deadline and token.
+	 */
+	private void finish() {
+		long now = System.nanoTime();
+		long late = 0L;
+		if ( bStopped ) {
+			if ( stopTime != 0L ) late = Math.max(late, now - stopTime);
+			if ( (token != null) && token.isCancelled() ) late = Math.max(late, now - token.getCancelTime());
+			if ( (deadline != 0L) && (now - deadline > 0) ) late = Math.max(late, now - deadline);
+		}
+
+		deadline = 0L;
+		token = null;
+		statistics.stop();
+		statistics.setOvershoot(late);
+	}
+
+
+
+	/**
+	 *   The iterative deepening search of one or more lines.
+	 */
+	private ArrayList<SearchResult> iterate(Board aBoard, int lines, int maxDepth, long deadline,
+											CancellationToken token) {
+		start(deadline, token);
+
+		ArrayList<SearchResult> best = new ArrayList<SearchResult>();
+		long[] lineNodes = new long[lines];
+		long[] lineTimes = new long[lines];
+
+		for (int depth = 1; depth <= Math.min(maxDepth, maxPly - 1); depth++) {
+			ArrayList<SearchResult> iteration = new ArrayList<SearchResult>();
+			ArrayList<Move> searched = new ArrayList<Move>();
+
+			for (int line=0; line < lines; line++) {
+				Move firstMove = (line < best.size()) ? best.get(line).getBestMove() : null;
+				long startNodes = statistics.getTotalNodes();
+				long startTime = System.nanoTime();
+				SearchResult result;
+				if ( bAspirationWindows && (line == 0) && (! best.isEmpty()) && (! best.get(0).isMateScore()) ) {
+					result = searchAspiration(aBoard, depth, firstMove, best.get(0).getScore());
+				}
+				else {
+					result = searchRoot(aBoard, depth, firstMove, searched, -infinity, infinity);
+				}
+				lineNodes[line] += statistics.getTotalNodes() - startNodes;
+				lineTimes[line] += System.nanoTime() - startTime;
+
+				// Every move has its own line already
+				if ( (line > 0) && (result.getBestMove() == null) ) break;
+
+				// An interrupted line is only kept if nothing else is known
+				if ( bStopped && ((line > 0) || (! best.isEmpty())) ) break;
+
+				Move bestMove = result.getBestMove();
+				iteration.add(new SearchResult(bestMove, result.getScore(), depth,
+											   getPrincipalVariation(aBoard, bestMove, depth),
+											   line + 1, lineNodes[line], lineTimes[line] / 1000000L));
+				if ( bStopped || (bestMove == null) ) break;
+				searched.add(bestMove);
+			}
+
+			// An interrupted iteration is not trusted
+			if ( bStopped && (! best.isEmpty()) ) break;
+
+			// A later line may have found a better move than an earlier one
+			Collections.sort(iteration, new Comparator<SearchResult>() {
+				@Override
+				public int compare(SearchResult a, SearchResult b) {
+					return Integer.compare(b.getScore(), a.getScore());
+				}
+			});
+			best = new ArrayList<SearchResult>(iteration.size());
+			for (SearchResult result : iteration) best.add(result.withLine(best.size() + 1));
+
+			statistics.stop();
+			if ( listener != null ) {
+				for (SearchResult result : best) listener.iterationFinished(result, statistics);
+			}
+			if ( bStopped || (best.get(0).getBestMove() == null) ) break;
+			if ( (lines == 1) && best.get(0).isMateScore() ) break;
+		}
+
+		finish();
+		return best;
+	}
+
+
+
+	/**
+	 *   Search the root with a narrow window around the score of the
+	 *   previous iteration.  Each time the score falls outside the window,
+	 *   the window is made four times wider on that side, until it has no
+	 *   limit.
+	 */
+	private SearchResult searchAspiration(Board aBoard, int depth, Move firstMove, int previousScore) {
+		int window = aspirationWindow;
+		int alpha = previousScore - window;
+		int beta = previousScore + window;
+
+		while ( true ) {
+			SearchResult result = searchRoot(aBoard, depth, firstMove, new ArrayList<Move>(), alpha, beta);
+			int score = result.getScore();
+			if ( bStopped || ((score > alpha) && (score < beta)) ) return result;
+
+			statistics.addAspirationResearch();
+			window *= 4;
+			if ( score <= alpha ) {
+				alpha = (window > tablebaseWinScore) ? -infinity : previousScore - window;
+			}
+			else {
+				beta = (window > tablebaseWinScore) ? infinity : previousScore + window;
+				firstMove = result.getBestMove();
+			}
+		}
+	}
+
+
+
+	/**
+	 *   Search all the moves at the root of the search tree, except the
+	 *   ones already searched by the lines before.  The best move of the
+	 *   previous iteration (if any) is searched first.  A score outside
+	 *   the window from alpha to beta is only a bound.
+	 */
+	private SearchResult searchRoot(Board aBoard, int depth, Move firstMove, ArrayList<Move> excluded,
+									int alpha, int beta) {
+		SearchIterationEvent event = null;
+		long startNodes = statistics.getTotalNodes();
+		if ( Events.isRecording() ) {
+			event = new SearchIterationEvent();
+			event.begin();
+		}
+
+		statistics.addNode();
+
+		Move bestMove = null;
+		int originalAlpha = alpha;
+
+		long key = (table == null) ? 0L : aBoard.getHashKey();
+		if ( (firstMove == null) && (table != null) && table.probe(key) && (table.getMoveCode(key) != 0) ) {
+			firstMove = Move.fromCode(table.getMoveCode(key));
+		}
+
+		for (Move aMove : getOrderedMoves(aBoard, 0, firstMove)) {
+			if ( contains(excluded, aMove) ) continue;
+
+			Board child = new Board(aBoard);
+			if ( ! child.makeMove(aMove) ) continue;
+			playedMoves[0] = aMove.toCode();
+
+			int score = -alphaBeta(child, depth - 1, -beta, -alpha, 1, true);
+			if ( (bestMove == null) || ((score > alpha) && (! bStopped)) ) {
+				alpha = score;
+				bestMove = aMove;
+			}
+			if ( bStopped || (alpha >= beta) ) break;
+		}
+
+		if ( (bestMove == null) && excluded.isEmpty() ) {
+			// No legal move.  This is either a checkmate or a stalemate.
+			alpha = aBoard.isInCheck() ? -mateScore : 0;
+		}
+
+		// Without some of its moves, the root does not get its real score
+		if ( (bestMove != null) && excluded.isEmpty() && (alpha > originalAlpha) && (alpha < beta) ) {
+			storeResult(key, bestMove, alpha, depth, TranspositionTable.Bound.exact, 0);
+		}
+
+		SearchResult result = new SearchResult(bestMove, alpha, depth);
+		if ( event != null ) event.finish(aBoard, statistics.getTotalNodes() - startNodes, result, bStopped);
+		return result;
+	}
+
+
+
+	/**
+	 *   Check if the search must stop now.  The stop flag is read at every
+	 *   node, the clock and the token only every few nodes.
+	 */
+	private boolean isTimeUp() {
+		if ( bStopped ) return true;
+		if ( --nodesToCheck > 0 ) return false;
+		nodesToCheck = checkInterval;
+
+		if ( (token != null) && token.isCancelled() ) bStopped = true;
+		if ( (deadline != 0L) && (System.nanoTime() - deadline >= 0) ) bStopped = true;
+		return bStopped;
+	}
+
+
+
+	/**
+	 *   The regular alpha-beta search.  The score is given from the point
+	 *   of view of the side due to move on this board.
+	 */
+	private int alphaBeta(Board aBoard, int depth, int alpha, int beta, int ply, boolean bNullMoveAllowed) {
+		if ( isTimeUp() ) return 0;
+
+		if ( (depth <= 0) || (ply >= maxPly) ) {
+			if ( bQuiescence ) return quiescence(aBoard, alpha, beta, ply);
+			statistics.addNode();
+			return evaluate(aBoard);
+		}
+
+		statistics.addNode();
+
+		if ( (tablebase != null) && (aBoard.getPieceCount() <= tablebase.getMaxPieces()) ) {
+			Tablebase.Result result = tablebase.probe(aBoard);
+			if ( result != Tablebase.Result.unknown ) {
+				statistics.addTablebaseHit();
+				if ( result == Tablebase.Result.win ) return tablebaseWinScore - ply;
+				if ( result == Tablebase.Result.loss ) return -tablebaseWinScore + ply;
+				return 0;
+			}
+		}
+
+		long key = 0L;
+		Move hashMove = null;
+		if ( table != null ) {
+			key = aBoard.getHashKey();
+			if ( table.probe(key) ) {
+				if ( table.getDepth(key) >= depth ) {
+					// This position was already searched deep enough
+					int score = table.getScore(key, ply);
+					switch (table.getBound(key)) {
+						case exact:
+							return score;
+
+						case lowerBound:
+							if ( score >= beta ) return score;
+							break;
+
+						case upperBound:
+						default:
+							if ( score <= alpha ) return score;
+					}
+				}
+				if ( table.getMoveCode(key) != 0 ) hashMove = Move.fromCode(table.getMoveCode(key));
+			}
+		}
+
+		boolean bInCheck = aBoard.isInCheck();
+
+		if ( bNullMovePruning && bNullMoveAllowed && (! bInCheck) && (depth > nullMoveReduction) &&
+			 (beta < mateScore - maxPly) ) {
+			int pieces = countPieces(aBoard, aBoard.getSideToMove());
+			if ( pieces > 0 ) {
+				// Let the opponent move twice in a row
+				Board child = new Board(aBoard);
+				child.makeNullMove();
+				playedMoves[ply] = 0;
+				int score = -alphaBeta(child, depth - 1 - nullMoveReduction, -beta, -beta + 1, ply + 1, false);
+
+				// With a single piece, passing might be the only good move (zugzwang)
+				if ( (score >= beta) && (pieces == 1) && (! bStopped) ) {
+					score = alphaBeta(aBoard, depth - nullMoveReduction, beta - 1, beta, ply, false);
+				}
+				if ( bStopped ) return 0;
+				if ( score >= beta ) {
+					statistics.addNullMoveCutoff();
+					return beta;
+				}
+			}
+		}
+
+		// Near the quiescence search, a hopeless quiet move is not searched
+		boolean bFutile = false;
+		if ( bFutilityPruning && (! bInCheck) && (depth < futilityMargins.length) &&
+			 (Math.abs(alpha) < mateScore - maxPly) ) {
+			bFutile = (evaluate(aBoard) + futilityMargins[depth] <= alpha);
+		}
+
+		int originalAlpha = alpha;
+		Move bestMove = null;
+		int legalMoves = 0;
+		for (Move aMove : getOrderedMoves(aBoard, ply, hashMove)) {
+			if ( isTimeUp() ) return 0;
+
+			Board child = new Board(aBoard);
+			if ( ! child.makeMove(aMove) ) continue;
+			legalMoves++;
+			playedMoves[ply] = aMove.toCode();
+
+			boolean bCapture = (materialGain(aBoard, aMove) > 0);
+			boolean bQuiet = (! bCapture) && (! child.isInCheck());
+			if ( bFutile && bQuiet && (legalMoves > 1) ) {
+				statistics.addFutilityPrunedMove();
+				continue;
+			}
+
+			int score;
+			if ( bLateMoveReductions && bQuiet && (! bInCheck) && (depth >= 3) &&
+				 (legalMoves > fullDepthMoves) && ((ordering == null) || (! ordering.isKiller(ply, aMove))) ) {
+				// A late quiet move is searched one ply less, and again
+				// at full depth only if it looks better than alpha
+				statistics.addReducedMove();
+				score = -alphaBeta(child, depth - 2, -alpha - 1, -alpha, ply + 1, true);
+				if ( score > alpha ) score = -alphaBeta(child, depth - 1, -beta, -alpha, ply + 1, true);
+			}
+			else {
+				score = -alphaBeta(child, depth - 1, -beta, -alpha, ply + 1, true);
+			}
+
+			if ( score >= beta ) {
+				if ( (ordering != null) && (! bCapture) && (! bStopped) ) {
+					ordering.addCutoff(aBoard.getSideToMove(), aMove, ply, depth, getPreviousMove(ply));
+				}
+				storeResult(key, aMove, score, depth, TranspositionTable.Bound.lowerBound, ply);
+				return score;
+			}
+			if ( score > alpha ) {
+				alpha = score;
+				bestMove = aMove;
+			}
+		}
+
+		if ( legalMoves == 0 ) {
+			// Checkmate or stalemate
+			return aBoard.isInCheck() ? -mateScore + ply : 0;
+		}
+
+		storeResult(key, bestMove, alpha, depth, (alpha > originalAlpha) ? TranspositionTable.Bound.exact :
+																		   TranspositionTable.Bound.upperBound, ply);
+		return alpha;
+	}
+
+
+
+	/**
+	 *   The quiescence search.  Only captures and promotions are tried,
+	 *   unless the side to move is in check.  A side in check must try
+	 *   every move to get out of check.
+	 */
+	private int quiescence(Board aBoard, int alpha, int beta, int ply) {
+		if ( isTimeUp() ) return 0;
+		statistics.addQuiescenceNode();
+
+		boolean bInCheck = aBoard.isInCheck();
+		int standPat = -infinity;
+		ArrayList<Move> moves;
+
+		if ( bInCheck ) {
+			moves = aBoard.getMoves();
+		}
+		else {
+			// The side to move can choose not to capture anything
+			standPat = evaluate(aBoard);
+			if ( (standPat >= beta) || (ply >= maxPly) ) return standPat;
+			if ( standPat > alpha ) alpha = standPat;
+
+			moves = aBoard.getCaptures();
+		}
+
+		int legalMoves = 0;
+		for (Move aMove : orderMoves(aBoard, moves)) {
+			if ( (! bInCheck) && bDeltaPruning &&
+				 (standPat + materialGain(aBoard, aMove) + deltaMargin <= alpha) ) {
+				// Even winning this material for free would not
+				// raise the score up to alpha.
+				statistics.addDeltaPrunedMove();
+				continue;
+			}
+
+			if ( isTimeUp() ) return 0;
+
+			Board child = new Board(aBoard);
+			if ( ! child.makeMove(aMove) ) continue;
+			legalMoves++;
+
+			int score = -quiescence(child, -beta, -alpha, ply + 1);
+			if ( score >= beta ) return score;
+			if ( score > alpha ) alpha = score;
+		}
+
+		if ( bInCheck && (legalMoves == 0) ) return -mateScore + ply;
+		return alpha;
+	}
+
+
+
+	/**
+	 *   Keep the result of searching a position in the transposition
+	 *   table.  Nothing is kept from a search that was stopped.
+	 */
+	private void storeResult(long key, Move bestMove, int score, int depth,
+							 TranspositionTable.Bound bound, int ply) {
+		if ( (table == null) || bStopped ) return;
+		table.store(key, (bestMove == null) ? 0 : bestMove.toCode(), score, depth, bound, ply);
+	}
+
+
+
+	/**
+	 *   Follow the best moves kept in the transposition table from the
+	 *   position after a move, to find the line of play expected after it.
+	 */
+	private ArrayList<Move> getPrincipalVariation(Board aBoard, Move bestMove, int depth) {
+		ArrayList<Move> pv = new ArrayList<Move>();
+		if ( bestMove == null ) return pv;
+		pv.add(bestMove);
+		if ( table == null ) return pv;
+
+		Board aPosition = new Board(aBoard);
+		aPosition.makeMove(bestMove);
+
+		// A repeated position would make the line go round in circles
+		HashSet<Long> seen = new HashSet<Long>();
+		while ( pv.size() < depth ) {
+			long key = aPosition.getHashKey();
+			if ( (! seen.add(key)) || (! table.probe(key)) || (table.getMoveCode(key) == 0) ) break;
+
+			Move aMove = Move.fromCode(table.getMoveCode(key));
+			if ( ! aPosition.makeMove(aMove) ) break;
+			pv.add(aMove);
+		}
+		return pv;
+	}
+
+
+
+	/**
+	 *   Get the moves of a position in the order they should be searched.
+	 */
+	private ArrayList<Move> getOrderedMoves(Board aBoard, int ply, Move hashMove) {
+		if ( ordering == null ) return moveToFront(orderMoves(aBoard, aBoard.getMoves()), hashMove);
+		return ordering.order(aBoard, aBoard.getMoves(), ply, hashMove, getPreviousMove(ply));
+	}
+
+
+
+	/**
+	 *   Get the code of the opponent's move that led to a position, or 0
+	 *   at the root or after a null move.
+	 */
+	private int getPreviousMove(int ply) {
+		return (ply > 0) ? playedMoves[ply - 1] : 0;
+	}
+
+
+
+	/**
+	 *   Move one move (if it is in the list) to the front of a list of moves.
+	 */
+	private static ArrayList<Move> moveToFront(ArrayList<Move> moves, Move aMove) {
+		if ( aMove == null ) return moves;
+
+		for (int i=0; i < moves.size(); i++) {
+			if ( moves.get(i).equals(aMove) ) {
+				moves.add(0, moves.remove(i));
+				break;
+			}
+		}
+		return moves;
+	}
+
+
+
+	private static boolean contains(ArrayList<Move> moves, Move aMove) {
+		for (Move aMoveInList : moves) {
+			if ( aMoveInList.equals(aMove) ) return true;
+		}
+		return false;
+	}
+
+
+
+	/**
+	 *   Count the pieces of one side other than its king and pawns.
+	 */
+	private static int countPieces(Board aBoard, Piece.Colors color) {
+		int count = 0;
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece aPiece = aBoard.getPiece(x, y);
+				if ( aPiece.isEmptySpace() || (! aPiece.getColor().equals(color)) ) continue;
+				if ( aPiece.getName().equals(Piece.PieceNames.king) ||
+					 aPiece.getName().equals(Piece.PieceNames.pawn) ) continue;
+				count++;
+			}
+		}
+		return count;
+	}
+
+
+
+	/**
+	 *   Score a board from the point of view of the side due to move.
+	 */
+	private int evaluate(Board aBoard) {
+		int score = evaluation.evaluate(aBoard);
+		if ( aBoard.getSideToMove().equals(Piece.Colors.Black) ) return -score;
+		return score;
+	}
+
+
+
+	/**
+	 *   Get the material won by a move: the value of the captured piece
+	 *   plus the extra value of a promoted pawn.
+	 */
+	static int materialGain(Board aBoard, Move aMove) {
+		FileRank from = aMove.getFromLoc();
+		FileRank to = aMove.getToLoc();
+		Piece mover = aBoard.getPiece(from.getX(), from.getY());
+		Piece victim = aBoard.getPiece(to.getX(), to.getY());
+
+		int gain = 0;
+		if ( ! victim.isEmptySpace() ) {
+			gain = Evaluation.getPieceValue(victim.getName());
+		}
+		else if ( mover.getName().equals(Piece.PieceNames.pawn) && (from.getX() != to.getX()) ) {
+			// A diagonal pawn move to an empty square is an En Passant capture
+			gain = Evaluation.getPieceValue(Piece.PieceNames.pawn);
+		}
+
+		if ( aMove.getPromotion() != null ) {
+			gain += Evaluation.getPieceValue(Piece.PieceNames.valueOf(aMove.getPromotion().name())) -
+					Evaluation.getPieceValue(Piece.PieceNames.pawn);
+		}
+		return gain;
+	}
+
+
+
+	/**
+	 *   Sort moves so that the most valuable victims are captured
+	 *   first, by the least valuable attackers (MVV-LVA).  Quiet moves
+	 *   keep their original order after all the captures.
+	 */
+	private static ArrayList<Move> orderMoves(final Board aBoard, ArrayList<Move> moves) {
+		final int[] keys = new int[moves.size()];
+		final ArrayList<Integer> order = new ArrayList<Integer>();
+		for (int i=0; i < moves.size(); i++) {
+			Move aMove = moves.get(i);
+			int gain = materialGain(aBoard, aMove);
+			if ( gain > 0 ) {
+				FileRank from = aMove.getFromLoc();
+				Piece mover = aBoard.getPiece(from.getX(), from.getY());
+				keys[i] = gain * 10 - Evaluation.getPieceValue(mover.getName()) / 100;
+			}
+			order.add(i);
+		}
+
+		Collections.sort(order, new Comparator<Integer>() {
+			@Override
+			public int compare(Integer a, Integer b) {
+				return keys[b] - keys[a];
+			}
+		});
+
+		ArrayList<Move> sorted = new ArrayList<Move>(moves.size());
+		for (int i : order) sorted.add(moves.get(i));
+		return sorted;
+	}
+
+}
@@ -0,0 +1,71 @@
+package chess;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+
+/**
+ *   A flight recorder event for one iteration of a search: all the
+ *   moves of a position searched to one depth.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+@Name("chess.SearchIteration")
+@Label("Search Iteration")
+@Category("Chess")
+@Description("A position was searched to one depth")
+@StackTrace(false)
+class SearchIterationEvent extends Event {
+
+	@Label("Depth")
+	int depth;
+
+	@Label("Nodes")
+	@Description("Positions visited in this iteration, including the quiescence search")
+	long nodes;
+
+	@Label("Best Move")
+	String bestMove;
+
+	@Label("Score")
+	@Description("Score of the best move in centipawns")
+	int score;
+
+	@Label("Stopped")
+	@Description("True if the iteration was stopped before it finished")
+	boolean stopped;
+
+	@Label("Position")
+	@Description("The position searched, in FEN")
+	String fen;
+
+
+
+	/**
+	 *   Finish the event and record it, if it is recorded at all.
+	 *
+	 * @param aBoard    The game board searched
+	 * @param nodes     Positions visited in this iteration
+	 * @param aResult   The best move found
+	 * @param bStopped  "true" if the iteration was stopped
+	 */
+	void finish(Board aBoard, long nodes, SearchResult aResult, boolean bStopped) {
+		end();
+		if ( shouldCommit() ) {
+			this.fen = aBoard.toFen();
+			this.depth = aResult.getDepth();
+			this.nodes = nodes;
+			this.bestMove = (aResult.getBestMove() == null) ? null : aResult.getBestMove().toUci();
+			this.score = aResult.getScore();
+			this.stopped = bStopped;
+			commit();
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package chess;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+
+/**
+ *   The outcome of a search: the best move found and its score.
+ *
+ *   <p>A result may also hold the principal variation (the line of play
+ *   the search expects to follow the best move), and for one line of a
+ *   multi-PV search, its number and the nodes and time spent on it.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class SearchResult {
+
+	private final Move bestMove;
+	private final int score;
+	private final int depth;
+	private final List<Move> principalVariation;
+	private final int line;
+	private final long nodes;
+	private final long elapsedMillis;
+
+
+
+	/**
+	 *   Create a search result.
+	 *
+	 * @param bestMove  The best move found, or "null" if there is no legal move
+	 * @param score     The score of the best move in centipawns, from the
+	 * 					point of view of the side to move
+	 * @param depth     The depth that was searched
+	 */
+	public SearchResult(Move bestMove, int score, int depth) {
+		this(bestMove, score, depth, null, 1, 0, 0);
+	}
+
+
+
+	/**
+	 *   Create the result of one line of a search.
+	 *
+	 * @param bestMove       The best move found, or "null" if there is no legal move
+	 * @param score          The score of the best move in centipawns, from the
+	 * 						 point of view of the side to move
+	 * @param depth          The depth that was searched
+	 * @param pv             The principal variation, starting with the best
+	 * 						 move, or "null" for just the best move
+	 * @param line           The number of the line, starting at 1
+	 * @param nodes          Nodes searched for this line
+	 * @param elapsedMillis  Time spent on this line in milliseconds
+	 */
+	public SearchResult(Move bestMove, int score, int depth, List<Move> pv,
+						int line, long nodes, long elapsedMillis) {
+		this.bestMove = bestMove;
+		this.score = score;
+		this.depth = depth;
+		this.line = line;
+		this.nodes = nodes;
+		this.elapsedMillis = elapsedMillis;
+
+		if ( pv != null ) {
+			this.principalVariation = Collections.unmodifiableList(new ArrayList<Move>(pv));
+		}
+		else if ( bestMove != null ) {
+			this.principalVariation = Collections.singletonList(bestMove);
+		}
+		else {
+			this.principalVariation = Collections.emptyList();
+		}
+	}
+
+
+
+	/**
+	 *   Copy a result with another line number.
+	 *
+	 * @param line
+	 * 		The number of the line, starting at 1
+	 *
+	 * @return
+	 * 		Return the copy
+	 */
+	public SearchResult withLine(int line) {
+		return new SearchResult(bestMove, score, depth, principalVariation, line, nodes, elapsedMillis);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the best move found, or "null" if the side to move
+	 * 		has no legal move (i.e. checkmate or stalemate)
+	 */
+	public Move getBestMove() {
+		return bestMove;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the score of the best move in centipawns, from the
+	 * 		point of view of the side to move
+	 */
+	public int getScore() {
+		return score;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the depth that was searched
+	 */
+	public int getDepth() {
+		return depth;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the principal variation, starting with the best move.
+	 * 		It is empty if there is no legal move.
+	 */
+	public List<Move> getPrincipalVariation() {
+		return principalVariation;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of this line of a multi-PV search, starting
+	 * 		at 1 for the best line
+	 */
+	public int getLine() {
+		return line;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the nodes searched for this line, or 0 if not known
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the time spent on this line in milliseconds, or 0 if
+	 * 		not known
+	 */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the principal variation in UCI notation, for example
+	 * 		"e2e4 e7e5 g1f3"
+	 */
+	public String getPrincipalVariationUci() {
+		StringBuilder s = new StringBuilder();
+		for (Move aMove : principalVariation) {
+			if ( s.length() > 0 ) s.append(' ');
+			s.append(aMove.toUci());
+		}
+		return s.toString();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if the score announces a forced checkmate
+	 */
+	public boolean isMateScore() {
+		return Math.abs(score) >= Search.mateScore - Search.maxPly;
+	}
+
+}
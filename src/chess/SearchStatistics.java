@@ -0,0 +1,282 @@
+package chess;
+
+
+/**
+ *   Counters collected while searching for the best move.  The nodes
+ *   visited by the regular alpha-beta search and the nodes visited by
+ *   the quiescence search are counted separately, so it is easy to see
+ *   how much work is spent resolving captures at the end of each line.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class SearchStatistics {
+
+	private long nodes = 0;
+	private long quiescenceNodes = 0;
+	private long deltaPrunedMoves = 0;
+	private long tablebaseHits = 0;
+	private long nullMoveCutoffs = 0;
+	private long reducedMoves = 0;
+	private long futilityPrunedMoves = 0;
+	private long aspirationResearches = 0;
+	private long startTime = 0;
+	private long elapsedTime = 0;
+	private long overshoot = 0;
+
+
+
+	/**
+	 *   Reset all counters and start the clock for a new search.
+	 */
+	public void reset() {
+		nodes = 0;
+		quiescenceNodes = 0;
+		deltaPrunedMoves = 0;
+		tablebaseHits = 0;
+		nullMoveCutoffs = 0;
+		reducedMoves = 0;
+		futilityPrunedMoves = 0;
+		aspirationResearches = 0;
+		elapsedTime = 0;
+		overshoot = 0;
+		startTime = System.nanoTime();
+	}
+
+
+
+	/**
+	 *   Stop the clock at the end of a search.
+	 */
+	public void stop() {
+		elapsedTime = System.nanoTime() - startTime;
+	}
+
+
+
+	/**
+	 *   Count one node visited by the regular search.
+	 */
+	public void addNode() {
+		nodes++;
+	}
+
+
+
+	/**
+	 *   Count one node visited by the quiescence search.
+	 */
+	public void addQuiescenceNode() {
+		quiescenceNodes++;
+	}
+
+
+
+	/**
+	 *   Count one capture skipped by delta pruning.
+	 */
+	public void addDeltaPrunedMove() {
+		deltaPrunedMoves++;
+	}
+
+
+
+	/**
+	 *   Count one position answered by an endgame tablebase.
+	 */
+	public void addTablebaseHit() {
+		tablebaseHits++;
+	}
+
+
+
+	/**
+	 *   Count one position cut off by null-move pruning.
+	 */
+	public void addNullMoveCutoff() {
+		nullMoveCutoffs++;
+	}
+
+
+
+	/**
+	 *   Count one move searched less deep by late move reductions.
+	 */
+	public void addReducedMove() {
+		reducedMoves++;
+	}
+
+
+
+	/**
+	 *   Count one quiet move skipped by futility pruning.
+	 */
+	public void addFutilityPrunedMove() {
+		futilityPrunedMoves++;
+	}
+
+
+
+	/**
+	 *   Count one search of the root again after the score fell outside
+	 *   the aspiration window.
+	 */
+	public void addAspirationResearch() {
+		aspirationResearches++;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of nodes visited by the regular search
+	 */
+	public long getNodes() {
+		return nodes;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of nodes visited by the quiescence search
+	 */
+	public long getQuiescenceNodes() {
+		return quiescenceNodes;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the total number of nodes visited by both searches
+	 */
+	public long getTotalNodes() {
+		return nodes + quiescenceNodes;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of captures skipped by delta pruning
+	 */
+	public long getDeltaPrunedMoves() {
+		return deltaPrunedMoves;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of positions answered by an endgame tablebase
+	 */
+	public long getTablebaseHits() {
+		return tablebaseHits;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of positions cut off by null-move pruning
+	 */
+	public long getNullMoveCutoffs() {
+		return nullMoveCutoffs;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of moves searched less deep by late move reductions
+	 */
+	public long getReducedMoves() {
+		return reducedMoves;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of quiet moves skipped by futility pruning
+	 */
+	public long getFutilityPrunedMoves() {
+		return futilityPrunedMoves;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of times the root was searched again with a
+	 * 		wider aspiration window
+	 */
+	public long getAspirationResearches() {
+		return aspirationResearches;
+	}
+
+
+
+	/**
+	 *   Record how late a search ended after it was told to stop.
+	 *
+	 * @param nanos
+	 * 		Time from the deadline or the stop request to the end of the
+	 * 		search, in nanoseconds
+	 */
+	public void setOvershoot(long nanos) {
+		overshoot = Math.max(0, nanos);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return how long the last search went on after its deadline or
+	 * 		after it was cancelled, in microseconds.  It is 0 if the search
+	 * 		ended by itself.
+	 */
+	public long getOvershootMicros() {
+		return overshoot / 1000;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the time spent by the last search in milliseconds
+	 */
+	public long getElapsedMillis() {
+		return elapsedTime / 1000000;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of nodes visited per second by the last search
+	 */
+	public long getNodesPerSecond() {
+		if ( elapsedTime <= 0 ) return 0;
+		return getTotalNodes() * 1000000000L / elapsedTime;
+	}
+
+
+
+	/*
+	 *  Return a one line summary of the counters.
+	 *
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		return "nodes " + nodes + " qnodes " + quiescenceNodes +
+			   " deltapruned " + deltaPrunedMoves + " tbhits " + tablebaseHits +
+			   " nullcuts " + nullMoveCutoffs + " reduced " + reducedMoves +
+			   " futile " + futilityPrunedMoves + " researches " + aspirationResearches +
+			   " time " + getElapsedMillis() + " nps " + getNodesPerSecond();
+	}
+
+}
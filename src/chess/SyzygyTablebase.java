@@ -0,0 +1,1282 @@
+package chess;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+
+
+/**
+ *   Syzygy endgame tablebase files stored in local directories.
+ *
+ *   <p>Syzygy tables come in two kinds of files.  A ".rtbw" file holds the
+ *   win/draw/loss (WDL) value of every position of one material balance,
+ *   and a ".rtbz" file holds the distance to zeroing (DTZ): the number of
+ *   plies to the next capture or pawn move on the way to the result.  Each
+ *   file is named after its material balance with the stronger side first,
+ *   for example "KQvK.rtbw" or "KRPvKR.rtbz".
+ *
+ *   <p>The directories are scanned once when this object is created.  A
+ *   table file is only opened the first time a position with its material
+ *   balance is probed.  It is then memory-mapped with FileChannel.map, so
+ *   the table is read straight from the operating system's page cache and
+ *   is never copied onto the heap; only the small decoding tables of each
+ *   file are kept on the heap.  Every mapped file is checked for the
+ *   Syzygy magic number and a valid size before it is used.
+ *
+ *   <p>A position is found in its table in three steps, the same way the
+ *   tables were written:
+ *   <ol>
+ *   <li>The position is turned so the stronger side plays white, and is
+ *       mirrored until its leading piece (or leading pawn) stands in a
+ *       fixed part of the board.</li>
+ *   <li>The squares of the pieces are combined into a single index: the
+ *       kings and the first piece together, then each group of identical
+ *       pieces as a combination of the squares still free.</li>
+ *   <li>The value at that index is decompressed from its block.  The
+ *       blocks hold Huffman codes of symbols that each stand for a run of
+ *       values (recursive pairing), and a sparse index tells which block
+ *       holds a given index.</li>
+ *   </ol>
+ *
+ *   <p>The tables do not store the right value for every position where
+ *   a capture (or, for DTZ, a pawn move) is the best move, so the captures
+ *   are always searched first with the smaller tables.  Positions with
+ *   castling rights are not in any table.
+ *
+ *   <p>The game of this program has no fifty-move rule, so {@link #probe(Board)}
+ *   counts a win that takes more than fifty moves (a "cursed" win) as a
+ *   win.  {@link #probeWdl(Board)} tells the two apart.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class SyzygyTablebase implements Tablebase {
+
+	/**
+	 *  File name extension of a win/draw/loss table
+	 */
+	public static final String wdlSuffix = ".rtbw";
+
+	/**
+	 *  File name extension of a distance-to-zero table
+	 */
+	public static final String dtzSuffix = ".rtbz";
+
+	/**
+	 *  Win/draw/loss value: the side to move loses
+	 */
+	public static final int wdlLoss = -2;
+
+	/**
+	 *  Win/draw/loss value: the side to move loses, but only by breaking
+	 *  the fifty-move rule
+	 */
+	public static final int wdlBlessedLoss = -1;
+
+	/**
+	 *  Win/draw/loss value: the position is a draw
+	 */
+	public static final int wdlDraw = 0;
+
+	/**
+	 *  Win/draw/loss value: the side to move wins, but only by breaking
+	 *  the fifty-move rule
+	 */
+	public static final int wdlCursedWin = 1;
+
+	/**
+	 *  Win/draw/loss value: the side to move wins
+	 */
+	public static final int wdlWin = 2;
+
+	// The first four bytes of each kind of file
+	private static final int[] wdlMagic = { 0x71, 0xE8, 0x23, 0x5D };
+	private static final int[] dtzMagic = { 0xD7, 0x66, 0x0C, 0xA5 };
+
+	// Flags of one part of a table
+	private static final int flagBlackToMove = 1;
+	private static final int flagMapped = 2;
+	private static final int flagWinPlies = 4;
+	private static final int flagLossPlies = 8;
+	private static final int flagWide = 16;
+	private static final int flagSingleValue = 128;
+
+	// Piece codes of the table files; black pieces have 8 added
+	private static final int pawnCode = 1;
+	private static final int blackCode = 8;
+
+	private static final int maxTablePieces = 7;
+
+	/**
+	 *  Number of ways to place the two kings and one more unique piece
+	 */
+	private static final int uniquePiecesSize = 31332;
+
+	/**
+	 *  Number of ways to place the two kings
+	 */
+	private static final int kingsSize = 462;
+
+	// Index of a square below the a1-h8 diagonal: 0..27
+	private static final int[] mapB1H1H7 = new int[64];
+
+	// Index of a square of the a1-d1-d4 triangle: 0..9, the diagonal last
+	private static final int[] mapA1D1D4 = new int[64];
+
+	// Index of the two kings, by mapA1D1D4 of the first king and the square of the second
+	private static final int[][] mapKK = new int[10][64];
+
+	// binomial[k][n]: number of ways to choose k of n squares
+	private static final long[][] binomial = new long[maxTablePieces][64];
+
+	// Order of the pawn squares a2-h7, the leading pawn has the highest value
+	private static final int[] mapPawns = new int[64];
+
+	// Index of the leading pawns, by their number and the square of the first one
+	private static final long[][] leadPawnIdx = new long[6][64];
+
+	// Number of indexes of the leading pawns, by their number and file a-d
+	private static final long[][] leadPawnsSize = new long[6][4];
+
+	static {
+		initIndexes();
+	}
+
+	private final HashMap<String, File> wdlFiles = new HashMap<String, File>();
+	private final HashMap<String, File> dtzFiles = new HashMap<String, File>();
+	private final HashMap<String, Table> tables = new HashMap<String, Table>();
+	private int maxPieces = 0;
+
+
+
+	/**
+	 *   Decoding data of one part of a table: one side to move, and for
+	 *   pawn endings one file of the leading pawn.
+	 */
+	private static final class PairsData {
+		int flags;
+		long blockSize;
+		long span;
+		int blockCount;
+		int maxSymLen;
+		int minSymLen;
+		int lowestSym;			// offset of the lowest symbol of each length
+		int btree;				// offset of the pairs of each symbol
+		int blockLengths;		// offset of the number of values of each block
+		int blockLengthCount;
+		int sparseIndex;		// offset of the sparse index
+		long sparseIndexSize;
+		int data;				// offset of the first block
+		long[] base64;
+		int[] symLen;
+		final int[] pieces = new int[maxTablePieces];
+		final long[] groupIdx = new long[maxTablePieces + 1];
+		final int[] groupLen = new int[maxTablePieces + 1];
+		final int[] mapIdx = new int[4];
+	}
+
+
+
+	/**
+	 *   One mapped table file.
+	 */
+	private static final class Table {
+		final String whiteSide;
+		final boolean bDtz;
+		final boolean bSymmetric;
+		final int pieceCount;
+		final boolean bHasPawns;
+		final int[] pawnCount = new int[2];
+		boolean bHasUniquePieces = false;
+		MappedByteBuffer buffer;
+		PairsData[][] parts;	// by side to move and file
+		int map;				// offset of the DTZ value maps
+
+		Table(String name, boolean bDtz) {
+			String[] sides = name.split("v");
+			this.whiteSide = sides[0];
+			this.bDtz = bDtz;
+			this.bSymmetric = sides[0].equals(sides[1]);
+			this.pieceCount = sides[0].length() + sides[1].length();
+
+			int whitePawns = count(sides[0], 'P');
+			int blackPawns = count(sides[1], 'P');
+			this.bHasPawns = (whitePawns + blackPawns) > 0;
+
+			// The leading pawns belong to the side with fewer pawns
+			boolean bWhiteLeads = (blackPawns == 0) || ((whitePawns > 0) && (blackPawns >= whitePawns));
+			pawnCount[0] = bWhiteLeads ? whitePawns : blackPawns;
+			pawnCount[1] = bWhiteLeads ? blackPawns : whitePawns;
+
+			for (String side : sides) {
+				for (char letter : "QRBNP".toCharArray()) {
+					if ( count(side, letter) == 1 ) bHasUniquePieces = true;
+				}
+			}
+		}
+
+		private static int count(String side, char letter) {
+			int n = 0;
+			for (int i=0; i < side.length(); i++) {
+				if ( side.charAt(i) == letter ) n++;
+			}
+			return n;
+		}
+	}
+
+
+
+	/**
+	 *   The outcome of a search, besides its value.
+	 */
+	private static final class ProbeState {
+		boolean bZeroingBestMove = false;	// a capture or pawn move is best
+		boolean bChangeSide = false;		// the DTZ table has the other side to move
+	}
+
+
+
+	/**
+	 *   Find all the Syzygy table files in one or more directories.
+	 *
+	 * @param path
+	 * 		One directory, or a list of directories separated by the
+	 * 		path separator of the operating system (":" or ";")
+	 */
+	public SyzygyTablebase(String path) {
+		for (String directoryName : path.split(File.pathSeparator)) {
+			File directory = new File(directoryName.trim());
+			File[] files = directory.listFiles();
+			if ( files == null ) continue;
+
+			for (File aFile : files) {
+				String fileName = aFile.getName();
+				if ( fileName.endsWith(wdlSuffix) ) {
+					String name = fileName.substring(0, fileName.length() - wdlSuffix.length());
+					if ( ! isTableName(name) ) continue;
+					wdlFiles.put(name, aFile);
+					maxPieces = Math.max(maxPieces, name.length() - 1);
+				}
+				else if ( fileName.endsWith(dtzSuffix) ) {
+					String name = fileName.substring(0, fileName.length() - dtzSuffix.length());
+					if ( isTableName(name) ) dtzFiles.put(name, aFile);
+				}
+			}
+		}
+	}
+
+
+
+	/*
+	 * @see chess.Tablebase#getMaxPieces()
+	 */
+	@Override
+	public int getMaxPieces() {
+		return maxPieces;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of win/draw/loss tables found
+	 */
+	public int getWdlTableCount() {
+		return wdlFiles.size();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of distance-to-zero tables found
+	 */
+	public int getDtzTableCount() {
+		return dtzFiles.size();
+	}
+
+
+
+	/*
+	 * @see chess.Tablebase#probe(chess.Board)
+	 */
+	@Override
+	public Result probe(Board aBoard) {
+		Integer wdl = probeWdl(aBoard);
+		if ( wdl == null ) return Result.unknown;
+		if ( wdl > wdlDraw ) return Result.win;
+		if ( wdl < wdlDraw ) return Result.loss;
+		return Result.draw;
+	}
+
+
+
+	/**
+	 *   Look up the win/draw/loss value of a game board.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @return
+	 * 		Return the value for the side to move, from {@link #wdlLoss}
+	 * 		to {@link #wdlWin}, or "null" if the position or one of the
+	 * 		positions after a capture is not in the tables
+	 */
+	public Integer probeWdl(Board aBoard) {
+		if ( ! isProbeable(aBoard) ) return null;
+
+		try {
+			return search(aBoard, false, new ProbeState());
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+
+
+	/**
+	 *   Look up the distance to zeroing of a game board: the number of
+	 *   plies until the next capture or pawn move, when the winning side
+	 *   plays the fastest way to the result and the losing side the
+	 *   slowest.  A win or loss that breaks the fifty-move rule counts
+	 *   100 plies more.
+	 *
+	 * @param aBoard
+	 * 		A game board.  This board is not changed.
+	 *
+	 * @return
+	 * 		Return the distance in plies, positive if the side to move wins,
+	 * 		negative if it loses and 0 for a draw.  Return "null" if the
+	 * 		position or one it depends on is not in the tables.
+	 */
+	public Integer probeDtz(Board aBoard) {
+		if ( ! isProbeable(aBoard) ) return null;
+
+		try {
+			return probeDtz(aBoard, new ProbeState());
+		}
+		catch (IOException e) {
+			return null;
+		}
+	}
+
+
+
+	/*
+	 * Check that the tables can answer for a game board.
+	 */
+	private boolean isProbeable(Board aBoard) {
+		if ( aBoard.getPieceCount() > maxPieces ) return false;
+
+		Chess.gameState state = aBoard.getGameState();
+		if ( (state != Chess.gameState.whiteMove) && (state != Chess.gameState.blackMove) ) return false;
+
+		for (Piece.Colors c : Piece.Colors.values()) {
+			if ( aBoard.hasCastlingRight(c, true) || aBoard.hasCastlingRight(c, false) ) return false;
+		}
+		return true;
+	}
+
+
+
+	/**
+	 *   Find the win/draw/loss value of a position.  The captures (and, if
+	 *   asked, the pawn moves) are searched first, because the table does
+	 *   not hold the right value where one of them is the best move.
+	 */
+	private int search(Board aBoard, boolean bZeroingMoves, ProbeState state) throws IOException {
+		int bestValue = wdlLoss;
+		int[] codes = LegalMoves.of(aBoard);
+		int moveCount = 0;
+
+		for (int code : codes) {
+			Move aMove = Move.fromCode(code);
+			if ( (! isCapture(aBoard, aMove)) && ((! bZeroingMoves) || (! isPawnMove(aBoard, aMove))) ) continue;
+
+			moveCount++;
+			Board child = new Board(aBoard);
+			child.makeMove(aMove);
+			int value = -search(child, false, new ProbeState());
+
+			if ( value > bestValue ) {
+				bestValue = value;
+				if ( value >= wdlWin ) {
+					state.bZeroingBestMove = true;
+					return value;
+				}
+			}
+		}
+
+		// The table value is wrong if only captures could be played
+		boolean bNoMoreMoves = (moveCount > 0) && (moveCount == codes.length);
+		int value = bNoMoreMoves ? bestValue : probeTable(aBoard, false, wdlDraw, state);
+
+		if ( bestValue >= value ) {
+			state.bZeroingBestMove = (bestValue > wdlDraw) || bNoMoreMoves;
+			return bestValue;
+		}
+		state.bZeroingBestMove = false;
+		return value;
+	}
+
+
+
+	/*
+	 * Find the distance to zeroing of a position.
+	 */
+	private int probeDtz(Board aBoard, ProbeState state) throws IOException {
+		int wdl = search(aBoard, true, state);
+		if ( wdl == wdlDraw ) return 0;
+
+		// The table does not hold the position of a zeroing best move
+		if ( state.bZeroingBestMove ) return getDtzBeforeZeroing(wdl);
+
+		int dtz = probeTable(aBoard, true, wdl, state);
+		if ( ! state.bChangeSide ) {
+			boolean bCursed = (wdl == wdlCursedWin) || (wdl == wdlBlessedLoss);
+			return (dtz + (bCursed ? 100 : 0)) * Integer.signum(wdl);
+		}
+
+		//
+		// The table only has the other side to move: search one ply.  The
+		// winning side picks its shortest win, the losing side its longest
+		// loss.
+		//
+		int minDtz = 0xFFFF;
+		for (int code : LegalMoves.of(aBoard)) {
+			Move aMove = Move.fromCode(code);
+			boolean bZeroing = isCapture(aBoard, aMove) || isPawnMove(aBoard, aMove);
+
+			Board child = new Board(aBoard);
+			child.makeMove(aMove);
+
+			// For a zeroing move, the distance is the move itself
+			dtz = bZeroing ? -getDtzBeforeZeroing(search(child, false, new ProbeState())) :
+							 -probeDtz(child, new ProbeState());
+
+			if ( (dtz == 1) && child.isInCheck() && (LegalMoves.of(child).length == 0) ) minDtz = 1;
+			if ( ! bZeroing ) dtz += Integer.signum(dtz);
+			if ( (dtz < minDtz) && (Integer.signum(dtz) == Integer.signum(wdl)) ) minDtz = dtz;
+		}
+
+		// Without a legal move the side to move is mated
+		return (minDtz == 0xFFFF) ? -1 : minDtz;
+	}
+
+
+
+	private static int getDtzBeforeZeroing(int wdl) {
+		switch (wdl) {
+			case wdlWin:			return 1;
+			case wdlCursedWin:		return 101;
+			case wdlBlessedLoss:	return -101;
+			case wdlLoss:			return -1;
+			default:				return 0;
+		}
+	}
+
+
+
+	private static boolean isCapture(Board aBoard, Move aMove) {
+		FileRank from = aMove.getFromLoc();
+		FileRank to = aMove.getToLoc();
+		if ( ! aBoard.getPiece(to.getX(), to.getY()).isEmptySpace() ) return true;
+
+		// A pawn moving sideways to an empty square takes En Passant
+		return isPawnMove(aBoard, aMove) && (from.getX() != to.getX());
+	}
+
+
+
+	private static boolean isPawnMove(Board aBoard, Move aMove) {
+		FileRank from = aMove.getFromLoc();
+		return aBoard.getPiece(from.getX(), from.getY()).getName().equals(Piece.PieceNames.pawn);
+	}
+
+
+
+	/**
+	 *   Look up a position in its WDL or DTZ table, without searching.
+	 *
+	 * @return
+	 * 		Return the win/draw/loss value, or the distance to zeroing in
+	 * 		plies for a DTZ table.  If the DTZ table only has the other side
+	 * 		to move, "bChangeSide" of the state is set.
+	 *
+	 * @throws IOException
+	 * 		If the table is not found or cannot be read
+	 */
+	private int probeTable(Board aBoard, boolean bDtz, int wdl, ProbeState state) throws IOException {
+		int[] codes = getPieceCodes(aBoard);
+		int pieceCount = 0;
+		for (int code : codes) {
+			if ( code != 0 ) pieceCount++;
+		}
+
+		// Two bare kings
+		if ( pieceCount == 2 ) return wdlDraw;
+
+		Table aTable = getTable(aBoard, bDtz);
+		boolean bBlackToMove = aBoard.getSideToMove().equals(Piece.Colors.Black);
+
+		//
+		// The tables have the stronger side playing white, and a table with
+		// the same pieces on both sides only has white to move.  Otherwise
+		// swap the colors and flip the board.
+		//
+		boolean bFlip = (aTable.bSymmetric && bBlackToMove) ||
+						(! aBoard.getMaterialSignature(Piece.Colors.White).equals(aTable.whiteSide));
+		int flipColor = bFlip ? blackCode : 0;
+		int flipSquares = bFlip ? 56 : 0;
+		int side = (bFlip ? 1 : 0) ^ (bBlackToMove ? 1 : 0);
+
+		int[] squares = new int[maxTablePieces];
+		int[] pieces = new int[maxTablePieces];
+		int size = 0;
+		int leadPawnCount = 0;
+		int file = 0;
+
+		//
+		// A pawn ending has one table for each file of the leading pawn:
+		// the pawn nearest to the edge, and the lowest of those.
+		//
+		int leadPawn = -1;
+		if ( aTable.bHasPawns ) {
+			leadPawn = aTable.parts[0][0].pieces[0] ^ flipColor;
+			for (int sq=0; sq < 64; sq++) {
+				if ( codes[sq] == leadPawn ) squares[size++] = sq ^ flipSquares;
+			}
+			leadPawnCount = size;
+
+			int lead = 0;
+			for (int i=1; i < leadPawnCount; i++) {
+				if ( mapPawns[squares[i]] > mapPawns[squares[lead]] ) lead = i;
+			}
+			swap(squares, 0, lead);
+			file = Math.min(squares[0] & 7, 7 - (squares[0] & 7));
+		}
+
+		PairsData d = aTable.parts[aTable.bDtz ? 0 : side % aTable.parts.length][file];
+
+		// A DTZ table only has one side to move
+		if ( bDtz && ((d.flags & flagBlackToMove) != side) && ((! aTable.bSymmetric) || aTable.bHasPawns) ) {
+			state.bChangeSide = true;
+			return 0;
+		}
+
+		for (int sq=0; sq < 64; sq++) {
+			if ( (codes[sq] == 0) || (codes[sq] == leadPawn) ) continue;
+			squares[size] = sq ^ flipSquares;
+			pieces[size++] = codes[sq] ^ flipColor;
+		}
+
+		// Put the pieces in the order of the table
+		for (int i=leadPawnCount; i < size - 1; i++) {
+			for (int j=i+1; j < size; j++) {
+				if ( d.pieces[i] == pieces[j] ) {
+					swap(pieces, i, j);
+					swap(squares, i, j);
+					break;
+				}
+			}
+		}
+
+		// Mirror the board so the leading piece is on files a-d
+		if ( (squares[0] & 7) > 3 ) {
+			for (int i=0; i < size; i++) squares[i] ^= 7;
+		}
+
+		long idx;
+		if ( aTable.bHasPawns ) {
+			idx = leadPawnIdx[leadPawnCount][squares[0]];
+			sortByPawnOrder(squares, 1, leadPawnCount);
+			for (int i=1; i < leadPawnCount; i++) idx += binomial[i][mapPawns[squares[i]]];
+		}
+		else {
+			idx = getPiecesIndex(aTable, d, squares, size);
+		}
+
+		idx = encodeGroups(aTable, d, squares, idx);
+		int value = decompress(aTable.buffer, d, idx);
+		return bDtz ? mapDtz(aTable, file, value, wdl) : value - 2;
+	}
+
+
+
+	/*
+	 * Index of the leading group of a pawnless ending, after the board is
+	 * mirrored so the first piece is in the a1-d1-d4 triangle.
+	 */
+	private static long getPiecesIndex(Table aTable, PairsData d, int[] squares, int size) {
+		// Leading piece on ranks 1-4
+		if ( (squares[0] >>> 3) > 3 ) {
+			for (int i=0; i < size; i++) squares[i] ^= 56;
+		}
+
+		// First piece of the leading group off the a1-h8 diagonal below it
+		for (int i=0; i < d.groupLen[0]; i++) {
+			int offDiagonal = offDiagonal(squares[i]);
+			if ( offDiagonal == 0 ) continue;
+
+			if ( offDiagonal > 0 ) {
+				for (int j=i; j < size; j++) squares[j] = ((squares[j] >>> 3) | (squares[j] << 3)) & 63;
+			}
+			break;
+		}
+
+		// Only the two kings lead
+		if ( ! aTable.bHasUniquePieces ) return mapKK[mapA1D1D4[squares[0]]][squares[1]];
+
+		int adjust1 = (squares[1] > squares[0]) ? 1 : 0;
+		int adjust2 = ((squares[2] > squares[0]) ? 1 : 0) + ((squares[2] > squares[1]) ? 1 : 0);
+
+		if ( offDiagonal(squares[0]) != 0 ) {
+			return (mapA1D1D4[squares[0]] * 63L + (squares[1] - adjust1)) * 62 + squares[2] - adjust2;
+		}
+		if ( offDiagonal(squares[1]) != 0 ) {
+			return (6 * 63 + (squares[0] >>> 3) * 28 + mapB1H1H7[squares[1]]) * 62L + squares[2] - adjust2;
+		}
+		if ( offDiagonal(squares[2]) != 0 ) {
+			return 6 * 63 * 62 + 4 * 28 * 62 + (squares[0] >>> 3) * 7 * 28 +
+				   ((squares[1] >>> 3) - adjust1) * 28 + mapB1H1H7[squares[2]];
+		}
+		return 6 * 63 * 62 + 4 * 28 * 62 + 4 * 7 * 28 + (squares[0] >>> 3) * 7 * 6 +
+			   ((squares[1] >>> 3) - adjust1) * 6 + ((squares[2] >>> 3) - adjust2);
+	}
+
+
+
+	/*
+	 * Add the other groups of identical pieces to the index of the
+	 * leading group.  Each group is a combination of the squares left.
+	 */
+	private static long encodeGroups(Table aTable, PairsData d, int[] squares, long leadIdx) {
+		long idx = leadIdx * d.groupIdx[0];
+		int start = d.groupLen[0];
+		boolean bOtherPawns = aTable.bHasPawns && (aTable.pawnCount[1] > 0);
+
+		for (int next=1; d.groupLen[next] != 0; next++) {
+			int length = d.groupLen[next];
+			Arrays.sort(squares, start, start + length);
+
+			long n = 0;
+			for (int i=0; i < length; i++) {
+				int sq = squares[start + i];
+				int adjust = 0;
+				for (int j=0; j < start; j++) {
+					if ( sq > squares[j] ) adjust++;
+				}
+				n += binomial[i + 1][sq - adjust - (bOtherPawns ? 8 : 0)];
+			}
+
+			bOtherPawns = false;
+			idx += n * d.groupIdx[next];
+			start += length;
+		}
+		return idx;
+	}
+
+
+
+	/*
+	 * Turn a stored DTZ value into plies.
+	 */
+	private static int mapDtz(Table aTable, int file, int value, int wdl) {
+		final int[] wdlMap = { 1, 3, 0, 2, 0 };
+		PairsData d = aTable.parts[0][file];
+
+		if ( (d.flags & flagMapped) != 0 ) {
+			int mapIdx = d.mapIdx[wdlMap[wdl + 2]];
+			if ( (d.flags & flagWide) != 0 ) {
+				value = readShort(aTable.buffer, aTable.map + 2 * (mapIdx + value));
+			}
+			else {
+				value = readByte(aTable.buffer, aTable.map + mapIdx + value);
+			}
+		}
+
+		// Some values are stored in moves rather than plies
+		if ( ((wdl == wdlWin) && ((d.flags & flagWinPlies) == 0)) ||
+			 ((wdl == wdlLoss) && ((d.flags & flagLossPlies) == 0)) ||
+			 (wdl == wdlCursedWin) || (wdl == wdlBlessedLoss) ) {
+			value *= 2;
+		}
+		return value + 1;
+	}
+
+
+
+	/**
+	 *   Read the value at one index of a table part.
+	 *
+	 *   <p>Each block stores a number of values, and the sparse index
+	 *   gives the block and the offset in it of every span-th value, so
+	 *   only the neighbouring blocks are walked to find the right one.
+	 *   The block is then read symbol by symbol.  A symbol stands for a
+	 *   run of values, and is expanded through the pairs that make it up.
+	 */
+	private static int decompress(MappedByteBuffer buffer, PairsData d, long idx) {
+		if ( (d.flags & flagSingleValue) != 0 ) return d.minSymLen;
+
+		long k = idx / d.span;
+		int entry = (int) (d.sparseIndex + 6 * k);
+		int block = readInt(buffer, entry);
+		long offset = readShort(buffer, entry + 4) + (idx % d.span) - (d.span / 2);
+
+		while ( offset < 0 ) {
+			block--;
+			offset += readShort(buffer, d.blockLengths + 2 * block) + 1;
+		}
+		while ( offset > readShort(buffer, d.blockLengths + 2 * block) ) {
+			offset -= readShort(buffer, d.blockLengths + 2 * block) + 1;
+			block++;
+		}
+
+		// The symbols are stored big-endian from the start of the block
+		int ptr = (int) (d.data + block * d.blockSize);
+		long bits = buffer.getLong(ptr);
+		ptr += 8;
+		int bitCount = 64;
+		int sym;
+
+		while ( true ) {
+			// Canonical Huffman code: the shorter codes have the higher values
+			int length = 0;
+			while ( Long.compareUnsigned(bits, d.base64[length]) < 0 ) length++;
+
+			sym = (int) ((bits - d.base64[length]) >>> (64 - length - d.minSymLen));
+			sym += readShort(buffer, d.lowestSym + 2 * length);
+
+			if ( offset < d.symLen[sym] + 1 ) break;
+
+			offset -= d.symLen[sym] + 1;
+			length += d.minSymLen;
+			bits <<= length;
+			bitCount -= length;
+
+			if ( bitCount <= 32 ) {
+				bitCount += 32;
+				bits |= (buffer.getInt(ptr) & 0xFFFFFFFFL) << (64 - bitCount);
+				ptr += 4;
+			}
+		}
+
+		// Expand the symbol until the value at the offset is reached
+		while ( d.symLen[sym] != 0 ) {
+			int left = getLeft(buffer, d, sym);
+			if ( offset < d.symLen[left] + 1 ) {
+				sym = left;
+			}
+			else {
+				offset -= d.symLen[left] + 1;
+				sym = getRight(buffer, d, sym);
+			}
+		}
+		return getLeft(buffer, d, sym);
+	}
+
+
+
+	/*
+	 * Get the mapped table of the material on a game board.
+	 */
+	private Table getTable(Board aBoard, boolean bDtz) throws IOException {
+		String white = aBoard.getMaterialSignature(Piece.Colors.White);
+		String black = aBoard.getMaterialSignature(Piece.Colors.Black);
+
+		HashMap<String, File> files = bDtz ? dtzFiles : wdlFiles;
+		String name = white + "v" + black;
+		if ( ! files.containsKey(name) ) name = black + "v" + white;
+
+		File aFile = files.get(name);
+		if ( aFile == null ) throw new FileNotFoundException("No tablebase file for " + white + "v" + black);
+
+		return getTable(name, aFile, bDtz);
+	}
+
+
+
+	private synchronized Table getTable(String name, File aFile, boolean bDtz) throws IOException {
+		String key = aFile.getPath();
+		Table aTable = tables.get(key);
+		if ( aTable != null ) return aTable;
+
+		aTable = new Table(name, bDtz);
+		RandomAccessFile file = new RandomAccessFile(aFile, "r");
+		try {
+			FileChannel channel = file.getChannel();
+			long size = channel.size();
+
+			// A valid Syzygy file is 16 bytes longer than a multiple of 64
+			if ( (size % 64 != 16) || (size > Integer.MAX_VALUE) ) {
+				throw new IOException("Corrupted tablebase file: " + key);
+			}
+
+			// The mapping stays valid after the file is closed
+			aTable.buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+		}
+		finally {
+			file.close();
+		}
+
+		int[] magic = bDtz ? dtzMagic : wdlMagic;
+		for (int i=0; i < magic.length; i++) {
+			if ( readByte(aTable.buffer, i) != magic[i] ) {
+				throw new IOException("Not a Syzygy tablebase file: " + key);
+			}
+		}
+
+		try {
+			readHeader(aTable);
+		}
+		catch (IndexOutOfBoundsException e) {
+			throw new IOException("Corrupted tablebase file: " + key);
+		}
+
+		tables.put(key, aTable);
+		return aTable;
+	}
+
+
+
+	/**
+	 *   Read the header of a table file and set up the decoding data of
+	 *   each part.  The parts of the file are, in order: the pieces of
+	 *   each part, the symbol tables, the DTZ value maps, the sparse
+	 *   indexes, the block lengths and the blocks.
+	 */
+	private static void readHeader(Table aTable) throws IOException {
+		MappedByteBuffer buffer = aTable.buffer;
+		int ptr = 4;
+
+		int flags = readByte(buffer, ptr++);
+		if ( (((flags & 2) != 0) != aTable.bHasPawns) || (((flags & 1) != 0) == aTable.bSymmetric) ) {
+			throw new IOException("Wrong pieces in tablebase file");
+		}
+
+		int sides = ((! aTable.bDtz) && (! aTable.bSymmetric)) ? 2 : 1;
+		int files = aTable.bHasPawns ? 4 : 1;
+		boolean bBothPawns = aTable.bHasPawns && (aTable.pawnCount[1] > 0);
+		aTable.parts = new PairsData[sides][files];
+
+		for (int f=0; f < files; f++) {
+			for (int i=0; i < sides; i++) aTable.parts[i][f] = new PairsData();
+
+			int order = readByte(buffer, ptr);
+			int pawnOrder = bBothPawns ? readByte(buffer, ptr + 1) : 0xFF;
+			int[][] orders = { { order & 0xF, pawnOrder & 0xF }, { order >>> 4, pawnOrder >>> 4 } };
+			ptr += bBothPawns ? 2 : 1;
+
+			for (int k=0; k < aTable.pieceCount; k++, ptr++) {
+				int pieceByte = readByte(buffer, ptr);
+				for (int i=0; i < sides; i++) aTable.parts[i][f].pieces[k] = (i == 0) ? pieceByte & 0xF : pieceByte >>> 4;
+			}
+
+			for (int i=0; i < sides; i++) setGroups(aTable, aTable.parts[i][f], orders[i], f);
+		}
+		ptr += ptr & 1;
+
+		for (int f=0; f < files; f++) {
+			for (int i=0; i < sides; i++) ptr = setSizes(buffer, aTable.parts[i][f], ptr);
+		}
+
+		if ( aTable.bDtz ) ptr = setDtzMaps(aTable, ptr);
+
+		for (int f=0; f < files; f++) {
+			for (int i=0; i < sides; i++) {
+				aTable.parts[i][f].sparseIndex = ptr;
+				ptr += (int) (aTable.parts[i][f].sparseIndexSize * 6);
+			}
+		}
+
+		for (int f=0; f < files; f++) {
+			for (int i=0; i < sides; i++) {
+				aTable.parts[i][f].blockLengths = ptr;
+				ptr += aTable.parts[i][f].blockLengthCount * 2;
+			}
+		}
+
+		long end = ptr;
+		for (int f=0; f < files; f++) {
+			for (int i=0; i < sides; i++) {
+				end = (end + 0x3F) & ~0x3FL;
+				aTable.parts[i][f].data = (int) end;
+				end += aTable.parts[i][f].blockCount * aTable.parts[i][f].blockSize;
+			}
+		}
+
+		if ( end > buffer.capacity() ) throw new IOException("Tablebase file is too short");
+	}
+
+
+
+	/**
+	 *   Find the groups of a table part: the leading group (the kings and
+	 *   a unique piece, or the leading pawns), then every run of identical
+	 *   pieces.  Then find the factor of each group in the index, in the
+	 *   order the file gives.
+	 */
+	private static void setGroups(Table aTable, PairsData d, int[] order, int file) {
+		int n = 0;
+		int firstLength = aTable.bHasPawns ? 0 : (aTable.bHasUniquePieces ? 3 : 2);
+		d.groupLen[n] = 1;
+
+		for (int i=1; i < aTable.pieceCount; i++) {
+			if ( (--firstLength > 0) || (d.pieces[i] == d.pieces[i - 1]) ) {
+				d.groupLen[n]++;
+			}
+			else {
+				d.groupLen[++n] = 1;
+			}
+		}
+		d.groupLen[++n] = 0;
+
+		boolean bBothPawns = aTable.bHasPawns && (aTable.pawnCount[1] > 0);
+		int next = bBothPawns ? 2 : 1;
+		int freeSquares = 64 - d.groupLen[0] - (bBothPawns ? d.groupLen[1] : 0);
+		long idx = 1;
+
+		for (int k=0; (next < n) || (k == order[0]) || (k == order[1]); k++) {
+			if ( k == order[0] ) {
+				d.groupIdx[0] = idx;
+				idx *= aTable.bHasPawns ? leadPawnsSize[d.groupLen[0]][file] :
+										  (aTable.bHasUniquePieces ? uniquePiecesSize : kingsSize);
+			}
+			else if ( k == order[1] ) {
+				d.groupIdx[1] = idx;
+				idx *= binomial[d.groupLen[1]][48 - d.groupLen[0]];
+			}
+			else {
+				d.groupIdx[next] = idx;
+				idx *= binomial[d.groupLen[next]][freeSquares];
+				freeSquares -= d.groupLen[next++];
+			}
+		}
+		d.groupIdx[n] = idx;
+	}
+
+
+
+	/**
+	 *   Read the block sizes and the Huffman symbol tables of a table part.
+	 *
+	 * @return
+	 * 		Return the offset after the symbol tables
+	 */
+	private static int setSizes(MappedByteBuffer buffer, PairsData d, int ptr) {
+		d.flags = readByte(buffer, ptr++);
+
+		// Every position has the same value, which is stored right here
+		if ( (d.flags & flagSingleValue) != 0 ) {
+			d.minSymLen = readByte(buffer, ptr++);
+			return ptr;
+		}
+
+		int n = 0;
+		while ( d.groupLen[n] != 0 ) n++;
+		long tableSize = d.groupIdx[n];
+
+		d.blockSize = 1L << readByte(buffer, ptr++);
+		d.span = 1L << readByte(buffer, ptr++);
+		d.sparseIndexSize = (tableSize + d.span - 1) / d.span;
+		int padding = readByte(buffer, ptr++);
+		d.blockCount = readInt(buffer, ptr);
+		ptr += 4;
+		d.blockLengthCount = d.blockCount + padding;
+		d.maxSymLen = readByte(buffer, ptr++);
+		d.minSymLen = readByte(buffer, ptr++);
+		d.lowestSym = ptr;
+
+		//
+		// The lowest code of each length follows from the number of
+		// symbols of the next longer length.  Left-align every code in
+		// 64 bits so codes of any length compare directly.
+		//
+		d.base64 = new long[d.maxSymLen - d.minSymLen + 1];
+		for (int i=d.base64.length - 2; i >= 0; i--) {
+			d.base64[i] = (d.base64[i + 1] + readShort(buffer, d.lowestSym + 2 * i)
+						   - readShort(buffer, d.lowestSym + 2 * (i + 1))) / 2;
+		}
+		for (int i=0; i < d.base64.length; i++) d.base64[i] <<= 64 - i - d.minSymLen;
+
+		ptr += d.base64.length * 2;
+		int symbols = readShort(buffer, ptr);
+		ptr += 2;
+		d.btree = ptr;
+
+		d.symLen = new int[symbols];
+		boolean[] bVisited = new boolean[symbols];
+		for (int sym=0; sym < symbols; sym++) {
+			if ( ! bVisited[sym] ) d.symLen[sym] = getSymLen(buffer, d, sym, bVisited);
+		}
+
+		return ptr + symbols * 3 + (symbols & 1);
+	}
+
+
+
+	/*
+	 * Number of values, less one, that a symbol stands for.
+	 */
+	private static int getSymLen(MappedByteBuffer buffer, PairsData d, int sym, boolean[] bVisited) {
+		bVisited[sym] = true;
+		int right = getRight(buffer, d, sym);
+		if ( right == 0xFFF ) return 0;
+
+		int left = getLeft(buffer, d, sym);
+		if ( ! bVisited[left] ) d.symLen[left] = getSymLen(buffer, d, left, bVisited);
+		if ( ! bVisited[right] ) d.symLen[right] = getSymLen(buffer, d, right, bVisited);
+		return d.symLen[left] + d.symLen[right] + 1;
+	}
+
+
+
+	/**
+	 *   Read the maps that turn the stored DTZ values back into distances,
+	 *   one map for each of win, loss, cursed win and blessed loss.
+	 *
+	 * @return
+	 * 		Return the offset after the maps
+	 */
+	private static int setDtzMaps(Table aTable, int ptr) {
+		aTable.map = ptr;
+
+		for (PairsData d : aTable.parts[0]) {
+			if ( (d.flags & flagMapped) == 0 ) continue;
+
+			if ( (d.flags & flagWide) != 0 ) {
+				ptr += ptr & 1;
+				for (int i=0; i < 4; i++) {
+					d.mapIdx[i] = (ptr - aTable.map) / 2 + 1;
+					ptr += 2 * readShort(aTable.buffer, ptr) + 2;
+				}
+			}
+			else {
+				for (int i=0; i < 4; i++) {
+					d.mapIdx[i] = ptr - aTable.map + 1;
+					ptr += readByte(aTable.buffer, ptr) + 1;
+				}
+			}
+		}
+		return ptr + (ptr & 1);
+	}
+
+
+
+	/*
+	 * Fill the index tables used to encode the squares of the pieces.
+	 */
+	private static void initIndexes() {
+		int code = 0;
+		for (int sq=0; sq < 64; sq++) {
+			if ( offDiagonal(sq) < 0 ) mapB1H1H7[sq] = code++;
+		}
+
+		// The triangle below the diagonal first, then the diagonal a1-d4
+		code = 0;
+		for (int y=0; y < 4; y++) {
+			for (int x=0; x < 4; x++) {
+				if ( offDiagonal(x + 8*y) < 0 ) mapA1D1D4[x + 8*y] = code++;
+			}
+		}
+		for (int i=0; i < 4; i++) mapA1D1D4[9 * i] = code++;
+
+		//
+		// The legal places of two kings, the first one in the triangle.
+		// If the first king is on the diagonal, the other one is not above
+		// it, and the places with both kings on the diagonal come last.
+		//
+		int[][] onDiagonal = new int[64][2];
+		int diagonalCount = 0;
+		code = 0;
+		for (int idx=0; idx < 10; idx++) {
+			for (int sq1=0; sq1 < 28; sq1++) {
+				if ( ((sq1 & 7) > 3) || (mapA1D1D4[sq1] != idx) || ((idx == 0) && (sq1 != 1)) ) continue;
+
+				for (int sq2=0; sq2 < 64; sq2++) {
+					if ( (Math.abs((sq1 & 7) - (sq2 & 7)) <= 1) && (Math.abs((sq1 >>> 3) - (sq2 >>> 3)) <= 1) ) continue;
+					if ( (offDiagonal(sq1) == 0) && (offDiagonal(sq2) > 0) ) continue;
+
+					if ( (offDiagonal(sq1) == 0) && (offDiagonal(sq2) == 0) ) {
+						onDiagonal[diagonalCount][0] = idx;
+						onDiagonal[diagonalCount++][1] = sq2;
+					}
+					else {
+						mapKK[idx][sq2] = code++;
+					}
+				}
+			}
+		}
+		for (int i=0; i < diagonalCount; i++) mapKK[onDiagonal[i][0]][onDiagonal[i][1]] = code++;
+
+		binomial[0][0] = 1;
+		for (int n=1; n < 64; n++) {
+			for (int k=0; (k < maxTablePieces) && (k <= n); k++) {
+				binomial[k][n] = ((k > 0) ? binomial[k - 1][n - 1] : 0) + ((k < n) ? binomial[k][n - 1] : 0);
+			}
+		}
+
+		//
+		// Number the pawn squares from the edge files inwards and from
+		// rank 2 upwards, so the leading pawn has the highest number.
+		//
+		int available = 47;
+		for (int pawns=1; pawns <= 5; pawns++) {
+			for (int f=0; f < 4; f++) {
+				long idx = 0;
+				for (int y=1; y < 7; y++) {
+					int sq = f + 8*y;
+					if ( pawns == 1 ) {
+						mapPawns[sq] = available--;
+						mapPawns[sq ^ 7] = available--;
+					}
+					leadPawnIdx[pawns][sq] = idx;
+					idx += binomial[pawns - 1][mapPawns[sq]];
+				}
+				leadPawnsSize[pawns][f] = idx;
+			}
+		}
+	}
+
+
+
+	/*
+	 * Get the table code of the piece on each square, 0 if it is empty.
+	 */
+	private static int[] getPieceCodes(Board aBoard) {
+		int[] codes = new int[64];
+		for (int x=0; x < 8; x++) {
+			for (int y=0; y < 8; y++) {
+				Piece aPiece = aBoard.getPiece(x, y);
+				if ( aPiece.isEmptySpace() ) continue;
+
+				int code = getPieceCode(aPiece.getName());
+				if ( aPiece.getColor().equals(Piece.Colors.Black) ) code |= blackCode;
+				codes[x + 8*y] = code;
+			}
+		}
+		return codes;
+	}
+
+
+
+	private static int getPieceCode(Piece.PieceNames name) {
+		switch (name) {
+			case pawn:		return pawnCode;
+			case knight:	return 2;
+			case bishop:	return 3;
+			case rook:		return 4;
+			case queen:		return 5;
+			default:		return 6;
+		}
+	}
+
+
+
+	/*
+	 * A table name is the pieces of both sides, each starting with the king.
+	 */
+	private static boolean isTableName(String name) {
+		return name.matches("K[QRBNP]*vK[QRBNP]*") && (name.length() - 1 <= maxTablePieces);
+	}
+
+
+
+	/*
+	 * Distance of a square above (positive) or below (negative) the a1-h8 diagonal.
+	 */
+	private static int offDiagonal(int sq) {
+		return (sq >>> 3) - (sq & 7);
+	}
+
+
+
+	private static void sortByPawnOrder(int[] squares, int from, int to) {
+		for (int i=from + 1; i < to; i++) {
+			int sq = squares[i];
+			int j = i;
+			while ( (j > from) && (mapPawns[squares[j - 1]] > mapPawns[sq]) ) {
+				squares[j] = squares[j - 1];
+				j--;
+			}
+			squares[j] = sq;
+		}
+	}
+
+
+
+	private static void swap(int[] values, int i, int j) {
+		int value = values[i];
+		values[i] = values[j];
+		values[j] = value;
+	}
+
+
+
+	private static int getLeft(MappedByteBuffer buffer, PairsData d, int sym) {
+		int ptr = d.btree + 3 * sym;
+		return ((readByte(buffer, ptr + 1) & 0xF) << 8) | readByte(buffer, ptr);
+	}
+
+
+
+	private static int getRight(MappedByteBuffer buffer, PairsData d, int sym) {
+		int ptr = d.btree + 3 * sym;
+		return (readByte(buffer, ptr + 2) << 4) | (readByte(buffer, ptr + 1) >>> 4);
+	}
+
+
+
+	// The header numbers are little-endian
+	private static int readByte(MappedByteBuffer buffer, int ptr) {
+		return buffer.get(ptr) & 0xFF;
+	}
+
+
+
+	private static int readShort(MappedByteBuffer buffer, int ptr) {
+		return readByte(buffer, ptr) | (readByte(buffer, ptr + 1) << 8);
+	}
+
+
+
+	private static int readInt(MappedByteBuffer buffer, int ptr) {
+		return readShort(buffer, ptr) | (readShort(buffer, ptr + 2) << 16);
+	}
+
+
+
+
+	/**
+	 *   Look up positions in the tables, to check a set of table files against
+	 *   known results.
+	 *
+	 * @param args
+	 * 		The table directories followed by one or more positions in FEN,
+	 * 		each in quotes
+	 */
+	public static void main(String[] args) {
+		if ( args.length < 2 ) {
+			System.out.println("Usage: java chess.SyzygyTablebase tableDirectories \"fen\" ...");
+			return;
+		}
+
+		SyzygyTablebase tablebase = new SyzygyTablebase(args[0]);
+		System.out.println(tablebase.getWdlTableCount() + " WDL and " +
+						   tablebase.getDtzTableCount() + " DTZ tables found");
+
+		for (int i=1; i < args.length; i++) {
+			Board aBoard = new Board(args[i]);
+			System.out.println(args[i] + "  wdl " + tablebase.probeWdl(aBoard) +
+							   "  dtz " + tablebase.probeDtz(aBoard));
+		}
+	}
+
+}
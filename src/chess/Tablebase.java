@@ -0,0 +1,65 @@
+package chess;
+
+
+/**
+ *   An endgame tablebase.  A tablebase knows the exact outcome of every
+ *   position with only a few pieces left on the game board, assuming
+ *   both sides play perfectly.  It is used to end (i.e. adjudicate) a
+ *   game that is already decided, and to let a search stop as soon as
+ *   it reaches such a position.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public interface Tablebase {
+
+	/**
+	 *  Outcome of a position for the side that is due to move
+	 */
+	public static enum Result {
+		/**
+		 *   The side to move wins with perfect play
+		 */
+		win,
+
+		/**
+		 *   The position is a draw with perfect play
+		 */
+		draw,
+
+		/**
+		 *   The side to move loses with perfect play
+		 */
+		loss,
+
+		/**
+		 *   The tablebase does not know this position
+		 */
+		unknown };
+
+
+
+	/**
+	 * @return
+	 * 		Return the largest number of pieces (kings included) of any
+	 * 		position this tablebase can answer.  Return 0 if it cannot
+	 * 		answer any position.
+	 */
+	public int getMaxPieces();
+
+
+
+	/**
+	 *   Look up the outcome of a game board.
+	 *
+	 * @param aBoard
+	 * 		A game board
+	 *
+	 * @return
+	 * 		Return the outcome for the side due to move, or "unknown"
+	 * 		if this position is not in the tablebase.
+	 */
+	public Result probe(Board aBoard);
+
+}
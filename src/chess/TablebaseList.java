@@ -0,0 +1,73 @@
+package chess;
+
+import java.util.ArrayList;
+
+
+/**
+ *   A list of endgame tablebases that are consulted one after another.
+ *   The first tablebase that knows the outcome of a position answers
+ *   for all of them.  This lets the small built-in bitbases answer the
+ *   simplest endgames before any external tablebase is used.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class TablebaseList implements Tablebase {
+
+	private final ArrayList<Tablebase> tablebases = new ArrayList<Tablebase>();
+
+
+
+	/**
+	 *   Add a tablebase at the end of this list.
+	 *
+	 * @param aTablebase
+	 * 		An endgame tablebase
+	 */
+	public void add(Tablebase aTablebase) {
+		tablebases.add(aTablebase);
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return "true" if this list has no tablebase
+	 */
+	public boolean isEmpty() {
+		return tablebases.isEmpty();
+	}
+
+
+
+	/*
+	 * @see chess.Tablebase#getMaxPieces()
+	 */
+	@Override
+	public int getMaxPieces() {
+		int maxPieces = 0;
+		for (Tablebase aTablebase : tablebases) {
+			maxPieces = Math.max(maxPieces, aTablebase.getMaxPieces());
+		}
+		return maxPieces;
+	}
+
+
+
+	/*
+	 * @see chess.Tablebase#probe(chess.Board)
+	 */
+	@Override
+	public Result probe(Board aBoard) {
+		int pieceCount = aBoard.getPieceCount();
+		for (Tablebase aTablebase : tablebases) {
+			if ( pieceCount > aTablebase.getMaxPieces() ) continue;
+
+			Result result = aTablebase.probe(aBoard);
+			if ( result != Result.unknown ) return result;
+		}
+		return Result.unknown;
+	}
+
+}
@@ -0,0 +1,693 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+
+/**
+ *   Plays a match of many games between two computer players with
+ *   different settings, to find out whether a change to the engine makes
+ *   it stronger.
+ *
+ *   <p>Games are played at the same time on several threads, one per
+ *   processor by default.  Every game has its own game boards and its own
+ *   engines, searches and evaluations, so games share nothing but the
+ *   result counters.  Nothing is displayed while a game is played.
+ *
+ *   <p>The games start from the positions of an opening suite, a text
+ *   file with one FEN position per line.  Each opening is played twice,
+ *   once with each player as white.  Without a suite every game starts
+ *   from the standard starting position.
+ *
+ *   <p>Each player has a clock (a base time plus an increment per move),
+ *   or a fixed time per move, or only a depth limit.  A game is over at
+ *   checkmate or stalemate, on time, after a threefold repetition, the
+ *   fifty-move rule or with too little material to mate, or when it
+ *   reaches the move limit (counted as a draw).
+ *
+ *   <p>After every game the score, the Elo difference and optionally a
+ *   sequential probability ratio test are updated (see
+ *   {@link MatchStatistics}).  The match ends early when the test is
+ *   decided.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Tournament {
+
+	/**
+	 *  The settings of one of the two computer players
+	 */
+	public static class Player {
+		private final String name;
+		private int depth = 0;
+		private boolean bQuiescence = true;
+		private boolean bDeltaPruning = true;
+		private boolean bNullMovePruning = true;
+		private boolean bLateMoveReductions = true;
+		private boolean bFutilityPruning = true;
+		private boolean bAspirationWindows = true;
+		private PolyglotBook book = null;
+
+		/**
+		 *   Create a player with the default settings.
+		 *
+		 * @param name
+		 * 		The name of the player, as written in the game records
+		 */
+		public Player(String name) {
+			this.name = name;
+		}
+
+		/**
+		 *   Create a player from a description such as
+		 *   "new:depth=4,delta=off".  The settings after the name are
+		 *   the options of {@link #setOption(String, String)}.
+		 *
+		 * @param description
+		 * 		A player description
+		 *
+		 * @return
+		 * 		Return the player
+		 *
+		 * @throws IllegalArgumentException
+		 * 		If an option is not known or has a wrong value
+		 */
+		public static Player parse(String description) {
+			int colon = description.indexOf(':');
+			if ( colon < 0 ) return new Player(description);
+
+			Player aPlayer = new Player(description.substring(0, colon));
+			for (String anOption : description.substring(colon + 1).split(",")) {
+				int equals = anOption.indexOf('=');
+				if ( equals < 0 ) throw new IllegalArgumentException("Invalid player option: " + anOption);
+				aPlayer.setOption(anOption.substring(0, equals).trim(), anOption.substring(equals + 1).trim());
+			}
+			return aPlayer;
+		}
+
+		/**
+		 *   Change one setting of this player.  The options are "depth"
+		 *   (the deepest iteration in plies, or 0 for no limit), "quiescence"
+		 *   and "delta" (quiescence search and delta pruning, "on" or "off"),
+		 *   and "nullmove", "lmr", "futility" and "aspiration" (null-move
+		 *   pruning, late move reductions, futility pruning and aspiration
+		 *   windows, "on" or "off").  The option "book" names a Polyglot
+		 *   opening book that the player uses before it starts searching.
+		 *
+		 * @param option  The name of the option
+		 * @param value   The value of the option
+		 *
+		 * @throws IllegalArgumentException
+		 * 		If the option is not known or the value is wrong
+		 */
+		public void setOption(String option, String value) {
+			switch (option) {
+				case "depth":
+					depth = Integer.parseInt(value);
+					break;
+
+				case "quiescence":
+					bQuiescence = parseSwitch(option, value);
+					break;
+
+				case "delta":
+					bDeltaPruning = parseSwitch(option, value);
+					break;
+
+				case "nullmove":
+					bNullMovePruning = parseSwitch(option, value);
+					break;
+
+				case "lmr":
+					bLateMoveReductions = parseSwitch(option, value);
+					break;
+
+				case "futility":
+					bFutilityPruning = parseSwitch(option, value);
+					break;
+
+				case "aspiration":
+					bAspirationWindows = parseSwitch(option, value);
+					break;
+
+				case "book":
+					try {
+						// The book is only read, so all the games can share it
+						book = new PolyglotBook(value);
+					}
+					catch (IOException e) {
+						throw new IllegalArgumentException("Cannot open opening book " + value + ": " + e.getMessage());
+					}
+					break;
+
+				default:
+					throw new IllegalArgumentException("Unknown player option: " + option);
+			}
+		}
+
+		/**
+		 * @return
+		 * 		Return the name of the player
+		 */
+		public String getName() {
+			return name;
+		}
+
+		/**
+		 * @return
+		 * 		Return the deepest iteration in plies, or 0 for no limit
+		 */
+		public int getDepth() {
+			return depth;
+		}
+
+		/**
+		 *   Create a new engine with the settings of this player.  Each
+		 *   game gets its own engines.
+		 *
+		 * @return
+		 * 		Return a new engine
+		 */
+		public Engine createEngine() {
+			Search search = new Search();
+			search.setQuiescence(bQuiescence);
+			search.setDeltaPruning(bDeltaPruning);
+			search.setNullMovePruning(bNullMovePruning);
+			search.setLateMoveReductions(bLateMoveReductions);
+			search.setFutilityPruning(bFutilityPruning);
+			search.setAspirationWindows(bAspirationWindows);
+
+			Engine engine = new Engine(search);
+			if ( depth > 0 ) engine.setDepth(depth);
+			engine.setBook(book);
+			return engine;
+		}
+
+		private static boolean parseSwitch(String option, String value) {
+			if ( value.equalsIgnoreCase("on") || value.equalsIgnoreCase("true") ) return true;
+			if ( value.equalsIgnoreCase("off") || value.equalsIgnoreCase("false") ) return false;
+			throw new IllegalArgumentException("Invalid value of " + option + ": " + value);
+		}
+	}
+
+
+	/**
+	 *  Receives every finished game of a match.
+	 */
+	public interface Listener {
+		/**
+		 *   Called after each game, one game at a time.
+		 *
+		 * @param aGame       The record of the game
+		 * @param statistics  The results of the match so far
+		 */
+		void gameFinished(GameRecord aGame, MatchStatistics statistics);
+	}
+
+
+	/**
+	 *  Default number of plies after which a game is drawn
+	 */
+	public static final int defaultMaxPlies = 400;
+
+	private final Player first;
+	private final Player second;
+	private final MatchStatistics statistics = new MatchStatistics();
+
+	private int games = 100;
+	private int threads = Runtime.getRuntime().availableProcessors();
+	private ArrayList<String> openings = new ArrayList<String>();
+	private long baseTime = 0;
+	private long increment = 0;
+	private long moveTime = 0;
+	private int maxPlies = defaultMaxPlies;
+	private String recordFileName = "";
+	private Listener listener = null;
+
+	private final AtomicInteger nextGame = new AtomicInteger();
+	private volatile boolean bStopped = false;
+	private GameRecordWriter writer = null;
+	private IOException writeError = null;
+
+
+
+	/**
+	 *   Create a match between two players.
+	 *
+	 * @param first   The first player, whose point of view the results are given from
+	 * @param second  The second player
+	 */
+	public Tournament(Player first, Player second) {
+		this.first = first;
+		this.second = second;
+	}
+
+
+
+	/**
+	 *   Set the number of games to play.
+	 *
+	 * @param games
+	 * 		The number of games
+	 */
+	public void setGames(int games) {
+		this.games = games;
+	}
+
+
+
+	/**
+	 *   Set the number of games played at the same time.
+	 *
+	 * @param threads
+	 * 		The number of threads
+	 */
+	public void setThreads(int threads) {
+		this.threads = Math.max(1, threads);
+	}
+
+
+
+	/**
+	 *   Read an opening suite: one FEN position per line.  Empty lines and
+	 *   lines starting with "#" are skipped.
+	 *
+	 * @param fileName
+	 * 		The name of a text file
+	 *
+	 * @throws IOException
+	 * 		If the file cannot be read
+	 *
+	 * @throws IllegalArgumentException
+	 * 		If a line is not a valid FEN position
+	 */
+	public void loadOpenings(String fileName) throws IOException {
+		ArrayList<String> positions = new ArrayList<String>();
+		BufferedReader in = new BufferedReader(new FileReader(fileName));
+		try {
+			String line;
+			while ( (line = in.readLine()) != null ) {
+				line = line.trim();
+				if ( line.isEmpty() || line.startsWith("#") ) continue;
+
+				// Check the position now rather than in the middle of the match
+				new Board(line);
+				positions.add(line);
+			}
+		}
+		finally {
+			in.close();
+		}
+		openings = positions;
+	}
+
+
+
+	/**
+	 *   Give each player a clock.
+	 *
+	 * @param baseTime   Time for the whole game in milliseconds
+	 * @param increment  Time added after each move in milliseconds
+	 */
+	public void setTimeControl(long baseTime, long increment) {
+		this.baseTime = baseTime;
+		this.increment = increment;
+		this.moveTime = 0;
+	}
+
+
+
+	/**
+	 *   Give each player a fixed time per move instead of a clock.
+	 *
+	 * @param moveTime
+	 * 		Time per move in milliseconds
+	 */
+	public void setMoveTime(long moveTime) {
+		this.moveTime = moveTime;
+		this.baseTime = 0;
+		this.increment = 0;
+	}
+
+
+
+	/**
+	 *   Set the number of plies after which a game is drawn.
+	 *
+	 * @param maxPlies
+	 * 		The longest game in plies
+	 */
+	public void setMaxPlies(int maxPlies) {
+		this.maxPlies = maxPlies;
+	}
+
+
+
+	/**
+	 *   Add every finished game to a game record file.
+	 *
+	 * @param fileName
+	 * 		The name of a game record file, or "" for none
+	 */
+	public void setRecordFileName(String fileName) {
+		this.recordFileName = fileName;
+	}
+
+
+
+	/**
+	 *   Set a listener that is told about every finished game.
+	 *
+	 * @param listener
+	 * 		A listener, or "null" for none
+	 */
+	public void setListener(Listener listener) {
+		this.listener = listener;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the results of the match, where the SPRT bounds can be set
+	 */
+	public MatchStatistics getStatistics() {
+		return statistics;
+	}
+
+
+
+	/**
+	 *   Stop the match.  The games being played are finished first.
+	 *   This may be called from any thread.
+	 */
+	public void stop() {
+		bStopped = true;
+	}
+
+
+
+	/**
+	 *   Play the match and wait until it is over.
+	 *
+	 * @return
+	 * 		Return the results of the match
+	 *
+	 * @throws IOException
+	 * 		If a game cannot be saved
+	 */
+	public MatchStatistics run() throws IOException {
+		if ( ! recordFileName.isEmpty() ) writer = new GameRecordWriter(recordFileName);
+
+		try {
+			Thread[] workers = new Thread[Math.min(threads, games)];
+			for (int i=0; i < workers.length; i++) {
+				workers[i] = new Thread(new Runnable() {
+					@Override
+					public void run() {
+						int game;
+						while ( (! bStopped) && ((game = nextGame.getAndIncrement()) < games) ) {
+							GameRecord aGame = playGame(game);
+							if ( aGame != null ) finishGame(game, aGame);
+						}
+					}
+				}, "tournament-" + i);
+				workers[i].start();
+			}
+
+			for (Thread aWorker : workers) {
+				while ( aWorker.isAlive() ) {
+					try {
+						aWorker.join();
+					}
+					catch (InterruptedException e) {
+						// Let the games being played finish
+						stop();
+					}
+				}
+			}
+		}
+		finally {
+			if ( writer != null ) writer.close();
+		}
+
+		if ( writeError != null ) throw writeError;
+		return statistics;
+	}
+
+
+
+	/**
+	 *   Play one game.  In even games the first player has white.
+	 *
+	 * @return
+	 * 		Return the record of the game, or "null" if the match was
+	 * 		stopped before the game ended
+	 */
+	private GameRecord playGame(int game) {
+		boolean bFirstIsWhite = (game % 2 == 0);
+		Player white = bFirstIsWhite ? first : second;
+		Player black = bFirstIsWhite ? second : first;
+		Engine[] engines = { white.createEngine(), black.createEngine() };
+		int[] depths = { white.getDepth(), black.getDepth() };
+		long[] clocks = { baseTime, baseTime };
+
+		GameRecord aGame = new GameRecord();
+		aGame.setTag("White", white.getName());
+		aGame.setTag("Black", black.getName());
+		aGame.setTag("Round", Integer.toString(game + 1));
+
+		Board aBoard;
+		if ( openings.isEmpty() ) {
+			aBoard = new Board();
+		}
+		else {
+			String fen = openings.get((game / 2) % openings.size());
+			aGame.setStartFen(fen);
+			aBoard = new Board(fen);
+		}
+
+		HashMap<Long, Integer> repetitions = new HashMap<Long, Integer>();
+		repetitions.put(aBoard.getHashKey(), 1);
+		int quietPlies = 0;
+		String termination = null;
+
+		while ( termination == null ) {
+			if ( bStopped ) return null;
+
+			int side = aBoard.getSideToMove().equals(Piece.Colors.White) ? 0 : 1;
+			long startTime = System.nanoTime();
+			long timeLimit = Uci.getTimeLimit(clocks[side], increment, Uci.defaultMovesToGo, moveTime);
+			// Without a depth limit, a player without a clock searches to the default depth
+			int maxDepth = (depths[side] > 0) ? depths[side] : ((timeLimit > 0) ? Search.maxPly : Engine.defaultDepth);
+			Move aMove = engines[side].chooseMove(aBoard, maxDepth, timeLimit);
+
+			if ( baseTime > 0 ) {
+				clocks[side] -= (System.nanoTime() - startTime) / 1000000L;
+				if ( clocks[side] < 0 ) {
+					aGame.setResult((side == 0) ? GameRecord.Result.blackWin : GameRecord.Result.whiteWin);
+					termination = "time forfeit";
+					break;
+				}
+				clocks[side] += increment;
+			}
+
+			FileRank from = (aMove == null) ? null : aMove.getFromLoc();
+			boolean bPawnMove = (from != null) &&
+								aBoard.getPiece(from.getX(), from.getY()).getName().equals(Piece.PieceNames.pawn);
+			int pieceCount = aBoard.getPieceCount();
+
+			if ( (aMove == null) || (! aBoard.playMove(aMove)) ) {
+				aGame.setResult((side == 0) ? GameRecord.Result.blackWin : GameRecord.Result.whiteWin);
+				termination = "illegal move";
+				break;
+			}
+			aGame.addMove(aMove);
+
+			// A pawn move or a capture resets the fifty-move count
+			quietPlies = (bPawnMove || (aBoard.getPieceCount() < pieceCount)) ? 0 : quietPlies + 1;
+			Integer seen = repetitions.get(aBoard.getHashKey());
+			int count = (seen == null) ? 1 : seen + 1;
+			repetitions.put(aBoard.getHashKey(), count);
+
+			termination = getTermination(aBoard, count, quietPlies, aGame.getMoveCount());
+			if ( termination != null ) {
+				GameRecord.Result result = GameRecord.getResult(aBoard);
+				aGame.setResult((result == GameRecord.Result.unknown) ? GameRecord.Result.draw : result);
+			}
+		}
+
+		aGame.setTag("Termination", termination);
+		return aGame;
+	}
+
+
+
+	/**
+	 *   Find out whether a game is over after a move.
+	 *
+	 * @return
+	 * 		Return why the game is over, or "null" if it goes on
+	 */
+	private String getTermination(Board aBoard, int repetitions, int quietPlies, int plies) {
+		switch (aBoard.getGameState()) {
+			case checkMate:
+				return "checkmate";
+
+			case staleMate:
+				return "stalemate";
+
+			default:
+		}
+
+		if ( repetitions >= 3 ) return "threefold repetition";
+		if ( quietPlies >= 100 ) return "fifty-move rule";
+
+		switch (aBoard.getMaterialSignature()) {
+			case "KvK":
+			case "KBvK":
+			case "KvKB":
+			case "KNvK":
+			case "KvKN":
+				return "insufficient material";
+
+			default:
+		}
+
+		if ( plies >= maxPlies ) return "move limit";
+		return null;
+	}
+
+
+
+	/**
+	 *   Count a finished game and save it.
+	 */
+	private synchronized void finishGame(int game, GameRecord aGame) {
+		boolean bFirstIsWhite = (game % 2 == 0);
+
+		switch (aGame.getResult()) {
+			case whiteWin:
+				if ( bFirstIsWhite ) statistics.addWin(); else statistics.addLoss();
+				break;
+
+			case blackWin:
+				if ( bFirstIsWhite ) statistics.addLoss(); else statistics.addWin();
+				break;
+
+			default:
+				statistics.addDraw();
+		}
+
+		if ( writer != null ) {
+			try {
+				writer.write(aGame);
+				writer.flush();
+			}
+			catch (IOException e) {
+				writeError = e;
+				stop();
+			}
+		}
+
+		if ( listener != null ) listener.gameFinished(aGame, statistics);
+		if ( statistics.getSprtResult() != MatchStatistics.SprtResult.undecided ) stop();
+	}
+
+
+
+	/**
+	 *   Play a match between two players and print the results.
+	 *
+	 * @param args
+	 * 		Options followed by the two player descriptions
+	 *
+	 * @throws IOException
+	 * 		If a file cannot be read or written
+	 */
+	public static void main(String[] args) throws IOException {
+		ArrayList<String> players = new ArrayList<String>();
+		int games = 100;
+		int threads = Runtime.getRuntime().availableProcessors();
+		String openingsFileName = "";
+		String recordFileName = "";
+		String timeControl = "";
+		long moveTime = 0;
+		int maxPlies = defaultMaxPlies;
+		double[] sprt = null;
+
+		for (int i=0; i < args.length; i++) {
+			String anArg = args[i].trim();
+			boolean bHasValue = (i+1 < args.length);
+
+			if ( anArg.equals("-games") && bHasValue ) {
+				games = Integer.parseInt(args[++i].trim());
+			}
+			else if ( anArg.equals("-threads") && bHasValue ) {
+				threads = Integer.parseInt(args[++i].trim());
+			}
+			else if ( anArg.equals("-openings") && bHasValue ) {
+				openingsFileName = args[++i].trim();
+			}
+			else if ( anArg.equals("-record") && bHasValue ) {
+				recordFileName = args[++i].trim();
+			}
+			else if ( anArg.equals("-tc") && bHasValue ) {
+				timeControl = args[++i].trim();
+			}
+			else if ( anArg.equals("-movetime") && bHasValue ) {
+				moveTime = Long.parseLong(args[++i].trim());
+			}
+			else if ( anArg.equals("-maxplies") && bHasValue ) {
+				maxPlies = Integer.parseInt(args[++i].trim());
+			}
+			else if ( anArg.equals("-sprt") && (i+2 < args.length) ) {
+				sprt = new double[] { Double.parseDouble(args[++i].trim()), Double.parseDouble(args[++i].trim()) };
+			}
+			else {
+				players.add(anArg);
+			}
+		}
+
+		if ( players.size() != 2 ) {
+			System.out.println("Usage: java chess.Tournament [-games n] [-threads n] [-openings fenFile]");
+			System.out.println("           [-tc seconds+increment | -movetime ms] [-maxplies n]");
+			System.out.println("           [-sprt elo0 elo1] [-record recordFile] player1 player2");
+			System.out.println("A player is a name optionally followed by settings, e.g. new:depth=4,delta=off,book=book.bin");
+			return;
+		}
+
+		final Tournament tournament = new Tournament(Player.parse(players.get(0)), Player.parse(players.get(1)));
+		tournament.setGames(games);
+		tournament.setThreads(threads);
+		tournament.setMaxPlies(maxPlies);
+		tournament.setRecordFileName(recordFileName);
+		if ( ! openingsFileName.isEmpty() ) tournament.loadOpenings(openingsFileName);
+		if ( moveTime > 0 ) tournament.setMoveTime(moveTime);
+		if ( ! timeControl.isEmpty() ) {
+			String[] parts = timeControl.split("\\+");
+			double increment = (parts.length > 1) ? Double.parseDouble(parts[1]) : 0.0;
+			tournament.setTimeControl((long) (Double.parseDouble(parts[0]) * 1000), (long) (increment * 1000));
+		}
+		if ( sprt != null ) tournament.getStatistics().setSprt(sprt[0], sprt[1], 0.05, 0.05);
+
+		tournament.setListener(new Listener() {
+			@Override
+			public void gameFinished(GameRecord aGame, MatchStatistics statistics) {
+				System.out.println("Game " + aGame.getTag("Round") + ": " + aGame.getTag("White") + " - " +
+								   aGame.getTag("Black") + " " + aGame.getResult() + " (" +
+								   aGame.getTag("Termination") + ")");
+				System.out.println("  " + statistics);
+			}
+		});
+
+		System.out.println(tournament.run());
+	}
+
+}
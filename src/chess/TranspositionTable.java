@@ -0,0 +1,267 @@
+package chess;
+
+
+/**
+ *   A fixed-size cache of search results, indexed by the hash key of a
+ *   position (see {@link Board#getHashKey()}).  The same position is
+ *   often reached through different move orders, and is searched again
+ *   at every iteration of an iterative deepening search.  The table
+ *   remembers for each position the best move found, its score, how
+ *   deep it was searched and whether the score is exact or only a bound.
+ *
+ *   <p>A stored best move is tried first when the position is searched
+ *   again, and a score searched deep enough can end the search of the
+ *   position at once.  When two positions map to the same slot, the new
+ *   entry replaces the old one unless the old one is for the same
+ *   position and was searched deeper.
+ *
+ *   <p>Mate scores are stored as the distance to mate from the position
+ *   itself, and are turned back into the distance from the root when they
+ *   are read.
+ *
+ *   <p>A table can be shared by several searches (for example the lines
+ *   of a multi-PV search), but not between threads.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class TranspositionTable {
+
+	/**
+	 *  What a stored score says about the real score of a position
+	 */
+	public static enum Bound {
+		/**
+		 *  The score is exact
+		 */
+		exact,
+
+		/**
+		 *  The real score is at least this high (the search failed high)
+		 */
+		lowerBound,
+
+		/**
+		 *  The real score is at most this high (the search failed low)
+		 */
+		upperBound };
+
+
+	/**
+	 *  Default number of entries in the table (4 MB).  Must be a power of two.
+	 */
+	public static final int defaultSize = 1 << 18;
+
+	/**
+	 *  Size of one entry in bytes
+	 */
+	public static final int entrySize = 16;
+
+	private static final Bound[] bounds = Bound.values();
+
+	/**
+	 *  Bits 0-15: move code, bits 16-47: score, bits 48-55: depth,
+	 *  bits 56-57: bound, bit 58: set in every used entry
+	 */
+	private final long[] keys;
+	private final long[] data;
+	private final int mask;
+
+	private long hits = 0;
+	private long misses = 0;
+
+
+
+	/**
+	 *   Default constructor.  Create a table with the default number
+	 *   of entries.
+	 */
+	public TranspositionTable() {
+		this(defaultSize);
+	}
+
+
+
+	/**
+	 *   Create a transposition table with a given number of entries.
+	 *
+	 * @param size
+	 * 		Number of entries.  This is rounded up to the next power of two.
+	 */
+	public TranspositionTable(int size) {
+		int entries = 1;
+		while ( entries < size ) entries <<= 1;
+
+		this.keys = new long[entries];
+		this.data = new long[entries];
+		this.mask = entries - 1;
+	}
+
+
+
+	/**
+	 *   Look up a position.
+	 *
+	 * @param key
+	 * 		The hash key of a position
+	 *
+	 * @return
+	 * 		Return "true" if the position is in the table.  Its entry can
+	 * 		then be read with the other getters.
+	 */
+	public boolean probe(long key) {
+		int index = (int) key & mask;
+		if ( (data[index] != 0) && (keys[index] == key) ) {
+			hits++;
+			return true;
+		}
+		misses++;
+		return false;
+	}
+
+
+
+	/**
+	 * @param key
+	 * 		The hash key of a position found by {@link #probe(long)}
+	 *
+	 * @return
+	 * 		Return the code of the best move (see {@link Move#toCode()}),
+	 * 		or 0 if no best move is known
+	 */
+	public int getMoveCode(long key) {
+		return (int) data[(int) key & mask] & 0xFFFF;
+	}
+
+
+
+	/**
+	 * @param key
+	 * 		The hash key of a position found by {@link #probe(long)}
+	 *
+	 * @param ply
+	 * 		Distance of the position from the root of the search
+	 *
+	 * @return
+	 * 		Return the stored score, with a mate score counted from the root
+	 */
+	public int getScore(long key, int ply) {
+		int score = (int) (data[(int) key & mask] >>> 16);
+		if ( score >= Search.mateScore - Search.maxPly ) return score - ply;
+		if ( score <= -Search.mateScore + Search.maxPly ) return score + ply;
+		return score;
+	}
+
+
+
+	/**
+	 * @param key
+	 * 		The hash key of a position found by {@link #probe(long)}
+	 *
+	 * @return
+	 * 		Return how deep the position was searched, in plies
+	 */
+	public int getDepth(long key) {
+		return (int) (data[(int) key & mask] >>> 48) & 0xFF;
+	}
+
+
+
+	/**
+	 * @param key
+	 * 		The hash key of a position found by {@link #probe(long)}
+	 *
+	 * @return
+	 * 		Return what the stored score says about the real score
+	 */
+	public Bound getBound(long key) {
+		return bounds[(int) (data[(int) key & mask] >>> 56) & 3];
+	}
+
+
+
+	/**
+	 *   Store the result of searching a position.
+	 *
+	 * @param key       The hash key of the position
+	 * @param moveCode  The code of the best move, or 0 if none is known
+	 * @param score     The score, from the point of view of the side to move
+	 * @param depth     How deep the position was searched, in plies
+	 * @param bound     What the score says about the real score
+	 * @param ply       Distance of the position from the root of the search
+	 */
+	public void store(long key, int moveCode, int score, int depth, Bound bound, int ply) {
+		int index = (int) key & mask;
+		if ( (keys[index] == key) && (data[index] != 0) ) {
+			// Keep a deeper result for the same position
+			if ( depth < getDepth(key) ) return;
+
+			// Keep the best move if the new result has none
+			if ( moveCode == 0 ) moveCode = getMoveCode(key);
+		}
+
+		if ( score >= Search.mateScore - Search.maxPly ) score += ply;
+		else if ( score <= -Search.mateScore + Search.maxPly ) score -= ply;
+
+		keys[index] = key;
+		data[index] = (moveCode & 0xFFFFL) | ((score & 0xFFFFFFFFL) << 16) |
+					  ((long) Math.min(depth, 255) << 48) | ((long) bound.ordinal() << 56) |
+					  (1L << 58);
+	}
+
+
+
+	/**
+	 *   Remove all entries and reset the hit and miss counters.
+	 */
+	public void clear() {
+		for (int i=0; i < data.length; i++) data[i] = 0;
+		hits = 0;
+		misses = 0;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of entries in this table
+	 */
+	public int getSize() {
+		return keys.length;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of lookups that found the position
+	 */
+	public long getHits() {
+		return hits;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the number of lookups that did not find the position
+	 */
+	public long getMisses() {
+		return misses;
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the fraction of lookups (from 0.0 to 1.0) that
+	 * 		found the position
+	 */
+	public double getHitRate() {
+		long probes = hits + misses;
+		if ( probes == 0 ) return 0.0;
+		return (double) hits / probes;
+	}
+
+}
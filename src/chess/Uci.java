@@ -0,0 +1,447 @@
+package chess;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+
+
+/**
+ *   A front end for the Universal Chess Interface (UCI) protocol, so the
+ *   computer player can be used from chess GUIs and test tools.
+ *
+ *   <p>The commands understood are:
+ *   <pre>
+ *      uci
+ *      isready
+ *      setoption name MultiPV value n
+ *      setoption name Hash value megabytes
+ *      ucinewgame
+ *      position startpos [moves e2e4 e7e5 ...]
+ *      position fen &lt;fen&gt; [moves ...]
+ *      go [wtime n] [btime n] [winc n] [binc n] [movestogo n]
+ *         [movetime n] [depth n] [infinite] [ponder]
+ *      stop
+ *      quit
+ *   </pre>
+ *
+ *   <p>The search runs on its own thread, so "stop" and "isready" are
+ *   answered while the computer is thinking.  After every completed
+ *   iteration an "info" line with the depth, score, nodes, speed, time
+ *   and principal variation is written, and "bestmove" is written when
+ *   the search ends.  After "go infinite" (or "go ponder") the search has
+ *   no time limit, and "bestmove" is only written after "stop", even if
+ *   the search ends before.  A number that cannot be read is answered
+ *   with "info string" and the parameter is ignored.
+ *
+ *   <p>With "MultiPV" set above 1, the best few moves are searched (see
+ *   {@link Search#searchMultiPv(Board, int, int, long)}) and each
+ *   iteration writes one "info multipv n" line per move.  The opening
+ *   book is not used then.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Uci {
+
+	/**
+	 *  Number of moves the remaining time is divided into when the
+	 *  GUI does not say how many moves are left until the next time control
+	 */
+	static final int defaultMovesToGo = 30;
+
+	/**
+	 *  Time in milliseconds kept back for sending the move to the GUI
+	 */
+	private static final long moveOverhead = 20;
+
+	/**
+	 *  Largest number of lines of a multi-PV search
+	 */
+	private static final int maxMultiPv = 256;
+
+	/**
+	 *  Largest transposition table, in megabytes
+	 */
+	private static final int maxHash = 1024;
+
+	private final Engine engine;
+	private Board board = new Board();
+	private Thread searchThread = null;
+	private CountDownLatch stopSignal = null;
+	private PrintStream out = System.out;
+	private int multiPv = 1;
+
+
+
+	/**
+	 *   Create a UCI front end for a computer player.
+	 *
+	 * @param engine
+	 * 		The computer player that chooses the moves
+	 */
+	public Uci(Engine engine) {
+		this.engine = engine;
+	}
+
+
+
+	/**
+	 *   Read and execute UCI commands until "quit" is received or
+	 *   the input ends.
+	 *
+	 * @param in
+	 * 		Commands from the GUI
+	 *
+	 * @param out
+	 * 		Replies to the GUI
+	 *
+	 * @throws IOException
+	 * 		If the commands cannot be read
+	 */
+	public void run(InputStream in, PrintStream out) throws IOException {
+		this.out = out;
+		BufferedReader reader = new BufferedReader(new InputStreamReader(in));
+
+		engine.getSearch().setListener(new Search.Listener() {
+			@Override
+			public void iterationFinished(SearchResult result, SearchStatistics statistics) {
+				sendInfo(result, statistics);
+			}
+		});
+
+		String line;
+		while ( (line = reader.readLine()) != null ) {
+			if ( ! execute(line.trim()) ) break;
+		}
+
+		stopSearch();
+	}
+
+
+
+	/**
+	 *   Execute one UCI command.
+	 *
+	 * @param command
+	 * 		A line sent by the GUI
+	 *
+	 * @return
+	 * 		Return "false" if the command was "quit"
+	 */
+	public boolean execute(String command) {
+		String[] tokens = command.split("\\s+");
+
+		switch (tokens[0]) {
+			case "uci":
+				send("id name chess51");
+				send("id author Toni Au, Sean Wu");
+				send("option name MultiPV type spin default 1 min 1 max " + maxMultiPv);
+				send("option name Hash type spin default " +
+					 (TranspositionTable.defaultSize * TranspositionTable.entrySize >> 20) + " min 1 max " + maxHash);
+				send("uciok");
+				break;
+
+			case "isready":
+				send("readyok");
+				break;
+
+			case "setoption":
+				stopSearch();
+				setOption(tokens);
+				break;
+
+			case "ucinewgame":
+				stopSearch();
+				board = new Board();
+				if ( engine.getSearch().getTranspositionTable() != null ) {
+					engine.getSearch().getTranspositionTable().clear();
+				}
+				if ( engine.getSearch().getMoveOrdering() != null ) {
+					engine.getSearch().getMoveOrdering().clear();
+				}
+				break;
+
+			case "position":
+				stopSearch();
+				setPosition(tokens);
+				break;
+
+			case "go":
+				stopSearch();
+				startSearch(tokens);
+				break;
+
+			case "stop":
+				stopSearch();
+				break;
+
+			case "quit":
+				return false;
+
+			default:
+				// Unknown commands are ignored, as the protocol requires
+		}
+		return true;
+	}
+
+
+
+	/**
+	 *   Handle "setoption name &lt;name&gt; value &lt;value&gt;".  Unknown
+	 *   options and wrong values are ignored.
+	 */
+	private void setOption(String[] tokens) {
+		if ( (tokens.length < 5) || (! tokens[1].equals("name")) || (! tokens[3].equals("value")) ) return;
+
+		try {
+			int value = Integer.parseInt(tokens[4]);
+			if ( tokens[2].equalsIgnoreCase("MultiPV") ) {
+				multiPv = Math.max(1, Math.min(maxMultiPv, value));
+			}
+			else if ( tokens[2].equalsIgnoreCase("Hash") ) {
+				int megabytes = Math.max(1, Math.min(maxHash, value));
+				engine.getSearch().setTranspositionTable(
+						new TranspositionTable((megabytes << 20) / TranspositionTable.entrySize));
+			}
+		}
+		catch (NumberFormatException e) {
+			send("info string Invalid value " + tokens[4]);
+		}
+	}
+
+
+
+	/**
+	 *   Handle "position startpos|fen ... [moves ...]".  Moves are played
+	 *   until the first one that is not legal.
+	 */
+	private void setPosition(String[] tokens) {
+		int i = 1;
+		Board aBoard;
+
+		if ( (tokens.length > 1) && tokens[1].equals("fen") ) {
+			StringBuilder fen = new StringBuilder();
+			for (i = 2; (i < tokens.length) && (! tokens[i].equals("moves")); i++) {
+				fen.append(tokens[i]).append(' ');
+			}
+
+			try {
+				aBoard = new Board(fen.toString());
+			}
+			catch (IllegalArgumentException e) {
+				send("info string " + e.getMessage());
+				return;
+			}
+		}
+		else {
+			aBoard = new Board();
+			i = 2;
+		}
+
+		if ( (i < tokens.length) && tokens[i].equals("moves") ) {
+			for (i++; i < tokens.length; i++) {
+				Move aMove = Move.fromUci(tokens[i]);
+				Board next = new Board(aBoard);
+				if ( (aMove == null) || (! next.makeMove(aMove)) ) {
+					send("info string Illegal move " + tokens[i]);
+					break;
+				}
+				aBoard = next;
+			}
+		}
+
+		board = aBoard;
+	}
+
+
+
+	/**
+	 *   Handle "go ...".  The time for this move is the remaining time
+	 *   divided by the number of moves to go, plus half the increment.
+	 */
+	private void startSearch(String[] tokens) {
+		boolean bWhite = board.getSideToMove().equals(Piece.Colors.White);
+		long time = 0, increment = 0, moveTime = 0;
+		int movesToGo = defaultMovesToGo;
+		int depth = Search.maxPly;
+		boolean bInfinite = false;
+
+		for (int i=1; i < tokens.length; i++) {
+			if ( tokens[i].equals("infinite") || tokens[i].equals("ponder") ) {
+				bInfinite = true;
+				continue;
+			}
+			if ( i+1 >= tokens.length ) break;
+
+			String value = tokens[i+1];
+			try {
+				switch (tokens[i]) {
+					case "wtime":
+						if ( bWhite ) time = Long.parseLong(value);
+						break;
+
+					case "btime":
+						if ( ! bWhite ) time = Long.parseLong(value);
+						break;
+
+					case "winc":
+						if ( bWhite ) increment = Long.parseLong(value);
+						break;
+
+					case "binc":
+						if ( ! bWhite ) increment = Long.parseLong(value);
+						break;
+
+					case "movestogo":
+						movesToGo = Math.max(1, Integer.parseInt(value));
+						break;
+
+					case "movetime":
+						moveTime = Long.parseLong(value);
+						break;
+
+					case "depth":
+						// A search needs at least one ply to find a move
+						depth = Math.max(1, Integer.parseInt(value));
+						break;
+
+					default:
+						continue;
+				}
+			}
+			catch (NumberFormatException e) {
+				send("info string Invalid value " + value + " of " + tokens[i]);
+			}
+			i++;
+		}
+
+		final Board searchBoard = board;
+		final int maxDepth = depth;
+		final long searchTimeLimit = bInfinite ? 0 : getTimeLimit(time, increment, movesToGo, moveTime);
+		final int lines = multiPv;
+
+		// An infinite search keeps its move until it is told to stop
+		final CountDownLatch holdMove = bInfinite ? new CountDownLatch(1) : null;
+		stopSignal = holdMove;
+
+		searchThread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				Move bestMove = null;
+				if ( lines > 1 ) {
+					ArrayList<SearchResult> results = engine.getSearch().searchMultiPv(searchBoard, lines, maxDepth, searchTimeLimit);
+					if ( (results != null) && (! results.isEmpty()) ) bestMove = results.get(0).getBestMove();
+				}
+				else {
+					bestMove = engine.chooseMove(searchBoard, maxDepth, searchTimeLimit);
+				}
+
+				if ( holdMove != null ) {
+					try {
+						holdMove.await();
+					}
+					catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+					}
+				}
+				send("bestmove " + ((bestMove == null) ? "0000" : bestMove.toUci()));
+			}
+		}, "uci-search");
+		searchThread.start();
+	}
+
+
+
+	/**
+	 *   Get the time to spend on one move: the fixed time per move if one
+	 *   is given, or else the time left on the clock divided by the number
+	 *   of moves to go, plus half the increment.
+	 *
+	 * @param time       Time left on the clock in milliseconds, or 0 for none
+	 * @param increment  Time added after each move in milliseconds
+	 * @param movesToGo  Number of moves until the next time control
+	 * @param moveTime   Fixed time per move in milliseconds, or 0 for none
+	 *
+	 * @return
+	 * 		Return the time limit in milliseconds, or 0 for no time limit
+	 */
+	static long getTimeLimit(long time, long increment, int movesToGo, long moveTime) {
+		if ( moveTime > 0 ) return Math.max(1, moveTime - moveOverhead);
+		if ( time <= 0 ) return 0;
+
+		// Never spend more than half of the time that is left
+		long timeLimit = Math.min(time / movesToGo + increment / 2, time / 2);
+		return Math.max(1, timeLimit - moveOverhead);
+	}
+
+
+
+	/**
+	 *   Stop the running search (if any) and wait until its best move
+	 *   has been sent.
+	 */
+	private void stopSearch() {
+		if ( searchThread == null ) return;
+
+		// Let an infinite search send its move
+		if ( stopSignal != null ) stopSignal.countDown();
+		stopSignal = null;
+
+		//
+		// Keep asking until the thread ends, in case the search had not
+		// started yet (and cleared the stop flag) when it was first asked.
+		//
+		try {
+			while ( searchThread.isAlive() ) {
+				engine.getSearch().stop();
+				searchThread.join(1);
+			}
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		searchThread = null;
+	}
+
+
+
+	/**
+	 *   Send an "info" line for a completed search iteration.
+	 */
+	private void sendInfo(SearchResult result, SearchStatistics statistics) {
+		StringBuilder info = new StringBuilder("info");
+		if ( multiPv > 1 ) info.append(" multipv ").append(result.getLine());
+		info.append(" depth ").append(result.getDepth());
+
+		int score = result.getScore();
+		if ( result.isMateScore() ) {
+			// Convert plies to checkmate into moves
+			int plies = Search.mateScore - Math.abs(score);
+			int moves = (plies + 1) / 2;
+			info.append(" score mate ").append((score > 0) ? moves : -moves);
+		}
+		else {
+			info.append(" score cp ").append(score);
+		}
+
+		info.append(" nodes ").append(statistics.getTotalNodes());
+		info.append(" nps ").append(statistics.getNodesPerSecond());
+		info.append(" time ").append(statistics.getElapsedMillis());
+		if ( result.getBestMove() != null ) info.append(" pv ").append(result.getPrincipalVariationUci());
+
+		send(info.toString());
+	}
+
+
+
+	private synchronized void send(String message) {
+		out.println(message);
+		out.flush();
+	}
+
+}
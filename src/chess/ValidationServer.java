@@ -0,0 +1,450 @@
+package chess;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+
+/**
+ *   A non-blocking server that checks moves for clients.
+ *
+ *   <p>Every request is one line of text: a position in FEN followed by a
+ *   move in UCI notation, for example
+ *   <pre>
+ *      rnbqkbnr/pppppppp/8/8/8/8/PPPPPPPP/RNBQKBNR w KQkq - 0 1 e2e4
+ *   </pre>
+ *   and every answer is one line:
+ *   <pre>
+ *      legal ok|check|checkmate|stalemate &lt;FEN after the move&gt;
+ *      illegal
+ *      error &lt;reason&gt;
+ *   </pre>
+ *
+ *   <p>The server keeps no game state between requests.  It may keep a
+ *   {@link MoveCache} of the moves it has already checked, so that a
+ *   popular position and move is played out only once.  A client may send
+ *   many requests without waiting (pipelining); the answers come back in
+ *   the same order.  All the complete lines received in one read are
+ *   checked before the answers are written back together.
+ *
+ *   <p>Connections are served by a few threads, each with its own
+ *   selector.  Each connection owns one direct ByteBuffer for input and
+ *   one for output, which are reused for its whole life.  When a client
+ *   does not read its answers, the server stops reading its requests
+ *   until the output buffer has room again.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class ValidationServer implements Runnable {
+
+	/**
+	 *  Default TCP port of the server
+	 */
+	public static final int defaultPort = 5151;
+
+	/**
+	 *  Longest request line accepted, in bytes
+	 */
+	private static final int maxLineLength = 256;
+
+	/**
+	 *  Room kept in the output buffer for the answer to one request
+	 */
+	private static final int maxAnswerLength = 256;
+
+	private static final int inputBufferSize = 16 * 1024;
+	private static final int outputBufferSize = 64 * 1024;
+
+
+	/**
+	 *  The state of one client connection
+	 */
+	private static class Connection {
+		final SocketChannel channel;
+		final ByteBuffer in = ByteBuffer.allocateDirect(inputBufferSize);
+		final ByteBuffer out = ByteBuffer.allocateDirect(outputBufferSize);
+		final StringBuilder line = new StringBuilder(maxLineLength);
+		boolean bLineTooLong = false;
+
+		Connection(SocketChannel channel) {
+			this.channel = channel;
+		}
+	}
+
+
+	/**
+	 *  A thread that serves a share of the connections with its own selector
+	 */
+	private class Worker implements Runnable {
+		final Selector selector;
+		final ConcurrentLinkedQueue<SocketChannel> newChannels = new ConcurrentLinkedQueue<SocketChannel>();
+
+		Worker() throws IOException {
+			this.selector = Selector.open();
+		}
+
+		void add(SocketChannel channel) {
+			newChannels.add(channel);
+			selector.wakeup();
+		}
+
+		@Override
+		public void run() {
+			try {
+				while ( ! bStopped ) {
+					selector.select();
+
+					SocketChannel channel;
+					while ( (channel = newChannels.poll()) != null ) {
+						channel.configureBlocking(false);
+						channel.register(selector, SelectionKey.OP_READ, new Connection(channel));
+					}
+
+					Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+					while ( keys.hasNext() ) {
+						SelectionKey key = keys.next();
+						keys.remove();
+						serve(key);
+					}
+				}
+			}
+			catch (IOException e) {
+				System.out.println("Validation server stopped: " + e.getMessage());
+			}
+			finally {
+				closeAll(selector);
+			}
+		}
+	}
+
+
+	private final int port;
+	private final Worker[] workers;
+	private ServerSocketChannel serverChannel = null;
+	private Selector acceptSelector = null;
+	private final MoveCache cache;
+	private volatile boolean bStopped = false;
+
+
+
+	/**
+	 *   Create a server with one worker thread per processor.
+	 *
+	 * @param port
+	 * 		The TCP port to listen on, or 0 for any free port
+	 *
+	 * @throws IOException
+	 * 		If the selectors cannot be opened
+	 */
+	public ValidationServer(int port) throws IOException {
+		this(port, Runtime.getRuntime().availableProcessors());
+	}
+
+
+
+	/**
+	 *   Create a server.
+	 *
+	 * @param port
+	 * 		The TCP port to listen on, or 0 for any free port
+	 *
+	 * @param threads
+	 * 		Number of worker threads serving the connections
+	 *
+	 * @throws IOException
+	 * 		If the selectors cannot be opened
+	 */
+	public ValidationServer(int port, int threads) throws IOException {
+		this(port, threads, null);
+	}
+
+
+
+	/**
+	 *   Create a server that remembers the moves it has checked.
+	 *
+	 * @param port
+	 * 		The TCP port to listen on, or 0 for any free port
+	 *
+	 * @param threads
+	 * 		Number of worker threads serving the connections
+	 *
+	 * @param cache
+	 * 		A cache of checked moves shared by the worker threads, or "null"
+	 *
+	 * @throws IOException
+	 * 		If the selectors cannot be opened
+	 */
+	public ValidationServer(int port, int threads, MoveCache cache) throws IOException {
+		this.port = port;
+		this.cache = cache;
+		this.workers = new Worker[Math.max(1, threads)];
+		for (int i=0; i < workers.length; i++) workers[i] = new Worker();
+	}
+
+
+
+	/**
+	 * @return
+	 * 		Return the cache of checked moves, or "null" if there is none
+	 */
+	public MoveCache getCache() {
+		return cache;
+	}
+
+
+
+	/**
+	 *   Open the listening socket and start the worker threads.  Call
+	 *   {@link #run()} afterwards to accept connections.
+	 *
+	 * @return
+	 * 		Return the TCP port the server listens on
+	 *
+	 * @throws IOException
+	 * 		If the port cannot be opened
+	 */
+	public int start() throws IOException {
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.bind(new InetSocketAddress(port));
+		serverChannel.configureBlocking(false);
+
+		acceptSelector = Selector.open();
+		serverChannel.register(acceptSelector, SelectionKey.OP_ACCEPT);
+
+		for (int i=0; i < workers.length; i++) {
+			Thread aThread = new Thread(workers[i], "validation-" + i);
+			aThread.setDaemon(true);
+			aThread.start();
+		}
+		return serverChannel.socket().getLocalPort();
+	}
+
+
+
+	/**
+	 *   Accept connections until {@link #stop()} is called.  New
+	 *   connections are handed to the worker threads in turn.
+	 */
+	@Override
+	public void run() {
+		int next = 0;
+		try {
+			while ( ! bStopped ) {
+				acceptSelector.select();
+				acceptSelector.selectedKeys().clear();
+
+				SocketChannel channel;
+				while ( (channel = serverChannel.accept()) != null ) {
+					channel.socket().setTcpNoDelay(true);
+					workers[next].add(channel);
+					next = (next + 1) % workers.length;
+				}
+			}
+		}
+		catch (IOException e) {
+			System.out.println("Validation server stopped: " + e.getMessage());
+		}
+		finally {
+			closeAll(acceptSelector);
+		}
+	}
+
+
+
+	/**
+	 *   Stop accepting connections and close all the connections.
+	 */
+	public void stop() {
+		bStopped = true;
+		if ( acceptSelector != null ) acceptSelector.wakeup();
+		for (Worker aWorker : workers) aWorker.selector.wakeup();
+	}
+
+
+
+	/**
+	 *   Read requests from, or write answers to, a connection that is ready.
+	 */
+	private void serve(SelectionKey key) {
+		Connection aConnection = (Connection) key.attachment();
+		try {
+			if ( key.isReadable() ) {
+				if ( aConnection.channel.read(aConnection.in) < 0 ) {
+					close(key);
+					return;
+				}
+			}
+
+			handleRequests(aConnection);
+			flush(key, aConnection);
+		}
+		catch (IOException e) {
+			close(key);
+		}
+	}
+
+
+
+	/**
+	 *   Answer every complete request line in the input buffer, as long
+	 *   as the output buffer has room for the answers.
+	 */
+	private void handleRequests(Connection aConnection) {
+		ByteBuffer in = aConnection.in;
+		ByteBuffer out = aConnection.out;
+		StringBuilder line = aConnection.line;
+
+		in.flip();
+		while ( in.hasRemaining() && (out.remaining() >= maxAnswerLength) ) {
+			char c = (char) (in.get() & 0xFF);
+
+			if ( c == '\n' ) {
+				String answer = aConnection.bLineTooLong ? "error request too long" : validate(line.toString(), cache);
+				for (int i=0; i < answer.length(); i++) out.put((byte) answer.charAt(i));
+				out.put((byte) '\n');
+
+				line.setLength(0);
+				aConnection.bLineTooLong = false;
+			}
+			else if ( c != '\r' ) {
+				if ( line.length() < maxLineLength ) {
+					line.append(c);
+				}
+				else {
+					aConnection.bLineTooLong = true;
+				}
+			}
+		}
+		in.compact();
+	}
+
+
+
+	/**
+	 *   Write as many answers as the client will take.  Reading stops
+	 *   while answers are waiting to be written.
+	 */
+	private static void flush(SelectionKey key, Connection aConnection) throws IOException {
+		ByteBuffer out = aConnection.out;
+
+		out.flip();
+		aConnection.channel.write(out);
+		out.compact();
+
+		if ( out.position() > 0 ) {
+			key.interestOps(SelectionKey.OP_WRITE);
+		}
+		else {
+			key.interestOps(SelectionKey.OP_READ);
+		}
+	}
+
+
+
+	/**
+	 *   Check one request line and make its answer.
+	 *
+	 * @param request
+	 * 		A position in FEN followed by a move in UCI notation
+	 *
+	 * @return
+	 * 		Return the answer line (without the line break)
+	 */
+	public static String validate(String request) {
+		return validate(request, null);
+	}
+
+
+
+	/**
+	 *   Check one request line and make its answer, using a cache of
+	 *   checked moves.
+	 *
+	 * @param request
+	 * 		A position in FEN followed by a move in UCI notation
+	 *
+	 * @param cache
+	 * 		A cache of checked moves, or "null"
+	 *
+	 * @return
+	 * 		Return the answer line (without the line break)
+	 */
+	public static String validate(String request, MoveCache cache) {
+		String text = request.trim();
+		int lastSpace = text.lastIndexOf(' ');
+		if ( lastSpace < 0 ) return "error expected a position and a move";
+
+		Move aMove = Move.fromUci(text.substring(lastSpace + 1));
+		if ( aMove == null ) return "error invalid move " + text.substring(lastSpace + 1);
+
+		Board aBoard;
+		try {
+			aBoard = new Board(text.substring(0, lastSpace));
+		}
+		catch (IllegalArgumentException e) {
+			return "error invalid position";
+		}
+
+		MoveCache.Result aResult = (cache == null) ? MoveCache.play(aBoard, aMove) : cache.validate(aBoard, aMove);
+
+		if ( ! aResult.isLegal() ) return "illegal";
+		return "legal " + aResult.getStatus() + " " + aResult.getFen();
+	}
+
+
+
+	private static void close(SelectionKey key) {
+		key.cancel();
+		try {
+			key.channel().close();
+		}
+		catch (IOException e) {
+			// Already closed
+		}
+	}
+
+
+
+	private static void closeAll(Selector selector) {
+		for (SelectionKey key : selector.keys()) close(key);
+		try {
+			selector.close();
+		}
+		catch (IOException e) {
+			// Already closed
+		}
+	}
+
+
+
+	/**
+	 *   Run a validation server.
+	 *
+	 * @param args
+	 * 		An optional TCP port number, an optional number of worker
+	 * 		threads and an optional size of the move cache (0 for none)
+	 *
+	 * @throws IOException
+	 * 		If the server cannot be started
+	 */
+	public static void main(String[] args) throws IOException {
+		int port = (args.length > 0) ? Integer.parseInt(args[0]) : defaultPort;
+		int threads = (args.length > 1) ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+
+		int cacheSize = (args.length > 2) ? Integer.parseInt(args[2]) : MoveCache.defaultSize;
+
+		ValidationServer server = new ValidationServer(port, threads, (cacheSize > 0) ? new MoveCache(cacheSize) : null);
+		System.out.println("Validation server listening on port " + server.start());
+		server.run();
+	}
+
+}
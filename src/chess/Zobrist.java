@@ -0,0 +1,176 @@
+package chess;
+
+import java.util.Random;
+
+
+/**
+ *   A table of random numbers used to compute Zobrist hash keys for
+ *   the game board.  A hash key is the exclusive-or (XOR) of one random
+ *   number for every piece on the board.  Because XOR is its own inverse,
+ *   a key can be updated incrementally whenever a piece is placed on or
+ *   removed from a square, without rescanning the whole board.
+ *
+ *   <p>The random numbers are generated from a fixed seed so that the
+ *   same position always produces the same key from one run to the next.
+ *
+ * @author Toni Au, Sean Wu
+ * @version 1.0
+ *
+ */
+public class Zobrist {
+
+	/**
+	 *  Seed of the random number generator.  Never change this value,
+	 *  otherwise any hash keys saved previously will no longer match.
+	 */
+	private static final long seed = 0x5EED0C4E55L;
+
+
+	/**
+	 *  Random keys for a pawn of each color on each square.  The
+	 *  index is [color][x + 8*y].
+	 */
+	private static final long[][] pawnKeys = new long[2][64];
+
+	/**
+	 *  Random keys for every other piece of each color on each square.
+	 *  The index is [color][piece name][x + 8*y].  Pawns use pawnKeys.
+	 */
+	private static final long[][][] pieceKeys = new long[2][Piece.PieceNames.values().length][64];
+
+	/**
+	 *  Random keys for the castling rights: white short, white long,
+	 *  black short, black long
+	 */
+	private static final long[] castlingKeys = new long[4];
+
+	/**
+	 *  Random keys for the file of a possible En Passant capture
+	 */
+	private static final long[] enPassantKeys = new long[8];
+
+	/**
+	 *  Random key added when black is due to move
+	 */
+	private static final long blackToMoveKey;
+
+
+	static {
+		Random random = new Random(seed);
+		for (int color=0; color < 2; color++) {
+			for (int square=0; square < 64; square++) {
+				pawnKeys[color][square] = random.nextLong();
+			}
+		}
+
+		// Generated after the pawn keys, so the pawn keys never change
+		for (int color=0; color < 2; color++) {
+			for (Piece.PieceNames name : Piece.PieceNames.values()) {
+				for (int square=0; square < 64; square++) {
+					if ( name.equals(Piece.PieceNames.pawn) ) {
+						pieceKeys[color][name.ordinal()][square] = pawnKeys[color][square];
+					}
+					else if ( ! name.equals(Piece.PieceNames.emptySpace) ) {
+						pieceKeys[color][name.ordinal()][square] = random.nextLong();
+					}
+				}
+			}
+		}
+		for (int i=0; i < castlingKeys.length; i++) castlingKeys[i] = random.nextLong();
+		for (int i=0; i < enPassantKeys.length; i++) enPassantKeys[i] = random.nextLong();
+		blackToMoveKey = random.nextLong();
+	}
+
+
+	/**
+	 *   Get the random key of a pawn of a given color on a given square.
+	 *
+	 * @param c
+	 * 		The color of the pawn
+	 *
+	 * @param x
+	 * 		The x-coordinate (i.e. File) of the square
+	 *
+	 * @param y
+	 * 		The y-coordinate (i.e. Rank) of the square
+	 *
+	 * @return
+	 * 		Return the random key of this pawn on this square
+	 */
+	public static long pawnKey(Piece.Colors c, int x, int y) {
+		return pawnKeys[c.ordinal()][x + 8*y];
+	}
+
+
+	/**
+	 *   Get the random key of a pawn at its current location.
+	 *
+	 * @param aPawn
+	 * 		A pawn on the game board
+	 *
+	 * @return
+	 * 		Return the random key of this pawn.  If this piece is not
+	 * 		a pawn, zero is returned so it does not change a pawn key.
+	 */
+	public static long pawnKey(Piece aPawn) {
+		if ( ! aPawn.getName().equals(Piece.PieceNames.pawn) ) return 0L;
+		return pawnKey(aPawn.getColor(), aPawn.getX(), aPawn.getY());
+	}
+
+
+
+	/**
+	 *   Get the random key of a piece at its current location.
+	 *
+	 * @param aPiece
+	 * 		A piece on the game board
+	 *
+	 * @return
+	 * 		Return the random key of this piece.  An empty square has
+	 * 		the key zero.
+	 */
+	public static long pieceKey(Piece aPiece) {
+		if ( aPiece.isEmptySpace() ) return 0L;
+		return pieceKeys[aPiece.getColor().ordinal()][aPiece.getName().ordinal()][aPiece.getX() + 8*aPiece.getY()];
+	}
+
+
+	/**
+	 *   Get the random key of a castling right.
+	 *
+	 * @param c
+	 * 		The color of the side that may castle
+	 *
+	 * @param bShortCastle
+	 * 		"true" for short (king side) castling
+	 *
+	 * @return
+	 * 		Return the random key of this castling right
+	 */
+	public static long castlingKey(Piece.Colors c, boolean bShortCastle) {
+		int index = c.equals(Piece.Colors.White) ? 0 : 2;
+		return castlingKeys[bShortCastle ? index : index + 1];
+	}
+
+
+	/**
+	 * @param x
+	 * 		The x-coordinate (i.e. File) of a possible En Passant capture
+	 *
+	 * @return
+	 * 		Return the random key of this En Passant file
+	 */
+	public static long enPassantKey(int x) {
+		return enPassantKeys[x];
+	}
+
+
+	/**
+	 * @return
+	 * 		Return the random key added when black is due to move
+	 */
+	public static long blackToMoveKey() {
+		return blackToMoveKey;
+	}
+
+}